@@ -19,10 +19,16 @@
 
 package com.ciphertool.zenith.api;
 
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
 import springfox.bean.validators.configuration.BeanValidatorPluginsConfiguration;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
@@ -49,6 +55,26 @@ import java.util.Collections;
         "com.ciphertool.zenith.inference.util"
 })
 public class ApiConfiguration {
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    /**
+     * When beans are initialized lazily, the API starts serving before the language model is loaded, so start loading
+     * it in the background rather than on the first request which needs it.  Its progress is reported by
+     * /api/language-model/status.  This does nothing when the model was loaded eagerly.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadLanguageModel(ApplicationReadyEvent event) {
+        TaskExecutor taskExecutor = event.getApplicationContext().getBean(TaskExecutor.class);
+
+        taskExecutor.execute(() -> {
+            try {
+                event.getApplicationContext().getBean(ArrayMarkovModel.class);
+            } catch (RuntimeException e) {
+                log.error("Unable to load the language model.", e);
+            }
+        });
+    }
+
     @Bean
     public Docket api() {
         return new Docket(DocumentationType.SWAGGER_2)
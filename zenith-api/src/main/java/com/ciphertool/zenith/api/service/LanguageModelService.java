@@ -0,0 +1,40 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.api.service;
+
+import com.ciphertool.zenith.api.model.LanguageModelStatusResponse;
+import com.ciphertool.zenith.inference.configuration.LanguageModelLoadingProgress;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@CrossOrigin(origins = "http://localhost:4200")
+@RequestMapping(value = "/api/language-model", produces = MediaType.APPLICATION_JSON_VALUE)
+public class LanguageModelService {
+    @Autowired
+    private LanguageModelLoadingProgress progress;
+
+    @GetMapping("/status")
+    @ResponseBody
+    public LanguageModelStatusResponse readStatus() {
+        return new LanguageModelStatusResponse(progress.getStage().name(), progress.isReady(), progress.getStageProgress(), progress.getElapsedMillis());
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.benchmarks;
+
+import ch.qos.logback.classic.Level;
+import com.ciphertool.zenith.inference.dao.CipherDao;
+import com.ciphertool.zenith.inference.entities.Cipher;
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.inference.entities.Ciphertext;
+import com.ciphertool.zenith.inference.probability.LetterProbability;
+import com.ciphertool.zenith.model.LanguageConstants;
+import com.ciphertool.zenith.model.dao.ArrayMarkovModelDao;
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Reproducible inputs shared by the benchmarks.  The ciphers are the bundled zodiac408 and zodiac340, and the language
+ * model is built from the known zodiac408 plaintext plus a fixed number of seeded random n-grams, so that lookups reach
+ * a table of realistic size without needing the full model file.
+ */
+public final class BenchmarkFixtures {
+    public static final String KNOWN_SOLUTION_CIPHER = "zodiac408";
+    public static final long SEED = 408L;
+
+    private static final int RANDOM_NGRAMS = 1000000;
+
+    private BenchmarkFixtures() {
+    }
+
+    public static Cipher cipher(String name) {
+        Cipher cipher = new CipherDao().findByCipherName(name);
+
+        if (cipher == null) {
+            throw new IllegalArgumentException("No bundled cipher exists with name " + name + ".");
+        }
+
+        return cipher;
+    }
+
+    /**
+     * @return the plaintext of the zodiac408 cipher according to its known solution key
+     */
+    public static String knownPlaintext() {
+        Cipher cipher = cipher(KNOWN_SOLUTION_CIPHER);
+        StringBuilder sb = new StringBuilder(cipher.length());
+
+        for (Ciphertext ciphertext : cipher.getCiphertextCharacters()) {
+            sb.append(cipher.getKnownSolutionKey().get(ciphertext.getValue()));
+        }
+
+        return sb.toString();
+    }
+
+    public static List<LetterProbability> letterUnigramProbabilities() {
+        long[] counts = letterCounts(knownPlaintext());
+        long total = 0L;
+
+        for (long count : counts) {
+            total += count;
+        }
+
+        List<LetterProbability> letterUnigramProbabilities = new ArrayList<>(LanguageConstants.LOWERCASE_LETTERS_SIZE);
+
+        for (int i = 0; i < LanguageConstants.LOWERCASE_LETTERS_SIZE; i ++) {
+            letterUnigramProbabilities.add(new LetterProbability(LanguageConstants.LOWERCASE_LETTERS[i], (double) counts[i] / (double) total));
+        }
+
+        Collections.sort(letterUnigramProbabilities);
+
+        return letterUnigramProbabilities;
+    }
+
+    public static ArrayMarkovModel letterMarkovModel(int order) {
+        String corpus = knownPlaintext();
+        ArrayMarkovModel letterMarkovModel = new ArrayMarkovModel(order);
+
+        long[] counts = letterCounts(corpus);
+
+        for (int i = 0; i < LanguageConstants.LOWERCASE_LETTERS_SIZE; i ++) {
+            TreeNGram unigram = new TreeNGram(String.valueOf(LanguageConstants.LOWERCASE_LETTERS[i]));
+            unigram.setCount(counts[i]);
+            letterMarkovModel.addNode(unigram);
+        }
+
+        Map<String, Integer> nGramCounts = new HashMap<>();
+
+        for (int i = 0; i + order <= corpus.length(); i ++) {
+            nGramCounts.merge(corpus.substring(i, i + order), 1, Integer::sum);
+        }
+
+        int totalNGrams = corpus.length() - order + 1;
+
+        for (Map.Entry<String, Integer> entry : nGramCounts.entrySet()) {
+            TreeNGram nGram = new TreeNGram(entry.getKey());
+            nGram.setLogProbability(Math.log((double) entry.getValue() / (double) totalNGrams));
+            letterMarkovModel.addNode(nGram);
+        }
+
+        SplittableRandom random = new SplittableRandom(SEED);
+        long randomNGrams = Math.min(RANDOM_NGRAMS, ArrayMarkovModel.possibleNGramCount(order) / 2);
+        char[] letters = new char[order];
+
+        for (long added = 0L; added < randomNGrams; ) {
+            for (int i = 0; i < order; i ++) {
+                letters[i] = LanguageConstants.LOWERCASE_LETTERS[random.nextInt(LanguageConstants.LOWERCASE_LETTERS_SIZE)];
+            }
+
+            String nGramString = new String(letters);
+
+            if (letterMarkovModel.findExact(nGramString) != -1f) {
+                continue;
+            }
+
+            TreeNGram nGram = new TreeNGram(nGramString);
+            nGram.setLogProbability(-10d - (random.nextDouble() * 10d));
+            letterMarkovModel.addNode(nGram);
+            added ++;
+        }
+
+        float unknownLetterNGramProbability = 1f / (float) letterMarkovModel.getTotalNGramCount();
+        letterMarkovModel.setUnknownLetterNGramProbability(unknownLetterNGramProbability);
+        letterMarkovModel.setUnknownLetterNGramLogProbability((float) Math.log(unknownLetterNGramProbability));
+
+        return letterMarkovModel;
+    }
+
+    /**
+     * Writes the model to a temporary binary model file and maps it back, as the applications do when
+     * language-model.memory-mapped is set.
+     */
+    public static ArrayMarkovModel memoryMapped(ArrayMarkovModel letterMarkovModel, int quantizationBits, boolean perfectHash) {
+        Path binaryModelFile;
+
+        try {
+            binaryModelFile = Files.createTempFile("zenith-model", ".bin");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        binaryModelFile.toFile().deleteOnExit();
+
+        ArrayMarkovModelDao arrayMarkovModelDao = new ArrayMarkovModelDao();
+        inject(arrayMarkovModelDao, "binaryModelFilename", binaryModelFile.toString());
+        inject(arrayMarkovModelDao, "memoryMapped", true);
+
+        arrayMarkovModelDao.save(letterMarkovModel, Integer.MAX_VALUE);
+
+        ArrayMarkovModel mapped = arrayMarkovModelDao.find(letterMarkovModel.getOrder(), Integer.MAX_VALUE, quantizationBits, perfectHash);
+        mapped.setUnknownLetterNGramProbability(letterMarkovModel.getUnknownLetterNGramProbability());
+        mapped.setUnknownLetterNGramLogProbability(letterMarkovModel.getUnknownLetterNGramLogProbability());
+
+        return mapped;
+    }
+
+    public static CipherSolution randomSolution(Cipher cipher, SplittableRandom random) {
+        CipherSolution solution = new CipherSolution(cipher, cipher.getSymbols().size());
+
+        for (int symbolId = 0; symbolId < solution.getKeySize(); symbolId ++) {
+            solution.setMapping(symbolId, LanguageConstants.LOWERCASE_LETTERS[random.nextInt(LanguageConstants.LOWERCASE_LETTERS_SIZE)]);
+        }
+
+        return solution;
+    }
+
+    /**
+     * Sets a field which Spring would otherwise inject.
+     */
+    public static void inject(Object target, String fieldName, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+
+        if (field == null) {
+            throw new IllegalArgumentException("No field " + fieldName + " exists on " + target.getClass().getName() + ".");
+        }
+
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    /**
+     * Raises the level of the application's loggers so that per-epoch output does not end up in the measurements.
+     */
+    public static void quietLogging() {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.ciphertool")).setLevel(Level.WARN);
+    }
+
+    private static long[] letterCounts(String text) {
+        long[] counts = new long[LanguageConstants.LOWERCASE_LETTERS_SIZE];
+
+        // Start every letter at one so that letters absent from the text can still be sampled
+        for (int i = 0; i < counts.length; i ++) {
+            counts[i] = 1L;
+        }
+
+        for (int i = 0; i < text.length(); i ++) {
+            counts[text.charAt(i) - 'a'] ++;
+        }
+
+        return counts;
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.benchmarks;
+
+import com.ciphertool.zenith.inference.entities.Cipher;
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.inference.util.IndexOfCoincidenceEvaluator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the index of coincidence of a random solution by recounting its plaintext, and from the letter counts that
+ * the solution tracks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexOfCoincidenceEvaluatorBenchmark {
+    @Param({ "zodiac408", "zodiac340" })
+    private String cipherName;
+
+    private Cipher cipher;
+    private CipherSolution solution;
+    private IndexOfCoincidenceEvaluator evaluator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cipher = BenchmarkFixtures.cipher(cipherName);
+        solution = BenchmarkFixtures.randomSolution(cipher, new SplittableRandom(BenchmarkFixtures.SEED));
+        solution.initLetterCounts();
+
+        evaluator = new IndexOfCoincidenceEvaluator();
+        evaluator.init(cipher);
+    }
+
+    @Benchmark
+    public float evaluatePlaintext() {
+        return evaluator.evaluate(cipher, solution.getPlaintext());
+    }
+
+    @Benchmark
+    public float evaluateTracked() {
+        return evaluator.evaluate(cipher, solution);
+    }
+}
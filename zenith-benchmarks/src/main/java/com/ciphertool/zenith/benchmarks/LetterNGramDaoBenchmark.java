@@ -0,0 +1,96 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.benchmarks;
+
+import com.ciphertool.zenith.model.LanguageConstants;
+import com.ciphertool.zenith.model.dao.LetterNGramDao;
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads an n-gram CSV file of seeded random rows in the format written by the language model importer, which is how
+ * the inference application builds its model when no binary model file exists yet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class LetterNGramDaoBenchmark {
+    @Param({ "100000" })
+    private int rows;
+
+    @Param({ "5" })
+    private int order;
+
+    private Path modelFile;
+    private LetterNGramDao letterNGramDao;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkFixtures.quietLogging();
+
+        modelFile = Files.createTempFile("zenith-model", ".csv");
+        Files.delete(modelFile);
+
+        letterNGramDao = new LetterNGramDao();
+        BenchmarkFixtures.inject(letterNGramDao, "modelFilename", modelFile.toString());
+
+        SplittableRandom random = new SplittableRandom(BenchmarkFixtures.SEED);
+        List<TreeNGram> nodes = new ArrayList<>(rows);
+        char[] letters = new char[order];
+
+        for (int i = 0; i < rows; i ++) {
+            for (int j = 0; j < order; j ++) {
+                letters[j] = LanguageConstants.LOWERCASE_LETTERS[random.nextInt(LanguageConstants.LOWERCASE_LETTERS_SIZE)];
+            }
+
+            TreeNGram node = new TreeNGram(new String(letters));
+            long count = 1L + random.nextInt(100000);
+            node.setCount(count);
+            node.setProbability(count / 1e9d);
+            node.setLogProbability(Math.log(count / 1e9d));
+            node.setConditionalProbability(random.nextDouble());
+            node.setLogConditionalProbability(Math.log(node.getConditionalProbability()));
+            nodes.add(node);
+        }
+
+        letterNGramDao.addAll(nodes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(modelFile);
+    }
+
+    @Benchmark
+    public List<TreeNGram> findAll() {
+        return letterNGramDao.findAll();
+    }
+}
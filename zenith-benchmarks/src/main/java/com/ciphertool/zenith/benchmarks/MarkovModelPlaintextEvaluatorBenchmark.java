@@ -0,0 +1,133 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.benchmarks;
+
+import com.ciphertool.zenith.inference.entities.Cipher;
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.inference.evaluator.MarkovModelPlaintextEvaluator;
+import com.ciphertool.zenith.inference.evaluator.RollbackBuffer;
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scores a random solution with the Markov model, both in full and for the n-grams covering a single cipher symbol as
+ * the annealing sampler does for each proposal, and for every letter a cipher symbol could take as the heat-bath
+ * sampler does, either in one pass or one letter at a time.  The n-gram table can be quantized and/or kept under a minimal perfect
+ * hash, and read from a memory-mapped file, to weigh the speed of the compact and shared tables against their memory
+ * savings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class MarkovModelPlaintextEvaluatorBenchmark {
+    @Param({ "zodiac408", "zodiac340" })
+    private String cipherName;
+
+    @Param({ "5" })
+    private int order;
+
+    @Param({ "0", "16", "8" })
+    private int quantizationBits;
+
+    @Param({ "false", "true" })
+    private boolean perfectHash;
+
+    @Param({ "false", "true" })
+    private boolean memoryMapped;
+
+    private Cipher cipher;
+    private CipherSolution solution;
+    private MarkovModelPlaintextEvaluator evaluator;
+    private RollbackBuffer rollbackBuffer;
+    private float[] logProbabilityDeltas = new float[26];
+    private int symbolId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkFixtures.quietLogging();
+
+        cipher = BenchmarkFixtures.cipher(cipherName);
+        solution = BenchmarkFixtures.randomSolution(cipher, new SplittableRandom(BenchmarkFixtures.SEED));
+
+        evaluator = new MarkovModelPlaintextEvaluator();
+        ArrayMarkovModel letterMarkovModel = BenchmarkFixtures.letterMarkovModel(order).compact(quantizationBits, perfectHash);
+
+        if (memoryMapped) {
+            letterMarkovModel = BenchmarkFixtures.memoryMapped(letterMarkovModel, quantizationBits, perfectHash);
+        }
+
+        BenchmarkFixtures.inject(evaluator, "letterMarkovModel", letterMarkovModel);
+        evaluator.init();
+
+        rollbackBuffer = new RollbackBuffer(cipher.length());
+
+        evaluator.evaluate(cipher, solution, solution.getPlaintext(), null);
+    }
+
+    @Benchmark
+    public float[][] evaluateFull() {
+        return evaluator.evaluate(cipher, solution, solution.getPlaintext(), null);
+    }
+
+    @Benchmark
+    public float[][] evaluateKeyed() {
+        return evaluator.evaluate(cipher, solution, solution.getPlaintext(), cipher.getSymbols().getSymbol(nextSymbolId()));
+    }
+
+    @Benchmark
+    public float evaluateDeltaKeyed() {
+        return evaluator.evaluateDelta(cipher, solution, solution.getPlaintext(), nextSymbolId(), rollbackBuffer);
+    }
+
+    @Benchmark
+    public float[] evaluateCandidates() {
+        evaluator.evaluateCandidates(cipher, solution, nextSymbolId(), logProbabilityDeltas, rollbackBuffer);
+
+        return logProbabilityDeltas;
+    }
+
+    @Benchmark
+    public float[] evaluateCandidatesOneByOne() {
+        int symbolId = nextSymbolId();
+        char originalMapping = solution.getMapping(symbolId);
+
+        for (int i = 0; i < logProbabilityDeltas.length; i ++) {
+            solution.setMapping(symbolId, (char) ('a' + i));
+            logProbabilityDeltas[i] = evaluator.evaluateDelta(cipher, solution, solution.getPlaintext(), symbolId, rollbackBuffer);
+            rollbackBuffer.rollback(solution);
+        }
+
+        solution.setMapping(symbolId, originalMapping);
+
+        return logProbabilityDeltas;
+    }
+
+    private int nextSymbolId() {
+        symbolId = (symbolId + 1) % solution.getKeySize();
+
+        return symbolId;
+    }
+}
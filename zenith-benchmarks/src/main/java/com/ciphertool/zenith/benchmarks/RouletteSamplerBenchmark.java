@@ -0,0 +1,50 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.benchmarks;
+
+import com.ciphertool.zenith.inference.probability.LetterProbability;
+import com.ciphertool.zenith.math.selection.RouletteSampler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples a letter from the unigram distribution, as each epoch does for every cipher symbol of its initial solution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouletteSamplerBenchmark {
+    private RouletteSampler<LetterProbability> rouletteSampler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rouletteSampler = new RouletteSampler<>();
+        rouletteSampler.reIndex(BenchmarkFixtures.letterUnigramProbabilities());
+    }
+
+    @Benchmark
+    public int getNextIndex() {
+        return rouletteSampler.getNextIndex();
+    }
+}
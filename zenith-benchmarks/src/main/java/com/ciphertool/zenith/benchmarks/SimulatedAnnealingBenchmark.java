@@ -0,0 +1,131 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.benchmarks;
+
+import com.ciphertool.zenith.inference.entities.Cipher;
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.inference.evaluator.MarkovModelPlaintextEvaluator;
+import com.ciphertool.zenith.inference.evaluator.SolutionScorer;
+import com.ciphertool.zenith.inference.optimizer.SimulatedAnnealingSolutionOptimizer;
+import com.ciphertool.zenith.inference.printer.CipherSolutionPrinter;
+import com.ciphertool.zenith.inference.transformer.plaintext.OneTimePadPlaintextTransformer;
+import com.ciphertool.zenith.inference.transformer.plaintext.PlaintextTransformer;
+import com.ciphertool.zenith.inference.transformer.plaintext.UnwrapFourSquarePlaintextTransformer;
+import com.ciphertool.zenith.inference.util.ChiSquaredEvaluator;
+import com.ciphertool.zenith.inference.util.IndexOfCoincidenceEvaluator;
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.task.SyncTaskExecutor;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs one annealing epoch of a fixed number of sampler iterations on the calling thread, reporting the average cost of
+ * a single iteration, which is one proposal per cipher symbol, or with the heat-bath sampler, scoring every letter for
+ * each cipher symbol.  A plaintext transformer can be applied to every proposal, to compare the cost of transformed
+ * searches against plain substitution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class SimulatedAnnealingBenchmark {
+    private static final int SAMPLER_ITERATIONS = 100;
+
+    @Param({ "zodiac408", "zodiac340" })
+    private String cipherName;
+
+    @Param({ "5" })
+    private int order;
+
+    @Param({ "false", "true" })
+    private boolean heatBath;
+
+    @Param({ "None", "OneTimePad", "UnwrapFourSquare" })
+    private String plaintextTransformer;
+
+    private Cipher cipher;
+    private SimulatedAnnealingSolutionOptimizer optimizer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkFixtures.quietLogging();
+
+        cipher = BenchmarkFixtures.cipher(cipherName);
+
+        ArrayMarkovModel letterMarkovModel = BenchmarkFixtures.letterMarkovModel(order);
+
+        MarkovModelPlaintextEvaluator plaintextEvaluator = new MarkovModelPlaintextEvaluator();
+        BenchmarkFixtures.inject(plaintextEvaluator, "letterMarkovModel", letterMarkovModel);
+        plaintextEvaluator.init();
+
+        ChiSquaredEvaluator chiSquaredEvaluator = new ChiSquaredEvaluator();
+        BenchmarkFixtures.inject(chiSquaredEvaluator, "letterMarkovModel", letterMarkovModel);
+
+        CipherSolutionPrinter cipherSolutionPrinter = new CipherSolutionPrinter();
+        BenchmarkFixtures.inject(cipherSolutionPrinter, "chiSquaredEvaluator", chiSquaredEvaluator);
+
+        optimizer = new SimulatedAnnealingSolutionOptimizer();
+        BenchmarkFixtures.inject(optimizer, "samplerIterations", SAMPLER_ITERATIONS);
+        BenchmarkFixtures.inject(optimizer, "annealingTemperatureMax", 5f);
+        BenchmarkFixtures.inject(optimizer, "annealingTemperatureMin", 2.75f);
+        BenchmarkFixtures.inject(optimizer, "markovOrder", order);
+        BenchmarkFixtures.inject(optimizer, "epochs", 1);
+        BenchmarkFixtures.inject(optimizer, "heatBath", heatBath);
+        BenchmarkFixtures.inject(optimizer, "knownSolutionCorrectnessThreshold", 0.9f);
+        BenchmarkFixtures.inject(optimizer, "solutionScorer", new SolutionScorer());
+        BenchmarkFixtures.inject(optimizer, "indexOfCoincidenceEvaluator", new IndexOfCoincidenceEvaluator());
+        BenchmarkFixtures.inject(optimizer, "letterMarkovModel", letterMarkovModel);
+        BenchmarkFixtures.inject(optimizer, "plaintextEvaluator", plaintextEvaluator);
+        BenchmarkFixtures.inject(optimizer, "cipherSolutionPrinter", cipherSolutionPrinter);
+        BenchmarkFixtures.inject(optimizer, "taskExecutor", new SyncTaskExecutor());
+
+        if (!"None".equals(plaintextTransformer)) {
+            BenchmarkFixtures.inject(optimizer, "plaintextTransformers", Collections.singletonList(plaintextTransformer(plaintextTransformer)));
+        }
+    }
+
+    private static PlaintextTransformer plaintextTransformer(String name) {
+        if ("OneTimePad".equals(name)) {
+            OneTimePadPlaintextTransformer transformer = new OneTimePadPlaintextTransformer();
+            BenchmarkFixtures.inject(transformer, "key", "paradiceslaves");
+
+            return transformer;
+        }
+
+        UnwrapFourSquarePlaintextTransformer transformer = new UnwrapFourSquarePlaintextTransformer();
+        BenchmarkFixtures.inject(transformer, "keyTopLeft", "byfireacdghklmnopqstuvwxz");
+        BenchmarkFixtures.inject(transformer, "keyTopRight", "bygunacdefhiklmopqrstvwxz");
+        BenchmarkFixtures.inject(transformer, "keyBottomLeft", "byknifeacdghlmopqrstuvwxz");
+        BenchmarkFixtures.inject(transformer, "keyBottomRight", "byropeacdfghiklmnqstuvwxz");
+        transformer.init();
+
+        return transformer;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLER_ITERATIONS)
+    public CipherSolution samplerIteration() {
+        return optimizer.optimize(cipher);
+    }
+}
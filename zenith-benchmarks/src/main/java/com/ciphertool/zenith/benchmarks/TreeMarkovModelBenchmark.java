@@ -0,0 +1,74 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.benchmarks;
+
+import com.ciphertool.zenith.model.markov.TreeMarkovModel;
+import com.ciphertool.zenith.model.markov.table.LetterNGramCounter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts every n-gram of the known zodiac408 plaintext, either straight into a new tree model or into the flat counter
+ * the corpus importer fills for each sentence it reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeMarkovModelBenchmark {
+    @Param({ "5" })
+    private int order;
+
+    private String corpus;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        corpus = BenchmarkFixtures.knownPlaintext();
+    }
+
+    @Benchmark
+    public TreeMarkovModel addLetterTransition() {
+        TreeMarkovModel letterMarkovModel = new TreeMarkovModel(order);
+
+        for (int i = 0; i + order <= corpus.length(); i ++) {
+            letterMarkovModel.addLetterTransition(corpus.substring(i, i + order));
+        }
+
+        return letterMarkovModel;
+    }
+
+    @Benchmark
+    public LetterNGramCounter countNGrams() {
+        LetterNGramCounter counter = new LetterNGramCounter(order);
+
+        long index = counter.computeIndex(corpus, 0);
+        counter.increment(index);
+
+        for (int i = order; i < corpus.length(); i ++) {
+            index = counter.rollIndex(index, corpus.charAt(i));
+            counter.increment(index);
+        }
+
+        return counter;
+    }
+}
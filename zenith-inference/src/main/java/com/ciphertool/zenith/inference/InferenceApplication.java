@@ -19,6 +19,7 @@
 
 package com.ciphertool.zenith.inference;
 
+import com.ciphertool.zenith.inference.benchmark.SolveRateBenchmark;
 import com.ciphertool.zenith.inference.dao.CipherDao;
 import com.ciphertool.zenith.inference.entities.Cipher;
 import com.ciphertool.zenith.inference.optimizer.SolutionOptimizer;
@@ -71,6 +72,12 @@ public class InferenceApplication implements CommandLineRunner {
     @Value("${decipherment.transformers.ciphertext}")
     private List<String> cipherTransformersToUse;
 
+    @Value("${benchmark.enabled:false}")
+    private boolean benchmarkEnabled;
+
+    @Autowired
+    private SolveRateBenchmark solveRateBenchmark;
+
     @Autowired
     private Cipher cipher;
 
@@ -85,6 +92,11 @@ public class InferenceApplication implements CommandLineRunner {
 
     @Override
     public void run(String... arg0) {
+        if (benchmarkEnabled) {
+            solveRateBenchmark.run();
+            return;
+        }
+
         List<String> existentOptimizers = optimizers.stream()
                 .map(optimizer -> optimizer.getClass().getSimpleName())
                 .collect(Collectors.toList());
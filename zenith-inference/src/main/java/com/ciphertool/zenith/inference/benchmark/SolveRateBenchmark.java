@@ -0,0 +1,271 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.benchmark;
+
+import com.ciphertool.zenith.inference.dao.CipherDao;
+import com.ciphertool.zenith.inference.entities.Cipher;
+import com.ciphertool.zenith.inference.optimizer.AbstractLetterSamplingSolutionOptimizer;
+import com.ciphertool.zenith.inference.optimizer.EpochResult;
+import com.ciphertool.zenith.inference.optimizer.ParallelTemperingSolutionOptimizer;
+import com.ciphertool.zenith.inference.optimizer.SimulatedAnnealingSolutionOptimizer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opencsv.CSVWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Measures how many correct solutions the simulated annealing or parallel tempering optimizer finds per second on
+ * ciphers with known solutions, sweeping over sampler iterations, temperatures and thread counts, as well as replica
+ * counts and swap intervals for parallel tempering, and writes the results as both CSV and JSON.
+ */
+@Component
+public class SolveRateBenchmark {
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final String[] CSV_HEADER = { "cipherName", "optimizer", "samplerIterations", "temperatureMax",
+            "temperatureMin", "threads", "replicas", "swapInterval", "epochs", "correctSolutions", "successRate", "wallClockMillis", "cpuMillis",
+            "timeToFirstCorrectMillis", "correctSolutionsPerCpuSecond", "correctSolutionsPerWallClockSecond",
+            "epochsPerWallClockSecond" };
+
+    @Value("${benchmark.optimizer:SimulatedAnnealingSolutionOptimizer}")
+    private String optimizerName;
+
+    @Value("${benchmark.ciphers:zodiac408}")
+    private List<String> cipherNames;
+
+    @Value("${benchmark.epochs:100}")
+    private int epochs;
+
+    @Value("${benchmark.sampler-iterations:5000}")
+    private List<Integer> samplerIterations;
+
+    @Value("${benchmark.temperature.max:5}")
+    private List<Float> temperaturesMax;
+
+    @Value("${benchmark.temperature.min:2.75}")
+    private List<Float> temperaturesMin;
+
+    @Value("${benchmark.threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private List<Integer> threadCounts;
+
+    @Value("${benchmark.replicas:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private List<Integer> replicaCounts;
+
+    @Value("${benchmark.swap-interval:10}")
+    private List<Integer> swapIntervals;
+
+    @Value("${benchmark.output-directory:.}")
+    private String outputDirectory;
+
+    @Autowired
+    private CipherDao cipherDao;
+
+    @Autowired
+    private SimulatedAnnealingSolutionOptimizer simulatedAnnealingOptimizer;
+
+    @Autowired
+    private ParallelTemperingSolutionOptimizer parallelTemperingOptimizer;
+
+    public List<SolveRateResult> run() {
+        AbstractLetterSamplingSolutionOptimizer optimizer = selectOptimizer();
+        boolean parallelTempering = optimizer == parallelTemperingOptimizer;
+
+        // Replicas and swap intervals only apply to parallel tempering, so they are recorded as 0 for simulated annealing
+        List<Integer> replicaCountsToSweep = parallelTempering ? replicaCounts : Collections.singletonList(0);
+        List<Integer> swapIntervalsToSweep = parallelTempering ? swapIntervals : Collections.singletonList(0);
+
+        // Simulated annealing queues all of its epochs at once, while parallel tempering queues one task per replica
+        int queueCapacity = parallelTempering ? Math.max(epochs, Collections.max(replicaCounts)) : epochs;
+
+        List<SolveRateResult> results = new ArrayList<>();
+
+        for (String cipherName : cipherNames) {
+            // The ciphers are read as-is, without the configured ciphertext transformers, so that the known solution applies
+            Cipher cipher = cipherDao.findByCipherName(cipherName);
+
+            if (cipher == null) {
+                log.error("The cipher with name {} does not exist.", cipherName);
+                throw new IllegalArgumentException("The cipher with name " + cipherName + " does not exist.");
+            }
+
+            if (!cipher.hasKnownSolution()) {
+                log.warn("Skipping cipher {} as it does not have a known solution to measure against.", cipherName);
+                continue;
+            }
+
+            for (int threads : threadCounts) {
+                ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+                taskExecutor.setCorePoolSize(threads);
+                taskExecutor.setMaxPoolSize(threads);
+                taskExecutor.setQueueCapacity(queueCapacity);
+                taskExecutor.initialize();
+
+                try {
+                    for (int iterations : samplerIterations) {
+                        for (float temperatureMax : temperaturesMax) {
+                            for (float temperatureMin : temperaturesMin) {
+                                if (temperatureMin > temperatureMax) {
+                                    continue;
+                                }
+
+                                for (int replicas : replicaCountsToSweep) {
+                                    for (int swapInterval : swapIntervalsToSweep) {
+                                        SolveRateResult result = measure(optimizer, cipher, iterations, temperatureMax, temperatureMin, threads, replicas, swapInterval, taskExecutor);
+
+                                        log.info("cipher={}, optimizer={}, samplerIterations={}, temperatureMax={}, temperatureMin={}, threads={}, replicas={}, swapInterval={}: {} out of {} epochs correct, {} correct solutions per CPU-second, first correct after {}ms.",
+                                                cipherName, optimizerName, iterations, temperatureMax, temperatureMin, threads, replicas, swapInterval, result.getCorrectSolutions(), result.getEpochs(),
+                                                String.format("%1$,.4f", result.getCorrectSolutionsPerCpuSecond()), result.getTimeToFirstCorrectMillis());
+
+                                        results.add(result);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                } finally {
+                    taskExecutor.shutdown();
+                }
+            }
+        }
+
+        write(results);
+
+        return results;
+    }
+
+    private AbstractLetterSamplingSolutionOptimizer selectOptimizer() {
+        if (SimulatedAnnealingSolutionOptimizer.class.getSimpleName().equals(optimizerName)) {
+            return simulatedAnnealingOptimizer;
+        }
+
+        if (ParallelTemperingSolutionOptimizer.class.getSimpleName().equals(optimizerName)) {
+            return parallelTemperingOptimizer;
+        }
+
+        List<String> existentOptimizers = Arrays.asList(SimulatedAnnealingSolutionOptimizer.class.getSimpleName(),
+                ParallelTemperingSolutionOptimizer.class.getSimpleName());
+
+        log.error("The SolutionOptimizer with name {} cannot be benchmarked.  Please use a name from the following: {}", optimizerName, existentOptimizers);
+        throw new IllegalArgumentException("The SolutionOptimizer with name " + optimizerName + " cannot be benchmarked.");
+    }
+
+    private SolveRateResult measure(AbstractLetterSamplingSolutionOptimizer optimizer, Cipher cipher, int iterations, float temperatureMax, float temperatureMin, int threads, int replicas, int swapInterval, ThreadPoolTaskExecutor taskExecutor) {
+        long start = System.nanoTime();
+
+        List<EpochResult> epochResults;
+
+        if (optimizer == parallelTemperingOptimizer) {
+            SplittableRandom random = new SplittableRandom();
+            epochResults = new ArrayList<>(epochs);
+
+            for (int epoch = 0; epoch < epochs; epoch ++) {
+                epochResults.add(parallelTemperingOptimizer.runEpoch(cipher, replicas, iterations, temperatureMax, temperatureMin, swapInterval, taskExecutor, random.split()));
+            }
+        } else {
+            epochResults = simulatedAnnealingOptimizer.runEpochs(cipher, epochs, iterations, temperatureMax, temperatureMin, taskExecutor);
+        }
+
+        long wallClockNanos = System.nanoTime() - start;
+        long cpuNanos = 0L;
+        int correctSolutions = 0;
+        long firstCorrectNanos = -1L;
+
+        for (EpochResult epochResult : epochResults) {
+            cpuNanos += epochResult.getCpuNanos();
+
+            if (optimizer.isCorrect(cipher, epochResult.getSolution())) {
+                correctSolutions ++;
+
+                long sinceStart = epochResult.getFinishedAtNanos() - start;
+
+                if (firstCorrectNanos < 0L || sinceStart < firstCorrectNanos) {
+                    firstCorrectNanos = sinceStart;
+                }
+            }
+        }
+
+        double wallClockSeconds = wallClockNanos / 1e9d;
+        double cpuSeconds = cpuNanos / 1e9d;
+
+        return new SolveRateResult(cipher.getName(), optimizerName, iterations, temperatureMax, temperatureMin, threads,
+                replicas, swapInterval, epochResults.size(), correctSolutions,
+                epochResults.isEmpty() ? 0d : (double) correctSolutions / (double) epochResults.size(),
+                wallClockNanos / 1000000L, cpuNanos / 1000000L,
+                firstCorrectNanos < 0L ? -1L : firstCorrectNanos / 1000000L,
+                cpuSeconds > 0d ? correctSolutions / cpuSeconds : 0d,
+                wallClockSeconds > 0d ? correctSolutions / wallClockSeconds : 0d,
+                wallClockSeconds > 0d ? epochResults.size() / wallClockSeconds : 0d);
+    }
+
+    private void write(List<SolveRateResult> results) {
+        String dateText = LocalDateTime.now().format(DATE_TIME_FORMATTER);
+        Path csvPath = Paths.get(outputDirectory, "solve-rate-" + dateText + ".csv");
+        Path jsonPath = Paths.get(outputDirectory, "solve-rate-" + dateText + ".json");
+
+        try (Writer writer = Files.newBufferedWriter(csvPath); CSVWriter csvWriter = new CSVWriter(writer)) {
+            csvWriter.writeNext(CSV_HEADER, false);
+
+            for (SolveRateResult result : results) {
+                csvWriter.writeNext(new String[] { result.getCipherName(), result.getOptimizer(),
+                        String.valueOf(result.getSamplerIterations()), String.valueOf(result.getTemperatureMax()),
+                        String.valueOf(result.getTemperatureMin()), String.valueOf(result.getThreads()),
+                        String.valueOf(result.getReplicas()), String.valueOf(result.getSwapInterval()),
+                        String.valueOf(result.getEpochs()),
+                        String.valueOf(result.getCorrectSolutions()), String.valueOf(result.getSuccessRate()),
+                        String.valueOf(result.getWallClockMillis()), String.valueOf(result.getCpuMillis()),
+                        String.valueOf(result.getTimeToFirstCorrectMillis()),
+                        String.valueOf(result.getCorrectSolutionsPerCpuSecond()),
+                        String.valueOf(result.getCorrectSolutionsPerWallClockSecond()),
+                        String.valueOf(result.getEpochsPerWallClockSecond()) }, false);
+            }
+        } catch (IOException e) {
+            log.error("Unable to write solve rate results to file: {}.", csvPath, e);
+            throw new IllegalStateException(e);
+        }
+
+        try {
+            OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValue(jsonPath.toFile(), results);
+        } catch (IOException e) {
+            log.error("Unable to write solve rate results to file: {}.", jsonPath, e);
+            throw new IllegalStateException(e);
+        }
+
+        log.info("Wrote solve rate results to {} and {}.", csvPath, jsonPath);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.benchmark;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The solve rate and throughput of one combination of hyperparameters on one cipher.
+ */
+@Getter
+@AllArgsConstructor
+public class SolveRateResult {
+    private String cipherName;
+    private String optimizer;
+    private int samplerIterations;
+    private float temperatureMax;
+    private float temperatureMin;
+    private int threads;
+    // 0 for simulated annealing, which has neither replicas nor swaps
+    private int replicas;
+    private int swapInterval;
+    private int epochs;
+    private int correctSolutions;
+    private double successRate;
+    private long wallClockMillis;
+    private long cpuMillis;
+    // -1 if no epoch produced the correct solution
+    private long timeToFirstCorrectMillis;
+    private double correctSolutionsPerCpuSecond;
+    private double correctSolutionsPerWallClockSecond;
+    private double epochsPerWallClockSecond;
+}
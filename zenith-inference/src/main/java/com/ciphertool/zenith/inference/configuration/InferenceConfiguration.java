@@ -21,21 +21,29 @@ package com.ciphertool.zenith.inference.configuration;
 
 import com.ciphertool.zenith.inference.evaluator.PlaintextEvaluator;
 import com.ciphertool.zenith.inference.transformer.plaintext.PlaintextTransformer;
+import com.ciphertool.zenith.model.dao.ArrayMarkovModelDao;
 import com.ciphertool.zenith.model.dao.LetterNGramDao;
 import com.ciphertool.zenith.model.entities.TreeNGram;
 import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import com.ciphertool.zenith.model.markov.StupidBackOff;
+import com.ciphertool.zenith.model.markov.TopNGramSelector;
+import com.ciphertool.zenith.model.markov.table.NGramTables;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
 
 import javax.validation.constraints.Min;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
 @Configuration
@@ -51,6 +59,9 @@ import java.util.stream.Collectors;
 public class InferenceConfiguration {
     private final static String PLAINTEXT_TRANSFORMER_SUFFIX = PlaintextTransformer.class.getSimpleName();
 
+    // The n-gram list is read or parsed in parallel in chunks of about this many bytes
+    private static final long NGRAM_CHUNK_SIZE = 1L << 23;
+
     private Logger log = LoggerFactory.getLogger(getClass());
 
     @Value("${markov.letter.order}")
@@ -60,6 +71,18 @@ public class InferenceConfiguration {
     @Value("${language-model.max-ngrams-to-keep}")
     private int maxNGramsToKeep;
 
+    @Value("${language-model.quantization-bits:0}")
+    private int quantizationBits;
+
+    @Value("${language-model.perfect-hash:false}")
+    private boolean perfectHash;
+
+    @Value("${language-model.memory-mapped:false}")
+    private boolean memoryMapped;
+
+    @Value("${language-model.back-off-weight:0}")
+    private float backOffWeight;
+
     @Value("${decipherment.transformers.plaintext}")
     private List<String> plaintextTransformersToUse;
 
@@ -67,41 +90,306 @@ public class InferenceConfiguration {
     private String plaintextEvaluatorName;
 
     @Bean
-    public ArrayMarkovModel letterMarkovModel(LetterNGramDao letterNGramDao) {
-        long startFindAll = System.currentTimeMillis();
-        log.info("Beginning retrieval of all n-grams.");
+    public ArrayMarkovModel letterMarkovModel(LetterNGramDao letterNGramDao, ArrayMarkovModelDao arrayMarkovModelDao, TaskExecutor taskExecutor, LanguageModelLoadingProgress progress) {
+        if (backOffWeight > 0f && perfectHash) {
+            // Back-off gives every possible n-gram a value, which would leave the perfect hash nothing to leave out
+            log.error("language-model.back-off-weight={} cannot be combined with language-model.perfect-hash.  Please set one of them to its default.", backOffWeight);
+            throw new IllegalArgumentException("language-model.back-off-weight cannot be combined with language-model.perfect-hash.");
+        }
 
-        /*
-         * Begin setting up letter n-gram model
-         */
-        List<TreeNGram> nGramNodes = letterNGramDao.findAll();
+        progress.start();
 
-        log.info("Finished retrieving {} n-grams in {}ms.", nGramNodes.size(), (System.currentTimeMillis() - startFindAll));
+        ArrayMarkovModel letterMarkovModel;
 
-        ArrayMarkovModel letterMarkovModel = new ArrayMarkovModel(markovOrder);
+        try {
+            letterMarkovModel = loadLetterMarkovModel(letterNGramDao, arrayMarkovModelDao, taskExecutor, progress);
+        } catch (RuntimeException e) {
+            progress.fail();
+            throw e;
+        }
 
-        long startAdding = System.currentTimeMillis();
-        log.info("Adding nodes to the model.");
+        float unknownLetterNGramProbability = 1f / (float) letterMarkovModel.getTotalNGramCount();
+        letterMarkovModel.setUnknownLetterNGramProbability(unknownLetterNGramProbability);
+        letterMarkovModel.setUnknownLetterNGramLogProbability((float) Math.log(unknownLetterNGramProbability));
 
-        nGramNodes.stream()
-                .filter(node -> node.getOrder() == 1)
-                .forEach(letterMarkovModel::addNode);
+        progress.finish();
 
-        nGramNodes.stream()
-                .filter(node -> node.getOrder() == markovOrder)
-                .sorted(Comparator.comparing(TreeNGram::getCount).reversed())
-                .limit(maxNGramsToKeep)
-                .forEach(letterMarkovModel::addNode);
+        log.info("Letter n-gram model is ready after {}ms.", progress.getElapsedMillis());
 
-        log.info("Finished adding {} nodes to the letter n-gram model in {}ms.", letterMarkovModel.getMapSize(), (System.currentTimeMillis() - startAdding));
+        return letterMarkovModel;
+    }
 
-        float unknownLetterNGramProbability = 1f / (float) letterMarkovModel.getTotalNGramCount();
-        letterMarkovModel.setUnknownLetterNGramProbability(unknownLetterNGramProbability);
-        letterMarkovModel.setUnknownLetterNGramLogProbability((float) Math.log(unknownLetterNGramProbability));
+    private ArrayMarkovModel loadLetterMarkovModel(LetterNGramDao letterNGramDao, ArrayMarkovModelDao arrayMarkovModelDao, TaskExecutor taskExecutor, LanguageModelLoadingProgress progress) {
+        progress.enterStage(LanguageModelLoadingProgress.Stage.READING_BINARY_MODEL, 0L);
+
+        ArrayMarkovModel letterMarkovModel = arrayMarkovModelDao.find(markovOrder, maxNGramsToKeep, quantizationBits, perfectHash, backOffWeight);
+
+        if (letterMarkovModel != null) {
+            return letterMarkovModel;
+        }
+
+        log.info("No usable binary language model found.  Building it from the n-gram list.");
+
+        letterMarkovModel = compact(buildLetterMarkovModel(letterNGramDao, taskExecutor, progress), progress);
+
+        progress.enterStage(LanguageModelLoadingProgress.Stage.SAVING_BINARY_MODEL, 0L);
+
+        try {
+            arrayMarkovModelDao.save(letterMarkovModel, maxNGramsToKeep);
+        } catch (IllegalStateException e) {
+            // The binary model is only a cache of the n-gram list, so the model just built can still be used
+            log.warn("Unable to save the binary language model.  Continuing with the model built from the n-gram list.", e);
+            return letterMarkovModel;
+        }
+
+        if (memoryMapped) {
+            // Map the file just written, so that this process shares it with the others rather than keeping its own copy
+            letterMarkovModel = arrayMarkovModelDao.find(markovOrder, maxNGramsToKeep, quantizationBits, perfectHash, backOffWeight);
+        }
+
+        return letterMarkovModel;
+    }
+
+    private ArrayMarkovModel compact(ArrayMarkovModel letterMarkovModel, LanguageModelLoadingProgress progress) {
+        if (quantizationBits == 0 && !perfectHash) {
+            return letterMarkovModel;
+        }
+
+        progress.enterStage(LanguageModelLoadingProgress.Stage.COMPACTING, 0L);
+
+        long start = System.currentTimeMillis();
+
+        ArrayMarkovModel compactModel;
+
+        try {
+            compactModel = letterMarkovModel.compact(quantizationBits, perfectHash);
+        } catch (IllegalArgumentException e) {
+            log.error("Unable to compact the letter n-gram model with quantizationBits={} and perfectHash={}.", quantizationBits, perfectHash, e);
+            throw e;
+        }
+
+        log.info("Compacted the letter n-gram model from {} to {} bytes in {}ms, with a mean absolute log probability error of {} and a maximum of {}.",
+                letterMarkovModel.getNGramTable().memoryUsage(), compactModel.getNGramTable().memoryUsage(),
+                (System.currentTimeMillis() - start),
+                NGramTables.meanAbsoluteError(letterMarkovModel.getNGramTable(), compactModel.getNGramTable()),
+                NGramTables.maxAbsoluteError(letterMarkovModel.getNGramTable(), compactModel.getNGramTable()));
+
+        return compactModel;
+    }
+
+    /**
+     * Reads the n-gram list in chunks in parallel, keeping only the unigrams and the most frequent n-grams of the
+     * model's order from each chunk, and then the most frequent of those overall.
+     */
+    private ArrayMarkovModel buildLetterMarkovModel(LetterNGramDao letterNGramDao, TaskExecutor taskExecutor, LanguageModelLoadingProgress progress) {
+        long start = System.currentTimeMillis();
+
+        List<FutureTask<NGramChunk>> futures = letterNGramDao.isArchived()
+                ? parseArchivedNGrams(letterNGramDao, taskExecutor, progress)
+                : readNGrams(letterNGramDao, taskExecutor, progress);
+
+        List<TreeNGram> firstOrderNodes = new ArrayList<>();
+        List<TreeNGram> lowerOrderNodes = new ArrayList<>();
+        TopNGramSelector selected = new TopNGramSelector(maxNGramsToKeep);
+        long nGramsRead = 0L;
+
+        for (FutureTask<NGramChunk> future : futures) {
+            NGramChunk chunk;
+
+            try {
+                chunk = future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                log.error("Unable to read a chunk of the n-gram list.", e);
+                throw new IllegalStateException(e);
+            }
+
+            firstOrderNodes.addAll(chunk.firstOrderNodes);
+            lowerOrderNodes.addAll(chunk.lowerOrderNodes);
+            selected.merge(chunk.selected);
+            nGramsRead += chunk.nGramsRead;
+        }
+
+        log.info("Finished retrieving {} n-grams in {}ms.", nGramsRead, (System.currentTimeMillis() - start));
+
+        ArrayMarkovModel letterMarkovModel = new ArrayMarkovModel(markovOrder);
+
+        firstOrderNodes.forEach(letterMarkovModel::addNode);
+        selected.forEach((index, count, logProbability) -> letterMarkovModel.addNGram(index, logProbability));
+
+        log.info("Finished adding {} nodes to the letter n-gram model in {}ms.", letterMarkovModel.getMapSize(), (System.currentTimeMillis() - start));
+
+        if (backOffWeight > 0f) {
+            backOff(letterMarkovModel, firstOrderNodes, lowerOrderNodes);
+        }
 
         return letterMarkovModel;
     }
 
+    private void backOff(ArrayMarkovModel letterMarkovModel, List<TreeNGram> firstOrderNodes, List<TreeNGram> lowerOrderNodes) {
+        long start = System.currentTimeMillis();
+
+        StupidBackOff backOff;
+
+        try {
+            backOff = new StupidBackOff(markovOrder, backOffWeight);
+        } catch (IllegalArgumentException e) {
+            log.error("Unable to back off the letter n-gram model.", e);
+            throw new IllegalStateException(e);
+        }
+
+        firstOrderNodes.forEach(backOff::addNode);
+        lowerOrderNodes.forEach(backOff::addNode);
+
+        long filled = backOff.apply(letterMarkovModel);
+
+        log.info("Finished backing off {} unknown n-grams with weight {} from {} known n-grams in {}ms.", filled, backOffWeight, letterMarkovModel.getKnownNGramCount(), (System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Splits the n-gram list file into byte ranges which are each read by their own task.
+     */
+    private List<FutureTask<NGramChunk>> readNGrams(LetterNGramDao letterNGramDao, TaskExecutor taskExecutor, LanguageModelLoadingProgress progress) {
+        long fileSize = letterNGramDao.getFileSize();
+        int chunkCount = (int) Math.max(1L, (fileSize + NGRAM_CHUNK_SIZE - 1) / NGRAM_CHUNK_SIZE);
+
+        log.info("Beginning retrieval of n-grams from {} chunks.", chunkCount);
+
+        progress.enterStage(LanguageModelLoadingProgress.Stage.READING_NGRAMS, fileSize);
+
+        List<FutureTask<NGramChunk>> futures = new ArrayList<>(chunkCount);
+        FutureTask<NGramChunk> task;
+
+        for (int i = 0; i < chunkCount; i ++) {
+            long chunkStart = (fileSize * i) / chunkCount;
+            long chunkEnd = (fileSize * (i + 1)) / chunkCount;
+
+            task = new FutureTask<>(new ReadNGramsTask(letterNGramDao, chunkStart, chunkEnd, progress));
+            futures.add(task);
+            taskExecutor.execute(task);
+        }
+
+        return futures;
+    }
+
+    /**
+     * Inflates the n-gram list straight out of the archive on this thread, handing each block of it to its own task to
+     * parse.  Only a few blocks are held at once, so the inflated list is never held in memory or written to disk.
+     */
+    private List<FutureTask<NGramChunk>> parseArchivedNGrams(LetterNGramDao letterNGramDao, TaskExecutor taskExecutor, LanguageModelLoadingProgress progress) {
+        log.info("Beginning retrieval of n-grams from the language model archive.");
+
+        progress.enterStage(LanguageModelLoadingProgress.Stage.READING_NGRAMS, Math.max(0L, letterNGramDao.getFileSize()));
+
+        Semaphore pendingBlocks = new Semaphore(Runtime.getRuntime().availableProcessors() * 2);
+        List<FutureTask<NGramChunk>> futures = new ArrayList<>();
+
+        letterNGramDao.findAllInBlocks((int) NGRAM_CHUNK_SIZE, (block, length) -> {
+            try {
+                pendingBlocks.acquire();
+            } catch (InterruptedException e) {
+                log.error("Interrupted while waiting to parse a chunk of the n-gram list.", e);
+                throw new IllegalStateException(e);
+            }
+
+            FutureTask<NGramChunk> task = new FutureTask<>(new ParseNGramsTask(letterNGramDao, block, length, pendingBlocks, progress));
+            futures.add(task);
+            taskExecutor.execute(task);
+        });
+
+        return futures;
+    }
+
+    private static class NGramChunk {
+        private final int markovOrder;
+        private final boolean keepLowerOrders;
+        private final List<TreeNGram> firstOrderNodes = new ArrayList<>();
+        // The n-grams between the first order and the model's, which are only needed to back off unknown n-grams
+        private final List<TreeNGram> lowerOrderNodes = new ArrayList<>();
+        private final TopNGramSelector selected;
+        private long nGramsRead;
+
+        private NGramChunk(int markovOrder, int maxNGramsToKeep, boolean keepLowerOrders) {
+            this.markovOrder = markovOrder;
+            this.keepLowerOrders = keepLowerOrders;
+            selected = new TopNGramSelector(maxNGramsToKeep);
+        }
+
+        private void add(TreeNGram node) {
+            nGramsRead ++;
+
+            if (node.getOrder() == 1) {
+                firstOrderNodes.add(node);
+            } else if (node.getOrder() == markovOrder) {
+                selected.offer(ArrayMarkovModel.computeArrayIndex(node.getCumulativeString(), markovOrder), node.getCount(), (float) node.getLogProbability());
+            } else if (keepLowerOrders && node.getOrder() < markovOrder) {
+                lowerOrderNodes.add(node);
+            }
+        }
+    }
+
+    /**
+     * A concurrent task for reading the n-grams in one range of bytes of the n-gram list.
+     */
+    protected class ReadNGramsTask implements Callable<NGramChunk> {
+        private LetterNGramDao letterNGramDao;
+        private long start;
+        private long end;
+        private LanguageModelLoadingProgress progress;
+
+        public ReadNGramsTask(LetterNGramDao letterNGramDao, long start, long end, LanguageModelLoadingProgress progress) {
+            this.letterNGramDao = letterNGramDao;
+            this.start = start;
+            this.end = end;
+            this.progress = progress;
+        }
+
+        @Override
+        public NGramChunk call() {
+            NGramChunk chunk = new NGramChunk(markovOrder, maxNGramsToKeep, backOffWeight > 0f);
+
+            letterNGramDao.findAllInRange(start, end, chunk::add);
+
+            progress.addBytesRead(end - start);
+
+            return chunk;
+        }
+    }
+
+    /**
+     * A concurrent task for parsing the n-grams in one block of the archived n-gram list.
+     */
+    protected class ParseNGramsTask implements Callable<NGramChunk> {
+        private LetterNGramDao letterNGramDao;
+        private byte[] block;
+        private int length;
+        private Semaphore pendingBlocks;
+        private LanguageModelLoadingProgress progress;
+
+        public ParseNGramsTask(LetterNGramDao letterNGramDao, byte[] block, int length, Semaphore pendingBlocks, LanguageModelLoadingProgress progress) {
+            this.letterNGramDao = letterNGramDao;
+            this.block = block;
+            this.length = length;
+            this.pendingBlocks = pendingBlocks;
+            this.progress = progress;
+        }
+
+        @Override
+        public NGramChunk call() {
+            try {
+                NGramChunk chunk = new NGramChunk(markovOrder, maxNGramsToKeep, backOffWeight > 0f);
+
+                letterNGramDao.parseBlock(block, length, chunk::add);
+
+                progress.addBytesRead(length);
+
+                return chunk;
+            } finally {
+                block = null;
+                pendingBlocks.release();
+            }
+        }
+    }
+
     @Bean
     public List<PlaintextTransformer> activePlaintextTransformers(List<PlaintextTransformer> plaintextTransformers) {
         if (plaintextTransformers == null || plaintextTransformers.isEmpty()) {
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.configuration;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the loading of the letter Markov model, so that applications can report whether it is ready while it loads.
+ * It is updated by the loading thread and its worker threads, and may be read from any thread.
+ */
+@Component
+public class LanguageModelLoadingProgress {
+    public enum Stage {
+        PENDING,
+        READING_BINARY_MODEL,
+        READING_NGRAMS,
+        COMPACTING,
+        SAVING_BINARY_MODEL,
+        READY,
+        FAILED
+    }
+
+    private volatile Stage stage = Stage.PENDING;
+    private volatile long startMillis;
+    private volatile long endMillis;
+    private volatile long totalBytes;
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    public void start() {
+        startMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * @param totalBytes
+     *            the number of bytes the stage will read, or zero if its progress is not measured
+     */
+    public void enterStage(Stage stage, long totalBytes) {
+        this.bytesRead.set(0L);
+        this.totalBytes = totalBytes;
+        this.stage = stage;
+    }
+
+    public void addBytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    public void finish() {
+        endMillis = System.currentTimeMillis();
+        stage = Stage.READY;
+    }
+
+    public void fail() {
+        endMillis = System.currentTimeMillis();
+        stage = Stage.FAILED;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public boolean isReady() {
+        return stage == Stage.READY;
+    }
+
+    /**
+     * @return the fraction of the current stage which is complete, from 0 to 1, or 0 if its progress is not measured
+     */
+    public double getStageProgress() {
+        if (stage == Stage.READY) {
+            return 1d;
+        }
+
+        long total = totalBytes;
+
+        return total <= 0L ? 0d : Math.min(1d, (double) bytesRead.get() / (double) total);
+    }
+
+    /**
+     * @return the milliseconds since loading started, or that it took if it has finished
+     */
+    public long getElapsedMillis() {
+        if (startMillis == 0L) {
+            return 0L;
+        }
+
+        return (endMillis == 0L ? System.currentTimeMillis() : endMillis) - startMillis;
+    }
+}
@@ -35,7 +35,7 @@ public class Cipher {
     private Map<String, String> knownSolutionKey = new HashMap<>();
 
     @JsonIgnore
-    private Map<String, int[]> cipherSymbolIndicesMap = new HashMap<>();
+    private volatile CipherSymbols symbols;
 
     public Cipher() {
     }
@@ -74,35 +74,24 @@ public class Cipher {
         return name;
     }
 
-    public Map<String, int[]> getCipherSymbolIndicesMap() {
-        if (!cipherSymbolIndicesMap.isEmpty()) {
-            return cipherSymbolIndicesMap;
-        }
-
-        for (Ciphertext ciphertextCharacter : ciphertextCharacters) {
-            if (cipherSymbolIndicesMap.containsKey(ciphertextCharacter.getValue())) {
-                continue;
-            }
-
-            String symbol = ciphertextCharacter.getValue();
-
-            int count = (int) ciphertextCharacters.stream()
-                    .map(Ciphertext::getValue)
-                    .filter(value -> value.equals(symbol))
-                    .count();
-
-            cipherSymbolIndicesMap.put(symbol, new int[count]);
+    /**
+     * @return the distinct symbols of this cipher interned to dense ids, built on first use
+     */
+    public CipherSymbols getSymbols() {
+        CipherSymbols cipherSymbols = symbols;
 
-            int i = 0;
-            for (Ciphertext ciphertextMatch : ciphertextCharacters) {
-                if (ciphertextMatch.getValue().equals(symbol)) {
-                    cipherSymbolIndicesMap.get(symbol)[i] = ciphertextMatch.getCiphertextId();
-                    i++;
-                }
-            }
+        if (cipherSymbols == null) {
+            // Built fully before publishing it, so that concurrent callers never see it partially populated
+            cipherSymbols = new CipherSymbols(ciphertextCharacters);
+            symbols = cipherSymbols;
         }
 
-        return cipherSymbolIndicesMap;
+        return cipherSymbols;
+    }
+
+    @JsonIgnore
+    public Map<String, int[]> getCipherSymbolIndicesMap() {
+        return getSymbols().getPositionsBySymbol();
     }
 
     public void setName(String name) {
@@ -131,12 +120,12 @@ public class Cipher {
 
     public void addCiphertextCharacter(Ciphertext ciphertext) {
         this.ciphertextCharacters.add(ciphertext);
-        this.cipherSymbolIndicesMap.clear();
+        this.symbols = null;
     }
 
     public void removeCiphertextCharacter(Ciphertext ciphertext) {
         this.ciphertextCharacters.remove(ciphertext);
-        this.cipherSymbolIndicesMap.clear();
+        this.symbols = null;
     }
 
     public void replaceCiphertextCharacter(int index, Ciphertext ciphertext) {
@@ -144,7 +133,7 @@ public class Cipher {
 
         toReplace.setCiphertextId(index);
         toReplace.setValue(ciphertext.getValue());
-        this.cipherSymbolIndicesMap.clear();
+        this.symbols = null;
     }
 
     public Map<String, String> getKnownSolutionKey() {
@@ -170,8 +159,6 @@ public class Cipher {
             cloned.putKnownSolutionMapping(entry.getKey(), entry.getValue());
         }
 
-        cloned.cipherSymbolIndicesMap = new HashMap<>();
-
         return cloned;
     }
 
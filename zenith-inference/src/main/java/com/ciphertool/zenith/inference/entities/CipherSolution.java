@@ -19,28 +19,42 @@
 
 package com.ciphertool.zenith.inference.entities;
 
+import com.ciphertool.zenith.model.LanguageConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class CipherSolution {
     private static Logger log = LoggerFactory.getLogger(CipherSolution.class);
 
+    public static final byte UNMAPPED = -1;
+    public static final char UNMAPPED_PLAINTEXT = '?';
+
     private Cipher cipher;
 
+    private CipherSymbols symbols;
+
     private float probability = 0f;
     private float logProbability = 0f;
 
-    private Map<String, Character> mappings;
+    // The plaintext letter of each symbol id as an offset from 'a', and the plaintext it produces, which is kept in
+    // step with the key so that evaluators can read it directly without building a String
+    private byte[] key;
+    private char[] plaintext;
 
     private float[] logProbabilities;
 
     private float indexOfCoincidence = 1f;
 
+    // Occurrences of each letter in the plaintext and the sum of count * (count - 1) over them, kept up to date as
+    // mappings change so that the index of coincidence does not need a full recount
+    private int[] letterCounts;
+    private int indexOfCoincidenceNumerator;
+
     private float score;
 
     public CipherSolution(Cipher cipher, int numCiphertextKeys) {
@@ -49,8 +63,14 @@ public class CipherSolution {
         }
 
         this.cipher = cipher;
+        this.symbols = cipher.getSymbols();
+
+        key = new byte[symbols.size()];
+        Arrays.fill(key, UNMAPPED);
+
+        plaintext = new char[cipher.getCiphertextCharacters().size()];
+        Arrays.fill(plaintext, UNMAPPED_PLAINTEXT);
 
-        mappings = new HashMap<>(numCiphertextKeys);
         logProbabilities = new float[cipher.getCiphertextCharacters().size()];
         Arrays.fill(this.logProbabilities, 0f);
     }
@@ -59,8 +79,39 @@ public class CipherSolution {
         return this.cipher;
     }
 
+    /**
+     * Replaces the cipher, carrying each mapping over to the same symbol of the new cipher and rebuilding the
+     * plaintext, since the new cipher may order its symbols differently.  Any letter counts are discarded.
+     */
     public void setCipher(Cipher cipher) {
+        CipherSymbols newSymbols = cipher.getSymbols();
+        byte[] newKey = new byte[newSymbols.size()];
+        Arrays.fill(newKey, UNMAPPED);
+
+        for (int id = 0; id < key.length; id ++) {
+            int newId = newSymbols.getId(symbols.getSymbol(id));
+
+            if (newId != CipherSymbols.NOT_FOUND) {
+                newKey[newId] = key[id];
+            }
+        }
+
         this.cipher = cipher;
+        this.symbols = newSymbols;
+        this.key = newKey;
+        this.plaintext = new char[cipher.getCiphertextCharacters().size()];
+        this.letterCounts = null;
+
+        for (int i = 0; i < plaintext.length; i ++) {
+            byte letter = key[newSymbols.getIdAt(i)];
+
+            plaintext[i] = (letter == UNMAPPED) ? UNMAPPED_PLAINTEXT : (char) ('a' + letter);
+        }
+
+        if (logProbabilities.length != plaintext.length) {
+            logProbabilities = new float[plaintext.length];
+            logProbability = 0f;
+        }
     }
 
     public float getProbability() {
@@ -89,7 +140,64 @@ public class CipherSolution {
         return logProbability;
     }
 
+    /**
+     * @return the number of distinct cipher symbols, which is the range of the symbol ids
+     */
+    public int getKeySize() {
+        return key.length;
+    }
+
+    /**
+     * @return the plaintext letter mapped to the symbol with the given id, or UNMAPPED_PLAINTEXT if there is none
+     */
+    public char getMapping(int symbolId) {
+        byte letter = key[symbolId];
+
+        return (letter == UNMAPPED) ? UNMAPPED_PLAINTEXT : (char) ('a' + letter);
+    }
+
+    /**
+     * Maps the symbol with the given id to a lowercase letter, updating every position of the plaintext where the
+     * symbol occurs, and the letter counts if they are being tracked.
+     */
+    public void setMapping(int symbolId, char letter) {
+        byte previous = key[symbolId];
+        int[] positions = symbols.getPositions(symbolId);
+
+        key[symbolId] = (byte) (letter - 'a');
+
+        for (int i = 0; i < positions.length; i ++) {
+            plaintext[positions[i]] = letter;
+        }
+
+        if (letterCounts != null) {
+            if (previous == UNMAPPED) {
+                addLetters(letter, positions.length);
+            } else {
+                moveLetters((char) ('a' + previous), letter, positions.length);
+            }
+        }
+    }
+
+    /**
+     * @return the live plaintext, which must not be modified by callers
+     */
+    public char[] getPlaintext() {
+        return plaintext;
+    }
+
+    /**
+     * @return a copy of the mappings keyed by ciphertext symbol, in symbol id order
+     */
     public Map<String, Character> getMappings() {
+        Map<String, Character> mappings = new LinkedHashMap<>(key.length * 2);
+
+        for (int id = 0; id < key.length; id ++) {
+            if (key[id] != UNMAPPED) {
+                mappings.put(symbols.getSymbol(id), (char) ('a' + key[id]));
+            }
+        }
+
         return Collections.unmodifiableMap(mappings);
     }
 
@@ -100,7 +208,16 @@ public class CipherSolution {
             return;
         }
 
-        if (this.mappings.get(key) != null) {
+        int symbolId = symbols.getId(key);
+
+        if (symbolId == CipherSymbols.NOT_FOUND) {
+            log.warn("Attempted to insert a mapping to CipherSolution with key " + key
+                    + ", but the key does not occur in the cipher.  Returning. " + this);
+
+            return;
+        }
+
+        if (this.key[symbolId] != UNMAPPED) {
             log.warn("Attempted to insert a mapping to CipherSolution with key " + key
                     + ", but the key already exists.  If this was intentional, please use replaceMapping() instead.  Returning. "
                     + this);
@@ -108,7 +225,7 @@ public class CipherSolution {
             return;
         }
 
-        this.mappings.put(key, plaintext);
+        setMapping(symbolId, plaintext);
     }
 
     public float[] getLogProbabilities() {
@@ -133,6 +250,85 @@ public class CipherSolution {
         this.logProbability += newLogProbability;
     }
 
+    /**
+     * Starts tracking the letter counts of the plaintext, which every mapping must be made before.  From then on
+     * setMapping() keeps them up to date.
+     */
+    public void initLetterCounts() {
+        letterCounts = new int[LanguageConstants.LOWERCASE_LETTERS_SIZE];
+
+        for (int i = 0; i < plaintext.length; i ++) {
+            letterCounts[plaintext[i] - 'a'] ++;
+        }
+
+        indexOfCoincidenceNumerator = 0;
+
+        for (int i = 0; i < LanguageConstants.LOWERCASE_LETTERS_SIZE; i ++) {
+            indexOfCoincidenceNumerator += letterCounts[i] * (letterCounts[i] - 1);
+        }
+    }
+
+    public boolean hasLetterCounts() {
+        return letterCounts != null;
+    }
+
+    /*
+     * Updates the letter counts for the given number of plaintext letters changing from one letter to another, in
+     * constant time.
+     */
+    private void moveLetters(char from, char to, int count) {
+        if (from == to) {
+            return;
+        }
+
+        int fromCount = letterCounts[from - 'a'];
+        int toCount = letterCounts[to - 'a'];
+
+        indexOfCoincidenceNumerator -= (fromCount * (fromCount - 1)) + (toCount * (toCount - 1));
+
+        fromCount -= count;
+        toCount += count;
+
+        indexOfCoincidenceNumerator += (fromCount * (fromCount - 1)) + (toCount * (toCount - 1));
+
+        letterCounts[from - 'a'] = fromCount;
+        letterCounts[to - 'a'] = toCount;
+    }
+
+    private void addLetters(char letter, int count) {
+        int letterCount = letterCounts[letter - 'a'];
+
+        indexOfCoincidenceNumerator -= letterCount * (letterCount - 1);
+        letterCount += count;
+        indexOfCoincidenceNumerator += letterCount * (letterCount - 1);
+
+        letterCounts[letter - 'a'] = letterCount;
+    }
+
+    public int getIndexOfCoincidenceNumerator() {
+        return indexOfCoincidenceNumerator;
+    }
+
+    /**
+     * @return what the index of coincidence numerator would be if the symbol with the given id were mapped to the given
+     *         letter instead, without changing the solution.  The letter counts must be tracked.
+     */
+    public int getIndexOfCoincidenceNumerator(int symbolId, char letter) {
+        char from = (char) ('a' + key[symbolId]);
+
+        if (from == letter) {
+            return indexOfCoincidenceNumerator;
+        }
+
+        int count = symbols.getPositions(symbolId).length;
+        int fromCount = letterCounts[from - 'a'];
+        int toCount = letterCounts[letter - 'a'];
+
+        return indexOfCoincidenceNumerator
+                - (fromCount * (fromCount - 1)) - (toCount * (toCount - 1))
+                + ((fromCount - count) * (fromCount - count - 1)) + ((toCount + count) * (toCount + count - 1));
+    }
+
     /*
      * This does the same thing as putMapping(), and exists solely for semantic consistency.
      */
@@ -144,22 +340,24 @@ public class CipherSolution {
             return;
         }
 
-        if (null == this.mappings || null == this.mappings.get(key)) {
+        int symbolId = symbols.getId(key);
+
+        if (symbolId == CipherSymbols.NOT_FOUND || this.key[symbolId] == UNMAPPED) {
             log.warn("Attempted to replace a mapping from CipherSolution with key " + key
                     + ", but this key does not exist.  Cannot continue.");
 
             return;
         }
 
-        this.mappings.put(key, newPlaintext);
+        setMapping(symbolId, newPlaintext);
     }
 
     public CipherSolution clone() {
-        CipherSolution copySolution = new CipherSolution(this.cipher, this.mappings.size());
+        CipherSolution copySolution = new CipherSolution(this.cipher, this.key.length);
 
-        for (Map.Entry<String, Character> entry : this.mappings.entrySet()) {
-            copySolution.putMapping(entry.getKey(), entry.getValue());
-        }
+        copySolution.symbols = this.symbols;
+        copySolution.key = this.key.clone();
+        copySolution.plaintext = this.plaintext.clone();
 
         copySolution.logProbability = 0f;
         for (int i = 0; i < this.logProbabilities.length; i ++) {
@@ -168,6 +366,11 @@ public class CipherSolution {
 
         copySolution.setIndexOfCoincidence(this.indexOfCoincidence);
 
+        if (this.letterCounts != null) {
+            copySolution.letterCounts = this.letterCounts.clone();
+            copySolution.indexOfCoincidenceNumerator = this.indexOfCoincidenceNumerator;
+        }
+
         // We need to set these values last to maintain whether evaluation is needed on the clone
         copySolution.setProbability(this.probability);
 
@@ -191,19 +394,29 @@ public class CipherSolution {
 
         float total = 0f;
 
-        if (cipher.getKnownSolutionKey().size() != mappings.size()) {
-            log.error("Current solution size of " + mappings.size()
+        int mappedCount = 0;
+        for (int id = 0; id < key.length; id ++) {
+            if (key[id] != UNMAPPED) {
+                mappedCount ++;
+            }
+        }
+
+        if (cipher.getKnownSolutionKey().size() != mappedCount) {
+            log.error("Current solution size of " + mappedCount
                     + " does not match the known solution size of " + cipher.getKnownSolutionKey().size()
                     + ".  This will cause inaccurate fitness calculations.  Solution: " + this);
         }
 
-        for (String key : cipher.getKnownSolutionKey().keySet()) {
-            if (cipher.getKnownSolutionKey().get(key).equals(String.valueOf(mappings.get(key)))) {
+        for (Map.Entry<String, String> entry : cipher.getKnownSolutionKey().entrySet()) {
+            int symbolId = symbols.getId(entry.getKey());
+
+            if (symbolId != CipherSymbols.NOT_FOUND && key[symbolId] != UNMAPPED
+                    && entry.getValue().length() == 1 && entry.getValue().charAt(0) == 'a' + key[symbolId]) {
                 total++;
             }
         }
 
-        float proximityToKnownSolution = (total / (float) mappings.size());
+        float proximityToKnownSolution = (total / (float) mappedCount);
 
         if (log.isDebugEnabled()) {
             log.debug("Solution has a confidence level of: " + proximityToKnownSolution);
@@ -213,17 +426,11 @@ public class CipherSolution {
     }
 
     public String asSingleLineString() {
-        StringBuilder sb = new StringBuilder();
-
         if (null == this.getCipher()) {
             throw new IllegalStateException(
                     "Called asSingleLineString(), but found a null Cipher.  Cannot create valid solution string unless the Cipher is properly set.");
         }
 
-        for (Ciphertext ciphertext : this.getCipher().getCiphertextCharacters()) {
-            sb.append(this.mappings.get(ciphertext.getValue()));
-        }
-
-        return sb.toString();
+        return new String(plaintext);
     }
 }
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.entities;
+
+import java.util.*;
+
+/**
+ * The distinct symbols of a cipher interned to dense ids from 0 to size() - 1, in order of first occurrence, so that
+ * solutions can be keyed by array index rather than by String.
+ */
+public class CipherSymbols {
+    public static final int NOT_FOUND = -1;
+
+    private final String[] symbols;
+    private final Map<String, Integer> ids;
+    private final int[] symbolIds;
+    private final int[][] positions;
+    private final Map<String, int[]> positionsBySymbol;
+
+    public CipherSymbols(List<Ciphertext> ciphertextCharacters) {
+        Map<String, Integer> symbolToId = new HashMap<>();
+        List<String> symbolList = new ArrayList<>();
+
+        symbolIds = new int[ciphertextCharacters.size()];
+        int[] counts = new int[ciphertextCharacters.size()];
+
+        for (int i = 0; i < ciphertextCharacters.size(); i ++) {
+            String symbol = ciphertextCharacters.get(i).getValue();
+            Integer id = symbolToId.get(symbol);
+
+            if (id == null) {
+                id = symbolList.size();
+                symbolToId.put(symbol, id);
+                symbolList.add(symbol);
+            }
+
+            symbolIds[i] = id;
+            counts[id] ++;
+        }
+
+        symbols = symbolList.toArray(new String[0]);
+        ids = Collections.unmodifiableMap(symbolToId);
+        positions = new int[symbols.length][];
+
+        for (int id = 0; id < symbols.length; id ++) {
+            positions[id] = new int[counts[id]];
+        }
+
+        int[] filled = new int[symbols.length];
+
+        for (int i = 0; i < ciphertextCharacters.size(); i ++) {
+            int id = symbolIds[i];
+
+            positions[id][filled[id]] = ciphertextCharacters.get(i).getCiphertextId();
+            filled[id] ++;
+        }
+
+        Map<String, int[]> bySymbol = new HashMap<>(symbols.length);
+
+        for (int id = 0; id < symbols.length; id ++) {
+            bySymbol.put(symbols[id], positions[id]);
+        }
+
+        positionsBySymbol = Collections.unmodifiableMap(bySymbol);
+    }
+
+    /**
+     * @return the number of distinct symbols
+     */
+    public int size() {
+        return symbols.length;
+    }
+
+    public String getSymbol(int id) {
+        return symbols[id];
+    }
+
+    /**
+     * @return the id of the given symbol, or NOT_FOUND if it does not occur in the cipher
+     */
+    public int getId(String symbol) {
+        Integer id = ids.get(symbol);
+
+        return (id == null) ? NOT_FOUND : id;
+    }
+
+    /**
+     * @return the id of the symbol at the given position of the cipher
+     */
+    public int getIdAt(int position) {
+        return symbolIds[position];
+    }
+
+    /**
+     * @return the positions at which the symbol with the given id occurs, in ascending order
+     */
+    public int[] getPositions(int id) {
+        return positions[id];
+    }
+
+    public Map<String, int[]> getPositionsBySymbol() {
+        return positionsBySymbol;
+    }
+}
@@ -21,6 +21,7 @@ package com.ciphertool.zenith.inference.evaluator;
 
 import com.ciphertool.zenith.inference.entities.Cipher;
 import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.model.LanguageConstants;
 import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +30,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import java.util.Arrays;
 
 @Component
 @ConditionalOnProperty(value = "decipherment.evaluator.plaintext", havingValue = "MarkovModelPlaintextEvaluator")
@@ -41,104 +43,220 @@ public class MarkovModelPlaintextEvaluator implements PlaintextEvaluator {
     private int order;
     private int stepSize;
     private int doubleStepSize;
+    private long[] placeValues;
 
     @PostConstruct
     public void init() {
         order = letterMarkovModel.getOrder();
         stepSize = order / 2;
         doubleStepSize = stepSize * 2;
+
+        // The weight of each letter of an n-gram in its array index, from the first letter to the last
+        placeValues = new long[order];
+        placeValues[order - 1] = 1L;
+
+        for (int i = order - 2; i >= 0; i --) {
+            placeValues[i] = placeValues[i + 1] * LanguageConstants.LOWERCASE_LETTERS_SIZE;
+        }
     }
 
     @Override
     public float[][] evaluate(Cipher cipher, CipherSolution solution, String solutionString, String ciphertextKey) {
+        return evaluate(cipher, solution, solutionString.toCharArray(), ciphertextKey);
+    }
+
+    @Override
+    public float[][] evaluate(Cipher cipher, CipherSolution solution, char[] solutionChars, String ciphertextKey) {
+        RollbackBuffer rollbackBuffer = new RollbackBuffer(solution.getLogProbabilities().length);
+
+        int symbolId = (ciphertextKey == null) ? ALL_SYMBOLS : cipher.getSymbols().getId(ciphertextKey);
+
+        evaluateDelta(cipher, solution, solutionChars, symbolId, rollbackBuffer);
+
+        return rollbackBuffer.toArray();
+    }
+
+    @Override
+    public float evaluateDelta(Cipher cipher, CipherSolution solution, char[] solutionChars, int symbolId, RollbackBuffer rollbackBuffer) {
+        return evaluateDelta(cipher, solution, solutionChars, solutionChars.length, symbolId, rollbackBuffer);
+    }
+
+    @Override
+    public float evaluateDelta(Cipher cipher, CipherSolution solution, char[] solutionChars, int length, int symbolId, RollbackBuffer rollbackBuffer) {
         long startLetter = System.currentTimeMillis();
 
-        float[][] logProbabilitiesUpdated = evaluateLetterNGrams(cipher, solution, solutionString, ciphertextKey);
+        rollbackBuffer.clear();
+
+        float delta = evaluateLetterNGrams(cipher, solution, solutionChars, length, symbolId, rollbackBuffer);
 
         if (log.isDebugEnabled()) {
             log.debug("Letter N-Grams took {}ms.", (System.currentTimeMillis() - startLetter));
         }
 
-        return logProbabilitiesUpdated;
+        return delta;
     }
 
-    protected float[][] evaluateLetterNGrams(Cipher cipher, CipherSolution solution, String solutionString, String ciphertextKey) {
-        int stringLengthMinusOrder = solutionString.length() - order;
+    @Override
+    public float evaluateDelta(Cipher cipher, CipherSolution solution, char[] solutionChars, int length, int[] positions, int positionCount, RollbackBuffer rollbackBuffer) {
+        rollbackBuffer.clear();
 
-        float[][] logProbabilitiesUpdated;
-        float logProbability;
-        int lastIndex = -1;
+        return evaluatePositions(solution, solutionChars, length, positions, positionCount, rollbackBuffer);
+    }
 
-        if (ciphertextKey != null) {
-            int[] cipherSymbolIndices = cipher.getCipherSymbolIndicesMap().get(ciphertextKey);
-            float[][] logProbabilitiesUpdatedOversized = new float[2][cipherSymbolIndices.length * (stepSize + 1)];
+    protected float evaluateLetterNGrams(Cipher cipher, CipherSolution solution, char[] solutionChars, int length, int symbolId, RollbackBuffer rollbackBuffer) {
+        if (symbolId != ALL_SYMBOLS) {
+            int[] cipherSymbolIndices = cipher.getSymbols().getPositions(symbolId);
 
-            int k = 0;
-            for (int i = 0; i < cipherSymbolIndices.length; i ++) {
-                int ciphertextIndex = cipherSymbolIndices[i];
+            return evaluatePositions(solution, solutionChars, length, cipherSymbolIndices, cipherSymbolIndices.length, rollbackBuffer);
+        }
 
-                int wayBack = ciphertextIndex - (ciphertextIndex % stepSize) - doubleStepSize;
-                if (wayBack + order <= ciphertextIndex) {
-                    wayBack += stepSize;
-                }
+        int stringLengthMinusOrder = length - order;
+        float[] logProbabilities = solution.getLogProbabilities();
+        float delta = 0f;
 
-                int start = Math.max(0, wayBack);
-                int end = Math.min(stringLengthMinusOrder, ciphertextIndex + 1);
+        for (int i = 0; i < logProbabilities.length; i ++) {
+            rollbackBuffer.record(i, logProbabilities[i]);
+            delta -= logProbabilities[i];
+        }
 
-                if (lastIndex >= 0 && start < lastIndex) {
-                    continue;
-                }
+        solution.clearLogProbabilities();
 
-                for (int j = start; j < end; j += stepSize) {
-                    logProbability = computeNGramLogProbability(solutionString.substring(j, j + order));
+        long arrayIndex = -1L;
+        int k = 0;
+        for (int i = 0; i < stringLengthMinusOrder; i += stepSize) {
+            arrayIndex = (arrayIndex < 0L) ? letterMarkovModel.computeArrayIndex(solutionChars, i) : rollArrayIndex(arrayIndex, solutionChars, i);
 
-                    int index = j / stepSize;
-                    logProbabilitiesUpdatedOversized[0][k] = index;
-                    logProbabilitiesUpdatedOversized[1][k] = solution.getLogProbabilities()[index];
+            float logProbability = computeNGramLogProbability(arrayIndex);
 
-                    solution.replaceLogProbability(index, logProbability);
-                    k++;
-                }
+            solution.addLogProbability(k, logProbability);
+            delta += logProbability;
+            k ++;
+        }
 
-                lastIndex = end;
+        return delta;
+    }
+
+    /**
+     * Rescores the n-grams covering any of the given positions, each only once.
+     *
+     * @param positions
+     *            in ascending order
+     */
+    private float evaluatePositions(CipherSolution solution, char[] solutionChars, int length, int[] positions, int positionCount, RollbackBuffer rollbackBuffer) {
+        int stringLengthMinusOrder = length - order;
+        float[] logProbabilities = solution.getLogProbabilities();
+        float delta = 0f;
+        int lastIndex = -1;
+
+        for (int i = 0; i < positionCount; i ++) {
+            int ciphertextIndex = positions[i];
+
+            int wayBack = ciphertextIndex - (ciphertextIndex % stepSize) - doubleStepSize;
+            if (wayBack + order <= ciphertextIndex) {
+                wayBack += stepSize;
             }
 
-            logProbabilitiesUpdated = new float[2][k];
-            java.lang.System.arraycopy(logProbabilitiesUpdatedOversized[0], 0, logProbabilitiesUpdated[0], 0, k);
-            java.lang.System.arraycopy(logProbabilitiesUpdatedOversized[1], 0, logProbabilitiesUpdated[1], 0, k);
-        } else {
-            float[] logProbabilities = solution.getLogProbabilities();
+            int start = Math.max(0, wayBack);
+            int end = Math.min(stringLengthMinusOrder, ciphertextIndex + 1);
+
+            // Skip only the n-grams already scored for a previous position, not the whole range
+            if (lastIndex > start) {
+                start = ((lastIndex + stepSize - 1) / stepSize) * stepSize;
+            }
 
-            logProbabilitiesUpdated = new float[2][logProbabilities.length];
+            long arrayIndex = -1L;
+            for (int j = start; j < end; j += stepSize) {
+                arrayIndex = (arrayIndex < 0L) ? letterMarkovModel.computeArrayIndex(solutionChars, j) : rollArrayIndex(arrayIndex, solutionChars, j);
 
-            for (int i = 0; i < logProbabilities.length; i ++) {
-                logProbabilitiesUpdated[0][i] = i;
-                logProbabilitiesUpdated[1][i] = logProbabilities[i];
+                int index = j / stepSize;
+                float oldLogProbability = logProbabilities[index];
+                float logProbability = computeNGramLogProbability(arrayIndex);
+
+                rollbackBuffer.record(index, oldLogProbability);
+                solution.replaceLogProbability(index, logProbability);
+                delta += logProbability - oldLogProbability;
             }
 
-            solution.clearLogProbabilities();
+            lastIndex = Math.max(lastIndex, end);
+        }
+
+        return delta;
+    }
+
+    /**
+     * Visits the same n-grams as evaluateLetterNGrams() does for the symbol, but looks each one up with every letter in
+     * place of the symbol.  Since an n-gram's array index is a base-26 number, the index for each letter is the index
+     * with the symbol's letters taken out plus the letter times the summed place values of the symbol's positions.
+     */
+    @Override
+    public void evaluateCandidates(Cipher cipher, CipherSolution solution, int symbolId, float[] logProbabilityDeltas, RollbackBuffer rollbackBuffer) {
+        char[] solutionChars = solution.getPlaintext();
+        int stringLengthMinusOrder = solutionChars.length - order;
+        float[] logProbabilities = solution.getLogProbabilities();
+        int[] cipherSymbolIndices = cipher.getSymbols().getPositions(symbolId);
+        long mappedOrdinal = solution.getMapping(symbolId) - 'a';
+        int lastIndex = -1;
+        int firstInWindow = 0;
 
-            int k = 0;
-            for (int i = 0; i < solutionString.length() - order; i += stepSize) {
-                logProbability = computeNGramLogProbability(solutionString.substring(i, i + order));
+        Arrays.fill(logProbabilityDeltas, 0f);
 
-                solution.addLogProbability(k, logProbability);
-                k ++;
+        for (int i = 0; i < cipherSymbolIndices.length; i ++) {
+            int ciphertextIndex = cipherSymbolIndices[i];
+
+            int wayBack = ciphertextIndex - (ciphertextIndex % stepSize) - doubleStepSize;
+            if (wayBack + order <= ciphertextIndex) {
+                wayBack += stepSize;
             }
+
+            int start = Math.max(0, wayBack);
+            int end = Math.min(stringLengthMinusOrder, ciphertextIndex + 1);
+
+            if (lastIndex > start) {
+                start = ((lastIndex + stepSize - 1) / stepSize) * stepSize;
+            }
+
+            for (int j = start; j < end; j += stepSize) {
+                // The windows only move forward, and so do the first of the symbol's positions within them
+                while (cipherSymbolIndices[firstInWindow] < j) {
+                    firstInWindow ++;
+                }
+
+                long symbolPlaceValue = 0L;
+                for (int k = firstInWindow; k < cipherSymbolIndices.length && cipherSymbolIndices[k] < j + order; k ++) {
+                    symbolPlaceValue += placeValues[cipherSymbolIndices[k] - j];
+                }
+
+                long baseIndex = letterMarkovModel.computeArrayIndex(solutionChars, j) - (mappedOrdinal * symbolPlaceValue);
+                float oldLogProbability = logProbabilities[j / stepSize];
+
+                for (int letter = 0; letter < logProbabilityDeltas.length; letter ++) {
+                    logProbabilityDeltas[letter] += computeNGramLogProbability(baseIndex + (letter * symbolPlaceValue)) - oldLogProbability;
+                }
+            }
+
+            lastIndex = Math.max(lastIndex, end);
+        }
+    }
+
+    /**
+     * Rolls the array index of the n-gram starting one step before the given offset forward to the n-gram starting at
+     * the offset, by appending only the letters that the step brings into view.
+     */
+    private long rollArrayIndex(long arrayIndex, char[] solutionChars, int offset) {
+        for (int i = offset + order - stepSize; i < offset + order; i ++) {
+            arrayIndex = letterMarkovModel.rollArrayIndex(arrayIndex, solutionChars[i]);
         }
 
-        return logProbabilitiesUpdated;
+        return arrayIndex;
     }
 
-    protected float computeNGramLogProbability(String ngram) {
-        float match = letterMarkovModel.findExact(ngram);
+    protected float computeNGramLogProbability(long arrayIndex) {
+        float match = letterMarkovModel.findExact(arrayIndex);
 
         if (match != -1f) {
-            log.debug("Letter N-Gram Match={}, Probability={}", ngram, match);
             return match;
         }
 
-        log.debug("No Letter N-Gram Match for ngram={}", ngram);
         return letterMarkovModel.getUnknownLetterNGramLogProbability();
     }
-}
\ No newline at end of file
+}
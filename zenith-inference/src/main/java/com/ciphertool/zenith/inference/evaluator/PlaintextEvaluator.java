@@ -22,6 +22,102 @@ package com.ciphertool.zenith.inference.evaluator;
 import com.ciphertool.zenith.inference.entities.Cipher;
 import com.ciphertool.zenith.inference.entities.CipherSolution;
 
+import java.util.Arrays;
+
 public interface PlaintextEvaluator {
+   /**
+    * The symbol id passed to evaluateDelta() to rescore the whole plaintext
+    */
+   int ALL_SYMBOLS = -1;
+
    float[][] evaluate(Cipher cipher, CipherSolution solution, String solutionString, String ciphertextKey);
+
+   /**
+    * Evaluates a plaintext held in a char array, which implementations may override to avoid building a String for
+    * every proposal.  The array must not be modified.
+    */
+   default float[][] evaluate(Cipher cipher, CipherSolution solution, char[] solutionChars, String ciphertextKey) {
+      return evaluate(cipher, solution, new String(solutionChars), ciphertextKey);
+   }
+
+   /**
+    * Rescores a proposal whose plaintext has already been changed, recording the replaced log probabilities in the
+    * caller's buffer.  The caller then either keeps the proposal, or undoes it with RollbackBuffer.rollback().
+    *
+    * @param symbolId
+    *            the id of the changed symbol in the cipher's CipherSymbols, or ALL_SYMBOLS
+    * @param rollbackBuffer
+    *            cleared before use
+    * @return the change in the solution's log probability
+    */
+   default float evaluateDelta(Cipher cipher, CipherSolution solution, char[] solutionChars, int symbolId, RollbackBuffer rollbackBuffer) {
+      rollbackBuffer.clear();
+
+      String ciphertextKey = (symbolId == ALL_SYMBOLS) ? null : cipher.getSymbols().getSymbol(symbolId);
+
+      float[][] logProbabilitiesUpdated = evaluate(cipher, solution, solutionChars, ciphertextKey);
+
+      float[] logProbabilities = solution.getLogProbabilities();
+      float delta = 0f;
+
+      for (int i = 0; i < logProbabilitiesUpdated[0].length; i ++) {
+         int index = (int) logProbabilitiesUpdated[0][i];
+
+         rollbackBuffer.record(index, logProbabilitiesUpdated[1][i]);
+         delta += logProbabilities[index] - logProbabilitiesUpdated[1][i];
+      }
+
+      return delta;
+   }
+
+   /**
+    * Rescores a proposal from the first {@code length} letters of a reusable buffer, such as one that plaintext
+    * transformers were applied to in place.  This default copies the letters when the buffer is longer, which
+    * implementations may override to read them in place.
+    */
+   default float evaluateDelta(Cipher cipher, CipherSolution solution, char[] solutionChars, int length, int symbolId, RollbackBuffer rollbackBuffer) {
+      return evaluateDelta(cipher, solution, (length == solutionChars.length) ? solutionChars : Arrays.copyOf(solutionChars, length), symbolId, rollbackBuffer);
+   }
+
+   /**
+    * Rescores only the n-grams covering the given positions of a plaintext held in a reusable buffer, for proposals
+    * whose changes are known position by position, such as through plaintext transformers which transform blocks of
+    * letters independently.  This default rescores the whole plaintext, which implementations may override to rescore
+    * only the affected n-grams.
+    *
+    * @param positions
+    *            in ascending order, of which only the first {@code positionCount} are used
+    */
+   default float evaluateDelta(Cipher cipher, CipherSolution solution, char[] solutionChars, int length, int[] positions, int positionCount, RollbackBuffer rollbackBuffer) {
+      return evaluateDelta(cipher, solution, solutionChars, length, ALL_SYMBOLS, rollbackBuffer);
+   }
+
+   /**
+    * Scores every letter the given symbol could be mapped to, leaving the solution as it was.  This default proposes
+    * each letter in turn, which implementations may override to score all of them in one pass.  The solution's own
+    * plaintext is scored, so this is only meaningful without plaintext transformers.
+    *
+    * @param logProbabilityDeltas
+    *            filled with the change in the solution's log probability for each letter from 'a' to 'z'
+    * @param rollbackBuffer
+    *            scratch space, cleared before use
+    */
+   default void evaluateCandidates(Cipher cipher, CipherSolution solution, int symbolId, float[] logProbabilityDeltas, RollbackBuffer rollbackBuffer) {
+      char originalMapping = solution.getMapping(symbolId);
+
+      for (int i = 0; i < logProbabilityDeltas.length; i ++) {
+         char letter = (char) ('a' + i);
+
+         if (letter == originalMapping) {
+            logProbabilityDeltas[i] = 0f;
+            continue;
+         }
+
+         solution.setMapping(symbolId, letter);
+         logProbabilityDeltas[i] = evaluateDelta(cipher, solution, solution.getPlaintext(), symbolId, rollbackBuffer);
+         rollbackBuffer.rollback(solution);
+      }
+
+      solution.setMapping(symbolId, originalMapping);
+   }
 }
@@ -0,0 +1,94 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.evaluator;
+
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+
+import java.util.Arrays;
+
+/**
+ * Records the log probabilities which an evaluation replaced, so that a rejected proposal can be undone.  It is owned
+ * and reused by the caller, so that evaluating a proposal does not allocate.
+ */
+public class RollbackBuffer {
+    private int[] indices;
+    private float[] logProbabilities;
+    private int size;
+
+    public RollbackBuffer(int capacity) {
+        indices = new int[capacity];
+        logProbabilities = new float[capacity];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void record(int index, float logProbability) {
+        if (size == indices.length) {
+            int capacity = Math.max(1, indices.length * 2);
+            indices = Arrays.copyOf(indices, capacity);
+            logProbabilities = Arrays.copyOf(logProbabilities, capacity);
+        }
+
+        indices[size] = index;
+        logProbabilities[size] = logProbability;
+        size ++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getIndex(int i) {
+        return indices[i];
+    }
+
+    public float getLogProbability(int i) {
+        return logProbabilities[i];
+    }
+
+    /**
+     * Restores every recorded log probability, in reverse order so that an index recorded more than once ends up with
+     * its earliest value, and then clears the buffer.
+     */
+    public void rollback(CipherSolution solution) {
+        for (int i = size - 1; i >= 0; i --) {
+            solution.replaceLogProbability(indices[i], logProbabilities[i]);
+        }
+
+        size = 0;
+    }
+
+    /**
+     * @return the recorded log probabilities in the format returned by PlaintextEvaluator.evaluate(), i.e. indices in
+     *         the first row and log probabilities in the second
+     */
+    public float[][] toArray() {
+        float[][] logProbabilitiesUpdated = new float[2][size];
+
+        for (int i = 0; i < size; i ++) {
+            logProbabilitiesUpdated[0][i] = indices[i];
+            logProbabilitiesUpdated[1][i] = logProbabilities[i];
+        }
+
+        return logProbabilitiesUpdated;
+    }
+}
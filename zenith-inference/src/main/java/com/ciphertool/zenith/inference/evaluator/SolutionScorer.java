@@ -26,8 +26,15 @@ import org.springframework.stereotype.Component;
 @Component
 public class SolutionScorer {
     public float score(CipherSolution cipherSolution) {
+        return score(cipherSolution.getLogProbability(), cipherSolution.getIndexOfCoincidence());
+    }
+
+    /**
+     * Scores a solution from its parts, so that callers can score proposals without applying them.
+     */
+    public float score(float logProbability, float indexOfCoincidence) {
         // Scaling down the index of coincidence by its fifth root seems to be the right amount to penalize the sum of log probabilities by
         // This has not been determined empirically but has worked well through experimentation
-        return cipherSolution.getLogProbability() * MathUtils.powSixthRoot(cipherSolution.getIndexOfCoincidence());
+        return logProbability * MathUtils.powSixthRoot(indexOfCoincidence);
     }
 }
@@ -49,16 +49,22 @@ public class PlaintextEvaluatorWrappingFitnessEvaluator implements FitnessEvalua
     public Double evaluate(Chromosome chromosome) {
         CipherSolution proposal = ChromosomeToCipherSolutionMapper.map(chromosome);
 
-        String solutionString = proposal.asSingleLineString();
-        if (plaintextTransformers != null) {
+        Cipher cipher = ((CipherKeyChromosome) chromosome).getCipher();
+
+        if (plaintextTransformers == null || plaintextTransformers.isEmpty()) {
+            // Score the solution's own plaintext, so that no String is built for the chromosome
+            plaintextEvaluator.evaluate(cipher, proposal, proposal.getPlaintext(), null);
+            proposal.setIndexOfCoincidence(indexOfCoincidenceEvaluator.evaluate(cipher, proposal.getPlaintext()));
+        } else {
+            String solutionString = proposal.asSingleLineString();
             for (PlaintextTransformer plaintextTransformer : plaintextTransformers) {
                 solutionString = plaintextTransformer.transform(solutionString);
             }
+
+            plaintextEvaluator.evaluate(cipher, proposal, solutionString, null);
+            proposal.setIndexOfCoincidence(indexOfCoincidenceEvaluator.evaluate(cipher, solutionString));
         }
 
-        Cipher cipher = ((CipherKeyChromosome) chromosome).getCipher();
-        plaintextEvaluator.evaluate(cipher, proposal, solutionString, null);
-        proposal.setIndexOfCoincidence(indexOfCoincidenceEvaluator.evaluate(cipher, solutionString));
         proposal.setScore(solutionScorer.score(proposal));
 
         return Double.valueOf(proposal.getScore());
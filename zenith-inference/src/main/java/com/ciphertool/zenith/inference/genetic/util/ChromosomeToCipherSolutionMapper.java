@@ -22,6 +22,7 @@ package com.ciphertool.zenith.inference.genetic.util;
 import com.ciphertool.zenith.genetic.entities.Chromosome;
 import com.ciphertool.zenith.genetic.entities.Gene;
 import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.inference.entities.CipherSymbols;
 import com.ciphertool.zenith.inference.genetic.entities.CipherKeyChromosome;
 import com.ciphertool.zenith.inference.genetic.entities.CipherKeyGene;
 
@@ -32,10 +33,17 @@ public class ChromosomeToCipherSolutionMapper {
         CipherKeyChromosome cipherKeyChromosome = (CipherKeyChromosome) chromosome;
 
         CipherSolution cipherSolution = new CipherSolution(cipherKeyChromosome.getCipher(), chromosome.getGenes().size());
+        CipherSymbols symbols = cipherKeyChromosome.getCipher().getSymbols();
 
         for (Map.Entry<String, Gene> entry : cipherKeyChromosome.getGenes().entrySet()) {
+            int symbolId = symbols.getId(entry.getKey());
+
+            if (symbolId == CipherSymbols.NOT_FOUND) {
+                continue;
+            }
+
             CipherKeyGene cipherKeyGene = (CipherKeyGene) entry.getValue();
-            cipherSolution.putMapping(entry.getKey(), cipherKeyGene.getValue().charAt(0));
+            cipherSolution.setMapping(symbolId, cipherKeyGene.getValue().charAt(0));
         }
 
         return cipherSolution;
@@ -0,0 +1,337 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.optimizer;
+
+import com.ciphertool.zenith.inference.entities.Cipher;
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.inference.evaluator.PlaintextEvaluator;
+import com.ciphertool.zenith.inference.evaluator.RollbackBuffer;
+import com.ciphertool.zenith.inference.evaluator.SolutionScorer;
+import com.ciphertool.zenith.inference.printer.CipherSolutionPrinter;
+import com.ciphertool.zenith.inference.probability.LetterProbability;
+import com.ciphertool.zenith.inference.transformer.plaintext.PlaintextTransformer;
+import com.ciphertool.zenith.inference.transformer.plaintext.TransformedPlaintext;
+import com.ciphertool.zenith.inference.util.IndexOfCoincidenceEvaluator;
+import com.ciphertool.zenith.math.selection.RouletteSampler;
+import com.ciphertool.zenith.model.LanguageConstants;
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The letter sampler shared by the optimizers which explore cipher keys one symbol at a time, accepting or rejecting
+ * each proposed letter by the Metropolis criterion at a given temperature.
+ */
+public abstract class AbstractLetterSamplingSolutionOptimizer implements SolutionOptimizer {
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    // Shared by every optimizer bean, so that the configuration is only warned about once
+    private static final AtomicBoolean HEAT_BATH_IGNORED_WARNED = new AtomicBoolean();
+
+    @Value("${decipherment.epochs:1}")
+    protected int epochs;
+
+    @Value("${decipherment.known-solution.correctness-threshold:0.9}")
+    protected float knownSolutionCorrectnessThreshold;
+
+    @Value("${decipherment.sampler.heat-bath:false}")
+    protected boolean heatBath;
+
+    @Autowired
+    protected SolutionScorer solutionScorer;
+
+    @Autowired
+    protected IndexOfCoincidenceEvaluator indexOfCoincidenceEvaluator;
+
+    @Autowired
+    protected ArrayMarkovModel letterMarkovModel;
+
+    @Autowired(required = false)
+    @Qualifier("activePlaintextTransformers")
+    protected List<PlaintextTransformer> plaintextTransformers;
+
+    @Autowired
+    protected PlaintextEvaluator plaintextEvaluator;
+
+    @Autowired
+    protected CipherSolutionPrinter cipherSolutionPrinter;
+
+    // Holds each thread's transformed proposal, so that the plaintext transformers do not allocate for every proposal
+    private ThreadLocal<TransformedPlaintext> transformedPlaintextHolder = ThreadLocal.withInitial(() -> new TransformedPlaintext(plaintextTransformers));
+
+    // Hold each thread's candidate letter scores, so that the heat-bath sampler does not allocate for every sweep
+    private ThreadLocal<float[]> logProbabilityDeltasHolder = ThreadLocal.withInitial(() -> new float[LanguageConstants.LOWERCASE_LETTERS_SIZE]);
+    private ThreadLocal<float[]> scoresHolder = ThreadLocal.withInitial(() -> new float[LanguageConstants.LOWERCASE_LETTERS_SIZE]);
+
+    @PostConstruct
+    public void warnIfHeatBathIgnored() {
+        if (heatBath && hasPlaintextTransformers() && HEAT_BATH_IGNORED_WARNED.compareAndSet(false, true)) {
+            log.warn("Heat-bath sampling is not supported with plaintext transformers, so the letter sampler will propose one letter at a time instead.  Either remove the plaintext transformers or set decipherment.sampler.heat-bath=false.");
+        }
+    }
+
+    /**
+     * @return whether the cipher has a known solution which the given solution matches at least as closely as the
+     *         configured correctness threshold
+     */
+    public boolean isCorrect(Cipher cipher, CipherSolution solution) {
+        return cipher.hasKnownSolution() && knownSolutionCorrectnessThreshold <= solution.evaluateKnownSolution();
+    }
+
+    /**
+     * @return the probability of each letter according to the language model, sorted for a RouletteSampler
+     */
+    protected List<LetterProbability> letterUnigramProbabilities() {
+        List<LetterProbability> letterUnigramProbabilities = new ArrayList<>(LanguageConstants.LOWERCASE_LETTERS_SIZE);
+
+        double probability;
+        for (TreeNGram node : letterMarkovModel.getFirstOrderNodes()) {
+            probability = (double) node.getCount() / (double) letterMarkovModel.getTotalNGramCount();
+
+            letterUnigramProbabilities.add(new LetterProbability(node.getCumulativeString().charAt(0), probability));
+
+            log.debug("{}: {}", node.getCumulativeString().charAt(0), probability);
+        }
+
+        log.debug("unknownLetterNGramProbability: {}", letterMarkovModel.getUnknownLetterNGramProbability());
+
+        Collections.sort(letterUnigramProbabilities);
+
+        return letterUnigramProbabilities;
+    }
+
+    protected CipherSolution generateInitialSolutionProposal(Cipher cipher, int cipherKeySize, RouletteSampler<LetterProbability> unigramRouletteSampler, List<LetterProbability> letterUnigramProbabilities) {
+        CipherSolution solutionProposal = new CipherSolution(cipher, cipherKeySize);
+
+        for (int symbolId = 0; symbolId < solutionProposal.getKeySize(); symbolId ++) {
+            // Pick a plaintext at random according to the language model
+            char nextPlaintext = letterUnigramProbabilities.get(unigramRouletteSampler.getNextIndex()).getValue();
+
+            solutionProposal.setMapping(symbolId, nextPlaintext);
+        }
+
+        return solutionProposal;
+    }
+
+    /**
+     * Scores a solution from scratch, which the letter sampler then keeps up to date incrementally.
+     */
+    protected void evaluateInitialSolution(Cipher cipher, CipherSolution initialSolution) {
+        String solutionString = initialSolution.asSingleLineString();
+        if (hasPlaintextTransformers()) {
+            for (PlaintextTransformer plaintextTransformer : plaintextTransformers) {
+                solutionString = plaintextTransformer.transform(solutionString);
+            }
+        }
+
+        plaintextEvaluator.evaluate(cipher, initialSolution, solutionString, null);
+        initialSolution.setIndexOfCoincidence(indexOfCoincidenceEvaluator.evaluate(cipher, solutionString));
+        initialSolution.setScore(solutionScorer.score(initialSolution));
+
+        if (!hasPlaintextTransformers()) {
+            // Without transformers the plaintext letters are exactly the mapped letters, so their counts can be tracked
+            initialSolution.initLetterCounts();
+        }
+
+        if (log.isDebugEnabled()) {
+            cipherSolutionPrinter.print(initialSolution);
+        }
+    }
+
+    /**
+     * @return whether any plaintext transformers are active.  The configuration supplies an empty list rather than null
+     *         when there are none, so both have to be checked before taking the paths which score the solution's own
+     *         plaintext in place.
+     */
+    protected boolean hasPlaintextTransformers() {
+        return plaintextTransformers != null && !plaintextTransformers.isEmpty();
+    }
+
+    protected CipherSolution runLetterSampler(Cipher cipher, float temperature, CipherSolution solution, RollbackBuffer rollbackBuffer, SplittableRandom random) {
+        if (heatBath && !hasPlaintextTransformers()) {
+            return runHeatBathSampler(cipher, temperature, solution, rollbackBuffer, random);
+        }
+
+        boolean transforming = hasPlaintextTransformers();
+        TransformedPlaintext transformedPlaintext = null;
+
+        if (transforming) {
+            transformedPlaintext = transformedPlaintextHolder.get();
+            transformedPlaintext.reset(solution.getPlaintext());
+        }
+
+        // For each cipher symbol type, run the letter sampling
+        for (int symbolId = 0; symbolId < solution.getKeySize(); symbolId++) {
+            char letter = LanguageConstants.LOWERCASE_LETTERS[random.nextInt(LanguageConstants.LOWERCASE_LETTERS_SIZE)];
+
+            char originalMapping = solution.getMapping(symbolId);
+
+            if (letter == originalMapping) {
+                continue;
+            }
+
+            float originalScore = solution.getScore();
+            float originalIndexOfCoincidence = solution.getIndexOfCoincidence();
+            solution.setMapping(symbolId, letter);
+
+            if (!transforming) {
+                // Score the solution's own plaintext in place so that no String is built for the proposal
+                plaintextEvaluator.evaluateDelta(cipher, solution, solution.getPlaintext(), symbolId, rollbackBuffer);
+                solution.setIndexOfCoincidence(indexOfCoincidenceEvaluator.evaluate(cipher, solution));
+            } else {
+                int[] positions = cipher.getSymbols().getPositions(symbolId);
+                transformedPlaintext.update(solution.getPlaintext(), positions);
+
+                if (transformedPlaintext.isIncremental()) {
+                    // Only the blocks of the transformed plaintext around the symbol changed
+                    plaintextEvaluator.evaluateDelta(cipher, solution, transformedPlaintext.getLetters(), transformedPlaintext.length(), transformedPlaintext.getChangedPositions(), transformedPlaintext.getChangedPositionCount(), rollbackBuffer);
+                } else {
+                    plaintextEvaluator.evaluateDelta(cipher, solution, transformedPlaintext.getLetters(), transformedPlaintext.length(), symbolId, rollbackBuffer);
+                }
+
+                solution.setIndexOfCoincidence(indexOfCoincidenceEvaluator.evaluate(cipher, transformedPlaintext.getIndexOfCoincidenceNumerator()));
+            }
+
+            solution.setScore(solutionScorer.score(solution));
+
+            if (!selectNext(temperature, originalScore, solution.getScore(), random)) {
+                solution.setScore(originalScore);
+                solution.setIndexOfCoincidence(originalIndexOfCoincidence);
+                solution.setMapping(symbolId, originalMapping);
+
+                rollbackBuffer.rollback(solution);
+
+                if (transforming && transformedPlaintext.isIncremental()) {
+                    // Otherwise the next proposal transforms the whole plaintext again anyway
+                    transformedPlaintext.update(solution.getPlaintext(), cipher.getSymbols().getPositions(symbolId));
+                }
+            }
+        }
+
+        return solution;
+    }
+
+    /**
+     * Scores every letter for each cipher symbol in turn and draws the symbol's letter from the Boltzmann distribution
+     * over their scores at the given temperature, rather than proposing a single random letter and accepting or
+     * rejecting it.  This relies on the solution's plaintext and letter counts, so it requires that there are no
+     * plaintext transformers.
+     */
+    protected CipherSolution runHeatBathSampler(Cipher cipher, float temperature, CipherSolution solution, RollbackBuffer rollbackBuffer, SplittableRandom random) {
+        float[] logProbabilityDeltas = logProbabilityDeltasHolder.get();
+        float[] scores = scoresHolder.get();
+
+        for (int symbolId = 0; symbolId < solution.getKeySize(); symbolId++) {
+            plaintextEvaluator.evaluateCandidates(cipher, solution, symbolId, logProbabilityDeltas, rollbackBuffer);
+
+            float logProbability = solution.getLogProbability();
+            float maxScore = Float.NEGATIVE_INFINITY;
+
+            for (int i = 0; i < scores.length; i ++) {
+                char letter = LanguageConstants.LOWERCASE_LETTERS[i];
+                float indexOfCoincidence = indexOfCoincidenceEvaluator.evaluate(cipher, solution, symbolId, letter);
+
+                scores[i] = solutionScorer.score(logProbability + logProbabilityDeltas[i], indexOfCoincidence);
+                maxScore = Math.max(maxScore, scores[i]);
+            }
+
+            char letter = LanguageConstants.LOWERCASE_LETTERS[selectBoltzmann(temperature, scores, maxScore, random)];
+
+            if (letter == solution.getMapping(symbolId)) {
+                continue;
+            }
+
+            solution.setMapping(symbolId, letter);
+            plaintextEvaluator.evaluateDelta(cipher, solution, solution.getPlaintext(), symbolId, rollbackBuffer);
+            solution.setIndexOfCoincidence(indexOfCoincidenceEvaluator.evaluate(cipher, solution));
+            solution.setScore(solutionScorer.score(solution));
+        }
+
+        return solution;
+    }
+
+    /**
+     * @param scores
+     *            overwritten with the unnormalized weight of each score
+     * @return the index of a score drawn with probability proportional to exp(score / temperature)
+     */
+    protected static int selectBoltzmann(float temperature, float[] scores, float maxScore, SplittableRandom random) {
+        double total = 0d;
+
+        for (int i = 0; i < scores.length; i ++) {
+            // Relative to the best score so that the weights cannot overflow
+            scores[i] = (float) Math.exp((scores[i] - maxScore) / temperature);
+            total += scores[i];
+        }
+
+        double threshold = random.nextDouble() * total;
+
+        for (int i = 0; i < scores.length; i ++) {
+            threshold -= scores[i];
+
+            if (threshold < 0d) {
+                return i;
+            }
+        }
+
+        // Only reachable through rounding, in which case the last letter with any weight is as good as any
+        for (int i = scores.length - 1; i > 0; i --) {
+            if (scores[i] > 0f) {
+                return i;
+            }
+        }
+
+        return 0;
+    }
+
+    protected boolean selectNext(float temperature, float solutionScore, float proposalScore, SplittableRandom random) {
+        if (proposalScore >= solutionScore) {
+            return true;
+        }
+
+        // Need to convert to log probabilities in order for the acceptance probability calculation to be useful
+        float acceptanceProbability = (float) Math.exp(((solutionScore - proposalScore) / temperature) * -1f);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Acceptance probability: {}", acceptanceProbability);
+        }
+
+        if (acceptanceProbability < 0f) {
+            throw new IllegalStateException("Acceptance probability was calculated to be less than zero.  Please review the math as this should not happen.");
+        }
+
+        if (acceptanceProbability > 1f || (float) random.nextDouble() < acceptanceProbability) {
+            return true;
+        }
+
+        return false;
+    }
+}
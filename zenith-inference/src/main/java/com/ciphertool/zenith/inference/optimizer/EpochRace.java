@@ -0,0 +1,80 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.optimizer;
+
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+
+import java.util.Arrays;
+
+/**
+ * The progress shared by the concurrent epochs of one run, so that each epoch can tell whether its chain is worth
+ * continuing.  It keeps the best score reached by any chain at each checkpoint of its life, and the best solution found
+ * by any epoch.
+ */
+public class EpochRace {
+    private final float[] leaderScores;
+    private CipherSolution elite;
+
+    /**
+     * @param checkpoints the largest number of checkpoints a chain can reach
+     */
+    public EpochRace(int checkpoints) {
+        leaderScores = new float[checkpoints];
+        Arrays.fill(leaderScores, Float.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Records the score of a chain at the given checkpoint.
+     *
+     * @param margin how far behind the leader at the checkpoint, as a fraction of the leader's score, a chain can be
+     *               before it is considered hopeless
+     * @return whether the chain is further behind the best chain at the same checkpoint than the margin allows
+     */
+    public synchronized boolean isBehind(int checkpoint, float score, float margin) {
+        if (checkpoint >= leaderScores.length) {
+            return false;
+        }
+
+        float leaderScore = leaderScores[checkpoint];
+
+        if (score >= leaderScore) {
+            leaderScores[checkpoint] = score;
+            return false;
+        }
+
+        return score < leaderScore - (Math.abs(leaderScore) * margin);
+    }
+
+    /**
+     * Keeps a copy of the given solution if it is the best offered so far.
+     */
+    public synchronized void offerElite(CipherSolution solution) {
+        if (elite == null || solution.getScore() > elite.getScore()) {
+            elite = solution.clone();
+        }
+    }
+
+    /**
+     * @return a copy of the best solution offered so far, or null if none has been
+     */
+    public synchronized CipherSolution getElite() {
+        return elite == null ? null : elite.clone();
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.optimizer;
+
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+
+/**
+ * The best solution of one annealing epoch along with how long the epoch took, both in wall-clock and CPU time.
+ */
+public class EpochResult {
+    private final CipherSolution solution;
+    private final long elapsedMillis;
+    private final long cpuNanos;
+    private final long finishedAtNanos;
+
+    public EpochResult(CipherSolution solution, long elapsedMillis, long cpuNanos, long finishedAtNanos) {
+        this.solution = solution;
+        this.elapsedMillis = elapsedMillis;
+        this.cpuNanos = cpuNanos;
+        this.finishedAtNanos = finishedAtNanos;
+    }
+
+    public CipherSolution getSolution() {
+        return solution;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return the CPU time of the thread which ran the epoch, or its wall-clock time if the JVM does not measure
+     *         thread CPU time
+     */
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    /**
+     * @return the value of System.nanoTime() when the epoch finished, for comparing against other epochs of the same run
+     */
+    public long getFinishedAtNanos() {
+        return finishedAtNanos;
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.optimizer;
+
+import com.ciphertool.zenith.inference.entities.Cipher;
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.inference.evaluator.RollbackBuffer;
+import com.ciphertool.zenith.inference.probability.LetterProbability;
+import com.ciphertool.zenith.math.selection.RouletteSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs several replicas of the letter sampler at once, each at a fixed temperature on a geometric ladder between the
+ * minimum and maximum, and periodically offers to swap the solutions of replicas at neighbouring temperatures.  A
+ * solution stuck in a local optimum at a cold temperature can then escape by being swapped up the ladder, while good
+ * solutions found at hot temperatures are refined further down it, so fewer epochs are wasted than with independent
+ * annealing runs.  The replicas of an epoch run in parallel, and the epochs run one after another.
+ */
+@Component
+public class ParallelTemperingSolutionOptimizer extends AbstractLetterSamplingSolutionOptimizer {
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    @Value("${parallel-tempering.replicas:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int replicas;
+
+    @Value("${parallel-tempering.sampler.iterations:5000}")
+    private int samplerIterations;
+
+    @Value("${parallel-tempering.temperature.max:5}")
+    private float temperatureMax;
+
+    @Value("${parallel-tempering.temperature.min:2.75}")
+    private float temperatureMin;
+
+    @Value("${parallel-tempering.swap-interval:10}")
+    private int swapInterval;
+
+    @Autowired
+    private TaskExecutor taskExecutor;
+
+    @Override
+    public CipherSolution optimize(Cipher cipher) {
+        long start = System.currentTimeMillis();
+
+        SplittableRandom random = new SplittableRandom();
+        long totalElapsed = 0L;
+        int correctSolutions = 0;
+        CipherSolution overallBest = null;
+
+        for (int epoch = 0; epoch < epochs; epoch ++) {
+            log.info("Epoch {} of {}.  Running {} replicas for {} iterations.", (epoch + 1), epochs, replicas, samplerIterations);
+
+            EpochResult epochResult = runEpoch(cipher, replicas, samplerIterations, temperatureMax, temperatureMin, swapInterval, taskExecutor, random.split());
+            CipherSolution best = epochResult.getSolution();
+            totalElapsed += epochResult.getElapsedMillis();
+
+            log.info("Epoch {} completed in {}ms.", (epoch + 1), epochResult.getElapsedMillis());
+
+            if (log.isInfoEnabled()) {
+                cipherSolutionPrinter.print(best);
+            }
+
+            if (isCorrect(cipher, best)) {
+                correctSolutions ++;
+            }
+
+            overallBest = (overallBest == null) ? best : (best.getScore() > overallBest.getScore() ? best : overallBest);
+        }
+
+        if (cipher.hasKnownSolution()) {
+            log.info("{} out of {} epochs ({}%) produced the correct solution.", correctSolutions, epochs, String.format("%1$,.2f", (correctSolutions / (double) epochs) * 100.0));
+        }
+
+        log.info("Average epoch time={}ms", ((float) totalElapsed / (float) epochs));
+        log.info("All epochs completed in {}ms.", (System.currentTimeMillis() - start));
+
+        return overallBest;
+    }
+
+    /**
+     * Runs one epoch on the given executor with the given hyperparameters rather than the configured ones, so that
+     * callers can sweep them.
+     *
+     * @return the best solution found by any replica, along with the time taken by the epoch and the CPU time of all
+     *         of its replicas
+     */
+    public EpochResult runEpoch(Cipher cipher, int replicaCount, int samplerIterations, float temperatureMax, float temperatureMin, int swapInterval, TaskExecutor taskExecutor, SplittableRandom random) {
+        validate(replicaCount, temperatureMax, temperatureMin, swapInterval);
+
+        long start = System.currentTimeMillis();
+
+        int cipherKeySize = cipher.getSymbols().size();
+        List<LetterProbability> letterUnigramProbabilities = letterUnigramProbabilities();
+        RouletteSampler<LetterProbability> unigramRouletteSampler = new RouletteSampler<>();
+        unigramRouletteSampler.reIndex(letterUnigramProbabilities);
+
+        // Build the lazily-computed state shared by all replicas up front, since the replicas only read it concurrently
+        indexOfCoincidenceEvaluator.init(cipher);
+
+        float[] temperatures = temperatureLadder(replicaCount, temperatureMax, temperatureMin);
+        Replica[] replicas = new Replica[replicaCount];
+        CipherSolution best = null;
+
+        for (int i = 0; i < replicaCount; i ++) {
+            CipherSolution initialSolution = generateInitialSolutionProposal(cipher, cipherKeySize, unigramRouletteSampler, letterUnigramProbabilities);
+            evaluateInitialSolution(cipher, initialSolution);
+
+            replicas[i] = new Replica(cipher, temperatures[i], initialSolution, random.split());
+
+            if (best == null || initialSolution.getScore() > best.getScore()) {
+                best = initialSolution.clone();
+            }
+        }
+
+        long cpuNanos = 0L;
+        int swapsProposed = 0;
+        int swapsAccepted = 0;
+        List<FutureTask<Long>> futures = new ArrayList<>(replicaCount);
+
+        for (int iteration = 0, round = 0; iteration < samplerIterations; iteration += swapInterval, round ++) {
+            int iterations = Math.min(swapInterval, samplerIterations - iteration);
+
+            futures.clear();
+
+            for (Replica replica : replicas) {
+                replica.iterations = iterations;
+
+                FutureTask<Long> task = new FutureTask<>(replica);
+                futures.add(task);
+                taskExecutor.execute(task);
+            }
+
+            for (FutureTask<Long> future : futures) {
+                try {
+                    cpuNanos += future.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    log.error("Unable to run a parallel tempering replica.", e);
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            for (Replica replica : replicas) {
+                if (replica.solution.getScore() > best.getScore()) {
+                    best = replica.solution.clone();
+                }
+            }
+
+            // Alternate between the even and the odd pairs of neighbouring temperatures, so every pair gets its turn
+            for (int i = round % 2; i + 1 < replicaCount; i += 2) {
+                swapsProposed ++;
+
+                if (selectSwap(replicas[i].temperature, replicas[i].solution.getScore(), replicas[i + 1].temperature, replicas[i + 1].solution.getScore(), random)) {
+                    CipherSolution colder = replicas[i].solution;
+                    replicas[i].solution = replicas[i + 1].solution;
+                    replicas[i + 1].solution = colder;
+
+                    swapsAccepted ++;
+                }
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Accepted {} of {} swaps between replicas.", swapsAccepted, swapsProposed);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+
+        return new EpochResult(best, elapsed, cpuNanos, System.nanoTime());
+    }
+
+    private void validate(int replicaCount, float temperatureMax, float temperatureMin, int swapInterval) {
+        if (replicaCount < 1 || swapInterval < 1) {
+            log.error("Parallel tempering requires at least one replica and a swap interval of at least one, but replicas={} and swapInterval={}.", replicaCount, swapInterval);
+            throw new IllegalArgumentException("Parallel tempering requires at least one replica and a swap interval of at least one.");
+        }
+
+        if (temperatureMin <= 0f || temperatureMin > temperatureMax) {
+            log.error("Parallel tempering requires 0 < temperatureMin <= temperatureMax, but temperatureMin={} and temperatureMax={}.", temperatureMin, temperatureMax);
+            throw new IllegalArgumentException("Parallel tempering requires 0 < temperatureMin <= temperatureMax.");
+        }
+    }
+
+    /**
+     * @return the temperature of each replica from coldest to hottest, spaced geometrically so that neighbouring
+     *         replicas swap at roughly the same rate all the way up the ladder
+     */
+    protected static float[] temperatureLadder(int replicaCount, float temperatureMax, float temperatureMin) {
+        float[] temperatures = new float[replicaCount];
+
+        if (replicaCount == 1) {
+            temperatures[0] = temperatureMin;
+            return temperatures;
+        }
+
+        double ratio = Math.pow(temperatureMax / temperatureMin, 1d / (replicaCount - 1));
+
+        for (int i = 0; i < replicaCount; i ++) {
+            temperatures[i] = (float) (temperatureMin * Math.pow(ratio, i));
+        }
+
+        temperatures[replicaCount - 1] = temperatureMax;
+
+        return temperatures;
+    }
+
+    /**
+     * Whether to swap the solutions of a colder and a hotter replica, by the Metropolis criterion for the pair, which
+     * always accepts moving the better solution to the colder temperature.
+     */
+    protected static boolean selectSwap(float colderTemperature, float colderScore, float hotterTemperature, float hotterScore, SplittableRandom random) {
+        float exponent = ((1f / colderTemperature) - (1f / hotterTemperature)) * (hotterScore - colderScore);
+
+        return exponent >= 0f || random.nextDouble() < Math.exp(exponent);
+    }
+
+    /**
+     * A concurrent task for running the letter sampler on one replica for a number of iterations at its temperature.
+     * Each replica owns its random number stream and scratch buffer, and the solution it holds between swaps.
+     */
+    protected class Replica implements Callable<Long> {
+        private Cipher cipher;
+        private float temperature;
+        private CipherSolution solution;
+        private RollbackBuffer rollbackBuffer;
+        private SplittableRandom random;
+        private int iterations;
+
+        public Replica(Cipher cipher, float temperature, CipherSolution solution, SplittableRandom random) {
+            this.cipher = cipher;
+            this.temperature = temperature;
+            this.solution = solution;
+            this.rollbackBuffer = new RollbackBuffer(cipher.length());
+            this.random = random;
+        }
+
+        /**
+         * @return the CPU time taken, or the wall-clock time if the JVM does not measure thread CPU time
+         */
+        @Override
+        public Long call() {
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            boolean measureCpu = threadMXBean.isCurrentThreadCpuTimeSupported();
+            long start = measureCpu ? threadMXBean.getCurrentThreadCpuTime() : System.nanoTime();
+
+            for (int i = 0; i < iterations; i ++) {
+                solution = runLetterSampler(cipher, temperature, solution, rollbackBuffer, random);
+            }
+
+            return (measureCpu ? threadMXBean.getCurrentThreadCpuTime() : System.nanoTime()) - start;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.optimizer;
+
+/**
+ * What an annealing epoch does with the rest of its iterations once its chain has converged or fallen too far behind
+ * the other epochs.
+ */
+public enum RestartPolicy {
+    /**
+     * Stop the epoch early and return the best solution it has found.
+     */
+    NONE,
+
+    /**
+     * Start a new chain from a random solution, annealing it over the remaining iterations.
+     */
+    FRESH,
+
+    /**
+     * Continue from the best solution found so far by any epoch, at the current temperature, or start a fresh chain if
+     * this epoch found that solution itself.
+     */
+    ELITE
+}
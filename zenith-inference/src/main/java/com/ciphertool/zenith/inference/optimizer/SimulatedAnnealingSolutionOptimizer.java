@@ -21,34 +21,29 @@ package com.ciphertool.zenith.inference.optimizer;
 
 import com.ciphertool.zenith.inference.entities.Cipher;
 import com.ciphertool.zenith.inference.entities.CipherSolution;
-import com.ciphertool.zenith.inference.evaluator.PlaintextEvaluator;
-import com.ciphertool.zenith.inference.evaluator.SolutionScorer;
-import com.ciphertool.zenith.inference.printer.CipherSolutionPrinter;
+import com.ciphertool.zenith.inference.evaluator.RollbackBuffer;
 import com.ciphertool.zenith.inference.probability.LetterProbability;
-import com.ciphertool.zenith.inference.transformer.plaintext.PlaintextTransformer;
-import com.ciphertool.zenith.inference.util.IndexOfCoincidenceEvaluator;
 import com.ciphertool.zenith.math.selection.RouletteSampler;
-import com.ciphertool.zenith.model.LanguageConstants;
-import com.ciphertool.zenith.model.entities.TreeNGram;
-import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 @Component
-public class SimulatedAnnealingSolutionOptimizer implements SolutionOptimizer {
+public class SimulatedAnnealingSolutionOptimizer extends AbstractLetterSamplingSolutionOptimizer {
     private Logger log = LoggerFactory.getLogger(getClass());
 
-    private static SplittableRandom RANDOM = new SplittableRandom();
-
     @Value("${simulated-annealing.sampler.iterations}")
     private int samplerIterations;
 
@@ -61,137 +56,205 @@ public class SimulatedAnnealingSolutionOptimizer implements SolutionOptimizer {
     @Value("${markov.letter.order}")
     private int markovOrder;
 
-    @Value("${decipherment.epochs:1}")
-    private int epochs;
+    @Value("${simulated-annealing.convergence.patience:0}")
+    private int convergencePatience;
 
-    @Value("${decipherment.known-solution.correctness-threshold:0.9}")
-    private float knownSolutionCorrectnessThreshold;
+    @Value("${simulated-annealing.racing.interval:0}")
+    private int racingInterval;
 
-    @Autowired
-    private SolutionScorer solutionScorer;
+    @Value("${simulated-annealing.racing.margin:0.05}")
+    private float racingMargin;
 
-    @Autowired
-    private IndexOfCoincidenceEvaluator indexOfCoincidenceEvaluator;
+    @Value("${simulated-annealing.restart:NONE}")
+    private RestartPolicy restartPolicy;
 
     @Autowired
-    private ArrayMarkovModel letterMarkovModel;
+    private TaskExecutor taskExecutor;
 
-    @Autowired(required = false)
-    @Qualifier("activePlaintextTransformers")
-    private List<PlaintextTransformer> plaintextTransformers;
+    @Override
+    public CipherSolution optimize(Cipher cipher) {
+        long start = System.currentTimeMillis();
 
-    @Autowired
-    private PlaintextEvaluator plaintextEvaluator;
+        List<EpochResult> epochResults = runEpochs(cipher, epochs, samplerIterations, annealingTemperatureMax, annealingTemperatureMin, taskExecutor);
 
-    @Autowired
-    private CipherSolutionPrinter cipherSolutionPrinter;
+        long totalElapsed = 0L;
+        int correctSolutions = 0;
+        CipherSolution overallBest = null;
 
-    @Override
-    public CipherSolution optimize(Cipher cipher) {
-        int cipherKeySize = (int) cipher.getCiphertextCharacters().stream()
-                .map(c -> c.getValue())
-                .distinct()
-                .count();
+        for (EpochResult epochResult : epochResults) {
+            CipherSolution best = epochResult.getSolution();
+            totalElapsed += epochResult.getElapsedMillis();
 
-        List<LetterProbability> letterUnigramProbabilities = new ArrayList<>(LanguageConstants.LOWERCASE_LETTERS_SIZE);
+            if (log.isInfoEnabled()) {
+                cipherSolutionPrinter.print(best);
+            }
 
-        double probability;
-        for (TreeNGram node : letterMarkovModel.getFirstOrderNodes()) {
-            probability = (double) node.getCount() / (double) letterMarkovModel.getTotalNGramCount();
+            if (isCorrect(cipher, best)) {
+                correctSolutions ++;
+            }
 
-            letterUnigramProbabilities.add(new LetterProbability(node.getCumulativeString().charAt(0), probability));
+            overallBest = (overallBest == null) ? best : (best.getScore() > overallBest.getScore() ? best : overallBest);
+        }
 
-            log.debug("{}: {}", node.getCumulativeString().charAt(0), probability);
+        if (cipher.hasKnownSolution()) {
+            log.info("{} out of {} epochs ({}%) produced the correct solution.", correctSolutions, epochResults.size(), String.format("%1$,.2f", (correctSolutions / (double) epochResults.size()) * 100.0));
         }
 
-        log.debug("unknownLetterNGramProbability: {}", letterMarkovModel.getUnknownLetterNGramProbability());
+        log.info("Average epoch time={}ms", ((float) totalElapsed / (float) epochResults.size()));
+        log.info("All epochs completed in {}ms.", (System.currentTimeMillis() - start));
 
-        Collections.sort(letterUnigramProbabilities);
+        return overallBest;
+    }
+
+    /**
+     * Runs the given number of epochs on the given executor with the given hyperparameters rather than the configured
+     * ones, so that callers such as the solve rate benchmark can sweep them.
+     *
+     * @return the result of every epoch, in the order the epochs were started
+     * @throws IllegalStateException
+     *             if an epoch fails or the wait for the epochs is interrupted, in which case the remaining epochs are
+     *             cancelled
+     */
+    public List<EpochResult> runEpochs(Cipher cipher, int epochs, int samplerIterations, float annealingTemperatureMax, float annealingTemperatureMin, TaskExecutor taskExecutor) {
+        if (epochs < 1) {
+            log.error("At least one epoch is required, but epochs={}.", epochs);
+            throw new IllegalArgumentException("At least one epoch is required.");
+        }
+
+        if (convergencePatience < 0 || racingInterval < 0 || racingMargin < 0f) {
+            log.error("The convergence patience, racing interval and racing margin must not be negative, but convergencePatience={}, racingInterval={} and racingMargin={}.", convergencePatience, racingInterval, racingMargin);
+            throw new IllegalArgumentException("The convergence patience, racing interval and racing margin must not be negative.");
+        }
+
+        int cipherKeySize = cipher.getSymbols().size();
+
+        List<LetterProbability> letterUnigramProbabilities = letterUnigramProbabilities();
         RouletteSampler<LetterProbability> unigramRouletteSampler = new RouletteSampler<>();
         unigramRouletteSampler.reIndex(letterUnigramProbabilities);
 
-        long totalElapsed = 0;
-        int correctSolutions = 0;
-        CipherSolution overallBest = null;
+        // Build the lazily-computed state shared by all epochs up front, since the epochs only read it concurrently.  The
+        // cipher's symbols were already built when counting them above
+        indexOfCoincidenceEvaluator.init(cipher);
 
-        int epoch = 0;
-        for (; epoch < epochs; epoch++) {
-            CipherSolution initialSolution = generateInitialSolutionProposal(cipher, cipherKeySize, unigramRouletteSampler, letterUnigramProbabilities);
+        SplittableRandom random = new SplittableRandom();
+        EpochRace race = isStoppingEarly() ? new EpochRace(racingInterval > 0 ? samplerIterations / racingInterval : 0) : null;
 
-            log.info("Epoch {} of {}.  Running sampler for {} iterations.", (epoch + 1), epochs, samplerIterations);
+        List<FutureTask<EpochResult>> futureTasks = new ArrayList<>(epochs);
+        FutureTask<EpochResult> futureTask;
 
-            String[] mappingKeys = new String[initialSolution.getMappings().size()];
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            futureTask = new FutureTask<>(new EpochTask(cipher, cipherKeySize, unigramRouletteSampler, letterUnigramProbabilities, epoch, epochs, samplerIterations, annealingTemperatureMax, annealingTemperatureMin, race, random.split()));
+            futureTasks.add(futureTask);
 
-            int mappingListIndex = 0;
-            for (String key : initialSolution.getMappings().keySet()) {
-                mappingKeys[mappingListIndex] = key;
-                mappingListIndex ++;
-            }
+            taskExecutor.execute(futureTask);
+        }
 
-            long start = System.currentTimeMillis();
+        List<EpochResult> epochResults = new ArrayList<>(epochs);
 
-            CipherSolution best = performEpoch(cipher, initialSolution, mappingKeys);
+        for (FutureTask<EpochResult> future : futureTasks) {
+            try {
+                epochResults.add(future.get());
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                cancel(futureTasks);
 
-            long elapsed = System.currentTimeMillis() - start;
-            totalElapsed += elapsed;
-            log.info("Epoch completed in {}ms.", elapsed);
+                log.error("Caught InterruptedException while waiting for EpochTask ", ie);
+                throw new IllegalStateException(ie);
+            } catch (ExecutionException ee) {
+                cancel(futureTasks);
 
-            if (log.isInfoEnabled()) {
-                cipherSolutionPrinter.print(best);
+                log.error("Caught ExecutionException while waiting for EpochTask ", ee);
+                throw new IllegalStateException(ee.getCause());
             }
+        }
 
-            if (cipher.hasKnownSolution() && knownSolutionCorrectnessThreshold <= best.evaluateKnownSolution()) {
-                correctSolutions ++;
-            }
+        return epochResults;
+    }
 
-            overallBest = (overallBest == null) ? best : (best.getScore() > overallBest.getScore() ? best : overallBest);
+    private static void cancel(List<FutureTask<EpochResult>> futureTasks) {
+        for (FutureTask<EpochResult> futureTask : futureTasks) {
+            futureTask.cancel(true);
         }
+    }
 
-        if (cipher.hasKnownSolution()) {
-            log.info("{} out of {} epochs ({}%) produced the correct solution.", correctSolutions, epochs, String.format("%1$,.2f", (correctSolutions / (double) epochs) * 100.0));
+    /**
+     * A concurrent task for running one epoch from a fresh random solution.  Each epoch owns its solution, random
+     * number stream and scratch buffers, so epochs can run in parallel.
+     */
+    private class EpochTask implements Callable<EpochResult> {
+        private Cipher cipher;
+        private int cipherKeySize;
+        private RouletteSampler<LetterProbability> unigramRouletteSampler;
+        private List<LetterProbability> letterUnigramProbabilities;
+        private int epoch;
+        private int epochs;
+        private int samplerIterations;
+        private float annealingTemperatureMax;
+        private float annealingTemperatureMin;
+        private EpochRace race;
+        private SplittableRandom random;
+
+        public EpochTask(Cipher cipher, int cipherKeySize, RouletteSampler<LetterProbability> unigramRouletteSampler, List<LetterProbability> letterUnigramProbabilities, int epoch, int epochs, int samplerIterations, float annealingTemperatureMax, float annealingTemperatureMin, EpochRace race, SplittableRandom random) {
+            this.cipher = cipher;
+            this.cipherKeySize = cipherKeySize;
+            this.unigramRouletteSampler = unigramRouletteSampler;
+            this.letterUnigramProbabilities = letterUnigramProbabilities;
+            this.epoch = epoch;
+            this.epochs = epochs;
+            this.samplerIterations = samplerIterations;
+            this.annealingTemperatureMax = annealingTemperatureMax;
+            this.annealingTemperatureMin = annealingTemperatureMin;
+            this.race = race;
+            this.random = random;
         }
 
-        log.info("Average epoch time={}ms", ((float) totalElapsed / (float) epoch));
+        @Override
+        public EpochResult call() {
+            CipherSolution initialSolution = generateInitialSolutionProposal(cipher, cipherKeySize, unigramRouletteSampler, letterUnigramProbabilities);
 
-        return overallBest;
-    }
+            log.info("Epoch {} of {}.  Running sampler for {} iterations.", (epoch + 1), epochs, samplerIterations);
 
-    private CipherSolution generateInitialSolutionProposal(Cipher cipher, int cipherKeySize, RouletteSampler<LetterProbability> unigramRouletteSampler, List<LetterProbability> letterUnigramProbabilities) {
-        CipherSolution solutionProposal = new CipherSolution(cipher, cipherKeySize);
+            ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+            boolean measureCpu = threadMXBean.isCurrentThreadCpuTimeSupported();
+            long start = System.currentTimeMillis();
+            long startCpu = measureCpu ? threadMXBean.getCurrentThreadCpuTime() : 0L;
 
-        cipher.getCiphertextCharacters().stream()
-                .map(ciphertext -> ciphertext.getValue())
-                .distinct()
-                .forEach(ciphertext -> {
-                    // Pick a plaintext at random according to the language model
-                    char nextPlaintext = letterUnigramProbabilities.get(unigramRouletteSampler.getNextIndex()).getValue();
+            CipherSolution best = performEpoch(cipher, initialSolution, samplerIterations, annealingTemperatureMax, annealingTemperatureMin, race, unigramRouletteSampler, letterUnigramProbabilities, random);
 
-                    solutionProposal.putMapping(ciphertext, nextPlaintext);
-                });
+            if (race != null) {
+                race.offerElite(best);
+            }
 
-        return solutionProposal;
-    }
+            long elapsed = System.currentTimeMillis() - start;
+            long cpu = measureCpu ? (threadMXBean.getCurrentThreadCpuTime() - startCpu) : (elapsed * 1000000L);
+            log.info("Epoch {} completed in {}ms.", (epoch + 1), elapsed);
 
-    private CipherSolution performEpoch(Cipher cipher, CipherSolution initialSolution, String[] mappingKeys) {
-        String solutionString = initialSolution.asSingleLineString();
-        if (plaintextTransformers != null) {
-            for (PlaintextTransformer plaintextTransformer : plaintextTransformers) {
-                solutionString = plaintextTransformer.transform(solutionString);
-            }
+            return new EpochResult(best, elapsed, cpu, System.nanoTime());
         }
+    }
 
-        plaintextEvaluator.evaluate(cipher, initialSolution, solutionString, null);
-        initialSolution.setIndexOfCoincidence(indexOfCoincidenceEvaluator.evaluate(cipher, solutionString));
-        initialSolution.setScore(solutionScorer.score(initialSolution));
+    /**
+     * @return whether epochs may end their chains before running all of their iterations
+     */
+    private boolean isStoppingEarly() {
+        return convergencePatience > 0 || racingInterval > 0;
+    }
 
-        if (log.isDebugEnabled()) {
-            cipherSolutionPrinter.print(initialSolution);
-        }
+    private CipherSolution performEpoch(Cipher cipher, CipherSolution initialSolution, int samplerIterations, float annealingTemperatureMax, float annealingTemperatureMin, EpochRace race, RouletteSampler<LetterProbability> unigramRouletteSampler, List<LetterProbability> letterUnigramProbabilities, SplittableRandom random) {
+        evaluateInitialSolution(cipher, initialSolution);
 
         float temperature;
         CipherSolution next = initialSolution;
         long startLetterSampling;
-        char[] solutionCharArray = next.asSingleLineString().toCharArray();
+        RollbackBuffer rollbackBuffer = new RollbackBuffer(cipher.length());
+
+        // Only the chain's last state is returned unless it can be restarted, so the best state is otherwise not kept
+        boolean stoppingEarly = race != null;
+        CipherSolution best = stoppingEarly ? next.clone() : null;
+        float chainBestScore = next.getScore();
+        int chainStart = 0;
+        int lastImprovement = 0;
+        int scheduleStart = 0;
 
         int i;
         for (i = 0; i < samplerIterations; i++) {
@@ -201,93 +264,65 @@ public class SimulatedAnnealingSolutionOptimizer implements SolutionOptimizer {
              * Set temperature as a ratio of the max temperature to the number of iterations left, offset by the min
              * temperature so as not to go below it
              */
-            temperature = ((annealingTemperatureMax - annealingTemperatureMin) * ((samplerIterations - (float) i) / samplerIterations)) + annealingTemperatureMin;
+            temperature = ((annealingTemperatureMax - annealingTemperatureMin) * ((samplerIterations - (float) i) / (samplerIterations - scheduleStart))) + annealingTemperatureMin;
 
             startLetterSampling = System.currentTimeMillis();
-            next = runLetterSampler(cipher, temperature, next, solutionCharArray, mappingKeys);
+            next = runLetterSampler(cipher, temperature, next, rollbackBuffer, random);
 
             if (log.isDebugEnabled()) {
                 long now = System.currentTimeMillis();
                 log.debug("Iteration {} complete.  [elapsed={}ms, letterSampling={}ms, temp={}]", (i + 1), (now - iterationStart), (now - startLetterSampling), String.format("%1$,.4f", temperature));
                 cipherSolutionPrinter.print(next);
             }
-        }
 
-        return next;
-    }
-
-    private CipherSolution runLetterSampler(Cipher cipher, float temperature, CipherSolution solution, char[] solutionCharArray, String[] mappingKeys) {
-        String nextKey;
-
-        // For each cipher symbol type, run the letter sampling
-        for (int i = 0; i < mappingKeys.length; i++) {
-            nextKey = mappingKeys[i];
-
-            char letter = LanguageConstants.LOWERCASE_LETTERS[RANDOM.nextInt(LanguageConstants.LOWERCASE_LETTERS_SIZE)];
-
-            char originalMapping = solution.getMappings().get(nextKey);
-
-            if (letter == originalMapping) {
+            if (!stoppingEarly) {
                 continue;
             }
 
-            float originalScore = solution.getScore();
-            float originalIndexOfCoincidence = solution.getIndexOfCoincidence();
-            solution.replaceMapping(nextKey, letter);
-
-            int[] cipherSymbolIndices = cipher.getCipherSymbolIndicesMap().get(nextKey);
-            for (int j = 0; j < cipherSymbolIndices.length; j ++) {
-                solutionCharArray[cipherSymbolIndices[j]] = letter;
-            }
+            if (next.getScore() > chainBestScore) {
+                chainBestScore = next.getScore();
+                lastImprovement = i;
 
-            String proposalString = new String(solutionCharArray);
-
-            if (plaintextTransformers != null) {
-                for (PlaintextTransformer plaintextTransformer : plaintextTransformers) {
-                    proposalString = plaintextTransformer.transform(proposalString);
+                if (chainBestScore > best.getScore()) {
+                    best = next.clone();
                 }
             }
 
-            float[][] logProbabilitiesUpdated = plaintextEvaluator.evaluate(cipher, solution, proposalString, nextKey);
-            solution.setIndexOfCoincidence(indexOfCoincidenceEvaluator.evaluate(cipher, proposalString));
-            solution.setScore(solutionScorer.score(solution));
+            int chainAge = i + 1 - chainStart;
+            boolean converged = convergencePatience > 0 && i - lastImprovement >= convergencePatience;
+            boolean behind = racingInterval > 0 && chainAge % racingInterval == 0 && race.isBehind((chainAge / racingInterval) - 1, chainBestScore, racingMargin);
 
-            if (!selectNext(temperature, originalScore, solution.getScore())) {
-                solution.setScore(originalScore);
-                solution.setIndexOfCoincidence(originalIndexOfCoincidence);
-                solution.replaceMapping(nextKey, originalMapping);
+            if (!converged && !behind) {
+                continue;
+            }
 
-                for (int j = 0; j < logProbabilitiesUpdated[0].length; j ++) {
-                    solution.replaceLogProbability((int) logProbabilitiesUpdated[0][j], logProbabilitiesUpdated[1][j]);
-                }
+            race.offerElite(best);
 
-                for (int j = 0; j < cipherSymbolIndices.length; j ++) {
-                    solutionCharArray[cipherSymbolIndices[j]] = originalMapping;
-                }
+            if (restartPolicy == RestartPolicy.NONE || i + 1 >= samplerIterations) {
+                log.debug("Stopping the epoch after {} of {} iterations as its chain {}.", (i + 1), samplerIterations, converged ? "converged" : "fell behind");
+                break;
             }
-        }
 
-        return solution;
-    }
+            CipherSolution elite = restartPolicy == RestartPolicy.ELITE ? race.getElite() : null;
 
-    private boolean selectNext(float temperature, float solutionScore, float proposalScore) {
-        if (proposalScore >= solutionScore) {
-            return true;
-        }
-
-        // Need to convert to log probabilities in order for the acceptance probability calculation to be useful
-        float acceptanceProbability = (float) Math.exp(((solutionScore - proposalScore) / temperature) * -1f);
+            if (elite != null && elite.getScore() > best.getScore()) {
+                // Carry on annealing the elite solution where this chain left off in the schedule
+                next = elite;
+            } else {
+                next = generateInitialSolutionProposal(cipher, cipher.getSymbols().size(), unigramRouletteSampler, letterUnigramProbabilities);
+                evaluateInitialSolution(cipher, next);
 
-        log.debug("Acceptance probability: {}", acceptanceProbability);
+                // Anneal the fresh solution over the remaining iterations
+                scheduleStart = i + 1;
+            }
 
-        if (acceptanceProbability < 0f) {
-            throw new IllegalStateException("Acceptance probability was calculated to be less than zero.  Please review the math as this should not happen.");
-        }
+            log.debug("Restarting the chain after {} of {} iterations as it {}.", (i + 1), samplerIterations, converged ? "converged" : "fell behind");
 
-        if (acceptanceProbability > 1f || (float) RANDOM.nextDouble() < acceptanceProbability) {
-            return true;
+            chainBestScore = next.getScore();
+            chainStart = i + 1;
+            lastImprovement = i;
         }
 
-        return false;
+        return stoppingEarly ? best : next;
     }
 }
@@ -2,6 +2,7 @@ package com.ciphertool.zenith.inference.printer;
 
 import com.ciphertool.zenith.inference.entities.Cipher;
 import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.inference.entities.CipherSymbols;
 import com.ciphertool.zenith.inference.transformer.plaintext.PlaintextTransformer;
 import com.ciphertool.zenith.inference.util.ChiSquaredEvaluator;
 import org.slf4j.Logger;
@@ -11,7 +12,6 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
-import java.util.Map;
 
 @Component
 public class CipherSolutionPrinter {
@@ -58,8 +58,9 @@ public class CipherSolutionPrinter {
         sb.append("------------------------------\n");
         sb.append("|  ciphertext  |  plaintext  |\n");
         sb.append("|--------------+-------------|\n");
-        for (Map.Entry<String, Character> entry : solution.getMappings().entrySet()) {
-            sb.append("|  " + String.format("%-10s", entry.getKey()) + "  |  " + entry.getValue() + "          |\n");
+        CipherSymbols symbols = cipher.getSymbols();
+        for (int symbolId = 0; symbolId < solution.getKeySize(); symbolId++) {
+            sb.append("|  " + String.format("%-10s", symbols.getSymbol(symbolId)) + "  |  " + solution.getMapping(symbolId) + "          |\n");
         }
 
         log.info(sb.toString());
@@ -32,19 +32,21 @@ import java.util.stream.Collectors;
 public class CiphertextCycleCountEvaluator {
     private Logger log = LoggerFactory.getLogger(getClass());
 
-    private List<String> uniqueCiphertextCharacters;
-
-    private List<CyclePair> uniqueCyclePairs;
-
-    private Cipher initialized = null;
+    // The significant cycle pairs of the cipher last evaluated, which are expensive to find, so they are kept until a
+    // different cipher is evaluated and never changed after being published
+    private volatile Context context;
 
     public void init(Cipher cipher) {
-        uniqueCiphertextCharacters = cipher.getCiphertextCharacters().stream()
+        context = buildContext(cipher);
+    }
+
+    private Context buildContext(Cipher cipher) {
+        List<String> uniqueCiphertextCharacters = cipher.getCiphertextCharacters().stream()
                 .map(ciphertext -> ciphertext.getValue())
                 .distinct()
                 .collect(Collectors.toList());
 
-        uniqueCyclePairs = new ArrayList<>((uniqueCiphertextCharacters.size() * (uniqueCiphertextCharacters.size() - 1)) / 2);
+        List<CyclePair> uniqueCyclePairs = new ArrayList<>((uniqueCiphertextCharacters.size() * (uniqueCiphertextCharacters.size() - 1)) / 2);
         for (String first : uniqueCiphertextCharacters) {
             for (String second : uniqueCiphertextCharacters) {
                 if (first == second) {
@@ -93,12 +95,15 @@ public class CiphertextCycleCountEvaluator {
             uniqueCyclePairs.remove(insignificantCyclePair);
         }
 
-        initialized = cipher;
+        return new Context(cipher, Collections.unmodifiableList(uniqueCyclePairs));
     }
 
     public int evaluate(Cipher cipher) {
-        if (initialized == null || initialized != cipher) {
-            init(cipher);
+        Context current = context;
+
+        if (current == null || current.cipher != cipher) {
+            current = buildContext(cipher);
+            context = current;
         }
 
         long startEvaluation = System.currentTimeMillis();
@@ -116,8 +121,8 @@ public class CiphertextCycleCountEvaluator {
             ciphertextIndices.get(ciphertext).add(i);
         }
 
-        List<CyclePair> cyclePairs = new ArrayList<>((uniqueCiphertextCharacters.size() * (uniqueCiphertextCharacters.size() - 1)) / 2);
-        for (CyclePair cyclePair : uniqueCyclePairs) {
+        List<CyclePair> cyclePairs = new ArrayList<>(current.uniqueCyclePairs.size());
+        for (CyclePair cyclePair : current.uniqueCyclePairs) {
             cyclePairs.add((CyclePair) cyclePair.clone());
         }
 
@@ -159,6 +164,16 @@ public class CiphertextCycleCountEvaluator {
         return score;
     }
 
+    private static class Context {
+        private final Cipher cipher;
+        private final List<CyclePair> uniqueCyclePairs;
+
+        private Context(Cipher cipher, List<CyclePair> uniqueCyclePairs) {
+            this.cipher = cipher;
+            this.uniqueCyclePairs = uniqueCyclePairs;
+        }
+    }
+
     @Getter
     public class CyclePair implements Cloneable {
         private String first;
@@ -21,4 +21,39 @@ package com.ciphertool.zenith.inference.transformer.plaintext;
 
 public interface PlaintextTransformer {
     String transform(String plaintext);
+
+    /**
+     * Transforms the first {@code length} letters of the source into the target, which may be the same array, so that
+     * transformers can be chained over one buffer without allocating.  This default goes through transform(String),
+     * which implementations may override to work in place.
+     *
+     * @param target
+     *            at least {@code length} long
+     * @return the length of the transformed plaintext, which is at most {@code length}
+     */
+    default int transform(char[] source, int length, char[] target) {
+        String transformed = transform(new String(source, 0, length));
+
+        transformed.getChars(0, transformed.length(), target, 0);
+
+        return transformed.length();
+    }
+
+    /**
+     * @return the size of the blocks, counted from the start of the plaintext, which this transformer maps
+     *         independently of each other, so that changing a letter changes only its own block of the output, or 0 if
+     *         a change can affect any part of the output
+     */
+    default int getBlockSize() {
+        return 0;
+    }
+
+    /**
+     * Transforms only the letters from {@code from} up to {@code to}, leaving the rest of the target as it is, so that
+     * a change to a few letters need not transform the whole plaintext again.  The range must start at a multiple of
+     * the block size, and is only supported when getBlockSize() is positive.
+     */
+    default void transformRange(char[] source, int from, int to, char[] target) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not transform ranges of the plaintext.");
+    }
 }
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.transformer.plaintext;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The plaintext of a solution with the plaintext transformers applied, kept up to date as the solution's mappings
+ * change, along with the letter counts of the transformed plaintext.  When every transformer declares a block size,
+ * only the blocks containing the changed letters are transformed again, and the positions they cover are collected so
+ * that only the n-grams covering them need to be rescored.  Otherwise the whole plaintext is transformed again.  It is
+ * owned and reused by one thread at a time.
+ */
+public class TransformedPlaintext {
+    private final List<PlaintextTransformer> plaintextTransformers;
+    private final int blockSize;
+    private char[] letters = new char[0];
+    private int length;
+
+    // Indexed by the letter itself, as in IndexOfCoincidenceEvaluator
+    private final int[] letterCounts = new int[256];
+    private int indexOfCoincidenceNumerator;
+
+    private int[] changedPositions = new int[0];
+    private int changedPositionCount;
+
+    public TransformedPlaintext(List<PlaintextTransformer> plaintextTransformers) {
+        this.plaintextTransformers = plaintextTransformers;
+        this.blockSize = blockSize(plaintextTransformers);
+    }
+
+    /**
+     * @return the least common multiple of the transformers' block sizes, within which all of them map letters
+     *         independently of the rest of the plaintext, or 0 if any of them does not declare a block size
+     */
+    public static int blockSize(List<PlaintextTransformer> plaintextTransformers) {
+        int blockSize = 1;
+
+        for (PlaintextTransformer plaintextTransformer : plaintextTransformers) {
+            int transformerBlockSize = plaintextTransformer.getBlockSize();
+
+            if (transformerBlockSize <= 0) {
+                return 0;
+            }
+
+            blockSize = (blockSize / greatestCommonDivisor(blockSize, transformerBlockSize)) * transformerBlockSize;
+        }
+
+        return blockSize;
+    }
+
+    private static int greatestCommonDivisor(int a, int b) {
+        return (b == 0) ? a : greatestCommonDivisor(b, a % b);
+    }
+
+    /**
+     * @return whether a change to a few letters transforms only the blocks containing them
+     */
+    public boolean isIncremental() {
+        return blockSize > 0;
+    }
+
+    /**
+     * Transforms the whole plaintext.
+     */
+    public void reset(char[] plaintext) {
+        if (letters.length < plaintext.length) {
+            letters = new char[plaintext.length];
+        }
+
+        System.arraycopy(plaintext, 0, letters, 0, plaintext.length);
+        length = plaintext.length;
+
+        for (PlaintextTransformer plaintextTransformer : plaintextTransformers) {
+            length = plaintextTransformer.transform(letters, length, letters);
+        }
+
+        Arrays.fill(letterCounts, 0);
+        indexOfCoincidenceNumerator = 0;
+
+        for (int i = 0; i < length; i ++) {
+            addLetter(letters[i]);
+        }
+
+        changedPositionCount = 0;
+    }
+
+    /**
+     * Brings the transformed plaintext up to date after the letters at the given positions of the plaintext changed.
+     *
+     * @param positions
+     *            in ascending order, such as the positions of one cipher symbol
+     */
+    public void update(char[] plaintext, int[] positions) {
+        if (!isIncremental()) {
+            reset(plaintext);
+            return;
+        }
+
+        if (changedPositions.length < positions.length * blockSize) {
+            changedPositions = new int[positions.length * blockSize];
+        }
+
+        changedPositionCount = 0;
+        int lastFrom = -1;
+
+        for (int position : positions) {
+            int from = position - (position % blockSize);
+
+            // The positions are ascending, so a block containing more than one of them is only visited once in a row
+            if (from == lastFrom || from >= length) {
+                continue;
+            }
+
+            lastFrom = from;
+            int to = Math.min(from + blockSize, length);
+
+            for (int i = from; i < to; i ++) {
+                removeLetter(letters[i]);
+            }
+
+            // The first transformer reads the plaintext, and the rest transform its output in place
+            char[] source = plaintext;
+            for (PlaintextTransformer plaintextTransformer : plaintextTransformers) {
+                plaintextTransformer.transformRange(source, from, to, letters);
+                source = letters;
+            }
+
+            for (int i = from; i < to; i ++) {
+                addLetter(letters[i]);
+                changedPositions[changedPositionCount ++] = i;
+            }
+        }
+    }
+
+    private void addLetter(char letter) {
+        // Going from n to n + 1 occurrences adds 2n to the sum of n(n - 1)
+        indexOfCoincidenceNumerator += 2 * letterCounts[letter];
+        letterCounts[letter] ++;
+    }
+
+    private void removeLetter(char letter) {
+        letterCounts[letter] --;
+        indexOfCoincidenceNumerator -= 2 * letterCounts[letter];
+    }
+
+    /**
+     * @return the live transformed plaintext, of which only the first length() letters are meaningful
+     */
+    public char[] getLetters() {
+        return letters;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the positions of the transformed plaintext changed by the last update, in ascending order, of which only
+     *         the first getChangedPositionCount() are meaningful
+     */
+    public int[] getChangedPositions() {
+        return changedPositions;
+    }
+
+    public int getChangedPositionCount() {
+        return changedPositionCount;
+    }
+
+    public int getIndexOfCoincidenceNumerator() {
+        return indexOfCoincidenceNumerator;
+    }
+}
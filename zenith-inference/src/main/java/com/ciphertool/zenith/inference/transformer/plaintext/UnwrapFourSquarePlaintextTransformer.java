@@ -25,22 +25,45 @@ import org.springframework.stereotype.Component;
 public class UnwrapFourSquarePlaintextTransformer extends AbstractFourSquarePlaintextTransformer {
     @Override
     public String transform(String plaintext) {
-        if (plaintext.length() % 2 != 0) {
+        char[] chars = plaintext.toCharArray();
+
+        int length = transform(chars, chars.length, chars);
+
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * Each pair of letters is read before it is written, so the source and target may be the same array.
+     */
+    @Override
+    public int transform(char[] source, int length, char[] target) {
+        if (length % 2 != 0) {
             log.debug("Plaintext length of {} is not divisible by 2.  The last character '{}' will not be transformed.",
-                    plaintext.length(), plaintext.charAt(plaintext.length() - 1));
+                    length, source[length - 1]);
         }
 
-        StringBuilder sb = new StringBuilder();
+        transformRange(source, 0, length, target);
+
+        return length - (length % 2);
+    }
+
+    /**
+     * Letters are transformed in pairs.
+     */
+    @Override
+    public int getBlockSize() {
+        return 2;
+    }
 
+    @Override
+    public void transformRange(char[] source, int from, int to, char[] target) {
         // Subtracting by one takes care of both even and odd length plaintexts
-        for (int i = 0; i < plaintext.length() - 1; i += 2) {
-            Coordinates topRightCoordinates = keyTopRightMap.get(ifJThenI(plaintext.charAt(i)));
-            Coordinates bottomLeftCoordinates = keyBottomLeftMap.get(ifJThenI(plaintext.charAt(i + 1)));
+        for (int i = from; i < to - 1; i += 2) {
+            Coordinates topRightCoordinates = keyTopRightMap.get(ifJThenI(source[i]));
+            Coordinates bottomLeftCoordinates = keyBottomLeftMap.get(ifJThenI(source[i + 1]));
 
-            sb.append(getCharacterAtCoordinates(keyTopLeft, topRightCoordinates.row, bottomLeftCoordinates.column));
-            sb.append(getCharacterAtCoordinates(keyBottomRight,  bottomLeftCoordinates.row, topRightCoordinates.column));
+            target[i] = getCharacterAtCoordinates(keyTopLeft, topRightCoordinates.row, bottomLeftCoordinates.column);
+            target[i + 1] = getCharacterAtCoordinates(keyBottomRight,  bottomLeftCoordinates.row, topRightCoordinates.column);
         }
-
-        return sb.toString();
     }
 }
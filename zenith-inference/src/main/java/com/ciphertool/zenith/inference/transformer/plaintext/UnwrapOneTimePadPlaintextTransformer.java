@@ -30,17 +30,42 @@ public class UnwrapOneTimePadPlaintextTransformer implements PlaintextTransforme
 
     @Override
     public String transform(String plaintext) {
-        StringBuilder sb = new StringBuilder();
+        char[] chars = plaintext.toCharArray();
 
-        int keyIndex = 0;
-        for (int i = 0; i < plaintext.length(); i ++) {
-            int difference = LetterUtils.charToOrdinal(plaintext.charAt(i)) - LetterUtils.charToOrdinal(key.charAt(keyIndex));
+        transform(chars, chars.length, chars);
+
+        return new String(chars);
+    }
+
+    /**
+     * Each letter is read before it is written, so the source and target may be the same array.
+     */
+    @Override
+    public int transform(char[] source, int length, char[] target) {
+        transformRange(source, 0, length, target);
+
+        return length;
+    }
+
+    /**
+     * Each letter is combined only with the letter of the key at its own position.
+     */
+    @Override
+    public int getBlockSize() {
+        return 1;
+    }
+
+    @Override
+    public void transformRange(char[] source, int from, int to, char[] target) {
+        int keyIndex = from % key.length();
+        for (int i = from; i < to; i ++) {
+            int difference = LetterUtils.charToOrdinal(source[i]) - LetterUtils.charToOrdinal(key.charAt(keyIndex));
 
             if (difference < 0) {
                 difference = difference + LetterUtils.NUMBER_OF_LETTERS;
             }
 
-            sb.append(LetterUtils.ordinalToChar(difference));
+            target[i] = LetterUtils.ordinalToChar(difference);
 
             if (keyIndex == key.length() - 1) {
                 keyIndex = 0;
@@ -49,7 +74,5 @@ public class UnwrapOneTimePadPlaintextTransformer implements PlaintextTransforme
                 keyIndex++;
             }
         }
-
-        return sb.toString();
     }
 }
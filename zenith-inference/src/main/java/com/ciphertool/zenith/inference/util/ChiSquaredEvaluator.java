@@ -7,58 +7,76 @@ import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 @Component
 public class ChiSquaredEvaluator {
-    private Map<String, Long> englishLetterCounts = new HashMap<>(LetterUtils.NUMBER_OF_LETTERS);
+    private static final long NOT_IN_MODEL = -1L;
 
     @Autowired
     private ArrayMarkovModel letterMarkovModel;
 
-    private Cipher initialized = null;
+    // The expected English letter counts, which scale with the length of the cipher last evaluated, so they are
+    // rebuilt into a new Context when a different cipher comes along
+    private volatile Context context;
+
+    private ThreadLocal<long[]> solutionLetterCountsHolder = ThreadLocal.withInitial(() -> new long[LetterUtils.NUMBER_OF_LETTERS]);
 
     public void init(Cipher cipher) {
+        context = buildContext(cipher);
+    }
+
+    private Context buildContext(Cipher cipher) {
+        long[] englishLetterCounts = new long[LetterUtils.NUMBER_OF_LETTERS];
+        Arrays.fill(englishLetterCounts, NOT_IN_MODEL);
+
         for (TreeNGram node : letterMarkovModel.getFirstOrderNodes()) {
             double letterProbability = (double) node.getCount() / (double) letterMarkovModel.getTotalNGramCount();
-            englishLetterCounts.put(node.getCumulativeString(), Math.round(letterProbability * cipher.length()));
+            englishLetterCounts[node.getCumulativeString().charAt(0) - 'a'] = Math.round(letterProbability * cipher.length());
         }
 
-        initialized = cipher;
+        return new Context(cipher, englishLetterCounts);
     }
 
     public double evaluate(Cipher cipher, String solutionString) {
-        if (initialized == null || initialized != cipher) {
-            init(cipher);
+        Context current = context;
+
+        if (current == null || current.cipher != cipher) {
+            current = buildContext(cipher);
+            context = current;
         }
 
-        Map<String, Long> solutionLetterCounts = new HashMap<>(LetterUtils.NUMBER_OF_LETTERS);
+        long[] solutionLetterCounts = solutionLetterCountsHolder.get();
+        Arrays.fill(solutionLetterCounts, 0L);
 
-        for (int i = 0; i < LanguageConstants.LOWERCASE_LETTERS.length; i ++) {
-            solutionLetterCounts.put(String.valueOf(LanguageConstants.LOWERCASE_LETTERS[i]), 0L);
+        for (int i = 0; i < solutionString.length(); i ++) {
+            solutionLetterCounts[solutionString.charAt(i) - 'a'] ++;
         }
 
-        for (int i = 0; i < solutionString.length(); i ++) {
-            String letter = String.valueOf(solutionString.charAt(i));
+        double chiSquared = 0d;
 
-            solutionLetterCounts.put(letter, solutionLetterCounts.get(letter) + 1L);
-        }
+        for (int i = 0; i < LanguageConstants.LOWERCASE_LETTERS_SIZE; i ++) {
+            long expectedCount = current.englishLetterCounts[i];
 
-        List<Double> chiSquaredPerLetter = new ArrayList<>(LetterUtils.NUMBER_OF_LETTERS);
+            if (expectedCount == NOT_IN_MODEL) {
+                continue;
+            }
 
-        for (String letter : englishLetterCounts.keySet()) {
-            long actualCount = solutionLetterCounts.get(letter);
-            long expectedCount = englishLetterCounts.get(letter);
-            double numerator = Math.pow((double) (actualCount - expectedCount), 2.0);
+            double numerator = Math.pow((double) (solutionLetterCounts[i] - expectedCount), 2.0);
             double denominator = Math.max(1d, expectedCount); // Prevent division by zero
-            chiSquaredPerLetter.add(numerator / denominator);
+            chiSquared += numerator / denominator;
         }
 
-        return chiSquaredPerLetter.stream()
-                .mapToDouble(perLetter -> perLetter.doubleValue())
-                .sum();
+        return chiSquared;
+    }
+
+    private static class Context {
+        private final Cipher cipher;
+        private final long[] englishLetterCounts;
+
+        private Context(Cipher cipher, long[] englishLetterCounts) {
+            this.cipher = cipher;
+            this.englishLetterCounts = englishLetterCounts;
+        }
     }
 }
@@ -20,45 +20,109 @@
 package com.ciphertool.zenith.inference.util;
 
 import com.ciphertool.zenith.inference.entities.Cipher;
+import com.ciphertool.zenith.inference.entities.CipherSolution;
 import org.springframework.stereotype.Component;
 
 @Component
 public class IndexOfCoincidenceEvaluator {
-    // Since we are using only ASCII letters as array indices, we're guaranteed to stay within 256
-    private int[] letterCounts = new int[256];
-    private int[] precomputedNominatorValues;
-    private float denominator;
+    // The numerator terms and denominator for the length of the cipher last evaluated, which the epochs running in
+    // parallel share read-only; a different cipher gets a new Context rather than an update to this one
+    private volatile Context context;
 
-    private Cipher initialized = null;
+    // Since we are using only ASCII letters as array indices, we're guaranteed to stay within 256
+    private ThreadLocal<int[]> letterCountsHolder = ThreadLocal.withInitial(() -> new int[256]);
 
     public void init(Cipher cipher) {
-        denominator = cipher.length() * (cipher.length() - 1);
-        precomputedNominatorValues = new int[cipher.length()];
+        context = buildContext(cipher);
+    }
+
+    private Context buildContext(Cipher cipher) {
+        float denominator = cipher.length() * (cipher.length() - 1);
 
-        for (int i = 0; i < cipher.length(); i ++) {
+        // A letter can occur anywhere from zero times to once per position
+        int[] precomputedNominatorValues = new int[cipher.length() + 1];
+
+        for (int i = 0; i <= cipher.length(); i ++) {
             precomputedNominatorValues[i] = i * (i - 1);
         }
 
-        initialized = cipher;
+        return new Context(cipher, precomputedNominatorValues, denominator);
     }
 
-    public float evaluate(Cipher cipher, String solutionString) {
-        if (initialized == null || initialized != cipher) {
-            init(cipher);
+    private Context contextFor(Cipher cipher) {
+        Context current = context;
+
+        if (current == null || current.cipher != cipher) {
+            current = buildContext(cipher);
+            context = current;
         }
 
-        resetLetterCounts();
+        return current;
+    }
+
+    public float evaluate(Cipher cipher, String solutionString) {
+        Context current = contextFor(cipher);
+
+        int[] letterCounts = letterCountsHolder.get();
+
+        resetLetterCounts(letterCounts);
 
         for (int i = 0; i < solutionString.length(); i++) {
             letterCounts[solutionString.charAt(i)] ++;
         }
 
-        int numerator = buildNumerator();
+        int numerator = buildNumerator(letterCounts, current.precomputedNominatorValues);
+
+        return (float) numerator / current.denominator;
+    }
+
+    public float evaluate(Cipher cipher, char[] solutionChars) {
+        return evaluate(cipher, solutionChars, solutionChars.length);
+    }
+
+    /**
+     * Evaluates only the first {@code length} letters, for plaintexts held in a reusable buffer.
+     */
+    public float evaluate(Cipher cipher, char[] solutionChars, int length) {
+        Context current = contextFor(cipher);
+
+        int[] letterCounts = letterCountsHolder.get();
+
+        resetLetterCounts(letterCounts);
+
+        for (int i = 0; i < length; i++) {
+            letterCounts[solutionChars[i]] ++;
+        }
+
+        int numerator = buildNumerator(letterCounts, current.precomputedNominatorValues);
+
+        return (float) numerator / current.denominator;
+    }
+
+    /**
+     * Evaluates the index of coincidence from the letter counts maintained on the solution, rather than by recounting
+     * the plaintext.
+     */
+    public float evaluate(Cipher cipher, CipherSolution solution) {
+        return (float) solution.getIndexOfCoincidenceNumerator() / contextFor(cipher).denominator;
+    }
+
+    /**
+     * Evaluates the index of coincidence from a numerator maintained by the caller, such as for a transformed plaintext.
+     */
+    public float evaluate(Cipher cipher, int numerator) {
+        return (float) numerator / contextFor(cipher).denominator;
+    }
 
-        return (float) numerator / denominator;
+    /**
+     * Evaluates the index of coincidence the solution would have if the given symbol were mapped to the given letter,
+     * from the letter counts maintained on the solution.
+     */
+    public float evaluate(Cipher cipher, CipherSolution solution, int symbolId, char letter) {
+        return (float) solution.getIndexOfCoincidenceNumerator(symbolId, letter) / contextFor(cipher).denominator;
     }
 
-    private void resetLetterCounts() {
+    private void resetLetterCounts(int[] letterCounts) {
         // TODO: see if Arrays.fill is any faster/slower
         letterCounts['a'] = 0;
         letterCounts['b'] = 0;
@@ -88,7 +152,7 @@ public class IndexOfCoincidenceEvaluator {
         letterCounts['z'] = 0;
     }
 
-    private int buildNumerator() {
+    private int buildNumerator(int[] letterCounts, int[] precomputedNominatorValues) {
         int numerator = 0;
         numerator += precomputedNominatorValues[letterCounts['a']];
         numerator += precomputedNominatorValues[letterCounts['b']];
@@ -119,4 +183,16 @@ public class IndexOfCoincidenceEvaluator {
 
         return numerator;
     }
+
+    private static class Context {
+        private final Cipher cipher;
+        private final int[] precomputedNominatorValues;
+        private final float denominator;
+
+        private Context(Cipher cipher, int[] precomputedNominatorValues, float denominator) {
+            this.cipher = cipher;
+            this.precomputedNominatorValues = precomputedNominatorValues;
+            this.denominator = denominator;
+        }
+    }
 }
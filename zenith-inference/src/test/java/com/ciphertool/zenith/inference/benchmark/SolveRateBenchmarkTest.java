@@ -0,0 +1,176 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.benchmark;
+
+import com.ciphertool.zenith.inference.dao.CipherDao;
+import com.ciphertool.zenith.inference.entities.Cipher;
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.inference.entities.Ciphertext;
+import com.ciphertool.zenith.inference.optimizer.EpochResult;
+import com.ciphertool.zenith.inference.optimizer.ParallelTemperingSolutionOptimizer;
+import com.ciphertool.zenith.inference.optimizer.SimulatedAnnealingSolutionOptimizer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class SolveRateBenchmarkTest {
+    private Path outputDirectory;
+    private SolveRateBenchmark solveRateBenchmark;
+    private SimulatedAnnealingSolutionOptimizer optimizerMock;
+    private ParallelTemperingSolutionOptimizer parallelTemperingMock;
+    private Cipher cipher;
+
+    @Before
+    public void setUp() throws IOException {
+        outputDirectory = Files.createTempDirectory("zenith-solve-rate");
+
+        cipher = new Cipher("known", 1, 2);
+        cipher.addCiphertextCharacter(new Ciphertext(0, "x"));
+        cipher.addCiphertextCharacter(new Ciphertext(1, "y"));
+        cipher.putKnownSolutionMapping("x", "a");
+        cipher.putKnownSolutionMapping("y", "b");
+
+        CipherDao cipherDaoMock = mock(CipherDao.class);
+        when(cipherDaoMock.findByCipherName("known")).thenReturn(cipher);
+
+        optimizerMock = mock(SimulatedAnnealingSolutionOptimizer.class);
+        parallelTemperingMock = mock(ParallelTemperingSolutionOptimizer.class);
+
+        solveRateBenchmark = new SolveRateBenchmark();
+        setField("optimizerName", "SimulatedAnnealingSolutionOptimizer");
+        setField("cipherNames", Collections.singletonList("known"));
+        setField("epochs", 2);
+        setField("samplerIterations", Arrays.asList(100, 200));
+        setField("temperaturesMax", Collections.singletonList(5f));
+        setField("temperaturesMin", Arrays.asList(2f, 6f));
+        setField("threadCounts", Collections.singletonList(1));
+        setField("replicaCounts", Arrays.asList(2, 4));
+        setField("swapIntervals", Collections.singletonList(10));
+        setField("outputDirectory", outputDirectory.toString());
+        setField("cipherDao", cipherDaoMock);
+        setField("simulatedAnnealingOptimizer", optimizerMock);
+        setField("parallelTemperingOptimizer", parallelTemperingMock);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(outputDirectory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(outputDirectory);
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        CipherSolution correct = new CipherSolution(cipher, 2);
+        CipherSolution incorrect = new CipherSolution(cipher, 2);
+
+        when(optimizerMock.runEpochs(same(cipher), eq(2), anyInt(), anyFloat(), anyFloat(), any(TaskExecutor.class)))
+                .thenAnswer(invocation -> {
+                    long now = System.nanoTime();
+                    return Arrays.asList(new EpochResult(incorrect, 10L, 500000000L, now), new EpochResult(correct, 20L, 1500000000L, now));
+                });
+        when(optimizerMock.isCorrect(cipher, correct)).thenReturn(true);
+        when(optimizerMock.isCorrect(cipher, incorrect)).thenReturn(false);
+
+        List<SolveRateResult> results = solveRateBenchmark.run();
+
+        // The minimum temperature above the maximum is skipped
+        assertEquals(2, results.size());
+        verify(optimizerMock).runEpochs(same(cipher), eq(2), eq(100), eq(5f), eq(2f), any(TaskExecutor.class));
+        verify(optimizerMock).runEpochs(same(cipher), eq(2), eq(200), eq(5f), eq(2f), any(TaskExecutor.class));
+
+        SolveRateResult result = results.get(0);
+        assertEquals("known", result.getCipherName());
+        assertEquals(2, result.getEpochs());
+        assertEquals(1, result.getCorrectSolutions());
+        assertEquals(0.5d, result.getSuccessRate(), 0d);
+        assertEquals(2000L, result.getCpuMillis());
+        assertEquals(0.5d, result.getCorrectSolutionsPerCpuSecond(), 0.0001d);
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(outputDirectory)) {
+            files = stream.sorted().collect(Collectors.toList());
+        }
+
+        assertEquals(2, files.size());
+        assertEquals(3, Files.readAllLines(files.get(0)).size());
+    }
+
+    @Test
+    public void testRunParallelTempering() {
+        setField("optimizerName", "ParallelTemperingSolutionOptimizer");
+        setField("samplerIterations", Collections.singletonList(100));
+
+        CipherSolution correct = new CipherSolution(cipher, 2);
+
+        when(parallelTemperingMock.runEpoch(same(cipher), anyInt(), eq(100), eq(5f), eq(2f), eq(10), any(TaskExecutor.class), any(SplittableRandom.class)))
+                .thenAnswer(invocation -> new EpochResult(correct, 10L, 1000000000L, System.nanoTime()));
+        when(parallelTemperingMock.isCorrect(cipher, correct)).thenReturn(true);
+
+        List<SolveRateResult> results = solveRateBenchmark.run();
+
+        // One result per replica count, each running the configured number of epochs
+        assertEquals(2, results.size());
+        verify(parallelTemperingMock, times(2)).runEpoch(same(cipher), eq(2), eq(100), eq(5f), eq(2f), eq(10), any(TaskExecutor.class), any(SplittableRandom.class));
+        verify(parallelTemperingMock, times(2)).runEpoch(same(cipher), eq(4), eq(100), eq(5f), eq(2f), eq(10), any(TaskExecutor.class), any(SplittableRandom.class));
+        verifyZeroInteractions(optimizerMock);
+
+        SolveRateResult result = results.get(1);
+        assertEquals("ParallelTemperingSolutionOptimizer", result.getOptimizer());
+        assertEquals(4, result.getReplicas());
+        assertEquals(10, result.getSwapInterval());
+        assertEquals(2, result.getCorrectSolutions());
+        assertEquals(1d, result.getCorrectSolutionsPerCpuSecond(), 0.0001d);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRunUnknownOptimizer() {
+        setField("optimizerName", "GeneticAlgorithmSolutionOptimizer");
+
+        solveRateBenchmark.run();
+    }
+
+    private void setField(String fieldName, Object value) {
+        Field field = ReflectionUtils.findField(SolveRateBenchmark.class, fieldName);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, solveRateBenchmark, value);
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.entities;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CipherSolutionTest {
+    @Test
+    public void testSetMapping() {
+        Cipher cipher = cipher("x", "y", "x", "z");
+        CipherSolution solution = new CipherSolution(cipher, 3);
+
+        assertEquals("????", solution.asSingleLineString());
+
+        solution.setMapping(cipher.getSymbols().getId("x"), 'e');
+
+        assertEquals("e?e?", new String(solution.getPlaintext()));
+        assertEquals('e', solution.getMapping(0));
+        assertEquals(CipherSolution.UNMAPPED_PLAINTEXT, solution.getMapping(1));
+    }
+
+    @Test
+    public void testPutAndReplaceMapping() {
+        Cipher cipher = cipher("x", "y", "x", "z");
+        CipherSolution solution = new CipherSolution(cipher, 3);
+
+        solution.putMapping("x", 'a');
+        solution.putMapping("y", 'b');
+        solution.putMapping("z", 'c');
+        solution.putMapping("x", 'd');
+        solution.replaceMapping("z", 'e');
+
+        Map<String, Character> mappings = solution.getMappings();
+
+        assertEquals(3, mappings.size());
+        assertEquals(Character.valueOf('a'), mappings.get("x"));
+        assertEquals(Character.valueOf('e'), mappings.get("z"));
+        assertEquals("abae", solution.asSingleLineString());
+    }
+
+    @Test
+    public void testClone() {
+        Cipher cipher = cipher("x", "y", "x");
+        CipherSolution solution = new CipherSolution(cipher, 2);
+        solution.setMapping(0, 'a');
+        solution.setMapping(1, 'b');
+
+        CipherSolution cloned = solution.clone();
+        cloned.setMapping(0, 'c');
+
+        assertEquals("aba", solution.asSingleLineString());
+        assertEquals("cbc", cloned.asSingleLineString());
+    }
+
+    @Test
+    public void testSetCipher() {
+        CipherSolution solution = new CipherSolution(cipher("x", "y", "z"), 3);
+        solution.putMapping("x", 'a');
+        solution.putMapping("y", 'b');
+        solution.putMapping("z", 'c');
+
+        // The same symbols in a different order, as a transposition would produce
+        solution.setCipher(cipher("z", "x", "y"));
+
+        assertEquals("cab", solution.asSingleLineString());
+        assertEquals(Character.valueOf('a'), solution.getMappings().get("x"));
+    }
+
+    @Test
+    public void testGetIndexOfCoincidenceNumerator_forMapping() {
+        Cipher cipher = cipher("x", "y", "x", "z", "x");
+        CipherSolution solution = new CipherSolution(cipher, 3);
+        solution.setMapping(0, 'a');
+        solution.setMapping(1, 'b');
+        solution.setMapping(2, 'b');
+        solution.initLetterCounts();
+
+        for (char letter = 'a'; letter <= 'z'; letter ++) {
+            int numerator = solution.getIndexOfCoincidenceNumerator(0, letter);
+
+            CipherSolution remapped = solution.clone();
+            remapped.setMapping(0, letter);
+
+            assertEquals(remapped.getIndexOfCoincidenceNumerator(), numerator);
+        }
+
+        // Unchanged by the lookahead
+        assertEquals("ababa", solution.asSingleLineString());
+        assertEquals(8, solution.getIndexOfCoincidenceNumerator());
+    }
+
+    private static Cipher cipher(String... symbols) {
+        Cipher cipher = new Cipher("solution", 1, symbols.length);
+
+        for (int i = 0; i < symbols.length; i ++) {
+            cipher.addCiphertextCharacter(new Ciphertext(i, symbols[i]));
+        }
+
+        return cipher;
+    }
+}
@@ -73,6 +73,31 @@ public class CipherTest {
         assertTrue(cipher.hasKnownSolution());
     }
 
+    @Test
+    public void testGetSymbols() {
+        Cipher cipher = new Cipher("symbols", 1, 5);
+        cipher.addCiphertextCharacter(new Ciphertext(0, "b"));
+        cipher.addCiphertextCharacter(new Ciphertext(1, "a"));
+        cipher.addCiphertextCharacter(new Ciphertext(2, "b"));
+        cipher.addCiphertextCharacter(new Ciphertext(3, "c"));
+        cipher.addCiphertextCharacter(new Ciphertext(4, "a"));
+
+        CipherSymbols symbols = cipher.getSymbols();
+
+        assertEquals(3, symbols.size());
+        assertEquals("b", symbols.getSymbol(0));
+        assertEquals(1, symbols.getId("a"));
+        assertEquals(CipherSymbols.NOT_FOUND, symbols.getId("z"));
+        assertEquals(2, symbols.getIdAt(3));
+        assertArrayEquals(new int[] { 1, 4 }, symbols.getPositions(1));
+        assertArrayEquals(new int[] { 0, 2 }, cipher.getCipherSymbolIndicesMap().get("b"));
+        assertSame(symbols, cipher.getSymbols());
+
+        cipher.addCiphertextCharacter(new Ciphertext(5, "d"));
+
+        assertEquals(4, cipher.getSymbols().size());
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void testCiphertextCharactersUnmodifiable() {
         Cipher cipher = new Cipher();
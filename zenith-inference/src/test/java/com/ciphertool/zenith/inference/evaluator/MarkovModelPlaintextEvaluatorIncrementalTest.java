@@ -0,0 +1,272 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.evaluator;
+
+import com.ciphertool.zenith.inference.entities.Cipher;
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.inference.entities.Ciphertext;
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import com.ciphertool.zenith.model.markov.table.HashedNGramTable;
+import org.junit.Test;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MarkovModelPlaintextEvaluatorIncrementalTest {
+    private static final String PLAINTEXT = "ilikekillingpeoplebecauseitissomuchfun";
+    private static final String[] SYMBOLS = { "a", "b", "c", "d", "e", "f", "g" };
+
+    @Test
+    public void testEvaluate_stringAndCharArrayAgree() {
+        for (int order = ArrayMarkovModel.MIN_ORDER; order <= ArrayMarkovModel.MAX_ORDER; order ++) {
+            MarkovModelPlaintextEvaluator evaluator = evaluator(order);
+            Cipher cipher = cipher();
+
+            CipherSolution fromString = solution(cipher);
+            evaluator.evaluate(cipher, fromString, fromString.asSingleLineString(), null);
+
+            CipherSolution fromChars = solution(cipher);
+            evaluator.evaluate(cipher, fromChars, fromChars.asSingleLineString().toCharArray(), null);
+
+            assertArrayEquals(fromString.getLogProbabilities(), fromChars.getLogProbabilities(), 0f);
+        }
+    }
+
+    @Test
+    public void testEvaluate_incrementalMatchesFull() {
+        for (int order = ArrayMarkovModel.MIN_ORDER; order <= ArrayMarkovModel.MAX_ORDER; order ++) {
+            MarkovModelPlaintextEvaluator evaluator = evaluator(order);
+            Cipher cipher = cipher();
+
+            CipherSolution solution = solution(cipher);
+            char[] solutionChars = solution.asSingleLineString().toCharArray();
+            evaluator.evaluate(cipher, solution, solutionChars, null);
+
+            for (String symbol : SYMBOLS) {
+                char letter = (char) (solution.getMappings().get(symbol) + 1);
+                solution.replaceMapping(symbol, letter);
+
+                for (int index : cipher.getCipherSymbolIndicesMap().get(symbol)) {
+                    solutionChars[index] = letter;
+                }
+
+                evaluator.evaluate(cipher, solution, solutionChars, symbol);
+
+                CipherSolution expected = solution.clone();
+                evaluator.evaluate(cipher, expected, solutionChars, null);
+
+                assertArrayEquals("order=" + order + ", symbol=" + symbol, expected.getLogProbabilities(), solution.getLogProbabilities(), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void testEvaluate_rollback() {
+        MarkovModelPlaintextEvaluator evaluator = evaluator(5);
+        Cipher cipher = cipher();
+
+        CipherSolution solution = solution(cipher);
+        char[] solutionChars = solution.asSingleLineString().toCharArray();
+        evaluator.evaluate(cipher, solution, solutionChars, null);
+
+        float[] original = solution.getLogProbabilities().clone();
+
+        for (int index : cipher.getCipherSymbolIndicesMap().get("c")) {
+            solutionChars[index] = 'z';
+        }
+
+        float[][] logProbabilitiesUpdated = evaluator.evaluate(cipher, solution, solutionChars, "c");
+
+        for (int i = 0; i < logProbabilitiesUpdated[0].length; i ++) {
+            solution.replaceLogProbability((int) logProbabilitiesUpdated[0][i], logProbabilitiesUpdated[1][i]);
+        }
+
+        assertArrayEquals(original, solution.getLogProbabilities(), 0f);
+    }
+
+    @Test
+    public void testEvaluateDelta() {
+        MarkovModelPlaintextEvaluator evaluator = evaluator(5);
+        Cipher cipher = cipher();
+        RollbackBuffer rollbackBuffer = new RollbackBuffer(cipher.length());
+
+        CipherSolution solution = solution(cipher);
+        char[] solutionChars = solution.asSingleLineString().toCharArray();
+        evaluator.evaluateDelta(cipher, solution, solutionChars, PlaintextEvaluator.ALL_SYMBOLS, rollbackBuffer);
+
+        float[] original = solution.getLogProbabilities().clone();
+        float originalSum = sum(original);
+
+        for (int index : cipher.getCipherSymbolIndicesMap().get("b")) {
+            solutionChars[index] = 'q';
+        }
+
+        float delta = evaluator.evaluateDelta(cipher, solution, solutionChars, cipher.getSymbols().getId("b"), rollbackBuffer);
+
+        assertEquals(sum(solution.getLogProbabilities()) - originalSum, delta, 0.0001f);
+
+        rollbackBuffer.rollback(solution);
+
+        assertArrayEquals(original, solution.getLogProbabilities(), 0f);
+        assertEquals(0, rollbackBuffer.size());
+    }
+
+    @Test
+    public void testEvaluateDelta_withinBuffer() {
+        MarkovModelPlaintextEvaluator evaluator = evaluator(5);
+        Cipher cipher = cipher();
+        RollbackBuffer rollbackBuffer = new RollbackBuffer(cipher.length());
+
+        CipherSolution exact = solution(cipher);
+        evaluator.evaluateDelta(cipher, exact, exact.getPlaintext(), PlaintextEvaluator.ALL_SYMBOLS, rollbackBuffer);
+
+        // Trailing letters beyond the length must not be scored
+        CipherSolution buffered = solution(cipher);
+        char[] buffer = (buffered.asSingleLineString() + "zzzzzzzz").toCharArray();
+        evaluator.evaluateDelta(cipher, buffered, buffer, cipher.length(), PlaintextEvaluator.ALL_SYMBOLS, rollbackBuffer);
+
+        assertArrayEquals(exact.getLogProbabilities(), buffered.getLogProbabilities(), 0f);
+    }
+
+    @Test
+    public void testEvaluateDelta_positions() {
+        for (int order = ArrayMarkovModel.MIN_ORDER; order <= ArrayMarkovModel.MAX_ORDER; order ++) {
+            MarkovModelPlaintextEvaluator evaluator = evaluator(order);
+            Cipher cipher = cipher();
+            RollbackBuffer rollbackBuffer = new RollbackBuffer(cipher.length());
+
+            CipherSolution solution = solution(cipher);
+            char[] solutionChars = solution.asSingleLineString().toCharArray();
+            evaluator.evaluateDelta(cipher, solution, solutionChars, PlaintextEvaluator.ALL_SYMBOLS, rollbackBuffer);
+
+            // Arbitrary positions which are neither one symbol's nor spread apart, as a transformer's blocks would be
+            int[] positions = { 0, 1, 2, 9, 10, 21, solutionChars.length - 1 };
+
+            for (int position : positions) {
+                solutionChars[position] = 'q';
+            }
+
+            evaluator.evaluateDelta(cipher, solution, solutionChars, solutionChars.length, positions, positions.length, rollbackBuffer);
+
+            CipherSolution expected = solution.clone();
+            evaluator.evaluate(cipher, expected, solutionChars, null);
+
+            assertArrayEquals("order=" + order, expected.getLogProbabilities(), solution.getLogProbabilities(), 0f);
+        }
+    }
+
+    @Test
+    public void testEvaluateCandidates() {
+        for (int order = ArrayMarkovModel.MIN_ORDER; order <= ArrayMarkovModel.MAX_ORDER; order ++) {
+            MarkovModelPlaintextEvaluator evaluator = evaluator(order);
+            Cipher cipher = cipher();
+            RollbackBuffer rollbackBuffer = new RollbackBuffer(cipher.length());
+
+            CipherSolution solution = solution(cipher);
+            evaluator.evaluateDelta(cipher, solution, solution.getPlaintext(), PlaintextEvaluator.ALL_SYMBOLS, rollbackBuffer);
+
+            float[] original = solution.getLogProbabilities().clone();
+            float[] logProbabilityDeltas = new float[26];
+
+            for (String symbol : SYMBOLS) {
+                int symbolId = cipher.getSymbols().getId(symbol);
+                char originalMapping = solution.getMapping(symbolId);
+
+                evaluator.evaluateCandidates(cipher, solution, symbolId, logProbabilityDeltas, rollbackBuffer);
+
+                assertArrayEquals(original, solution.getLogProbabilities(), 0f);
+                assertEquals(originalMapping, solution.getMapping(symbolId));
+
+                for (char letter = 'a'; letter <= 'z'; letter ++) {
+                    solution.setMapping(symbolId, letter);
+                    float expected = evaluator.evaluateDelta(cipher, solution, solution.getPlaintext(), symbolId, rollbackBuffer);
+                    rollbackBuffer.rollback(solution);
+
+                    assertEquals("order=" + order + ", symbol=" + symbol + ", letter=" + letter, expected, logProbabilityDeltas[letter - 'a'], 0.0001f);
+                }
+
+                solution.setMapping(symbolId, originalMapping);
+            }
+        }
+    }
+
+    private static float sum(float[] values) {
+        float sum = 0f;
+
+        for (float value : values) {
+            sum += value;
+        }
+
+        return sum;
+    }
+
+    private static MarkovModelPlaintextEvaluator evaluator(int order) {
+        ArrayMarkovModel letterMarkovModel = new ArrayMarkovModel(order, new HashedNGramTable(PLAINTEXT.length()));
+        letterMarkovModel.setUnknownLetterNGramLogProbability(-20f);
+
+        // Give each n-gram of the plaintext a distinct log probability so that a wrong window shows up in the scores
+        for (int i = 0; i + order <= PLAINTEXT.length(); i ++) {
+            String nGram = PLAINTEXT.substring(i, i + order);
+
+            if (letterMarkovModel.findExact(nGram) == -1f) {
+                TreeNGram node = new TreeNGram(nGram);
+                node.setLogProbability(-1d - (i / 10d));
+                letterMarkovModel.addNode(node);
+            }
+        }
+
+        MarkovModelPlaintextEvaluator evaluator = new MarkovModelPlaintextEvaluator();
+
+        Field letterMarkovModelField = ReflectionUtils.findField(MarkovModelPlaintextEvaluator.class, "letterMarkovModel");
+        ReflectionUtils.makeAccessible(letterMarkovModelField);
+        ReflectionUtils.setField(letterMarkovModelField, evaluator, letterMarkovModel);
+
+        evaluator.init();
+
+        return evaluator;
+    }
+
+    /**
+     * Each symbol repeats at short distances so that the n-grams affected by its occurrences overlap.
+     */
+    private static Cipher cipher() {
+        Cipher cipher = new Cipher("incremental", 2, PLAINTEXT.length() / 2);
+
+        for (int i = 0; i < PLAINTEXT.length(); i ++) {
+            cipher.addCiphertextCharacter(new Ciphertext(i, SYMBOLS[(i * i + i / 3) % SYMBOLS.length]));
+        }
+
+        return cipher;
+    }
+
+    private static CipherSolution solution(Cipher cipher) {
+        CipherSolution solution = new CipherSolution(cipher, SYMBOLS.length);
+
+        for (int i = 0; i < SYMBOLS.length; i ++) {
+            solution.putMapping(SYMBOLS[i], PLAINTEXT.charAt(i * 3));
+        }
+
+        return solution;
+    }
+}
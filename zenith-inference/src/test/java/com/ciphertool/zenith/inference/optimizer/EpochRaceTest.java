@@ -0,0 +1,51 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.optimizer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EpochRaceTest {
+    @Test
+    public void testIsBehind() {
+        EpochRace race = new EpochRace(2);
+
+        // The first chain to reach a checkpoint leads it
+        assertFalse(race.isBehind(0, -1000f, 0.05f));
+
+        // Within the margin of the leader
+        assertFalse(race.isBehind(0, -1040f, 0.05f));
+
+        // Beyond the margin of the leader
+        assertTrue(race.isBehind(0, -1060f, 0.05f));
+
+        // A new leader raises the bar
+        assertFalse(race.isBehind(0, -900f, 0.05f));
+        assertTrue(race.isBehind(0, -1000f, 0.05f));
+
+        // Each checkpoint has its own leader
+        assertFalse(race.isBehind(1, -2000f, 0.05f));
+
+        // Past the last checkpoint nothing is behind
+        assertFalse(race.isBehind(2, -5000f, 0.05f));
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.optimizer;
+
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelTemperingSolutionOptimizerTest {
+    @Test
+    public void testTemperatureLadder() {
+        float[] temperatures = ParallelTemperingSolutionOptimizer.temperatureLadder(3, 8f, 2f);
+
+        assertEquals(3, temperatures.length);
+        assertEquals(2f, temperatures[0], 0.0001f);
+        assertEquals(4f, temperatures[1], 0.0001f);
+        assertEquals(8f, temperatures[2], 0.0001f);
+    }
+
+    @Test
+    public void testTemperatureLadder_singleReplica() {
+        float[] temperatures = ParallelTemperingSolutionOptimizer.temperatureLadder(1, 8f, 2f);
+
+        assertEquals(1, temperatures.length);
+        assertEquals(2f, temperatures[0], 0.0001f);
+    }
+
+    @Test
+    public void testSelectSwap() {
+        SplittableRandom random = new SplittableRandom(1L);
+
+        // The better solution is always moved to the colder replica
+        assertTrue(ParallelTemperingSolutionOptimizer.selectSwap(2f, -100f, 4f, -90f, random));
+
+        // A much worse solution is practically never moved to the colder replica
+        assertFalse(ParallelTemperingSolutionOptimizer.selectSwap(2f, -100f, 4f, -10000f, random));
+
+        int accepted = 0;
+
+        for (int i = 0; i < 10000; i ++) {
+            if (ParallelTemperingSolutionOptimizer.selectSwap(2f, -100f, 4f, -100f - (4f * (float) Math.log(2d)), random)) {
+                accepted ++;
+            }
+        }
+
+        // exp((1/2 - 1/4) * -4ln(2)) = 0.5
+        assertEquals(0.5d, accepted / 10000d, 0.03d);
+    }
+}
@@ -29,6 +29,27 @@ import static org.junit.Assert.assertEquals;
 public class FourSquarePlaintextTransformerTest {
     @Test
     public void testTransform() {
+        FourSquarePlaintextTransformer transformer = transformer();
+
+        String transformed = transformer.transform("thetomatoisaplantinthenightshadefamilyjjjj");
+
+        assertEquals("pofpopfqqgpcshcqqomthfkocortifacyakmikgmgm", transformed);
+    }
+
+    @Test
+    public void testTransform_inPlace() {
+        FourSquarePlaintextTransformer transformer = transformer();
+
+        // An odd length within a longer buffer, whose last letter is left out
+        char[] buffer = "thetomatoisaplantinthenightshadefamilyjjjjx??".toCharArray();
+
+        int length = transformer.transform(buffer, buffer.length - 2, buffer);
+
+        assertEquals(42, length);
+        assertEquals("pofpopfqqgpcshcqqomthfkocortifacyakmikgmgm", new String(buffer, 0, length));
+    }
+
+    private static FourSquarePlaintextTransformer transformer() {
         FourSquarePlaintextTransformer transformer = new FourSquarePlaintextTransformer();
 
         Field keyTopLeftField = ReflectionUtils.findField(FourSquarePlaintextTransformer.class, "keyTopLeft");
@@ -49,8 +70,6 @@ public class FourSquarePlaintextTransformerTest {
 
         transformer.init();
 
-        String transformed = transformer.transform("thetomatoisaplantinthenightshadefamilyjjjj");
-
-        assertEquals("pofpopfqqgpcshcqqomthfkocortifacyakmikgmgm", transformed);
+        return transformer;
     }
 }
@@ -52,4 +52,20 @@ public class OneTimePadPlaintextTransformerTest {
 
         assertEquals("eqnvzeqnvz", transformed);
     }
+
+    @Test
+    public void testTransform_inPlace() {
+        OneTimePadPlaintextTransformer transformer = new OneTimePadPlaintextTransformer();
+
+        Field keyField = ReflectionUtils.findField(OneTimePadPlaintextTransformer.class, "key");
+        ReflectionUtils.makeAccessible(keyField);
+        ReflectionUtils.setField(keyField, transformer, "xmckl");
+
+        char[] buffer = "hellohello??".toCharArray();
+
+        int length = transformer.transform(buffer, 10, buffer);
+
+        assertEquals(10, length);
+        assertEquals("eqnvzeqnvz??", new String(buffer));
+    }
 }
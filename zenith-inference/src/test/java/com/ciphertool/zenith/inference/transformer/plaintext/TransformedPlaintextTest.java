@@ -0,0 +1,118 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.transformer.plaintext;
+
+import org.junit.Test;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+public class TransformedPlaintextTest {
+    @Test
+    public void testBlockSize() {
+        assertEquals(1, TransformedPlaintext.blockSize(Collections.emptyList()));
+        assertEquals(2, TransformedPlaintext.blockSize(Arrays.asList(oneTimePad(), fourSquare())));
+        assertEquals(0, TransformedPlaintext.blockSize(Arrays.asList(oneTimePad(), plaintext -> plaintext)));
+    }
+
+    @Test
+    public void testUpdate_matchesReset() {
+        // An odd length, so that the four-square transformer leaves out the last letter
+        char[] plaintext = "thetomatoisaplantinthenightshadefamilyx".toCharArray();
+        int[][] positions = { { 0, 1, 7 }, { 4, 5, 6, 30 }, { 12, 38 }, { 37, 38 } };
+
+        TransformedPlaintext incremental = new TransformedPlaintext(Arrays.asList(oneTimePad(), fourSquare()));
+        incremental.reset(plaintext);
+
+        assertTrue(incremental.isIncremental());
+        assertEquals(plaintext.length - 1, incremental.length());
+
+        SplittableRandom random = new SplittableRandom(1L);
+
+        for (int i = 0; i < 100; i ++) {
+            int[] changed = positions[i % positions.length];
+            char letter = (char) ('a' + random.nextInt(26));
+
+            for (int position : changed) {
+                plaintext[position] = letter == 'j' ? 'k' : letter;
+            }
+
+            incremental.update(plaintext, changed);
+
+            TransformedPlaintext expected = new TransformedPlaintext(Arrays.asList(oneTimePad(), fourSquare()));
+            expected.reset(plaintext);
+
+            assertEquals(expected.length(), incremental.length());
+            assertArrayEquals(Arrays.copyOf(expected.getLetters(), expected.length()), Arrays.copyOf(incremental.getLetters(), incremental.length()));
+            assertEquals(expected.getIndexOfCoincidenceNumerator(), incremental.getIndexOfCoincidenceNumerator());
+
+            // Every changed position's pair, except the left out last letter
+            for (int position : changed) {
+                int from = position - (position % 2);
+
+                for (int j = from; j < Math.min(from + 2, incremental.length()); j ++) {
+                    assertTrue(contains(incremental.getChangedPositions(), incremental.getChangedPositionCount(), j));
+                }
+            }
+        }
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        for (int i = 0; i < count; i ++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static OneTimePadPlaintextTransformer oneTimePad() {
+        OneTimePadPlaintextTransformer transformer = new OneTimePadPlaintextTransformer();
+
+        inject(transformer, "key", "xmckl");
+
+        return transformer;
+    }
+
+    private static FourSquarePlaintextTransformer fourSquare() {
+        FourSquarePlaintextTransformer transformer = new FourSquarePlaintextTransformer();
+
+        inject(transformer, "keyTopLeft", "byfireacdghklmnopqstuvwxz");
+        inject(transformer, "keyTopRight", "bygunacdefhiklmopqrstvwxz");
+        inject(transformer, "keyBottomLeft", "byknifeacdghlmopqrstuvwxz");
+        inject(transformer, "keyBottomRight", "byropeacdfghiklmnqstuvwxz");
+
+        transformer.init();
+
+        return transformer;
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.inference.util;
+
+import com.ciphertool.zenith.inference.entities.Cipher;
+import com.ciphertool.zenith.inference.entities.CipherSolution;
+import com.ciphertool.zenith.inference.entities.Ciphertext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class IndexOfCoincidenceEvaluatorTest {
+    @Test
+    public void testEvaluate() {
+        IndexOfCoincidenceEvaluator evaluator = new IndexOfCoincidenceEvaluator();
+        Cipher cipher = cipher(6);
+
+        // Two pairs of matching letters out of 6 * 5 ordered pairs of positions
+        assertEquals(4f / 30f, evaluator.evaluate(cipher, "aabbcd"), 0.0001f);
+        assertEquals(4f / 30f, evaluator.evaluate(cipher, "aabbcd".toCharArray()), 0.0001f);
+    }
+
+    @Test
+    public void testEvaluate_allSameLetter() {
+        IndexOfCoincidenceEvaluator evaluator = new IndexOfCoincidenceEvaluator();
+
+        assertEquals(1f, evaluator.evaluate(cipher(5), "zzzzz"), 0.0001f);
+    }
+
+    @Test
+    public void testEvaluate_concurrentCiphers() throws Exception {
+        IndexOfCoincidenceEvaluator evaluator = new IndexOfCoincidenceEvaluator();
+        Cipher shortCipher = cipher(8);
+        Cipher longCipher = cipher(16);
+        String shortSolution = "thetruth";
+        String longSolution = "iliketokillpeopl";
+
+        float shortExpected = new IndexOfCoincidenceEvaluator().evaluate(shortCipher, shortSolution);
+        float longExpected = new IndexOfCoincidenceEvaluator().evaluate(longCipher, longSolution);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 8; i ++) {
+                boolean useShort = (i % 2 == 0);
+
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 10000; j ++) {
+                        float actual = useShort ? evaluator.evaluate(shortCipher, shortSolution) : evaluator.evaluate(longCipher, longSolution.toCharArray());
+
+                        if (actual != (useShort ? shortExpected : longExpected)) {
+                            return false;
+                        }
+                    }
+
+                    return true;
+                }));
+            }
+
+            for (Future<Boolean> future : futures) {
+                assertEquals(true, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEvaluate_incremental() {
+        IndexOfCoincidenceEvaluator evaluator = new IndexOfCoincidenceEvaluator();
+        Cipher cipher = new Cipher("ioc", 1, 20);
+
+        // Symbols repeat so that each mapping change moves several letters at once
+        for (int i = 0; i < 20; i ++) {
+            cipher.addCiphertextCharacter(new Ciphertext(i, String.valueOf(i % 7)));
+        }
+
+        CipherSolution solution = new CipherSolution(cipher, 7);
+
+        for (int symbolId = 0; symbolId < solution.getKeySize(); symbolId ++) {
+            solution.setMapping(symbolId, "thequic".charAt(symbolId));
+        }
+
+        solution.initLetterCounts();
+
+        assertEquals(evaluator.evaluate(cipher, solution.getPlaintext()), evaluator.evaluate(cipher, solution), 0f);
+
+        SplittableRandom random = new SplittableRandom(42L);
+
+        for (int i = 0; i < 1000; i ++) {
+            int symbolId = random.nextInt(solution.getKeySize());
+            char from = solution.getMapping(symbolId);
+            char to = (char) ('a' + random.nextInt(26));
+
+            solution.setMapping(symbolId, to);
+
+            assertEquals(evaluator.evaluate(cipher, solution.getPlaintext()), evaluator.evaluate(cipher, solution), 0f);
+
+            // Undo every other change, as a rejected proposal would
+            if (i % 2 == 0) {
+                solution.setMapping(symbolId, from);
+                solution.setMapping(symbolId, to);
+            }
+        }
+    }
+
+    private static Cipher cipher(int length) {
+        Cipher cipher = new Cipher("ioc", 1, length);
+
+        for (int i = 0; i < length; i ++) {
+            cipher.addCiphertextCharacter(new Ciphertext(i, String.valueOf(i)));
+        }
+
+        return cipher;
+    }
+}
@@ -26,13 +26,14 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Paths;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
+/**
+ * Reads the language model straight out of the zip archive on the classpath, inflating it as it goes, so that it never
+ * needs to be extracted to disk.  The model is the first file in the archive.
+ */
 @Component
 @ConditionalOnExpression("'LanguageModelApplication' ne '${spring.application.name:#{null}}'")
 public class ModelUnzipper {
@@ -41,41 +42,61 @@ public class ModelUnzipper {
     @Value("${language-model.archive-filename}")
     private String modelArchiveFilename;
 
-    public void unzip() {
-        File destinationDirectory = new File(Paths.get("").toAbsolutePath().toString());
-        byte[] buffer = new byte[1024];
+    /**
+     * @return a stream of the uncompressed model, which the caller must close
+     */
+    public ZipInputStream open() {
+        ZipInputStream zis = null;
 
-        try (ZipInputStream zis = new ZipInputStream(new ClassPathResource(modelArchiveFilename).getInputStream())) {
-            ZipEntry zipEntry = zis.getNextEntry();
+        try {
+            zis = new ZipInputStream(new ClassPathResource(modelArchiveFilename).getInputStream());
+
+            nextModelEntry(zis);
 
-            while (zipEntry != null) {
-                File newFile = newFile(destinationDirectory, zipEntry);
+            return zis;
+        } catch (IOException ioe) {
+            closeQuietly(zis);
 
-                try (FileOutputStream fos = new FileOutputStream(newFile)) {
-                    int len;
-                    while ((len = zis.read(buffer)) > 0) {
-                        fos.write(buffer, 0, len);
-                    }
-                }
+            log.error("Unable to read language model archive file: {}", modelArchiveFilename, ioe);
+            throw new IllegalStateException(ioe);
+        }
+    }
 
-                zipEntry = zis.getNextEntry();
-            }
+    /**
+     * @return the uncompressed size of the model in bytes, or -1 if the archive does not record it up front
+     */
+    public long getUncompressedSize() {
+        try (ZipInputStream zis = new ZipInputStream(new ClassPathResource(modelArchiveFilename).getInputStream())) {
+            return nextModelEntry(zis).getSize();
         } catch (IOException ioe) {
-            log.error("Unable to unzip language model archive file: {}", modelArchiveFilename, ioe);
+            log.error("Unable to read language model archive file: {}", modelArchiveFilename, ioe);
             throw new IllegalStateException(ioe);
         }
     }
 
-    // Protect against zip slip (https://snyk.io/research/zip-slip-vulnerability)
-    protected File newFile(File destinationDirectory, ZipEntry zipEntry) throws IOException {
-        File destinationFile = new File(destinationDirectory, zipEntry.getName());
-        String canonicalDestinationFile = destinationFile.getCanonicalPath();
+    private ZipEntry nextModelEntry(ZipInputStream zis) throws IOException {
+        ZipEntry zipEntry;
+
+        do {
+            zipEntry = zis.getNextEntry();
+        } while (zipEntry != null && zipEntry.isDirectory());
+
+        if (zipEntry == null) {
+            throw new IOException("No language model found in archive: " + modelArchiveFilename);
+        }
+
+        return zipEntry;
+    }
 
-        if (!canonicalDestinationFile.startsWith(destinationDirectory.getCanonicalPath() + File.separator)) {
-            log.error("Zip slip vulnerability detected for destination file: {}.  Halting execution.", canonicalDestinationFile);
-            throw new IOException("Entry is outside of the target dir: " + zipEntry.getName());
+    private void closeQuietly(ZipInputStream zis) {
+        if (zis == null) {
+            return;
         }
 
-        return destinationFile;
+        try {
+            zis.close();
+        } catch (IOException ioe) {
+            log.warn("Unable to close language model archive file: {}", modelArchiveFilename, ioe);
+        }
     }
 }
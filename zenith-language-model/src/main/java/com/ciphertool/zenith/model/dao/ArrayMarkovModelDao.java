@@ -0,0 +1,389 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.dao;
+
+import com.ciphertool.zenith.model.LanguageConstants;
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import com.ciphertool.zenith.model.markov.table.DenseNGramTable;
+import com.ciphertool.zenith.model.markov.table.HashedNGramTable;
+import com.ciphertool.zenith.model.markov.table.MappedDenseNGramTable;
+import com.ciphertool.zenith.model.markov.table.MappedHashedNGramTable;
+import com.ciphertool.zenith.model.markov.table.NGramTable;
+import com.ciphertool.zenith.model.markov.table.PerfectHashNGramTable;
+import com.ciphertool.zenith.model.markov.table.QuantizedNGramTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes the binary language model file, which is the n-gram table of an ArrayMarkovModel preceded by a
+ * fixed-size header:
+ * <pre>
+ * int     magic number
+ * int     format version
+ * int     Markov order
+ * int     max n-grams to keep which the model was built with
+ * int     number of n-grams in the table, including any filled in by back-off
+ * int     number of known n-grams, excluding any filled in by back-off
+ * int     table layout, either dense, hashed, quantized or perfect hash
+ * float   weight the unknown n-grams were backed off with, or zero if they were not
+ * long[]  unigram counts, one per lowercase letter
+ * </pre>
+ * A dense table is a float log probability per array index.  A hashed table is its int capacity followed by that many
+ * long array indices and then that many float log probabilities.  Quantized and perfect hash tables are as written by
+ * their writeTo() methods.
+ *
+ * The table is either copied onto the heap, or, if language-model.memory-mapped is set, read straight from the mapped
+ * file for as long as the model is in use, so that every process on the host which uses the same file shares one copy
+ * of it in the page cache.
+ *
+ * If the file does not exist, a pre-built binary model of the same name on the classpath, such as one shipped in the
+ * application jar, is read instead, so that it never needs to be extracted or rebuilt.
+ */
+@Component
+public class ArrayMarkovModelDao {
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    private static final int MAGIC_NUMBER = 0x5A4E5448; // "ZNTH"
+    private static final int FORMAT_VERSION = 4;
+    private static final int HEADER_SIZE = (Integer.BYTES * 7) + Float.BYTES + (Long.BYTES * LanguageConstants.LOWERCASE_LETTERS_SIZE);
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int DENSE_LAYOUT = 0;
+    private static final int HASHED_LAYOUT = 1;
+    private static final int QUANTIZED_LAYOUT = 2;
+    private static final int PERFECT_HASH_LAYOUT = 3;
+
+    @Value("${language-model.binary-filename}")
+    private String binaryModelFilename;
+
+    @Value("${language-model.memory-mapped:false}")
+    private boolean memoryMapped;
+
+    public ArrayMarkovModel find(int order, int maxNGramsToKeep) {
+        return find(order, maxNGramsToKeep, 0, false);
+    }
+
+    public ArrayMarkovModel find(int order, int maxNGramsToKeep, int quantizationBits, boolean perfectHash) {
+        return find(order, maxNGramsToKeep, quantizationBits, perfectHash, 0f);
+    }
+
+    /**
+     * @param quantizationBits
+     *            the number of bits the log probabilities must be quantized to, or zero if they must be floats
+     * @param perfectHash
+     *            whether the n-grams must be kept under a minimal perfect hash
+     * @param backOffWeight
+     *            the weight the unknown n-grams must have been backed off with, or zero if they must not have been
+     * @return the model read from the binary file, or if it does not exist, from a pre-built binary model of the same
+     *         name on the classpath, or null if neither exists or was built with different settings than those
+     *         requested
+     */
+    public ArrayMarkovModel find(int order, int maxNGramsToKeep, int quantizationBits, boolean perfectHash, float backOffWeight) {
+        Path path = Paths.get(binaryModelFilename);
+
+        if (!Files.exists(path)) {
+            return findOnClasspath(order, maxNGramsToKeep, quantizationBits, perfectHash, backOffWeight);
+        }
+
+        long start = System.currentTimeMillis();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            ArrayMarkovModel letterMarkovModel = read(buffer, binaryModelFilename, order, maxNGramsToKeep, quantizationBits, perfectHash, backOffWeight, memoryMapped);
+
+            if (letterMarkovModel != null) {
+                log.info("Finished {} binary language model file {} in {}ms.", memoryMapped ? "mapping" : "reading", binaryModelFilename, (System.currentTimeMillis() - start));
+            }
+
+            return letterMarkovModel;
+        } catch (IOException e) {
+            log.error("Unable to read binary language model from file: {}.", binaryModelFilename, e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads a pre-built binary model shipped on the classpath, so that it can be used without first being extracted.
+     * It cannot be mapped, so it is read onto the heap once, and its table then reads straight from those bytes rather
+     * than copying them again.
+     */
+    private ArrayMarkovModel findOnClasspath(int order, int maxNGramsToKeep, int quantizationBits, boolean perfectHash, float backOffWeight) {
+        ClassPathResource resource = new ClassPathResource(binaryModelFilename);
+
+        if (!resource.exists()) {
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+
+        try (InputStream in = resource.getInputStream()) {
+            ByteBuffer buffer = ByteBuffer.wrap(StreamUtils.copyToByteArray(in));
+
+            ArrayMarkovModel letterMarkovModel = read(buffer, "classpath:" + binaryModelFilename, order, maxNGramsToKeep, quantizationBits, perfectHash, backOffWeight, true);
+
+            if (letterMarkovModel != null) {
+                log.info("Finished reading binary language model classpath:{} in {}ms.", binaryModelFilename, (System.currentTimeMillis() - start));
+            }
+
+            return letterMarkovModel;
+        } catch (IOException e) {
+            log.error("Unable to read binary language model from classpath: {}.", binaryModelFilename, e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the model in the buffer, or null if it is not a binary model or was built with different settings than
+     *         those requested
+     */
+    private ArrayMarkovModel read(ByteBuffer buffer, String source, int order, int maxNGramsToKeep, int quantizationBits, boolean perfectHash, float backOffWeight, boolean mapped) {
+        long size = buffer.remaining();
+
+        if (size < HEADER_SIZE) {
+            log.warn("Binary language model file {} is truncated.  Ignoring it.", source);
+            return null;
+        }
+
+        buffer.order(BYTE_ORDER);
+
+        int magicNumber = buffer.getInt();
+        int version = buffer.getInt();
+        int fileOrder = buffer.getInt();
+        int fileMaxNGramsToKeep = buffer.getInt();
+        int mapSize = buffer.getInt();
+        int knownNGramCount = buffer.getInt();
+        int layout = buffer.getInt();
+        float fileBackOffWeight = buffer.getFloat();
+
+        if (magicNumber != MAGIC_NUMBER || version != FORMAT_VERSION || knownNGramCount < 0 || knownNGramCount > mapSize) {
+            log.warn("Binary language model file {} has an unrecognized format.  Ignoring it.", source);
+            return null;
+        }
+
+        if (fileOrder != order || fileMaxNGramsToKeep != maxNGramsToKeep || fileBackOffWeight != backOffWeight) {
+            log.info("Binary language model file {} was built with order={}, maxNGramsToKeep={} and backOffWeight={}, but order={}, maxNGramsToKeep={} and backOffWeight={} were requested.  Ignoring it.",
+                    source, fileOrder, fileMaxNGramsToKeep, fileBackOffWeight, order, maxNGramsToKeep, backOffWeight);
+            return null;
+        }
+
+        long[] unigramCounts = new long[LanguageConstants.LOWERCASE_LETTERS_SIZE];
+
+        for (int i = 0; i < unigramCounts.length; i ++) {
+            unigramCounts[i] = buffer.getLong();
+        }
+
+        NGramTable table = readTable(buffer, order, mapSize, layout, mapped);
+
+        if (table == null) {
+            log.warn("Binary language model file {} has an unexpected size of {} bytes or a corrupt n-gram table.  Ignoring it.", source, size);
+            return null;
+        }
+
+        int fileQuantizationBits = quantizationBitsOf(table);
+        boolean filePerfectHash = table instanceof PerfectHashNGramTable;
+
+        if (fileQuantizationBits != quantizationBits || filePerfectHash != perfectHash) {
+            log.info("Binary language model file {} was built with quantizationBits={} and perfectHash={}, but quantizationBits={} and perfectHash={} were requested.  Ignoring it.",
+                    source, fileQuantizationBits, filePerfectHash, quantizationBits, perfectHash);
+            return null;
+        }
+
+        ArrayMarkovModel letterMarkovModel = new ArrayMarkovModel(order, table);
+        letterMarkovModel.setBackOffWeight(fileBackOffWeight);
+        letterMarkovModel.setKnownNGramCount(knownNGramCount);
+
+        for (int i = 0; i < LanguageConstants.LOWERCASE_LETTERS_SIZE; i ++) {
+            long count = unigramCounts[i];
+
+            if (count > 0L) {
+                TreeNGram unigram = new TreeNGram(String.valueOf(LanguageConstants.LOWERCASE_LETTERS[i]));
+                unigram.setCount(count);
+                letterMarkovModel.addNode(unigram);
+            }
+        }
+
+        return letterMarkovModel;
+    }
+
+    public void save(ArrayMarkovModel letterMarkovModel, int maxNGramsToKeep) {
+        long start = System.currentTimeMillis();
+
+        Path path = Paths.get(binaryModelFilename);
+
+        // Write to a temporary file first so that a partially-written model is never picked up by find()
+        Path tempPath = Paths.get(binaryModelFilename + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+
+            header.putInt(MAGIC_NUMBER);
+            header.putInt(FORMAT_VERSION);
+            header.putInt(letterMarkovModel.getOrder());
+            header.putInt(maxNGramsToKeep);
+            header.putInt(letterMarkovModel.getMapSize());
+            header.putInt(letterMarkovModel.getKnownNGramCount());
+            header.putInt(layoutOf(letterMarkovModel.getNGramTable()));
+            header.putFloat(letterMarkovModel.getBackOffWeight());
+
+            long[] unigramCounts = new long[LanguageConstants.LOWERCASE_LETTERS_SIZE];
+
+            for (TreeNGram unigram : letterMarkovModel.getFirstOrderNodes()) {
+                char letter = unigram.getCumulativeString().charAt(0);
+
+                if (letter >= 'a' && letter <= 'z') {
+                    unigramCounts[letter - 'a'] = unigram.getCount();
+                }
+            }
+
+            for (int i = 0; i < unigramCounts.length; i ++) {
+                header.putLong(unigramCounts[i]);
+            }
+
+            header.flip();
+            writeFully(channel, header);
+
+            letterMarkovModel.getNGramTable().writeTo(channel, BYTE_ORDER);
+        } catch (IOException e) {
+            log.error("Unable to write binary language model to file: {}.", tempPath, e);
+            deleteTempFile(tempPath);
+            throw new IllegalStateException(e);
+        }
+
+        try {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.error("Unable to move binary language model file {} to {}.", tempPath, path, e);
+            deleteTempFile(tempPath);
+            throw new IllegalStateException(e);
+        }
+
+        log.info("Finished writing binary language model file {} in {}ms.", binaryModelFilename, (System.currentTimeMillis() - start));
+    }
+
+    private void deleteTempFile(Path tempPath) {
+        try {
+            Files.deleteIfExists(tempPath);
+        } catch (IOException e) {
+            log.warn("Unable to delete partially-written binary language model file {}.", tempPath, e);
+        }
+    }
+
+    /**
+     * @param mapped
+     *            whether the table should read from the buffer for as long as it is in use, rather than copy it
+     * @return the table read from the remainder of the buffer, or null if the remainder is not the expected size
+     */
+    private static NGramTable readTable(ByteBuffer buffer, int order, int mapSize, int layout, boolean mapped) {
+        if (layout == QUANTIZED_LAYOUT || layout == PERFECT_HASH_LAYOUT) {
+            NGramTable table;
+
+            try {
+                table = layout == QUANTIZED_LAYOUT ? new QuantizedNGramTable(buffer, mapSize, mapped) : new PerfectHashNGramTable(buffer, mapped);
+            } catch (IllegalArgumentException | BufferUnderflowException e) {
+                return null;
+            }
+
+            if (buffer.hasRemaining() || table.size() != mapSize
+                    || (table instanceof QuantizedNGramTable && ((QuantizedNGramTable) table).capacity() != ArrayMarkovModel.possibleNGramCount(order))) {
+                return null;
+            }
+
+            return table;
+        }
+
+        if (layout == HASHED_LAYOUT) {
+            if (buffer.remaining() < Integer.BYTES) {
+                return null;
+            }
+
+            long capacity = buffer.getInt(buffer.position());
+
+            if (buffer.remaining() != Integer.BYTES + (capacity * (Long.BYTES + Float.BYTES))) {
+                return null;
+            }
+
+            try {
+                return mapped ? new MappedHashedNGramTable(buffer, mapSize) : new HashedNGramTable(buffer, mapSize);
+            } catch (IllegalArgumentException e) {
+                // The capacity is not a power of two, e.g. zero, or the table would be more than half full
+                return null;
+            }
+        }
+
+        if (layout != DENSE_LAYOUT || !ArrayMarkovModel.isDense(order)
+                || buffer.remaining() != Float.BYTES * ArrayMarkovModel.possibleNGramCount(order)) {
+            return null;
+        }
+
+        return mapped ? new MappedDenseNGramTable(buffer.asFloatBuffer(), mapSize) : new DenseNGramTable(buffer.asFloatBuffer(), mapSize);
+    }
+
+    private static int layoutOf(NGramTable table) {
+        if (table instanceof HashedNGramTable || table instanceof MappedHashedNGramTable) {
+            return HASHED_LAYOUT;
+        }
+
+        if (table instanceof QuantizedNGramTable) {
+            return QUANTIZED_LAYOUT;
+        }
+
+        if (table instanceof PerfectHashNGramTable) {
+            return PERFECT_HASH_LAYOUT;
+        }
+
+        return DENSE_LAYOUT;
+    }
+
+    private static int quantizationBitsOf(NGramTable table) {
+        if (table instanceof QuantizedNGramTable) {
+            return ((QuantizedNGramTable) table).getBits();
+        }
+
+        if (table instanceof PerfectHashNGramTable) {
+            return ((PerfectHashNGramTable) table).getQuantizationBits();
+        }
+
+        return 0;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.dao;
+
+import com.ciphertool.zenith.model.entities.ImportedCorpusFile;
+import com.opencsv.bean.CsvToBeanBuilder;
+import com.opencsv.bean.StatefulBeanToCsv;
+import com.opencsv.bean.StatefulBeanToCsvBuilder;
+import com.opencsv.exceptions.CsvDataTypeMismatchException;
+import com.opencsv.exceptions.CsvRequiredFieldEmptyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores the list of corpus files which have been counted into the language model, so that later imports can count
+ * only the files added since.
+ */
+@Component
+public class ImportManifestDao {
+    private Logger log = LoggerFactory.getLogger(getClass());
+
+    @Value("${language-model.manifest-filename:zenith-model-manifest.csv}")
+    private String manifestFilename;
+
+    public boolean exists() {
+        return Files.exists(Paths.get(manifestFilename));
+    }
+
+    public List<ImportedCorpusFile> findAll() {
+        if (!exists()) {
+            return new ArrayList<>();
+        }
+
+        try (Reader reader = Files.newBufferedReader(Paths.get(manifestFilename))) {
+            List<ImportedCorpusFile> records = new CsvToBeanBuilder(reader)
+                    .withType(ImportedCorpusFile.class)
+                    .build()
+                    .parse();
+
+            return new ArrayList<>(records);
+        } catch (IOException e) {
+            log.error("Unable to read import manifest from file: {}.", manifestFilename, e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Replaces the manifest with the given files.  The manifest is written to a temporary file first, so that a failed
+     * write never leaves a manifest which lists files the model does not contain.
+     */
+    public void saveAll(List<ImportedCorpusFile> files) {
+        Path manifestPath = Paths.get(manifestFilename).toAbsolutePath();
+        Path temporaryPath = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+
+        try (Writer writer = Files.newBufferedWriter(temporaryPath)) {
+            StatefulBeanToCsv sbc = new StatefulBeanToCsvBuilder(writer)
+                    .build();
+
+            sbc.write(files);
+        } catch (IOException | CsvDataTypeMismatchException | CsvRequiredFieldEmptyException e) {
+            log.error("Unable to write import manifest to file: {}.", manifestFilename, e);
+            throw new IllegalStateException(e);
+        }
+
+        try {
+            Files.move(temporaryPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Unable to replace import manifest file: {}.", manifestFilename, e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void deleteAll() {
+        try {
+            Files.deleteIfExists(Paths.get(manifestFilename));
+        } catch (IOException e) {
+            log.error("Unable to delete file at path: {}.", manifestFilename, e);
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -19,9 +19,9 @@
 
 package com.ciphertool.zenith.model.dao;
 
-import com.ciphertool.zenith.model.LanguageModelApplication;
 import com.ciphertool.zenith.model.archive.ModelUnzipper;
 import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.opencsv.CSVParser;
 import com.opencsv.bean.CsvToBeanBuilder;
 import com.opencsv.bean.StatefulBeanToCsv;
 import com.opencsv.bean.StatefulBeanToCsvBuilder;
@@ -33,22 +33,30 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.Writer;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Component
 public class LetterNGramDao {
     private Logger log = LoggerFactory.getLogger(getClass());
 
-    @Value("${spring.application.name:#{null}}")
-    private String appName;
+    private static final int NGRAM_FIELD_COUNT = 7;
+    private static final int LINE_BUFFER_SIZE = 256;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
 
     @Value("${language-model.filename}")
     private String modelFilename;
@@ -56,18 +64,16 @@ public class LetterNGramDao {
     @Autowired(required = false)
     private ModelUnzipper modelUnzipper;
 
-    @PostConstruct
-    public void init() {
-        if (LanguageModelApplication.class.getSimpleName().equals(appName) || Files.exists(Paths.get(modelFilename))) {
-            return;
-        }
-
-        long start = System.currentTimeMillis();
-        log.info("Language model file {} not found.  Unzipping from archive.", modelFilename);
-
-        modelUnzipper.unzip();
+    public boolean exists() {
+        return Files.exists(Paths.get(modelFilename));
+    }
 
-        log.info("Finished unzipping language model archive in {}ms.", (System.currentTimeMillis() - start));
+    /**
+     * @return whether the model file does not exist, so the model is read straight out of the archive on the
+     *         classpath instead
+     */
+    public boolean isArchived() {
+        return modelUnzipper != null && !exists();
     }
 
     public List<TreeNGram> findAll() {
@@ -75,7 +81,7 @@ public class LetterNGramDao {
 
         List<TreeNGram> treeNGrams = new ArrayList<>();
 
-        try (Reader reader = Files.newBufferedReader(Paths.get(modelFilename))) {
+        try (Reader reader = new InputStreamReader(openModel(), StandardCharsets.UTF_8)) {
             List<TreeNGram> records = new CsvToBeanBuilder(reader)
                     .withType(TreeNGram.class)
                     .build()
@@ -92,20 +98,248 @@ public class LetterNGramDao {
         return treeNGrams;
     }
 
+    /**
+     * @return the size of the model file in bytes, for splitting it into ranges for findAllInRange(), or if the model
+     *         is archived, its uncompressed size, or -1 if the archive does not record it
+     */
+    public long getFileSize() {
+        if (isArchived()) {
+            return modelUnzipper.getUncompressedSize();
+        }
+
+        try {
+            return Files.size(Paths.get(modelFilename));
+        } catch (IOException e) {
+            log.error("Unable to read the size of file: {}.", modelFilename, e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parses each line of the model file which starts within the given range of bytes, so that callers can read the
+     * file in parallel by splitting it into ranges.  Every line belongs to exactly one of a set of adjoining ranges.
+     * This needs the model file, so archived models are read with findAllInBlocks() instead.
+     *
+     * @param start
+     *            the offset of the first byte of the range
+     * @param end
+     *            the offset one past the last byte of the range
+     * @param consumer
+     *            called with each n-gram in the order they appear in the file
+     */
+    public void findAllInRange(long start, long end, Consumer<TreeNGram> consumer) {
+        CSVParser parser = new CSVParser();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        byte[] line = new byte[LINE_BUFFER_SIZE];
+        int length = 0;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(modelFilename), StandardOpenOption.READ)) {
+            // Start at the byte before the range, so that a line which starts exactly at the range is not skipped
+            long position = Math.max(start - 1L, 0L);
+            channel.position(position);
+
+            InputStream in = Channels.newInputStream(channel);
+            // The line under way at the start of the range belongs to the previous range
+            boolean skipping = start > 0L;
+            // The offset of the start of the current line
+            long lineStart = start;
+            int read;
+
+            while (lineStart < end && (read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read && lineStart < end; i ++) {
+                    byte next = buffer[i];
+                    position ++;
+
+                    if (next != '\n') {
+                        if (!skipping) {
+                            if (length == line.length) {
+                                line = Arrays.copyOf(line, line.length * 2);
+                            }
+
+                            line[length ++] = next;
+                        }
+
+                        continue;
+                    }
+
+                    if (!skipping) {
+                        acceptLine(parser, line, 0, length, consumer);
+                    }
+
+                    skipping = false;
+                    length = 0;
+                    lineStart = position;
+                }
+            }
+
+            // The last line of the file may not end with a line break
+            if (!skipping && lineStart < end) {
+                acceptLine(parser, line, 0, length, consumer);
+            }
+        } catch (IOException e) {
+            log.error("Unable to find ngrams from file: {}.", modelFilename, e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the whole model, from the model file or else straight out of the archive, and hands it to the consumer in
+     * blocks of whole lines, so that callers can parse the blocks in parallel with parseBlock() while the model is
+     * still being read.  Each block is a new array which the consumer may keep.
+     *
+     * @param blockSize
+     *            the size of each block, which is exceeded only by a line longer than it
+     */
+    public void findAllInBlocks(int blockSize, BlockConsumer consumer) {
+        try (InputStream in = openModel()) {
+            byte[] block = new byte[blockSize];
+            int length = 0;
+            int read;
+
+            while ((read = in.read(block, length, block.length - length)) != -1) {
+                length += read;
+
+                if (length < block.length) {
+                    continue;
+                }
+
+                int linesEnd = length;
+
+                while (linesEnd > 0 && block[linesEnd - 1] != '\n') {
+                    linesEnd --;
+                }
+
+                if (linesEnd == 0) {
+                    block = Arrays.copyOf(block, block.length * 2);
+                    continue;
+                }
+
+                // The partial line at the end of the block starts the next one
+                byte[] next = new byte[Math.max(blockSize, (length - linesEnd) * 2)];
+                System.arraycopy(block, linesEnd, next, 0, length - linesEnd);
+
+                consumer.accept(block, linesEnd);
+
+                block = next;
+                length -= linesEnd;
+            }
+
+            if (length > 0) {
+                consumer.accept(block, length);
+            }
+        } catch (IOException e) {
+            log.error("Unable to find ngrams from file: {}.", modelFilename, e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parses each line of a block from findAllInBlocks().
+     */
+    public void parseBlock(byte[] block, int length, Consumer<TreeNGram> consumer) {
+        CSVParser parser = new CSVParser();
+        int lineStart = 0;
+
+        try {
+            for (int i = 0; i < length; i ++) {
+                if (block[i] == '\n') {
+                    acceptLine(parser, block, lineStart, i - lineStart, consumer);
+                    lineStart = i + 1;
+                }
+            }
+
+            acceptLine(parser, block, lineStart, length - lineStart, consumer);
+        } catch (IOException e) {
+            log.error("Unable to find ngrams from file: {}.", modelFilename, e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private InputStream openModel() throws IOException {
+        return isArchived() ? modelUnzipper.open() : Files.newInputStream(Paths.get(modelFilename));
+    }
+
+    private void acceptLine(CSVParser parser, byte[] bytes, int offset, int length, Consumer<TreeNGram> consumer) throws IOException {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length --;
+        }
+
+        if (length > 0) {
+            consumer.accept(parseNGram(parser, new String(bytes, offset, length, StandardCharsets.UTF_8)));
+        }
+    }
+
+    /**
+     * Parses a line as written by addAll(), which is the fields of a TreeNGram in the order of their CSV positions.
+     */
+    protected TreeNGram parseNGram(CSVParser parser, String line) throws IOException {
+        String[] fields = parser.parseLine(line);
+
+        if (fields.length < NGRAM_FIELD_COUNT) {
+            throw new IOException("Expected " + NGRAM_FIELD_COUNT + " fields but found " + fields.length + " in line: " + line);
+        }
+
+        try {
+            TreeNGram nGram = new TreeNGram(fields[0]);
+            nGram.setOrder(Integer.parseInt(fields[1]));
+            nGram.setCount(Long.parseLong(fields[2]));
+            nGram.setProbability(parseDouble(fields[3]));
+            nGram.setLogProbability(parseDouble(fields[4]));
+            nGram.setConditionalProbability(Double.parseDouble(fields[5]));
+            nGram.setLogConditionalProbability(Double.parseDouble(fields[6]));
+
+            return nGram;
+        } catch (NumberFormatException e) {
+            throw new IOException("Unable to parse line: " + line, e);
+        }
+    }
+
+    private static double parseDouble(String optionalField) {
+        return optionalField.isEmpty() ? 0d : Double.parseDouble(optionalField);
+    }
+
     public synchronized void addAll(List<TreeNGram> nodes) {
         if (nodes == null || nodes.isEmpty()) {
             return;
         }
 
-        try (Writer writer = Files.newBufferedWriter(Paths.get(modelFilename), StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+        try (FileChannel channel = openForAppend()) {
+            ByteBuffer csv = ByteBuffer.wrap(toCsv(nodes));
+
+            while (csv.hasRemaining()) {
+                channel.write(csv);
+            }
+        } catch (IOException e) {
+            log.error("Unable to add nodes to output file: {}.", modelFilename, e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Serializes nodes in the format addAll() writes, so that callers can prepare batches in parallel and append them
+     * through a single channel from openForAppend().
+     */
+    public byte[] toCsv(List<TreeNGram> nodes) {
+        StringWriter writer = new StringWriter();
+
+        try {
             StatefulBeanToCsv sbc = new StatefulBeanToCsvBuilder(writer)
                     .build();
 
             sbc.write(nodes);
-        } catch (IOException | CsvDataTypeMismatchException | CsvRequiredFieldEmptyException e) {
-            log.error("Unable to add nodes to output file: {}.", modelFilename, e);
+        } catch (CsvDataTypeMismatchException | CsvRequiredFieldEmptyException e) {
+            log.error("Unable to serialize nodes for output file: {}.", modelFilename, e);
             throw new IllegalStateException(e);
         }
+
+        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return a channel which appends to the model file, creating it if necessary.  The caller must close it.
+     */
+    public FileChannel openForAppend() throws IOException {
+        return FileChannel.open(Paths.get(modelFilename), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
     }
 
     public void deleteAll() {
@@ -118,4 +352,9 @@ public class LetterNGramDao {
             }
         }
     }
+
+    @FunctionalInterface
+    public interface BlockConsumer {
+        void accept(byte[] block, int length);
+    }
 }
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.entities;
+
+import com.opencsv.bean.CsvBindByPosition;
+
+/**
+ * A corpus file whose N-Grams are already counted in the language model, as recorded in the import manifest.
+ */
+public class ImportedCorpusFile {
+    // Relative to the corpus directory, with forward slashes
+    @CsvBindByPosition(position = 0, required = true)
+    private String path;
+
+    @CsvBindByPosition(position = 1, required = true)
+    private long size;
+
+    @CsvBindByPosition(position = 2, required = true)
+    private long lastModified;
+
+    // Needed for de-serialization
+    public ImportedCorpusFile() {
+    }
+
+    public ImportedCorpusFile(String path, long size, long lastModified) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return whether the other file has the same path, size and modification time as this one
+     */
+    public boolean isUnchanged(ImportedCorpusFile other) {
+        return path.equals(other.path) && size == other.size && lastModified == other.lastModified;
+    }
+}
@@ -21,13 +21,7 @@ package com.ciphertool.zenith.model.entities;
 
 import com.opencsv.bean.CsvBindByPosition;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Pattern;
-
 public class TreeNGram {
-    private static final Pattern LOWERCASE_LETTERS_AND_SPACE = Pattern.compile("[a-z \\.]");
-
     @CsvBindByPosition(position = 0, required = true)
     protected String cumulativeString;
 
@@ -49,8 +43,6 @@ public class TreeNGram {
     @CsvBindByPosition(position = 6, required = true)
     protected double logConditionalProbability;
 
-    private Map<Character, TreeNGram> transitions = new HashMap<>(1);
-
     // Needed for de-serialization
     public TreeNGram() {
     }
@@ -128,70 +120,4 @@ public class TreeNGram {
     public void setCumulativeString(String cumulativeString) {
         this.cumulativeString = cumulativeString;
     }
-
-    public boolean containsChild(char c) {
-        return this.getTransitions().containsKey(c);
-    }
-
-    public TreeNGram getChild(char c) {
-        return this.getTransitions().get(c);
-    }
-
-    public synchronized boolean addOrIncrementChildAsync(String nGramString, int order) {
-        char firstLetter = nGramString.charAt(order - 1);
-
-        TreeNGram child = this.getChild(firstLetter);
-
-        boolean isNew = false;
-
-        if (child == null) {
-            this.putChild(firstLetter, new TreeNGram(nGramString.substring(0, order)));
-
-            child = this.getChild(firstLetter);
-
-            isNew = true;
-        }
-
-        child.increment();
-
-        return isNew;
-    }
-
-    public synchronized TreeNGram addExistingNodeAsync(TreeNGram nodeToAdd, int order) {
-        char firstLetter = nodeToAdd.cumulativeString.charAt(order - 1);
-
-        TreeNGram child = this.getChild(firstLetter);
-
-        if (order == nodeToAdd.cumulativeString.length()) {
-            if (child == null) {
-                this.putChild(firstLetter, nodeToAdd);
-            } else {
-                child.count = nodeToAdd.count;
-                child.conditionalProbability = nodeToAdd.conditionalProbability;
-                child.probability = nodeToAdd.probability;
-                child.logProbability = nodeToAdd.logProbability;
-                child.logConditionalProbability = nodeToAdd.logConditionalProbability;
-            }
-
-            return null;
-        } else if (child == null) {
-            this.putChild(firstLetter, new TreeNGram(nodeToAdd.cumulativeString.substring(0, order)));
-        }
-
-        return this.getChild(firstLetter);
-    }
-
-    public TreeNGram putChild(char c, TreeNGram child) {
-        if (!LOWERCASE_LETTERS_AND_SPACE.matcher(String.valueOf(c)).matches()) {
-            throw new IllegalArgumentException(
-                    "Attempted to add a character to the Markov Model which is outside the range of "
-                            + LOWERCASE_LETTERS_AND_SPACE);
-        }
-
-        return this.getTransitions().put(c, child);
-    }
-
-    public Map<Character, TreeNGram> getTransitions() {
-        return this.transitions;
-    }
 }
@@ -19,9 +19,8 @@
 
 package com.ciphertool.zenith.model.etl.importers;
 
-import com.ciphertool.zenith.model.dto.ParseResults;
-import com.ciphertool.zenith.model.entities.TreeNGram;
 import com.ciphertool.zenith.model.markov.TreeMarkovModel;
+import com.ciphertool.zenith.model.markov.table.LetterNGramCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,24 +29,27 @@ import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class LetterNGramMarkovImporter {
     private static Logger log = LoggerFactory.getLogger(LetterNGramMarkovImporter.class);
 
     private static final String EXTENSION = ".txt";
-    private static final String NON_ALPHA = "[^a-zA-Z]";
-    private static final String NON_ALPHA_OR_SPACE = "[^a-zA-Z ]";
+    private static final int BUFFER_SIZE = 1 << 16;
 
     @Autowired
     private TaskExecutor taskExecutor;
@@ -58,14 +60,18 @@ public class LetterNGramMarkovImporter {
     @Value("${markov.letter.order}")
     private int order;
 
-    public TreeMarkovModel importCorpus() {
-        TreeMarkovModel letterMarkovModel = new TreeMarkovModel(this.order);
-
-        long start = System.currentTimeMillis();
+    @Value("${task-executor.pool-size:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int workers;
 
-        log.info("Starting corpus text import...");
+    public TreeMarkovModel importCorpus() {
+        return buildModel(countNGrams(findCorpusFiles()));
+    }
 
-        Path corpusDirectoryPath = Paths.get(this.corpusDirectory);
+    /**
+     * @return every corpus file, sorted by path, after creating the corpus directory if it does not exist yet
+     */
+    public List<Path> findCorpusFiles() {
+        Path corpusDirectoryPath = getCorpusDirectory();
 
         if (!Files.exists(corpusDirectoryPath)) {
             try {
@@ -75,169 +81,179 @@ public class LetterNGramMarkovImporter {
             }
         }
 
-        List<FutureTask<ParseResults>> futures = parseFiles(corpusDirectoryPath, letterMarkovModel);
-        ParseResults parseResults;
-        long total = 0L;
-        long unique = 0L;
+        List<Path> corpusFiles = new ArrayList<>();
 
-        for (FutureTask<ParseResults> future : futures) {
-            try {
-                parseResults = future.get();
-                total += parseResults.getTotal();
-                unique += parseResults.getUnique();
-            } catch (InterruptedException ie) {
-                log.error("Caught InterruptedException while waiting for ParseFileTask ", ie);
-            } catch (ExecutionException ee) {
-                log.error("Caught ExecutionException while waiting for ParseFileTask ", ee);
-            }
-        }
+        collectCorpusFiles(corpusDirectoryPath, corpusFiles);
 
-        log.info("Imported {} distinct letter N-Grams out of {} total in {}ms.", unique, total, (System.currentTimeMillis() - start));
+        Collections.sort(corpusFiles);
 
-        computeConditionalProbabilityAsync(letterMarkovModel);
-
-        letterMarkovModel.normalize(order, total, taskExecutor);
+        return corpusFiles;
+    }
 
-        return letterMarkovModel;
+    public Path getCorpusDirectory() {
+        return Paths.get(this.corpusDirectory);
     }
 
-    public void computeConditionalProbabilityAsync(TreeMarkovModel letterMarkovModel) {
+    public LetterNGramCounter countNGrams(List<Path> corpusFiles) {
         long start = System.currentTimeMillis();
 
-        log.info("Starting calculation of conditional probabilities...");
-
-        Map<Character, TreeNGram> initialTransitions = letterMarkovModel.getRootNode().getTransitions();
+        log.info("Starting corpus text import of {} files...", corpusFiles.size());
 
-        List<FutureTask<Void>> futures = new ArrayList<>(26);
-        FutureTask<Void> task;
+        // Each task takes files from the list until there are none left and counts them into a counter of its own,
+        // which it hands back to be merged, so reading the corpus never contends on shared state and no counter
+        // outlives the import
+        int taskCount = Math.min(Math.max(this.workers, 1), corpusFiles.size());
+        AtomicInteger nextFile = new AtomicInteger();
 
-        List<TreeNGram> firstOrderNodes = new ArrayList<>(letterMarkovModel.getRootNode().getTransitions().values());
+        List<FutureTask<LetterNGramCounter>> futures = new ArrayList<>(taskCount);
+        FutureTask<LetterNGramCounter> task;
 
-        long rootNodeCount = firstOrderNodes.stream().mapToLong(TreeNGram::getCount).sum();
-
-        for (Map.Entry<Character, TreeNGram> entry : initialTransitions.entrySet()) {
-            if (entry.getValue() != null) {
-                task = new FutureTask<>(new ComputeConditionalTask(entry.getValue(), rootNodeCount));
-                futures.add(task);
-                this.taskExecutor.execute(task);
-            }
+        for (int i = 0; i < taskCount; i++) {
+            task = new FutureTask<>(new ParseFilesTask(corpusFiles, nextFile));
+            futures.add(task);
+            this.taskExecutor.execute(task);
         }
 
-        for (FutureTask<Void> future : futures) {
+        List<LetterNGramCounter> counters = new ArrayList<>(taskCount);
+
+        for (FutureTask<LetterNGramCounter> future : futures) {
             try {
-                future.get();
+                counters.add(future.get());
             } catch (InterruptedException ie) {
-                log.error("Caught InterruptedException while waiting for NormalizeTask ", ie);
+                log.error("Caught InterruptedException while waiting for ParseFilesTask ", ie);
             } catch (ExecutionException ee) {
-                log.error("Caught ExecutionException while waiting for NormalizeTask ", ee);
+                log.error("Caught ExecutionException while waiting for ParseFilesTask ", ee);
             }
         }
 
-        log.info("Finished calculating conditional probabilities in {}ms", (System.currentTimeMillis() - start));
+        LetterNGramCounter merged = mergeCounters(counters);
+
+        log.info("Imported {} distinct letter N-Grams out of {} total in {}ms.", merged.size(), merged.getTotal(), (System.currentTimeMillis() - start));
+
+        return merged;
     }
 
     /**
-     * A concurrent task for computing the conditional probability of a Markov node.
+     * Builds the model from counts of N-Grams of its order, and computes its probabilities.
      */
-    protected class ComputeConditionalTask implements Callable<Void> {
-        private TreeNGram node;
-        private long parentCount;
-
-        /**
-         * @param node
-         *            the NGramIndexNode to set
-         * @param parentCount
-         *            the parentCount to set
-         */
-        public ComputeConditionalTask(TreeNGram node, long parentCount) {
-            this.node = node;
-            this.parentCount = parentCount;
+    public TreeMarkovModel buildModel(LetterNGramCounter counts) {
+        long start = System.currentTimeMillis();
+
+        // There is a node for every distinct n-gram, plus the comparatively few nodes for their prefixes
+        TreeMarkovModel letterMarkovModel = new TreeMarkovModel(this.order, counts.size() + 1);
+
+        counts.forEach((index, count) -> letterMarkovModel.addLetterTransition(counts.toNGram(index), count));
+
+        log.info("Built model of {} nodes in {}ms.", letterMarkovModel.size(), (System.currentTimeMillis() - start));
+
+        computeConditionalProbabilities(letterMarkovModel);
+
+        letterMarkovModel.normalize(order, counts.getTotal());
+
+        return letterMarkovModel;
+    }
+
+    protected LetterNGramCounter mergeCounters(List<LetterNGramCounter> counters) {
+        if (counters.isEmpty()) {
+            return new LetterNGramCounter(this.order);
         }
 
-        @Override
-        public Void call() {
-            computeConditionalProbability(this.node, this.parentCount);
+        LetterNGramCounter merged = counters.get(0);
 
-            return null;
+        for (int i = 1; i < counters.size(); i++) {
+            merged.merge(counters.get(i));
         }
 
-        protected void computeConditionalProbability(TreeNGram node, long parentCount) {
-            node.setConditionalProbability((double) node.getCount() / (double) parentCount);
-            node.setLogConditionalProbability(Math.log(node.getConditionalProbability()));
+        return merged;
+    }
 
-            Map<Character, TreeNGram> transitions = node.getTransitions();
+    public void computeConditionalProbabilities(TreeMarkovModel letterMarkovModel) {
+        long start = System.currentTimeMillis();
 
-            if (transitions == null || transitions.isEmpty()) {
-                return;
-            }
+        log.info("Starting calculation of conditional probabilities...");
 
-            for (Map.Entry<Character, TreeNGram> entry : transitions.entrySet()) {
-                computeConditionalProbability(entry.getValue(), node.getCount());
-            }
-        }
+        letterMarkovModel.computeConditionalProbabilities();
+
+        log.info("Finished calculating conditional probabilities in {}ms", (System.currentTimeMillis() - start));
     }
 
     /**
-     * A concurrent task for parsing a file into a Markov model.
+     * A concurrent task for counting the letter N-Grams of the files it takes from a list shared with the other tasks.
      */
-    protected class ParseFileTask implements Callable<ParseResults> {
-        private Path path;
-        private TreeMarkovModel letterMarkovModel;
+    protected class ParseFilesTask implements Callable<LetterNGramCounter> {
+        private List<Path> paths;
+        private AtomicInteger nextPath;
 
-        public ParseFileTask(Path path, TreeMarkovModel letterMarkovModel) {
-            this.path = path;
-            this.letterMarkovModel = letterMarkovModel;
+        public ParseFilesTask(List<Path> paths, AtomicInteger nextPath) {
+            this.paths = paths;
+            this.nextPath = nextPath;
         }
 
         @Override
-        public ParseResults call() {
-            log.debug("Importing file {}", this.path.toString());
-
-            int order = letterMarkovModel.getOrder();
-            long total = 0;
-            long unique = 0;
-
-            try {
-                String content = new String(Files.readAllBytes(this.path));
-                String sentence;
+        public LetterNGramCounter call() {
+            LetterNGramCounter counter = new LetterNGramCounter(order);
 
-                String[] sentences = content.split("(\n|\r|\r\n)+");
+            for (int i = this.nextPath.getAndIncrement(); i < this.paths.size(); i = this.nextPath.getAndIncrement()) {
+                Path path = this.paths.get(i);
 
-                for (int i = 0; i < sentences.length; i++) {
-                    sentence = (" " + sentences[i].replaceAll(NON_ALPHA_OR_SPACE, "").replaceAll("\\s+", " ").trim()
-                            + " ").toLowerCase();
+                log.debug("Importing file {}", path.toString());
 
-                    sentence = sentence.replaceAll(NON_ALPHA, "");
-
-                    if (sentence.trim().length() == 0) {
-                        continue;
-                    }
+                try (Reader reader = new InputStreamReader(Files.newInputStream(path), Charset.defaultCharset())) {
+                    countNGrams(reader, counter);
+                } catch (IOException ioe) {
+                    log.error("Unable to parse file: {}", path.toString(), ioe);
+                }
+            }
 
-                    for (int j = 0; j < sentence.length() - order; j++) {
-                        String nGramString = sentence.substring(j, j + order);
+            return counter;
+        }
+    }
 
-                        unique += (letterMarkovModel.addLetterTransition(nGramString) ? 1 : 0);
+    /**
+     * Streams the text through a fixed-size buffer and counts the letter N-Grams of each line as it goes.  Letters are
+     * lowercased, line breaks end a sentence, and all other characters are dropped, so N-Grams span words but not
+     * lines.  The last N-Gram of each line is not counted, as has always been the case for imported corpora.
+     */
+    protected void countNGrams(Reader reader, LetterNGramCounter counter) throws IOException {
+        int order = counter.getOrder();
+        char[] buffer = new char[BUFFER_SIZE];
+        long index = 0L;
+        int lineLength = 0;
+        int read;
+
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+
+                if (c >= 'A' && c <= 'Z') {
+                    c = (char) (c + ('a' - 'A'));
+                } else if (c == '\n' || c == '\r') {
+                    index = 0L;
+                    lineLength = 0;
+
+                    continue;
+                } else if (c < 'a' || c > 'z') {
+                    continue;
+                }
 
-                        total++;
-                    }
+                // The N-Gram ending at the previous letter is only counted once we know it is not the last on the line
+                if (lineLength >= order) {
+                    counter.increment(index);
                 }
-            } catch (IOException ioe) {
-                log.error("Unable to parse file: {}", this.path.toString(), ioe);
-            }
 
-            return new ParseResults(total, unique);
+                index = counter.rollIndex(index, c);
+                lineLength++;
+            }
         }
     }
 
-    protected List<FutureTask<ParseResults>> parseFiles(Path path, TreeMarkovModel letterMarkovModel) {
-        List<FutureTask<ParseResults>> tasks = new ArrayList<>();
-        FutureTask<ParseResults> task;
+    protected void collectCorpusFiles(Path path, List<Path> corpusFiles) {
         String filename;
 
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
             for (Path entry : stream) {
                 if (Files.isDirectory(entry)) {
-                    tasks.addAll(parseFiles(entry, letterMarkovModel));
+                    collectCorpusFiles(entry, corpusFiles);
                 } else {
                     filename = entry.toString();
                     String ext = filename.substring(filename.lastIndexOf('.'));
@@ -248,15 +264,11 @@ public class LetterNGramMarkovImporter {
                         continue;
                     }
 
-                    task = new FutureTask<>(new ParseFileTask(entry, letterMarkovModel));
-                    tasks.add(task);
-                    this.taskExecutor.execute(task);
+                    corpusFiles.add(entry);
                 }
             }
         } catch (IOException ioe) {
             log.error("Unable to parse files due to: {}", ioe.getMessage(), ioe);
         }
-
-        return tasks;
     }
 }
@@ -19,10 +19,16 @@
 
 package com.ciphertool.zenith.model.etl.persisters;
 
+import com.ciphertool.zenith.model.dao.ArrayMarkovModelDao;
+import com.ciphertool.zenith.model.dao.ImportManifestDao;
 import com.ciphertool.zenith.model.dao.LetterNGramDao;
+import com.ciphertool.zenith.model.entities.ImportedCorpusFile;
 import com.ciphertool.zenith.model.entities.TreeNGram;
 import com.ciphertool.zenith.model.etl.importers.LetterNGramMarkovImporter;
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import com.ciphertool.zenith.model.markov.TopNGramSelector;
 import com.ciphertool.zenith.model.markov.TreeMarkovModel;
+import com.ciphertool.zenith.model.markov.table.LetterNGramCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,9 +36,21 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
@@ -41,6 +59,9 @@ import java.util.concurrent.FutureTask;
 public class NGramPersister {
     private Logger log = LoggerFactory.getLogger(getClass());
 
+    // Enough to keep every thread busy while the oldest task is being waited on and written out
+    private static final int MAX_TASKS_IN_FLIGHT = Runtime.getRuntime().availableProcessors() * 4;
+
     @Autowired
     private TaskExecutor taskExecutor;
 
@@ -50,20 +71,65 @@ public class NGramPersister {
     @Autowired
     private LetterNGramDao letterNGramDao;
 
+    @Autowired
+    private ArrayMarkovModelDao arrayMarkovModelDao;
+
+    @Autowired
+    private ImportManifestDao importManifestDao;
+
     @Value("${ngram.persistence.batch-size}")
     private int batchSize;
 
+    @Value("${language-model.max-ngrams-to-keep}")
+    private int maxNGramsToKeep;
+
+    @Value("${language-model.incremental}")
+    private boolean incremental;
+
+    @Value("${markov.letter.order}")
+    private int order;
+
     public void persistNGrams() {
+        List<Path> corpusFiles = letterNGramMarkovImporter.findCorpusFiles();
+        List<ImportedCorpusFile> manifest = toManifest(corpusFiles);
+        LetterNGramCounter counts = null;
+
+        if (incremental && importManifestDao.exists()) {
+            List<Path> newFiles = findNewFiles(corpusFiles, manifest, importManifestDao.findAll());
+
+            if (newFiles != null && newFiles.isEmpty()) {
+                log.info("All {} corpus files have already been imported.  Nothing to do.", corpusFiles.size());
+
+                return;
+            }
+
+            if (newFiles != null) {
+                counts = findExistingCounts();
+            }
+
+            if (counts != null) {
+                log.info("Importing {} new corpus files into the existing language model.", newFiles.size());
+
+                counts.merge(letterNGramMarkovImporter.countNGrams(newFiles));
+            }
+        }
+
+        if (counts == null) {
+            counts = letterNGramMarkovImporter.countNGrams(corpusFiles);
+        }
+
+        TreeMarkovModel markovModel = letterNGramMarkovImporter.buildModel(counts);
+
         long startDelete = System.currentTimeMillis();
 
         log.info("Deleting all existing n-grams.");
 
+        // Without a manifest, an import which fails part way through is followed by a full rebuild
+        importManifestDao.deleteAll();
         letterNGramDao.deleteAll();
 
         log.info("Completed deletion of n-grams in {}ms.", (System.currentTimeMillis() - startDelete));
 
-        TreeMarkovModel markovModel = letterNGramMarkovImporter.importCorpus();
-
         long count = markovModel.size();
 
         log.info("Total nodes: {}", count);
@@ -72,69 +138,223 @@ public class NGramPersister {
 
         log.info("Starting persistence of n-grams.");
 
-        List<FutureTask<Void>> futures = new ArrayList<>(26);
-        FutureTask<Void> task;
+        persistNodes(markovModel);
 
-        for (Map.Entry<Character, TreeNGram> entry : (markovModel).getRootNode().getTransitions().entrySet()) {
-            if (entry.getValue() != null) {
-                task = new FutureTask<>(new PersistNodesTask(entry.getValue()));
-                futures.add(task);
-                this.taskExecutor.execute(task);
+        log.info("Completed persistence of n-grams in {}ms.", (System.currentTimeMillis() - startAdd));
+
+        arrayMarkovModelDao.save(toArrayMarkovModel(markovModel), maxNGramsToKeep);
+
+        importManifestDao.saveAll(manifest);
+    }
+
+    protected List<ImportedCorpusFile> toManifest(List<Path> corpusFiles) {
+        Path corpusDirectory = letterNGramMarkovImporter.getCorpusDirectory();
+        List<ImportedCorpusFile> manifest = new ArrayList<>(corpusFiles.size());
+
+        for (Path corpusFile : corpusFiles) {
+            String relativePath = corpusDirectory.relativize(corpusFile).toString().replace(File.separatorChar, '/');
+
+            try {
+                manifest.add(new ImportedCorpusFile(relativePath, Files.size(corpusFile), Files.getLastModifiedTime(corpusFile).toMillis()));
+            } catch (IOException ioe) {
+                log.error("Unable to read attributes of corpus file: {}.", corpusFile, ioe);
+                throw new IllegalStateException(ioe);
             }
         }
 
-        for (FutureTask<Void> future : futures) {
-            try {
-                future.get();
-            } catch (InterruptedException ie) {
-                log.error("Caught InterruptedException while waiting for PersistNodesTask ", ie);
-            } catch (ExecutionException ee) {
-                log.error("Caught ExecutionException while waiting for PersistNodesTask ", ee);
+        return manifest;
+    }
+
+    /**
+     * @return the corpus files which are not in the manifest of imported files, or null if any file in the manifest
+     *         has since been changed or removed, in which case its old counts cannot be taken back out of the model
+     */
+    protected List<Path> findNewFiles(List<Path> corpusFiles, List<ImportedCorpusFile> manifest, List<ImportedCorpusFile> imported) {
+        Map<String, ImportedCorpusFile> currentByPath = new HashMap<>();
+
+        for (ImportedCorpusFile current : manifest) {
+            currentByPath.put(current.getPath(), current);
+        }
+
+        Set<String> importedPaths = new HashSet<>();
+
+        for (ImportedCorpusFile importedFile : imported) {
+            ImportedCorpusFile current = currentByPath.get(importedFile.getPath());
+
+            if (current == null || !current.isUnchanged(importedFile)) {
+                log.warn("Corpus file {} has been changed or removed since it was imported.  Rebuilding the language model from the whole corpus.", importedFile.getPath());
+
+                return null;
             }
+
+            importedPaths.add(importedFile.getPath());
         }
 
-        log.info("Completed persistence of n-grams in {}ms.", (System.currentTimeMillis() - startAdd));
+        List<Path> newFiles = new ArrayList<>();
+
+        for (int i = 0; i < corpusFiles.size(); i++) {
+            if (!importedPaths.contains(manifest.get(i).getPath())) {
+                newFiles.add(corpusFiles.get(i));
+            }
+        }
+
+        return newFiles;
     }
 
-    protected List<TreeNGram> persistNodes(TreeNGram node) {
-        List<TreeNGram> nGrams = new ArrayList<>();
+    /**
+     * @return the counts of the highest order N-Grams in the existing language model, or null if there is no model of
+     *         the configured order to add to
+     */
+    protected LetterNGramCounter findExistingCounts() {
+        if (!letterNGramDao.exists()) {
+            log.warn("Language model file not found.  Rebuilding the language model from the whole corpus.");
 
-        nGrams.add(node);
+            return null;
+        }
 
-        for (Map.Entry<Character, TreeNGram> entry : node.getTransitions().entrySet()) {
-            nGrams.addAll(persistNodes(entry.getValue()));
+        LetterNGramCounter counts = new LetterNGramCounter(order);
+        int maxOrder = 0;
 
-            if (nGrams.size() >= batchSize) {
-                letterNGramDao.addAll(nGrams);
+        for (TreeNGram nGram : letterNGramDao.findAll()) {
+            maxOrder = Math.max(maxOrder, nGram.getOrder());
 
-                nGrams = new ArrayList<>();
+            if (nGram.getOrder() == order) {
+                counts.increment(counts.computeIndex(nGram.getCumulativeString(), 0), nGram.getCount());
             }
         }
 
-        return nGrams;
+        if (maxOrder != order) {
+            log.warn("Existing language model is of order {} rather than {}.  Rebuilding the language model from the whole corpus.", maxOrder, order);
+
+            return null;
+        }
+
+        return counts;
+    }
+
+    protected ArrayMarkovModel toArrayMarkovModel(TreeMarkovModel markovModel) {
+        ArrayMarkovModel arrayMarkovModel = new ArrayMarkovModel(markovModel.getOrder());
+
+        TopNGramSelector highestOrderNodes = new TopNGramSelector(maxNGramsToKeep);
+
+        for (int node = 1; node < markovModel.size(); node++) {
+            if (markovModel.getDepth(node) == 1) {
+                arrayMarkovModel.addNode(markovModel.toTreeNGram(node));
+            } else if (markovModel.getDepth(node) == markovModel.getOrder()) {
+                // Offered by array index rather than node id, so that ties are broken the same way as when loading the n-gram list
+                long arrayIndex = ArrayMarkovModel.computeArrayIndex(markovModel.getCumulativeString(node), markovModel.getOrder());
+                highestOrderNodes.offer(arrayIndex, markovModel.getCount(node), (float) markovModel.getLogProbability(node));
+            }
+        }
+
+        highestOrderNodes.forEach((arrayIndex, count, logProbability) -> arrayMarkovModel.addNGram(arrayIndex, logProbability));
+
+        return arrayMarkovModel;
     }
 
     /**
-     * A concurrent task for computing the conditional probability of a Markov node.
+     * Serializes the model's nodes in parallel and appends them to the model file in pre-order from this thread alone,
+     * so the file is opened once and its contents do not depend on thread scheduling.  Each task serializes one
+     * second-order subtree, and only a bounded window of them is in flight at a time to bound memory use.
      */
-    protected class PersistNodesTask implements Callable<Void> {
-        private TreeNGram node;
+    protected void persistNodes(TreeMarkovModel markovModel) {
+        List<SerializeNodesTask> tasks = new ArrayList<>();
+
+        for (int firstOrderNode = markovModel.getFirstChild(TreeMarkovModel.ROOT_NODE); firstOrderNode != TreeMarkovModel.NO_NODE; firstOrderNode = markovModel.getNextSibling(firstOrderNode)) {
+            tasks.add(new SerializeNodesTask(markovModel, firstOrderNode, false));
+
+            for (int child = markovModel.getFirstChild(firstOrderNode); child != TreeMarkovModel.NO_NODE; child = markovModel.getNextSibling(child)) {
+                tasks.add(new SerializeNodesTask(markovModel, child, true));
+            }
+        }
+
+        Deque<FutureTask<byte[]>> futures = new ArrayDeque<>();
+        int nextTask = 0;
+
+        try (FileChannel channel = letterNGramDao.openForAppend()) {
+            while (nextTask < tasks.size() || !futures.isEmpty()) {
+                while (nextTask < tasks.size() && futures.size() < MAX_TASKS_IN_FLIGHT) {
+                    FutureTask<byte[]> task = new FutureTask<>(tasks.get(nextTask));
+                    futures.addLast(task);
+                    this.taskExecutor.execute(task);
+                    nextTask++;
+                }
+
+                ByteBuffer csv = ByteBuffer.wrap(futures.removeFirst().get());
+
+                while (csv.hasRemaining()) {
+                    channel.write(csv);
+                }
+            }
+        } catch (IOException ioe) {
+            log.error("Unable to write n-grams to the language model file.", ioe);
+            throw new IllegalStateException(ioe);
+        } catch (InterruptedException ie) {
+            log.error("Caught InterruptedException while waiting for SerializeNodesTask ", ie);
+            throw new IllegalStateException(ie);
+        } catch (ExecutionException ee) {
+            log.error("Caught ExecutionException while waiting for SerializeNodesTask ", ee);
+            throw new IllegalStateException(ee);
+        }
+    }
+
+    /**
+     * A concurrent task for serializing a node, and optionally all of its descendants, in pre-order.
+     */
+    protected class SerializeNodesTask implements Callable<byte[]> {
+        private TreeMarkovModel markovModel;
+        private int node;
+        private boolean includeDescendants;
+        private List<TreeNGram> batch = new ArrayList<>();
+        private ByteArrayOutputStream csv = new ByteArrayOutputStream();
 
         /**
+         * @param markovModel
+         *            the model the node belongs to
          * @param node
-         *            the root node
+         *            the id of the node
+         * @param includeDescendants
+         *            whether to serialize the node's descendants too
          */
-        public PersistNodesTask(TreeNGram node) {
+        public SerializeNodesTask(TreeMarkovModel markovModel, int node, boolean includeDescendants) {
+            this.markovModel = markovModel;
             this.node = node;
+            this.includeDescendants = includeDescendants;
         }
 
         @Override
-        public Void call() {
-            List<TreeNGram> nGrams = persistNodes(node);
+        public byte[] call() throws IOException {
+            if (includeDescendants) {
+                serialize(node);
+            } else {
+                batch.add(markovModel.toTreeNGram(node));
+            }
 
-            letterNGramDao.addAll(nGrams);
+            flush();
 
-            return null;
+            return csv.toByteArray();
+        }
+
+        protected void serialize(int node) throws IOException {
+            batch.add(markovModel.toTreeNGram(node));
+
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+
+            for (int child = markovModel.getFirstChild(node); child != TreeMarkovModel.NO_NODE; child = markovModel.getNextSibling(child)) {
+                serialize(child);
+            }
+        }
+
+        protected void flush() throws IOException {
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            csv.write(letterNGramDao.toCsv(batch));
+
+            batch.clear();
         }
     }
 }
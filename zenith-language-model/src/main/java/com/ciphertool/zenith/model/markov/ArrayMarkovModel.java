@@ -19,27 +19,119 @@
 
 package com.ciphertool.zenith.model.markov;
 
+import com.ciphertool.zenith.model.LanguageConstants;
 import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.ciphertool.zenith.model.markov.table.DenseNGramTable;
+import com.ciphertool.zenith.model.markov.table.HashedNGramTable;
+import com.ciphertool.zenith.model.markov.table.NGramTable;
+import com.ciphertool.zenith.model.markov.table.NGramTables;
 
-import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class ArrayMarkovModel {
-    private static final int FOURTH_POWER = 26 * 26 * 26 * 26;
-    private static final int THIRD_POWER = 26 * 26 * 26;
-    private static final int SECOND_POWER = 26 * 26;
+    public static final int MIN_ORDER = 2;
+    public static final int MAX_ORDER = 7;
+
+    // Beyond this many possible n-grams (about 47MB of floats), a hash table of only the known n-grams is smaller
+    private static final long MAX_DENSE_CAPACITY = 26L * 26 * 26 * 26 * 26;
+    private static final int INITIAL_HASHED_SIZE = 1 << 20;
     private static final int ASCII_OFFSET = 97;
-    private AtomicInteger totalNodes = new AtomicInteger(0);
+    private static final int RADIX = LanguageConstants.LOWERCASE_LETTERS_SIZE;
+
     private int order;
+    // The place value of the first letter of an n-gram, i.e. 26^(order - 1)
+    private long highestPlaceValue;
     private float unknownLetterNGramProbability;
     private float unknownLetterNGramLogProbability;
+    // The weight unknown n-grams were backed off with by StupidBackOff, or zero if they were not
+    private float backOffWeight;
+    // The n-grams added from the n-gram list, which unlike the size of the table excludes any filled in by back-off
+    private int knownNGramCount;
     private List<TreeNGram> firstOrderNodes = new ArrayList<>();
-    private float[] nGramLogProbabilities = new float[26 * 26 * 26 * 26 * 26];
+    private NGramTable nGramLogProbabilities;
 
     public ArrayMarkovModel(int order) {
+        this(order, createTable(order));
+    }
+
+    public ArrayMarkovModel(int order, NGramTable nGramLogProbabilities) {
+        validateOrder(order);
+
         this.order = order;
+        this.highestPlaceValue = possibleNGramCount(order - 1);
+        this.nGramLogProbabilities = nGramLogProbabilities;
+        this.knownNGramCount = nGramLogProbabilities.size();
+    }
+
+    /**
+     * Picks a dense array when there are few enough possible n-grams of the given order, and a hash table otherwise.
+     */
+    public static NGramTable createTable(int order) {
+        validateOrder(order);
+
+        if (isDense(order)) {
+            return new DenseNGramTable((int) possibleNGramCount(order));
+        }
+
+        return new HashedNGramTable(INITIAL_HASHED_SIZE);
+    }
+
+    /**
+     * @param quantizationBits
+     *            the number of bits to quantize the log probabilities to, or zero to keep them as floats
+     * @param perfectHash
+     *            whether to keep only the known n-grams under a minimal perfect hash
+     * @return a copy of this model with its n-gram table converted as described by NGramTables.compact(), or this
+     *         model itself if neither option is requested
+     * @throws IllegalArgumentException
+     *             if a perfect hash is requested for a backed-off model, which has a value for every possible n-gram
+     */
+    public ArrayMarkovModel compact(int quantizationBits, boolean perfectHash) {
+        if (perfectHash && backOffWeight > 0f) {
+            throw new IllegalArgumentException("A perfect hash only pays off over the known n-grams, but the model was "
+                    + "backed off with weight " + backOffWeight + " so it has a value for every possible n-gram.");
+        }
+
+        NGramTable compacted = NGramTables.compact(nGramLogProbabilities, possibleNGramCount(order), quantizationBits, perfectHash);
 
-        Arrays.fill(nGramLogProbabilities, -1f);
+        if (compacted == nGramLogProbabilities) {
+            return this;
+        }
+
+        ArrayMarkovModel compactModel = new ArrayMarkovModel(order, compacted);
+        compactModel.firstOrderNodes.addAll(firstOrderNodes);
+        compactModel.unknownLetterNGramProbability = unknownLetterNGramProbability;
+        compactModel.unknownLetterNGramLogProbability = unknownLetterNGramLogProbability;
+        compactModel.backOffWeight = backOffWeight;
+        compactModel.knownNGramCount = knownNGramCount;
+
+        return compactModel;
+    }
+
+    public static boolean isDense(int order) {
+        return possibleNGramCount(order) <= MAX_DENSE_CAPACITY;
+    }
+
+    private static void validateOrder(int order) {
+        if (order < MIN_ORDER || order > MAX_ORDER) {
+            throw new IllegalArgumentException("Markov order must be between " + MIN_ORDER + " and " + MAX_ORDER
+                    + " inclusive, but was " + order + ".");
+        }
+    }
+
+    /**
+     * @return the number of distinct n-grams of the given order, i.e. 26^order
+     */
+    public static long possibleNGramCount(int order) {
+        long result = 1L;
+
+        for (int i = 0; i < order; i ++) {
+            result *= RADIX;
+        }
+
+        return result;
     }
 
     public long getTotalNGramCount() {
@@ -48,14 +140,32 @@ public class ArrayMarkovModel {
                 .sum();
     }
 
+    /**
+     * @return the number of n-grams with a value in the table, including any filled in by back-off
+     */
     public int getMapSize() {
-        return totalNodes.get();
+        return nGramLogProbabilities.size();
+    }
+
+    /**
+     * @return the number of n-grams added from the n-gram list, excluding any filled in by back-off
+     */
+    public int getKnownNGramCount() {
+        return knownNGramCount;
+    }
+
+    public void setKnownNGramCount(int knownNGramCount) {
+        this.knownNGramCount = knownNGramCount;
     }
 
     public List<TreeNGram> getFirstOrderNodes() {
         return Collections.unmodifiableList(firstOrderNodes);
     }
 
+    public NGramTable getNGramTable() {
+        return nGramLogProbabilities;
+    }
+
     public void addNode(TreeNGram nodeToAdd) {
         if (nodeToAdd.getCumulativeString().length() == 1) {
             firstOrderNodes.add(nodeToAdd);
@@ -65,30 +175,82 @@ public class ArrayMarkovModel {
     }
 
     private void addToNDArray(TreeNGram treeNGram) {
-        String ngram = treeNGram.getCumulativeString();
+        addNGram(computeArrayIndex(treeNGram.getCumulativeString()), (float) treeNGram.getLogProbability());
+    }
+
+    /**
+     * Adds an n-gram of this model's order by its array index, which spares loaders a TreeNGram per n-gram.
+     */
+    public void addNGram(long arrayIndex, float logProbability) {
+        if (nGramLogProbabilities.get(arrayIndex) != NGramTable.NOT_FOUND) {
+            throw new IllegalStateException("Unable to add the same ngram twice='" + toNGram(arrayIndex) + "'.");
+        }
+
+        nGramLogProbabilities.put(arrayIndex, logProbability);
+        knownNGramCount ++;
+    }
 
-        int arrayIndex = computeArrayIndex(ngram);
+    private String toNGram(long arrayIndex) {
+        char[] letters = new char[order];
 
-        if(nGramLogProbabilities[arrayIndex] != -1f) {
-            throw new IllegalStateException("Unable to add the same ngram twice='" + ngram + "'.");
+        for (int i = order - 1; i >= 0; i --) {
+            letters[i] = (char) ((arrayIndex % RADIX) + ASCII_OFFSET);
+            arrayIndex /= RADIX;
         }
 
-        totalNodes.incrementAndGet();
-        nGramLogProbabilities[arrayIndex] = (float) treeNGram.getLogProbability();
+        return new String(letters);
     }
 
     public float findExact(String ngram) {
-        return nGramLogProbabilities[computeArrayIndex(ngram)];
+        return nGramLogProbabilities.get(computeArrayIndex(ngram));
     }
 
-    public int computeArrayIndex(String ngram) {
-        int i = ((ngram.charAt(0) - ASCII_OFFSET) * FOURTH_POWER);
-        int j = ((ngram.charAt(1) - ASCII_OFFSET) * THIRD_POWER);
-        int k = ((ngram.charAt(2) - ASCII_OFFSET) * SECOND_POWER);
-        int l = ((ngram.charAt(3) - ASCII_OFFSET) * 26);
-        int m = (ngram.charAt(4) - ASCII_OFFSET);
+    /**
+     * @return the log probability of the n-gram with the given array index, or -1 if it is unknown
+     */
+    public float findExact(long arrayIndex) {
+        return nGramLogProbabilities.get(arrayIndex);
+    }
 
-        return i + j + k + l + m;
+    /**
+     * Interprets the first {@code order} letters of the n-gram as a base-26 number.
+     */
+    public long computeArrayIndex(CharSequence ngram) {
+        return computeArrayIndex(ngram, order);
+    }
+
+    /**
+     * Interprets the first {@code order} letters of the n-gram as a base-26 number, for callers without a model.
+     */
+    public static long computeArrayIndex(CharSequence ngram, int order) {
+        long index = 0L;
+
+        for (int i = 0; i < order; i ++) {
+            index = (index * RADIX) + (ngram.charAt(i) - ASCII_OFFSET);
+        }
+
+        return index;
+    }
+
+    /**
+     * Interprets the {@code order} letters starting at the given offset as a base-26 number, without copying them.
+     */
+    public long computeArrayIndex(char[] plaintext, int offset) {
+        long index = 0L;
+
+        for (int i = offset; i < offset + order; i ++) {
+            index = (index * RADIX) + (plaintext[i] - ASCII_OFFSET);
+        }
+
+        return index;
+    }
+
+    /**
+     * Computes the array index of the n-gram one letter to the right of the n-gram with the given array index, i.e.
+     * drops its first letter and appends the next one.
+     */
+    public long rollArrayIndex(long arrayIndex, char next) {
+        return ((arrayIndex % highestPlaceValue) * RADIX) + (next - ASCII_OFFSET);
     }
 
     public int getOrder() {
@@ -110,4 +272,12 @@ public class ArrayMarkovModel {
     public void setUnknownLetterNGramLogProbability(float unknownLetterNGramLogProbability) {
         this.unknownLetterNGramLogProbability = unknownLetterNGramLogProbability;
     }
+
+    public float getBackOffWeight() {
+        return backOffWeight;
+    }
+
+    public void setBackOffWeight(float backOffWeight) {
+        this.backOffWeight = backOffWeight;
+    }
 }
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov;
+
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.ciphertool.zenith.model.markov.table.NGramTable;
+
+/**
+ * Fills in every n-gram which a model does not know with a "stupid back-off" score built from the counts of the lower
+ * orders, so that unseen n-grams are still told apart while lookups stay a single array read.
+ *
+ * The score of an unknown n-gram w1..wn is the score of its prefix w1..wn-1 times the back-off weight times the
+ * conditional probability of wn given w2..wn-1, which itself backs off to shorter contexts with the same weight
+ * whenever it is unknown.  Scores are not normalized, as is usual for stupid back-off.  Every lower-order table has a
+ * slot for each possible n-gram, so filling the model is linear in its possible n-grams, which is why only dense
+ * orders are supported.
+ *
+ * This class is not thread-safe.  It is filled by a single thread, after which it is applied to a single model.
+ */
+public class StupidBackOff {
+    public static final float DEFAULT_WEIGHT = 0.4f;
+
+    private static final int RADIX = 26;
+    private static final int ASCII_OFFSET = 97;
+
+    private final int order;
+    private final float weight;
+    // The counts of the n-grams of each lower order by array index, where counts[0] is unused
+    private final long[][] counts;
+
+    public StupidBackOff(int order, float weight) {
+        if (!ArrayMarkovModel.isDense(order)) {
+            throw new IllegalArgumentException("Back-off is only supported for Markov orders whose n-grams are stored "
+                    + "densely, but the order was " + order + ".");
+        }
+
+        if (weight <= 0f || weight > 1f) {
+            throw new IllegalArgumentException("Back-off weight must be greater than 0 and at most 1, but was "
+                    + weight + ".");
+        }
+
+        this.order = order;
+        this.weight = weight;
+        this.counts = new long[order][];
+
+        for (int i = 1; i < order; i ++) {
+            counts[i] = new long[(int) ArrayMarkovModel.possibleNGramCount(i)];
+        }
+    }
+
+    /**
+     * Records the count of an n-gram of a lower order than the model's.  N-grams of other orders are ignored, as are
+     * those with letters outside of a-z.
+     */
+    public void addNode(TreeNGram node) {
+        String nGram = node.getCumulativeString();
+
+        if (nGram == null || nGram.isEmpty() || nGram.length() >= order) {
+            return;
+        }
+
+        int index = 0;
+
+        for (int i = 0; i < nGram.length(); i ++) {
+            int letter = nGram.charAt(i) - ASCII_OFFSET;
+
+            if (letter < 0 || letter >= RADIX) {
+                return;
+            }
+
+            index = (index * RADIX) + letter;
+        }
+
+        counts[nGram.length()][index] = node.getCount();
+    }
+
+    /**
+     * Puts a back-off score into the model's table for each of its unknown n-grams, and records the weight in the
+     * model.
+     *
+     * @return the number of n-grams filled in
+     */
+    public long apply(ArrayMarkovModel model) {
+        if (model.getOrder() != order) {
+            throw new IllegalArgumentException("Back-off was built for order " + order + " but the model is of order "
+                    + model.getOrder() + ".");
+        }
+
+        float logWeight = (float) Math.log(weight);
+
+        // The score of each n-gram as a prefix, i.e. its log probability, and as a suffix, i.e. the log probability of
+        // its last letter given the rest, starting with the letters, which were all seen or are as likely as the
+        // model's unknown n-grams
+        float[] prefixScores = new float[RADIX];
+        double unigramTotal = total(counts[1]);
+
+        for (int index = 0; index < RADIX; index ++) {
+            prefixScores[index] = (float) Math.log(Math.max(counts[1][index], 1L) / unigramTotal);
+        }
+
+        float[] suffixScores = prefixScores;
+
+        for (int k = 2; k < order; k ++) {
+            long[] orderCounts = counts[k];
+            long[] lowerCounts = counts[k - 1];
+            double total = total(orderCounts);
+            float[] nextPrefixScores = new float[orderCounts.length];
+            float[] nextSuffixScores = new float[orderCounts.length];
+
+            for (int index = 0; index < orderCounts.length; index ++) {
+                long count = orderCounts[index];
+                int prefix = index / RADIX;
+                float backedOff = logWeight + suffixScores[index % lowerCounts.length];
+
+                nextPrefixScores[index] = count > 0L ? (float) Math.log(count / total) : prefixScores[prefix] + backedOff;
+                nextSuffixScores[index] = count > 0L && lowerCounts[prefix] > 0L ? (float) Math.log((double) count / (double) lowerCounts[prefix]) : backedOff;
+            }
+
+            prefixScores = nextPrefixScores;
+            suffixScores = nextSuffixScores;
+        }
+
+        NGramTable table = model.getNGramTable();
+        long possibleNGrams = ArrayMarkovModel.possibleNGramCount(order);
+        int lowerSize = counts[order - 1].length;
+        long filled = 0L;
+
+        for (long index = 0L; index < possibleNGrams; index ++) {
+            if (table.get(index) != NGramTable.NOT_FOUND) {
+                continue;
+            }
+
+            table.put(index, prefixScores[(int) (index / RADIX)] + logWeight + suffixScores[(int) (index % lowerSize)]);
+            filled ++;
+        }
+
+        model.setBackOffWeight(weight);
+
+        return filled;
+    }
+
+    private static double total(long[] orderCounts) {
+        long total = 0L;
+
+        for (long count : orderCounts) {
+            total += count;
+        }
+
+        return Math.max(total, 1L);
+    }
+}
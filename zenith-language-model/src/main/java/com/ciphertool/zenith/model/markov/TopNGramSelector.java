@@ -0,0 +1,184 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the n-grams with the highest counts out of all those offered to it, up to a limit, without holding or sorting
+ * the rest.  The kept n-grams form a binary min-heap in parallel primitive arrays, so the least frequent of them is
+ * always at the root, ready to be displaced.
+ *
+ * N-grams with equal counts are ranked by their array index (see ArrayMarkovModel.computeArrayIndex()), lowest first,
+ * i.e. alphabetically, so the selection does not depend on the order they are offered in.  Callers must therefore offer
+ * the array index of each n-gram, not some other key such as its position in a list or tree.  Note that this is not
+ * the same as a stable sort of the n-gram list by count, which would break ties by their order in the file instead.
+ *
+ * This class is not thread-safe.  Parallel readers each fill their own selector and then merge them.
+ */
+public class TopNGramSelector {
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final int limit;
+    private int size;
+    private long[] indices;
+    private long[] counts;
+    private float[] logProbabilities;
+
+    public TopNGramSelector(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("The number of n-grams to keep must not be negative, but was " + limit + ".");
+        }
+
+        this.limit = limit;
+
+        int capacity = Math.min(limit, INITIAL_CAPACITY);
+
+        indices = new long[capacity];
+        counts = new long[capacity];
+        logProbabilities = new float[capacity];
+    }
+
+    /**
+     * @return whether the n-gram is kept, at least until more frequent n-grams displace it
+     */
+    public boolean offer(long index, long count, float logProbability) {
+        if (size < limit) {
+            if (size == indices.length) {
+                grow();
+            }
+
+            set(size, index, count, logProbability);
+            siftUp(size ++);
+
+            return true;
+        }
+
+        if (limit == 0 || !isLess(counts[0], indices[0], count, index)) {
+            return false;
+        }
+
+        set(0, index, count, logProbability);
+        siftDown(0);
+
+        return true;
+    }
+
+    /**
+     * Offers every n-gram kept by the other selector to this one.
+     */
+    public void merge(TopNGramSelector other) {
+        for (int i = 0; i < other.size; i ++) {
+            offer(other.indices[i], other.counts[i], other.logProbabilities[i]);
+        }
+    }
+
+    /**
+     * Calls the consumer with each kept n-gram, in no particular order.
+     */
+    public void forEach(NGramConsumer consumer) {
+        for (int i = 0; i < size; i ++) {
+            consumer.accept(indices[i], counts[i], logProbabilities[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Whether the first n-gram ranks below the second.
+     */
+    private static boolean isLess(long count, long index, long otherCount, long otherIndex) {
+        return count < otherCount || (count == otherCount && index > otherIndex);
+    }
+
+    private boolean isLess(int i, int j) {
+        return isLess(counts[i], indices[i], counts[j], indices[j]);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+
+            if (!isLess(i, parent)) {
+                return;
+            }
+
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int least = i;
+            int left = (i << 1) + 1;
+            int right = left + 1;
+
+            if (left < size && isLess(left, least)) {
+                least = left;
+            }
+
+            if (right < size && isLess(right, least)) {
+                least = right;
+            }
+
+            if (least == i) {
+                return;
+            }
+
+            swap(i, least);
+            i = least;
+        }
+    }
+
+    private void set(int i, long index, long count, float logProbability) {
+        indices[i] = index;
+        counts[i] = count;
+        logProbabilities[i] = logProbability;
+    }
+
+    private void swap(int i, int j) {
+        long index = indices[i];
+        long count = counts[i];
+        float logProbability = logProbabilities[i];
+
+        set(i, indices[j], counts[j], logProbabilities[j]);
+        set(j, index, count, logProbability);
+    }
+
+    private void grow() {
+        int capacity = (int) Math.min(limit, (long) indices.length + (indices.length >> 1) + 1);
+
+        indices = Arrays.copyOf(indices, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        logProbabilities = Arrays.copyOf(logProbabilities, capacity);
+    }
+
+    @FunctionalInterface
+    public interface NGramConsumer {
+        void accept(long index, long count, float logProbability);
+    }
+}
@@ -20,73 +20,105 @@
 package com.ciphertool.zenith.model.markov;
 
 import com.ciphertool.zenith.model.entities.TreeNGram;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.core.task.TaskExecutor;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.FutureTask;
+import java.util.Arrays;
 
+/**
+ * A trie of letter n-gram counts and probabilities.  Nodes are ids into parallel primitive arrays rather than objects,
+ * and the children of each node form a singly-linked list in alphabetical order, so a node costs a few dozen bytes
+ * and no allocations beyond the occasional array resize.
+ *
+ * This class is not thread-safe.  Models are built by a single thread, and may be read concurrently afterwards.
+ */
 public class TreeMarkovModel {
-    private Logger log = LoggerFactory.getLogger(getClass());
+    public static final int ROOT_NODE = 0;
+    public static final int NO_NODE = -1;
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
 
-    private TreeNGram rootNode = new TreeNGram("");
     private Integer order;
     private Double unknownLetterNGramProbability;
     private Double unknownLetterNGramLogProbability;
 
+    private int nodeCount;
+    private char[] letters;
+    private byte[] depths;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private long[] counts;
+    private double[] probabilities;
+    private double[] logProbabilities;
+    private double[] conditionalProbabilities;
+    private double[] logConditionalProbabilities;
+
     public TreeMarkovModel(int order) {
-        this.order = order;
+        this(order, INITIAL_CAPACITY);
     }
 
-    public void addNode(TreeNGram nodeToAdd) {
-        if (nodeToAdd.getCumulativeString() == null || nodeToAdd.getCumulativeString().length() == 0) {
-            // This is the root node
+    /**
+     * @param expectedNodes
+     *            the number of nodes to allocate room for up front, including the root node
+     */
+    public TreeMarkovModel(int order, int expectedNodes) {
+        this.order = order;
 
-            rootNode.setCount(nodeToAdd.getCount());
-            rootNode.setConditionalProbability(nodeToAdd.getConditionalProbability());
-            rootNode.setProbability(nodeToAdd.getProbability());
-            rootNode.setLogConditionalProbability(nodeToAdd.getLogConditionalProbability());
-            rootNode.setLogProbability(nodeToAdd.getLogProbability());
+        allocate(Math.max(expectedNodes, 1));
 
-            return;
-        }
+        nodeCount = 1;
+        depths[ROOT_NODE] = 0;
+        parents[ROOT_NODE] = NO_NODE;
+        firstChildren[ROOT_NODE] = NO_NODE;
+        nextSiblings[ROOT_NODE] = NO_NODE;
+    }
 
-        boolean succeeded = populateExistingNode(rootNode, nodeToAdd, 1);
+    /**
+     * Adds a node which was already counted, such as one read back from the n-gram list.
+     *
+     * @throws IllegalStateException
+     *             if the node already has a count, i.e. it was added before
+     */
+    public void addNode(TreeNGram nodeToAdd) {
+        String nGramString = nodeToAdd.getCumulativeString();
+        int node = ROOT_NODE;
 
-        if (!succeeded) {
-            throw new IllegalStateException("Could not add node to Markov Model: " + nodeToAdd);
+        if (nGramString != null) {
+            for (int i = 0; i < nGramString.length(); i++) {
+                node = findOrAddChild(node, nGramString.charAt(i));
+            }
         }
-    }
-
-    protected boolean populateExistingNode(TreeNGram parentNode, TreeNGram nodeToAdd, int order) {
-        TreeNGram newChild = parentNode.addExistingNodeAsync(nodeToAdd, order);
 
-        if (order < nodeToAdd.getCumulativeString().length()) {
-            return populateExistingNode(newChild, nodeToAdd, order + 1);
-        } else if (newChild != null) {
-            return false;
+        if (counts[node] != 0L) {
+            throw new IllegalStateException("Could not add node to Markov Model: " + nGramString);
         }
 
-        return true;
+        counts[node] = nodeToAdd.getCount();
+        probabilities[node] = nodeToAdd.getProbability();
+        logProbabilities[node] = nodeToAdd.getLogProbability();
+        conditionalProbabilities[node] = nodeToAdd.getConditionalProbability();
+        logConditionalProbabilities[node] = nodeToAdd.getLogConditionalProbability();
     }
 
     public boolean addLetterTransition(String nGramString) {
-        return populateLetterNode(rootNode, nGramString, 1);
+        return addLetterTransition(nGramString, 1L);
     }
 
-    protected boolean populateLetterNode(TreeNGram currentNode, String nGramString, Integer order) {
-        boolean isNew = currentNode.addOrIncrementChildAsync(nGramString, order);
+    /**
+     * Adds an n-gram which was seen the given number of times, incrementing each of its prefixes by the same amount.
+     *
+     * @return whether the n-gram is of this model's order and had not been seen before
+     */
+    public boolean addLetterTransition(String nGramString, long count) {
+        int node = ROOT_NODE;
+        int sizeBefore = nodeCount;
 
-        if (order < nGramString.length()) {
-            return populateLetterNode(currentNode.getChild(nGramString.charAt(order - 1)), nGramString, order + 1);
+        for (int i = 0; i < nGramString.length(); i++) {
+            node = findOrAddChild(node, nGramString.charAt(i));
+            counts[node] += count;
         }
 
-        return isNew && order == this.order;
+        // Nodes are only ever appended, so the n-gram is new exactly when its node was appended by this call
+        return node >= sizeBefore && nGramString.length() == this.order;
     }
 
     /**
@@ -95,45 +127,123 @@ public class TreeMarkovModel {
      * @return the exact matching NGramIndexNode
      */
     public TreeNGram findExact(String nGram) {
-        return findExactMatch(rootNode, nGram);
+        int node = findExactNode(nGram);
+
+        return node == NO_NODE ? null : toTreeNGram(node);
     }
 
-    protected static TreeNGram findExactMatch(TreeNGram node, String nGramString) {
-        TreeNGram nextNode = node.getChild(nGramString.charAt(0));
+    /**
+     * @return the id of the node for the given n-gram, or NO_NODE if there is none
+     */
+    public int findExactNode(CharSequence nGram) {
+        int node = ROOT_NODE;
 
-        if (nextNode == null) {
-            return null;
-        }
+        for (int i = 0; i < nGram.length(); i++) {
+            node = findChild(node, nGram.charAt(i));
 
-        if (nGramString.length() == 1) {
-            return nextNode;
+            if (node == NO_NODE) {
+                return NO_NODE;
+            }
         }
 
-        return findExactMatch(nextNode, nGramString.substring(1));
+        return node == ROOT_NODE ? NO_NODE : node;
     }
 
     public TreeNGram findLongest(String nGram) {
-        return findLongestMatch(rootNode, nGram, null);
+        int node = findLongestNode(nGram);
+
+        return node == NO_NODE ? null : toTreeNGram(node);
     }
 
-    protected static TreeNGram findLongestMatch(TreeNGram node, String nGramString, TreeNGram longestMatch) {
-        TreeNGram nextNode = node.getChild(nGramString.charAt(0));
+    /**
+     * @return the id of the node for the longest known prefix of the given n-gram, or NO_NODE if even its first
+     *         letter is unknown
+     */
+    public int findLongestNode(CharSequence nGram) {
+        int node = ROOT_NODE;
+
+        for (int i = 0; i < nGram.length(); i++) {
+            int child = findChild(node, nGram.charAt(i));
 
-        if (nextNode == null) {
-            return longestMatch;
+            if (child == NO_NODE) {
+                break;
+            }
+
+            node = child;
         }
 
-        longestMatch = nextNode;
+        return node == ROOT_NODE ? NO_NODE : node;
+    }
 
-        if (nGramString.length() == 1) {
-            return longestMatch;
+    /**
+     * @return the id of the child of the given node for the given letter, or NO_NODE if there is none
+     */
+    public int findChild(int node, char letter) {
+        for (int child = firstChildren[node]; child != NO_NODE && letters[child] <= letter; child = nextSiblings[child]) {
+            if (letters[child] == letter) {
+                return child;
+            }
         }
 
-        return findLongestMatch(nextNode, nGramString.substring(1), longestMatch);
+        return NO_NODE;
     }
 
-    public TreeNGram getRootNode() {
-        return rootNode;
+    /**
+     * @return the id of the alphabetically first child of the given node, or NO_NODE if it has no children
+     */
+    public int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    /**
+     * @return the id of the alphabetically next child of the given node's parent, or NO_NODE if it is the last one
+     */
+    public int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public char getLetter(int node) {
+        return letters[node];
+    }
+
+    /**
+     * @return the length of the n-gram the given node represents
+     */
+    public int getDepth(int node) {
+        return depths[node];
+    }
+
+    public long getCount(int node) {
+        return counts[node];
+    }
+
+    public double getLogProbability(int node) {
+        return logProbabilities[node];
+    }
+
+    public String getCumulativeString(int node) {
+        char[] nGram = new char[depths[node]];
+
+        for (int current = node; current != ROOT_NODE; current = parents[current]) {
+            nGram[depths[current] - 1] = letters[current];
+        }
+
+        return new String(nGram);
+    }
+
+    /**
+     * @return a detached copy of the given node, as stored by LetterNGramDao
+     */
+    public TreeNGram toTreeNGram(int node) {
+        TreeNGram nGram = new TreeNGram(getCumulativeString(node));
+
+        nGram.setCount(counts[node]);
+        nGram.setProbability(probabilities[node]);
+        nGram.setLogProbability(logProbabilities[node]);
+        nGram.setConditionalProbability(conditionalProbabilities[node]);
+        nGram.setLogConditionalProbability(logConditionalProbabilities[node]);
+
+        return nGram;
     }
 
     public Integer getOrder() {
@@ -160,108 +270,126 @@ public class TreeMarkovModel {
     public String toString() {
         StringBuilder sb = new StringBuilder();
 
-        Map<Character, TreeNGram> transitions = rootNode.getTransitions();
-
-        for (Map.Entry<Character, TreeNGram> entry : transitions.entrySet()) {
-            if (entry.getValue() != null) {
-                appendTransitions("", entry.getKey(), entry.getValue(), sb);
-            }
+        for (int child = firstChildren[ROOT_NODE]; child != NO_NODE; child = nextSiblings[child]) {
+            appendTransitions("", child, sb);
         }
 
         return sb.toString();
     }
 
-    protected void appendTransitions(String parent, Character symbol, TreeNGram node, StringBuilder sb) {
-        sb.append("\n[" + parent + "] ->" + symbol + " | " + node.getCount());
-
-        Map<Character, TreeNGram> transitions = node.getTransitions();
+    protected void appendTransitions(String parent, int node, StringBuilder sb) {
+        sb.append("\n[" + parent + "] ->" + letters[node] + " | " + counts[node]);
 
-        if (transitions == null || transitions.isEmpty()) {
-            return;
+        for (int child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child]) {
+            appendTransitions(parent + letters[node], child, sb);
         }
+    }
 
-        for (Map.Entry<Character, TreeNGram> entry : transitions.entrySet()) {
-            if (entry.getValue() != null) {
-                appendTransitions(parent + entry.getKey(), entry.getKey(), entry.getValue(), sb);
-            }
+    /**
+     * Sets the probability of each node given its parent.  The first-order nodes are conditioned on the total count
+     * of all first-order nodes.
+     */
+    public void computeConditionalProbabilities() {
+        long rootCount = 0L;
+
+        for (int child = firstChildren[ROOT_NODE]; child != NO_NODE; child = nextSiblings[child]) {
+            rootCount += counts[child];
         }
-    }
 
-    public void normalize(int order, long orderTotal, TaskExecutor taskExecutor) {
-        List<FutureTask<Void>> futures = new ArrayList<>(26);
-        FutureTask<Void> task;
+        for (int node = 1; node < nodeCount; node++) {
+            long parentCount = parents[node] == ROOT_NODE ? rootCount : counts[parents[node]];
 
-        for (Map.Entry<Character, TreeNGram> entry : this.getRootNode().getTransitions().entrySet()) {
-            if (entry.getValue() != null) {
-                task = new FutureTask<>(new NormalizeTask(entry.getValue(), order, orderTotal));
-                futures.add(task);
-                taskExecutor.execute(task);
-            }
+            conditionalProbabilities[node] = (double) counts[node] / (double) parentCount;
+            logConditionalProbabilities[node] = Math.log(conditionalProbabilities[node]);
         }
+    }
 
-        for (FutureTask<Void> future : futures) {
-            try {
-                future.get();
-            } catch (InterruptedException ie) {
-                log.error("Caught InterruptedException while waiting for NormalizeTask ", ie);
-            } catch (ExecutionException ee) {
-                log.error("Caught ExecutionException while waiting for NormalizeTask ", ee);
+    /**
+     * Sets the probability of each node of the given order out of the given total.
+     */
+    public void normalize(int order, long orderTotal) {
+        for (int node = 1; node < nodeCount; node++) {
+            if (depths[node] == order) {
+                probabilities[node] = (double) counts[node] / (double) orderTotal;
+                logProbabilities[node] = Math.log(probabilities[node]);
             }
         }
     }
 
     /**
-     * A concurrent task for normalizing a Markov model node.
+     * @return the number of nodes, including the root node
      */
-    protected class NormalizeTask implements Callable<Void> {
-        private TreeNGram node;
-        private int order;
-        private long total;
-
-        public NormalizeTask(TreeNGram node, int order, long total) {
-            this.node = node;
-            this.order = order;
-            this.total = total;
-        }
+    public long size() {
+        return nodeCount;
+    }
 
-        @Override
-        public Void call() {
-            normalizeTerminal(this.node, this.order, this.total);
+    protected int findOrAddChild(int node, char letter) {
+        int previous = NO_NODE;
+        int child = firstChildren[node];
 
-            return null;
+        while (child != NO_NODE && letters[child] < letter) {
+            previous = child;
+            child = nextSiblings[child];
         }
-    }
-
-    protected void normalizeTerminal(TreeNGram node, int order, long total) {
-        if (node.getCumulativeString().length() == order) {
-            node.setProbability((double) node.getCount() / (double) total);
-            node.setLogProbability(Math.log(node.getProbability()));
 
-            return;
+        if (child != NO_NODE && letters[child] == letter) {
+            return child;
         }
 
-        Map<Character, TreeNGram> transitions = node.getTransitions();
+        if (!isValidLetter(letter)) {
+            throw new IllegalArgumentException(
+                    "Attempted to add a character to the Markov Model which is outside the range of [a-z \\.]: '"
+                            + letter + "'.");
+        }
 
-        if (transitions == null || transitions.isEmpty()) {
-            return;
+        if (nodeCount == counts.length) {
+            grow(counts.length + (counts.length >> 1) + 1);
         }
 
-        for (Map.Entry<Character, TreeNGram> entry : transitions.entrySet()) {
-            normalizeTerminal(entry.getValue(), order, total);
+        int newChild = nodeCount++;
+
+        letters[newChild] = letter;
+        depths[newChild] = (byte) (depths[node] + 1);
+        parents[newChild] = node;
+        firstChildren[newChild] = NO_NODE;
+        nextSiblings[newChild] = child;
+
+        if (previous == NO_NODE) {
+            firstChildren[node] = newChild;
+        } else {
+            nextSiblings[previous] = newChild;
         }
-    }
 
-    public long size() {
-        return countAll(this.getRootNode());
+        return newChild;
     }
 
-    protected long countAll(TreeNGram node) {
-        long sum = 1L;
+    private static boolean isValidLetter(char letter) {
+        return (letter >= 'a' && letter <= 'z') || letter == ' ' || letter == '.';
+    }
 
-        for (Map.Entry<Character, TreeNGram> entry : node.getTransitions().entrySet()) {
-            sum += countAll(entry.getValue());
-        }
+    private void allocate(int capacity) {
+        letters = new char[capacity];
+        depths = new byte[capacity];
+        parents = new int[capacity];
+        firstChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        counts = new long[capacity];
+        probabilities = new double[capacity];
+        logProbabilities = new double[capacity];
+        conditionalProbabilities = new double[capacity];
+        logConditionalProbabilities = new double[capacity];
+    }
 
-        return sum;
+    private void grow(int capacity) {
+        letters = Arrays.copyOf(letters, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        probabilities = Arrays.copyOf(probabilities, capacity);
+        logProbabilities = Arrays.copyOf(logProbabilities, capacity);
+        conditionalProbabilities = Arrays.copyOf(conditionalProbabilities, capacity);
+        logConditionalProbabilities = Arrays.copyOf(logConditionalProbabilities, capacity);
     }
 }
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.WritableByteChannel;
+
+public abstract class AbstractNGramTable implements NGramTable {
+    protected static void writeFloats(WritableByteChannel channel, ByteOrder byteOrder, float[] values) throws IOException {
+        writeFloats(channel, byteOrder, FloatBuffer.wrap(values));
+    }
+
+    protected static void writeLongs(WritableByteChannel channel, ByteOrder byteOrder, long[] values) throws IOException {
+        writeLongs(channel, byteOrder, LongBuffer.wrap(values));
+    }
+
+    protected static void writeInts(WritableByteChannel channel, ByteOrder byteOrder, int[] values) throws IOException {
+        writeInts(channel, byteOrder, IntBuffer.wrap(values));
+    }
+
+    protected static void writeShorts(WritableByteChannel channel, ByteOrder byteOrder, short[] values) throws IOException {
+        writeShorts(channel, byteOrder, ShortBuffer.wrap(values));
+    }
+
+    /**
+     * Writes the whole of the given buffer, whether it is backed by an array or is a view of another buffer.
+     */
+    protected static void writeFloats(WritableByteChannel channel, ByteOrder byteOrder, FloatBuffer values) throws IOException {
+        FloatBuffer all = values.duplicate();
+        all.clear();
+
+        ByteBuffer bytes = allocate(all.capacity(), Float.BYTES, byteOrder);
+        bytes.asFloatBuffer().put(all);
+
+        writeBytes(channel, bytes);
+    }
+
+    /**
+     * Writes the whole of the given buffer, whether it is backed by an array or is a view of another buffer.
+     */
+    protected static void writeLongs(WritableByteChannel channel, ByteOrder byteOrder, LongBuffer values) throws IOException {
+        LongBuffer all = values.duplicate();
+        all.clear();
+
+        ByteBuffer bytes = allocate(all.capacity(), Long.BYTES, byteOrder);
+        bytes.asLongBuffer().put(all);
+
+        writeBytes(channel, bytes);
+    }
+
+    /**
+     * Writes the whole of the given buffer, whether it is backed by an array or is a view of another buffer.
+     */
+    protected static void writeInts(WritableByteChannel channel, ByteOrder byteOrder, IntBuffer values) throws IOException {
+        IntBuffer all = values.duplicate();
+        all.clear();
+
+        ByteBuffer bytes = allocate(all.capacity(), Integer.BYTES, byteOrder);
+        bytes.asIntBuffer().put(all);
+
+        writeBytes(channel, bytes);
+    }
+
+    /**
+     * Writes the whole of the given buffer, whether it is backed by an array or is a view of another buffer.
+     */
+    protected static void writeShorts(WritableByteChannel channel, ByteOrder byteOrder, ShortBuffer values) throws IOException {
+        ShortBuffer all = values.duplicate();
+        all.clear();
+
+        ByteBuffer bytes = allocate(all.capacity(), Short.BYTES, byteOrder);
+        bytes.asShortBuffer().put(all);
+
+        writeBytes(channel, bytes);
+    }
+
+    protected static void writeBytes(WritableByteChannel channel, byte[] values) throws IOException {
+        writeBytes(channel, ByteBuffer.wrap(values));
+    }
+
+    protected static void writeBytes(WritableByteChannel channel, ByteBuffer values) throws IOException {
+        ByteBuffer remaining = values.duplicate();
+        remaining.clear();
+
+        writeFully(channel, remaining);
+    }
+
+    protected static void writeInt(WritableByteChannel channel, ByteOrder byteOrder, int value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES).order(byteOrder);
+        buffer.putInt(value);
+        buffer.flip();
+
+        writeFully(channel, buffer);
+    }
+
+    protected static float[] readFloats(ByteBuffer source, int length) {
+        checkRemaining(source, (long) length * Float.BYTES);
+
+        float[] values = new float[length];
+
+        source.asFloatBuffer().get(values);
+        source.position(source.position() + (length * Float.BYTES));
+
+        return values;
+    }
+
+    protected static long[] readLongs(ByteBuffer source, int length) {
+        checkRemaining(source, (long) length * Long.BYTES);
+
+        long[] values = new long[length];
+
+        source.asLongBuffer().get(values);
+        source.position(source.position() + (length * Long.BYTES));
+
+        return values;
+    }
+
+    protected static int[] readInts(ByteBuffer source, int length) {
+        checkRemaining(source, (long) length * Integer.BYTES);
+
+        int[] values = new int[length];
+
+        source.asIntBuffer().get(values);
+        source.position(source.position() + (length * Integer.BYTES));
+
+        return values;
+    }
+
+    protected static short[] readShorts(ByteBuffer source, int length) {
+        checkRemaining(source, (long) length * Short.BYTES);
+
+        short[] values = new short[length];
+
+        source.asShortBuffer().get(values);
+        source.position(source.position() + (length * Short.BYTES));
+
+        return values;
+    }
+
+    protected static byte[] readBytes(ByteBuffer source, int length) {
+        checkRemaining(source, length);
+
+        byte[] values = new byte[length];
+
+        source.get(values);
+
+        return values;
+    }
+
+    /**
+     * @return the next int of the source, after checking it is a length which is not negative
+     */
+    protected static int readLength(ByteBuffer source) {
+        int length = source.getInt();
+
+        if (length < 0) {
+            throw new IllegalArgumentException("Expected a length which is not negative, but was " + length + ".");
+        }
+
+        return length;
+    }
+
+    /**
+     * @return a view of the next count values of the given width in bytes, in the source's byte order, without copying them
+     */
+    protected static ByteBuffer slice(ByteBuffer source, int count, int width) {
+        long length = (long) count * width;
+
+        checkRemaining(source, length);
+
+        ByteBuffer slice = source.slice().order(source.order());
+        slice.limit((int) length);
+        source.position(source.position() + (int) length);
+
+        return slice;
+    }
+
+    private static ByteBuffer allocate(int count, int width, ByteOrder byteOrder) {
+        return ByteBuffer.allocate(Math.multiplyExact(count, width)).order(byteOrder);
+    }
+
+    private static void checkRemaining(ByteBuffer source, long bytes) {
+        if (source.remaining() < bytes) {
+            throw new IllegalArgumentException("Expected at least " + bytes + " more bytes, but there are only " + source.remaining() + ".");
+        }
+    }
+
+    protected static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Holds a log probability for every possible n-gram, so it is only suitable when the number of possible n-grams fits
+ * in an array.
+ */
+public class DenseNGramTable extends AbstractNGramTable {
+    private final float[] values;
+    private int size;
+
+    public DenseNGramTable(int capacity) {
+        values = new float[capacity];
+
+        Arrays.fill(values, NOT_FOUND);
+    }
+
+    /**
+     * @param source
+     *            the log probabilities, holding exactly one value per index
+     * @param size
+     *            the number of values in the source which are not NOT_FOUND
+     */
+    public DenseNGramTable(FloatBuffer source, int size) {
+        values = new float[source.remaining()];
+
+        source.get(values);
+
+        this.size = size;
+    }
+
+    @Override
+    public float get(long index) {
+        return values[(int) index];
+    }
+
+    @Override
+    public float put(long index, float logProbability) {
+        float previous = values[(int) index];
+
+        values[(int) index] = logProbability;
+
+        if (previous == NOT_FOUND) {
+            size ++;
+        }
+
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < values.length; i ++) {
+            if (values[i] != NOT_FOUND) {
+                consumer.accept(i, values[i]);
+            }
+        }
+    }
+
+    @Override
+    public long memoryUsage() {
+        return (long) values.length * Float.BYTES;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel, ByteOrder byteOrder) throws IOException {
+        writeFloats(channel, byteOrder, values);
+    }
+}
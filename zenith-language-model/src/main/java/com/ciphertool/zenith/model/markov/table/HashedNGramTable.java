@@ -0,0 +1,165 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash table from n-gram index to log probability, for when there are too many possible n-grams to
+ * hold them all in an array.  Memory usage is proportional to the number of n-grams actually stored.
+ */
+public class HashedNGramTable extends AbstractNGramTable {
+    private static final int MINIMUM_CAPACITY = 1 << 4;
+
+    private long[] keys;
+    private float[] values;
+    private int mask;
+    private int size;
+
+    public HashedNGramTable(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * @param source
+     *            the table as written by writeTo(), positioned at its beginning
+     * @param size
+     *            the number of n-grams in the table
+     * @throws IllegalArgumentException
+     *             if the capacity is not a power of two or is too small for the given size
+     */
+    public HashedNGramTable(ByteBuffer source, int size) {
+        int capacity = source.getInt();
+
+        OpenAddressing.validate(capacity, size);
+
+        keys = new long[capacity];
+        values = new float[capacity];
+        mask = capacity - 1;
+
+        source.asLongBuffer().get(keys);
+        source.position(source.position() + (capacity * Long.BYTES));
+        source.asFloatBuffer().get(values);
+        source.position(source.position() + (capacity * Float.BYTES));
+
+        this.size = size;
+    }
+
+    @Override
+    public float get(long index) {
+        int slot = OpenAddressing.probe(keys, mask, index);
+
+        return keys[slot] == OpenAddressing.EMPTY ? NOT_FOUND : values[slot];
+    }
+
+    @Override
+    public float put(long index, float logProbability) {
+        if (index < 0L) {
+            throw new IllegalArgumentException("N-gram index must not be negative, but was " + index + ".");
+        }
+
+        if (OpenAddressing.isFull(size, keys.length)) {
+            resize(keys.length * 2);
+        }
+
+        int slot = OpenAddressing.probe(keys, mask, index);
+
+        if (keys[slot] == index) {
+            float previous = values[slot];
+            values[slot] = logProbability;
+
+            return previous;
+        }
+
+        keys[slot] = index;
+        values[slot] = logProbability;
+        size ++;
+
+        return NOT_FOUND;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i ++) {
+            if (keys[i] != OpenAddressing.EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    @Override
+    public long memoryUsage() {
+        return (long) keys.length * (Long.BYTES + Float.BYTES);
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel, ByteOrder byteOrder) throws IOException {
+        ByteBuffer capacity = ByteBuffer.allocate(Integer.BYTES).order(byteOrder);
+        capacity.putInt(keys.length);
+        capacity.flip();
+
+        writeFully(channel, capacity);
+        writeLongs(channel, byteOrder, keys);
+        writeFloats(channel, byteOrder, values);
+    }
+
+    /**
+     * @return the number of bytes writeTo() will write
+     */
+    public long serializedSize() {
+        return Integer.BYTES + ((long) keys.length * (Long.BYTES + Float.BYTES));
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        float[] oldValues = values;
+
+        allocate(capacity);
+
+        OpenAddressing.rehash(oldKeys, keys, (from, to) -> values[to] = oldValues[from]);
+    }
+
+    private void allocate(int capacity) {
+        keys = OpenAddressing.emptyKeys(capacity);
+        values = new float[capacity];
+        mask = capacity - 1;
+
+        Arrays.fill(values, NOT_FOUND);
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MINIMUM_CAPACITY;
+
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+}
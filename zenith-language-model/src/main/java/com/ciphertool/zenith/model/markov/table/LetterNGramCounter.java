@@ -0,0 +1,254 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import com.ciphertool.zenith.model.LanguageConstants;
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+
+/**
+ * Counts the letter n-grams of a single order, keyed by the base-26 index of each n-gram.  Counters are not
+ * thread-safe: each ingestion task fills its own and they are merged once all of the text has been read, so that
+ * counting never contends on shared state.
+ */
+public class LetterNGramCounter {
+    // The highest order whose n-gram indices, up to 26^13, still fit in a long
+    public static final int MAX_ORDER = 13;
+
+    // Up to this many possible n-grams (about 3.6MB of longs), an array with a slot for each is the smaller option.  It
+    // is lower than ArrayMarkovModel's cutoff since counts are twice the size of log probabilities, and every
+    // ingestion task holds a counter of its own
+    private static final long MAX_DENSE_CAPACITY = 26L * 26 * 26 * 26;
+    private static final int INITIAL_HASHED_CAPACITY = 1 << 16;
+    private static final int ASCII_OFFSET = 97;
+    private static final int RADIX = LanguageConstants.LOWERCASE_LETTERS_SIZE;
+
+    private final int order;
+    // The place value of the first letter of an n-gram, i.e. 26^(order - 1)
+    private final long highestPlaceValue;
+    private final boolean dense;
+
+    // Dense counts are indexed directly by n-gram index, while hashed counts use open addressing on keys
+    private long[] keys;
+    private long[] counts;
+    private int mask;
+    private int size;
+    private long total;
+
+    public LetterNGramCounter(int order) {
+        if (order < 1 || order > MAX_ORDER) {
+            throw new IllegalArgumentException("Letter n-gram order must be between 1 and " + MAX_ORDER
+                    + " inclusive, but was " + order + ".");
+        }
+
+        this.order = order;
+        this.highestPlaceValue = ArrayMarkovModel.possibleNGramCount(order - 1);
+
+        long possibleNGrams = ArrayMarkovModel.possibleNGramCount(order);
+        this.dense = possibleNGrams <= MAX_DENSE_CAPACITY;
+
+        if (dense) {
+            counts = new long[(int) possibleNGrams];
+        } else {
+            allocate(INITIAL_HASHED_CAPACITY);
+        }
+    }
+
+    /**
+     * Counts every n-gram which starts at an offset from start (inclusive) to end (exclusive), rolling the index from
+     * one n-gram to the next rather than re-reading each one.
+     */
+    void countNGrams(CharSequence text, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+
+        long index = computeIndex(text, start);
+
+        increment(index, 1L);
+
+        for (int i = start + 1; i < end; i ++) {
+            index = rollIndex(index, text.charAt(i + order - 1));
+
+            increment(index, 1L);
+        }
+    }
+
+    /**
+     * Interprets the {@code order} letters starting at the given offset as a base-26 number.
+     */
+    public long computeIndex(CharSequence text, int offset) {
+        long index = 0L;
+
+        for (int i = offset; i < offset + order; i ++) {
+            index = (index * RADIX) + letterValue(text.charAt(i));
+        }
+
+        return index;
+    }
+
+    /**
+     * Counts the n-gram with the given index once.
+     */
+    public void increment(long index) {
+        increment(index, 1L);
+    }
+
+    /**
+     * Computes the index of the n-gram one letter to the right of the n-gram with the given index, i.e. drops its
+     * first letter and appends the next one.
+     */
+    public long rollIndex(long index, char next) {
+        return ((index % highestPlaceValue) * RADIX) + letterValue(next);
+    }
+
+    /**
+     * Adds the counts of another counter of the same order to this one.
+     */
+    public void merge(LetterNGramCounter other) {
+        if (other.order != order) {
+            throw new IllegalArgumentException("Cannot merge a counter of order " + other.order
+                    + " into a counter of order " + order + ".");
+        }
+
+        other.forEach(this::increment);
+    }
+
+    public void forEach(CountConsumer consumer) {
+        if (dense) {
+            for (int i = 0; i < counts.length; i ++) {
+                if (counts[i] != 0L) {
+                    consumer.accept(i, counts[i]);
+                }
+            }
+
+            return;
+        }
+
+        for (int i = 0; i < keys.length; i ++) {
+            if (keys[i] != OpenAddressing.EMPTY) {
+                consumer.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of times the n-gram with the given index was counted
+     */
+    public long getCount(long index) {
+        if (dense) {
+            return counts[(int) index];
+        }
+
+        int slot = OpenAddressing.probe(keys, mask, index);
+
+        return keys[slot] == OpenAddressing.EMPTY ? 0L : counts[slot];
+    }
+
+    public String toNGram(long index) {
+        char[] letters = new char[order];
+
+        for (int i = order - 1; i >= 0; i --) {
+            letters[i] = (char) ((index % RADIX) + ASCII_OFFSET);
+            index /= RADIX;
+        }
+
+        return new String(letters);
+    }
+
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * @return the number of distinct n-grams counted
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of n-grams counted, including repeats
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Counts the n-gram with the given index the given number of times.
+     */
+    public void increment(long index, long count) {
+        total += count;
+
+        if (dense) {
+            if (counts[(int) index] == 0L) {
+                size ++;
+            }
+
+            counts[(int) index] += count;
+
+            return;
+        }
+
+        if (OpenAddressing.isFull(size, keys.length)) {
+            resize(keys.length * 2);
+        }
+
+        int slot = OpenAddressing.probe(keys, mask, index);
+
+        if (keys[slot] == index) {
+            counts[slot] += count;
+
+            return;
+        }
+
+        keys[slot] = index;
+        counts[slot] = count;
+        size ++;
+    }
+
+    private static int letterValue(char c) {
+        if (c < 'a' || c > 'z') {
+            throw new IllegalArgumentException("Attempted to count a character which is not a lowercase letter: '" + c
+                    + "'.");
+        }
+
+        return c - ASCII_OFFSET;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+
+        allocate(capacity);
+
+        OpenAddressing.rehash(oldKeys, keys, (from, to) -> counts[to] = oldCounts[from]);
+    }
+
+    private void allocate(int capacity) {
+        keys = OpenAddressing.emptyKeys(capacity);
+        counts = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    @FunctionalInterface
+    public interface CountConsumer {
+        void accept(long index, long count);
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Maps log probabilities onto 8- or 16-bit codes, each of which decodes to the centre of a bucket of similar log
+ * probabilities.  The buckets are fitted to the values they will hold with a few rounds of one-dimensional k-means
+ * starting from equal-population buckets, so they are narrowest where the values are densest, and if there are no
+ * more distinct values than codes then every value is kept exactly.  Code zero always decodes to NOT_FOUND.
+ */
+public class LogProbabilityQuantizer {
+    public static final int NOT_FOUND_CODE = 0;
+
+    private static final int REFINEMENT_ITERATIONS = 10;
+
+    private final int bits;
+    // The centre of each bucket by code, in ascending order after the NOT_FOUND code
+    private final float[] codebook;
+
+    private LogProbabilityQuantizer(int bits, float[] codebook) {
+        this.bits = bits;
+        this.codebook = codebook;
+    }
+
+    /**
+     * @param source
+     *            the quantizer as written by writeTo(), positioned at its beginning
+     */
+    public LogProbabilityQuantizer(ByteBuffer source) {
+        this.bits = source.getInt();
+
+        validateBits(bits);
+
+        int codebookLength = AbstractNGramTable.readLength(source);
+
+        if (codebookLength < 1 || codebookLength > (1 << bits)) {
+            throw new IllegalArgumentException("Codebook of " + codebookLength + " entries does not fit in " + bits + " bits.");
+        }
+
+        this.codebook = AbstractNGramTable.readFloats(source, codebookLength);
+    }
+
+    public static LogProbabilityQuantizer fit(float[] values, int bits) {
+        validateBits(bits);
+
+        float[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        int maxCodes = (1 << bits) - 1;
+        float[] centres = distinct(sorted, sorted.length);
+
+        if (centres.length > maxCodes) {
+            centres = equalPopulationCentres(sorted, maxCodes);
+
+            for (int i = 0; i < REFINEMENT_ITERATIONS; i ++) {
+                centres = refineCentres(sorted, centres);
+            }
+        }
+
+        float[] codebook = new float[centres.length + 1];
+        codebook[NOT_FOUND_CODE] = NGramTable.NOT_FOUND;
+        System.arraycopy(centres, 0, codebook, 1, centres.length);
+
+        return new LogProbabilityQuantizer(bits, codebook);
+    }
+
+    public static void validateBits(int bits) {
+        if (bits != Byte.SIZE && bits != Short.SIZE) {
+            throw new IllegalArgumentException("Log probabilities can be quantized to " + Byte.SIZE + " or "
+                    + Short.SIZE + " bits, but " + bits + " were requested.");
+        }
+    }
+
+    /**
+     * @return the code of the bucket centre nearest to the given log probability
+     */
+    public int encode(float logProbability) {
+        if (codebook.length == 1) {
+            throw new IllegalStateException("Unable to encode log probability " + logProbability
+                    + " with a quantizer which was fitted to no values.");
+        }
+
+        int found = Arrays.binarySearch(codebook, 1, codebook.length, logProbability);
+
+        if (found >= 0) {
+            return found;
+        }
+
+        int above = -found - 1;
+
+        if (above == 1) {
+            return 1;
+        }
+
+        if (above == codebook.length) {
+            return codebook.length - 1;
+        }
+
+        return (logProbability - codebook[above - 1]) <= (codebook[above] - logProbability) ? above - 1 : above;
+    }
+
+    public float decode(int code) {
+        return codebook[code];
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * @return the number of codes in use, including the NOT_FOUND code
+     */
+    public int getCodeCount() {
+        return codebook.length;
+    }
+
+    public long memoryUsage() {
+        return (long) codebook.length * Float.BYTES;
+    }
+
+    public void writeTo(WritableByteChannel channel, ByteOrder byteOrder) throws IOException {
+        AbstractNGramTable.writeInt(channel, byteOrder, bits);
+        AbstractNGramTable.writeInt(channel, byteOrder, codebook.length);
+        AbstractNGramTable.writeFloats(channel, byteOrder, codebook);
+    }
+
+    private static float[] distinct(float[] sorted, int length) {
+        float[] distinct = new float[length];
+        int count = 0;
+
+        for (int i = 0; i < length; i ++) {
+            if (count == 0 || sorted[i] != distinct[count - 1]) {
+                distinct[count ++] = sorted[i];
+            }
+        }
+
+        return Arrays.copyOf(distinct, count);
+    }
+
+    private static float[] equalPopulationCentres(float[] sorted, int bucketCount) {
+        float[] centres = new float[bucketCount];
+
+        for (int bucket = 0; bucket < bucketCount; bucket ++) {
+            int from = (int) (((long) bucket * sorted.length) / bucketCount);
+            int to = (int) (((long) (bucket + 1) * sorted.length) / bucketCount);
+            double sum = 0d;
+
+            for (int i = from; i < to; i ++) {
+                sum += sorted[i];
+            }
+
+            centres[bucket] = (float) (sum / (to - from));
+        }
+
+        Arrays.sort(centres);
+
+        return distinct(centres, centres.length);
+    }
+
+    /**
+     * One round of Lloyd's algorithm.  As both the values and the centres are sorted, each centre's values are a
+     * contiguous run, so a single pass assigns them all.
+     */
+    private static float[] refineCentres(float[] sorted, float[] centres) {
+        double[] sums = new double[centres.length];
+        int[] counts = new int[centres.length];
+        int centre = 0;
+
+        for (float value : sorted) {
+            while (centre + 1 < centres.length && (value - centres[centre]) > (centres[centre + 1] - value)) {
+                centre ++;
+            }
+
+            sums[centre] += value;
+            counts[centre] ++;
+        }
+
+        float[] refined = new float[centres.length];
+
+        for (int i = 0; i < centres.length; i ++) {
+            refined[i] = counts[i] == 0 ? centres[i] : (float) (sums[i] / counts[i]);
+        }
+
+        Arrays.sort(refined);
+
+        return distinct(refined, refined.length);
+    }
+}
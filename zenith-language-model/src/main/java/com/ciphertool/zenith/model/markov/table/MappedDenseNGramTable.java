@@ -0,0 +1,87 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read-only DenseNGramTable which reads its log probabilities straight from a memory-mapped file instead of copying
+ * them onto the heap, so that every process which maps the same file shares one copy of it in the page cache.
+ */
+public class MappedDenseNGramTable extends AbstractNGramTable {
+    private final FloatBuffer values;
+    private final int size;
+
+    /**
+     * @param values
+     *            a view of the mapped log probabilities, holding exactly one value per index
+     * @param size
+     *            the number of values which are not NOT_FOUND
+     */
+    public MappedDenseNGramTable(FloatBuffer values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    @Override
+    public float get(long index) {
+        return values.get((int) index);
+    }
+
+    @Override
+    public float put(long index, float logProbability) {
+        throw new UnsupportedOperationException("Unable to change a memory-mapped n-gram table.");
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(EntryConsumer consumer) {
+        int capacity = values.capacity();
+
+        for (int i = 0; i < capacity; i ++) {
+            float value = values.get(i);
+
+            if (value != NOT_FOUND) {
+                consumer.accept(i, value);
+            }
+        }
+    }
+
+    @Override
+    public long memoryUsage() {
+        return (long) values.capacity() * Float.BYTES;
+    }
+
+    public int capacity() {
+        return values.capacity();
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel, ByteOrder byteOrder) throws IOException {
+        writeFloats(channel, byteOrder, values);
+    }
+}
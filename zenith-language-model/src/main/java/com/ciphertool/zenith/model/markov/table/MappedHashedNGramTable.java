@@ -0,0 +1,109 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read-only HashedNGramTable which probes its keys and values straight from a memory-mapped file instead of copying
+ * them onto the heap, so that every process which maps the same file shares one copy of it in the page cache.
+ */
+public class MappedHashedNGramTable extends AbstractNGramTable {
+    private final LongBuffer keys;
+    private final FloatBuffer values;
+    private final int mask;
+    private final int size;
+
+    /**
+     * @param source
+     *            the mapped table as written by HashedNGramTable.writeTo(), positioned at its beginning
+     * @param size
+     *            the number of n-grams in the table
+     * @throws IllegalArgumentException
+     *             if the capacity is not a power of two or is too small for the given size
+     */
+    public MappedHashedNGramTable(ByteBuffer source, int size) {
+        int capacity = source.getInt();
+
+        OpenAddressing.validate(capacity, size);
+
+        this.keys = slice(source, capacity, Long.BYTES).asLongBuffer();
+        this.values = slice(source, capacity, Float.BYTES).asFloatBuffer();
+        this.mask = capacity - 1;
+        this.size = size;
+    }
+
+    @Override
+    public float get(long index) {
+        int slot = OpenAddressing.slot(index, mask);
+
+        while (true) {
+            long key = keys.get(slot);
+
+            if (key == index) {
+                return values.get(slot);
+            }
+
+            if (key == OpenAddressing.EMPTY) {
+                return NOT_FOUND;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    @Override
+    public float put(long index, float logProbability) {
+        throw new UnsupportedOperationException("Unable to change a memory-mapped n-gram table.");
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i <= mask; i ++) {
+            long key = keys.get(i);
+
+            if (key != OpenAddressing.EMPTY) {
+                consumer.accept(key, values.get(i));
+            }
+        }
+    }
+
+    @Override
+    public long memoryUsage() {
+        return (long) keys.capacity() * (Long.BYTES + Float.BYTES);
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel, ByteOrder byteOrder) throws IOException {
+        writeInt(channel, byteOrder, keys.capacity());
+        writeLongs(channel, byteOrder, keys);
+        writeFloats(channel, byteOrder, values);
+    }
+}
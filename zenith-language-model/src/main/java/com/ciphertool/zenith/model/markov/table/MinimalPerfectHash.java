@@ -0,0 +1,245 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A minimal perfect hash function over a fixed set of long keys, which maps each of them to a distinct position from
+ * zero to one less than the number of keys, using about four bits per key.  Keys outside the set map to an arbitrary
+ * position or to NOT_FOUND, so callers must check the key stored at the position.
+ *
+ * Each key is hashed into a bit array of twice as many bits as there are keys, and the keys which land on a bit of
+ * their own set it, while those which collide are hashed again into a smaller array on the next level.  The position
+ * of a key is the number of set bits before its own across all levels.  The rare keys still colliding after the last
+ * level are kept in a sorted array instead.
+ */
+public class MinimalPerfectHash {
+    public static final int NOT_FOUND = -1;
+
+    private static final int MAX_LEVELS = 32;
+    private static final int BITS_PER_KEY = 2;
+    private static final int WORDS_PER_RANK_BLOCK = 8;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private final int size;
+    // The number of bits of each level, which is always a multiple of 64
+    private final int[] levelSizes;
+    // The offset of each level in the bits array
+    private final long[] levelOffsets;
+    private final long[] bits;
+    // The number of set bits before each block of words, so that a rank never needs to count more than one block
+    private final int[] blockRanks;
+    private final long[] fallbackKeys;
+
+    private MinimalPerfectHash(int size, int[] levelSizes, long[] bits, long[] fallbackKeys) {
+        this.size = size;
+        this.levelSizes = levelSizes;
+        this.bits = bits;
+        this.fallbackKeys = fallbackKeys;
+        this.levelOffsets = new long[levelSizes.length];
+
+        for (int level = 1; level < levelSizes.length; level ++) {
+            levelOffsets[level] = levelOffsets[level - 1] + levelSizes[level - 1];
+        }
+
+        this.blockRanks = new int[(bits.length / WORDS_PER_RANK_BLOCK) + 1];
+
+        int rank = 0;
+
+        for (int word = 0; word < bits.length; word ++) {
+            if (word % WORDS_PER_RANK_BLOCK == 0) {
+                blockRanks[word / WORDS_PER_RANK_BLOCK] = rank;
+            }
+
+            rank += Long.bitCount(bits[word]);
+        }
+
+        if (rank + fallbackKeys.length != size) {
+            throw new IllegalArgumentException("Perfect hash of " + size + " keys has " + rank
+                    + " positions and " + fallbackKeys.length + " fallback keys.");
+        }
+    }
+
+    /**
+     * @param source
+     *            the hash as written by writeTo(), positioned at its beginning
+     */
+    public MinimalPerfectHash(ByteBuffer source) {
+        this(AbstractNGramTable.readLength(source), AbstractNGramTable.readInts(source, AbstractNGramTable.readLength(source)),
+                AbstractNGramTable.readLongs(source, AbstractNGramTable.readLength(source)),
+                AbstractNGramTable.readLongs(source, AbstractNGramTable.readLength(source)));
+
+        long totalBits = 0L;
+
+        for (int levelSize : levelSizes) {
+            if (levelSize <= 0 || levelSize % Long.SIZE != 0) {
+                throw new IllegalArgumentException("Perfect hash level size must be a positive multiple of " + Long.SIZE + ", but was " + levelSize + ".");
+            }
+
+            totalBits += levelSize;
+        }
+
+        if (totalBits != (long) bits.length * Long.SIZE) {
+            throw new IllegalArgumentException("Perfect hash levels total " + totalBits + " bits, but there are " + ((long) bits.length * Long.SIZE) + ".");
+        }
+    }
+
+    /**
+     * @param keys
+     *            the keys to hash, which must be distinct
+     */
+    public static MinimalPerfectHash build(long[] keys) {
+        long[] remaining = keys.clone();
+        int[] levelSizes = new int[MAX_LEVELS];
+        long[][] levels = new long[MAX_LEVELS][];
+        int levelCount = 0;
+
+        while (remaining.length > 0 && levelCount < MAX_LEVELS) {
+            int levelSize = levelSizeFor(remaining.length);
+            long[] seen = new long[levelSize / Long.SIZE];
+            long[] collided = new long[levelSize / Long.SIZE];
+
+            for (long key : remaining) {
+                int bit = reduce(hash(key, levelCount), levelSize);
+
+                if (isSet(seen, bit)) {
+                    set(collided, bit);
+                } else {
+                    set(seen, bit);
+                }
+            }
+
+            int collisions = 0;
+
+            for (int word = 0; word < seen.length; word ++) {
+                seen[word] &= ~collided[word];
+            }
+
+            for (long key : remaining) {
+                if (isSet(collided, reduce(hash(key, levelCount), levelSize))) {
+                    remaining[collisions ++] = key;
+                }
+            }
+
+            remaining = Arrays.copyOf(remaining, collisions);
+            levelSizes[levelCount] = levelSize;
+            levels[levelCount] = seen;
+            levelCount ++;
+        }
+
+        long[] bits = new long[Arrays.stream(levelSizes, 0, levelCount).map(levelSize -> levelSize / Long.SIZE).sum()];
+        int offset = 0;
+
+        for (int level = 0; level < levelCount; level ++) {
+            System.arraycopy(levels[level], 0, bits, offset, levels[level].length);
+            offset += levels[level].length;
+        }
+
+        Arrays.sort(remaining);
+
+        return new MinimalPerfectHash(keys.length, Arrays.copyOf(levelSizes, levelCount), bits, remaining);
+    }
+
+    /**
+     * @return the position of the given key if it is one of the hashed keys, and otherwise either an arbitrary
+     *         position or NOT_FOUND
+     */
+    public int lookup(long key) {
+        for (int level = 0; level < levelSizes.length; level ++) {
+            long bit = levelOffsets[level] + reduce(hash(key, level), levelSizes[level]);
+
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) != 0L) {
+                return rank(bit);
+            }
+        }
+
+        int fallback = Arrays.binarySearch(fallbackKeys, key);
+
+        return fallback < 0 ? NOT_FOUND : size - fallbackKeys.length + fallback;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memoryUsage() {
+        return ((long) bits.length * Long.BYTES) + ((long) blockRanks.length * Integer.BYTES)
+                + ((long) fallbackKeys.length * Long.BYTES);
+    }
+
+    public void writeTo(WritableByteChannel channel, ByteOrder byteOrder) throws IOException {
+        AbstractNGramTable.writeInt(channel, byteOrder, size);
+        AbstractNGramTable.writeInt(channel, byteOrder, levelSizes.length);
+        AbstractNGramTable.writeInts(channel, byteOrder, levelSizes);
+        AbstractNGramTable.writeInt(channel, byteOrder, bits.length);
+        AbstractNGramTable.writeLongs(channel, byteOrder, bits);
+        AbstractNGramTable.writeInt(channel, byteOrder, fallbackKeys.length);
+        AbstractNGramTable.writeLongs(channel, byteOrder, fallbackKeys);
+    }
+
+    private int rank(long bit) {
+        int word = (int) (bit >>> 6);
+        int rank = blockRanks[word / WORDS_PER_RANK_BLOCK];
+
+        for (int i = word - (word % WORDS_PER_RANK_BLOCK); i < word; i ++) {
+            rank += Long.bitCount(bits[i]);
+        }
+
+        return rank + Long.bitCount(bits[word] & ((1L << bit) - 1L));
+    }
+
+    private static int levelSizeFor(int keyCount) {
+        long levelSize = ((long) keyCount * BITS_PER_KEY + Long.SIZE - 1) / Long.SIZE * Long.SIZE;
+
+        return (int) Math.max(Long.SIZE, levelSize);
+    }
+
+    /**
+     * The SplitMix64 finalizer, seeded differently for each level.
+     */
+    private static long hash(long key, int level) {
+        long z = key + ((level + 1) * GOLDEN_RATIO);
+
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Maps the high bits of the hash onto the range from zero to the level size, without a division.
+     */
+    private static int reduce(long hash, int levelSize) {
+        return (int) (((hash >>> 32) * levelSize) >>> 32);
+    }
+
+    private static boolean isSet(long[] words, int bit) {
+        return (words[bit >>> 6] & (1L << bit)) != 0L;
+    }
+
+    private static void set(long[] words, int bit) {
+        words[bit >>> 6] |= 1L << bit;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Storage for n-gram log probabilities, addressed by the base-26 index of the n-gram.
+ */
+public interface NGramTable {
+    float NOT_FOUND = -1f;
+
+    /**
+     * @return the log probability at the given index, or NOT_FOUND if there is none
+     */
+    float get(long index);
+
+    /**
+     * @return the previous log probability at the given index, or NOT_FOUND if there was none
+     */
+    float put(long index, float logProbability);
+
+    /**
+     * @return the number of indices which have a log probability
+     */
+    int size();
+
+    /**
+     * Calls the consumer with each index which has a log probability, in no particular order.
+     */
+    void forEach(EntryConsumer consumer);
+
+    /**
+     * @return the approximate number of bytes of memory the table's arrays occupy
+     */
+    long memoryUsage();
+
+    void writeTo(WritableByteChannel channel, ByteOrder byteOrder) throws IOException;
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long index, float logProbability);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+/**
+ * Converts n-gram tables to their more compact variants, and measures what the conversion costs in accuracy.
+ */
+public final class NGramTables {
+    private NGramTables() {
+    }
+
+    /**
+     * @param capacity
+     *            the number of possible n-grams, which a dense quantized table needs room for
+     * @param quantizationBits
+     *            the number of bits to quantize the log probabilities to, or zero to keep them as floats
+     * @param perfectHash
+     *            whether to keep only the known n-grams under a minimal perfect hash, rather than a value for every
+     *            possible n-gram
+     * @return the source table itself if neither option is requested
+     */
+    public static NGramTable compact(NGramTable source, long capacity, int quantizationBits, boolean perfectHash) {
+        if (quantizationBits != 0) {
+            LogProbabilityQuantizer.validateBits(quantizationBits);
+        }
+
+        if (perfectHash) {
+            return PerfectHashNGramTable.from(source, quantizationBits);
+        }
+
+        if (quantizationBits == 0) {
+            return source;
+        }
+
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A quantized table of all " + capacity
+                    + " possible n-grams does not fit in an array.  Use a perfect hash table instead.");
+        }
+
+        return QuantizedNGramTable.from(source, (int) capacity, quantizationBits);
+    }
+
+    /**
+     * @return the log probabilities of the table, in no particular order
+     */
+    public static float[] values(NGramTable table) {
+        float[] values = new float[table.size()];
+        int[] count = new int[1];
+
+        table.forEach((index, logProbability) -> values[count[0] ++] = logProbability);
+
+        return values;
+    }
+
+    /**
+     * @return the mean absolute difference between the log probabilities of the original table and the same n-grams
+     *         of the compacted table
+     */
+    public static double meanAbsoluteError(NGramTable original, NGramTable compacted) {
+        double[] sum = new double[1];
+
+        original.forEach((index, logProbability) -> sum[0] += Math.abs(compacted.get(index) - logProbability));
+
+        return original.size() == 0 ? 0d : sum[0] / original.size();
+    }
+
+    /**
+     * @return the largest absolute difference between the log probabilities of the original table and the same
+     *         n-grams of the compacted table
+     */
+    public static double maxAbsoluteError(NGramTable original, NGramTable compacted) {
+        double[] max = new double[1];
+
+        original.forEach((index, logProbability) -> max[0] = Math.max(max[0], Math.abs(compacted.get(index) - logProbability)));
+
+        return max[0];
+    }
+}
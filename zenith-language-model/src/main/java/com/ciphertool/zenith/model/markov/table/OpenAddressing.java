@@ -0,0 +1,112 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ciphertool.zenith.model.markov.table;
+
+import java.util.Arrays;
+
+/**
+ * The open addressing shared by the hash tables keyed by n-gram index: linear probing from a multiplicative hash of the
+ * key over a power-of-two number of slots, which are kept at most half full so that probe sequences stay short.
+ * Callers keep their values in arrays parallel to the keys.
+ */
+final class OpenAddressing {
+    static final long EMPTY = -1L;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+
+    private OpenAddressing() {
+    }
+
+    /**
+     * @return keys for the given power-of-two number of slots, all of them empty
+     */
+    static long[] emptyKeys(int capacity) {
+        long[] keys = new long[capacity];
+
+        Arrays.fill(keys, EMPTY);
+
+        return keys;
+    }
+
+    /**
+     * @return the slot at which the probe for the given key starts
+     */
+    static int slot(long key, int mask) {
+        return (int) ((key * GOLDEN_RATIO) >>> 32) & mask;
+    }
+
+    /**
+     * @return the slot holding the given key, or if it is absent, the empty slot where it belongs
+     */
+    static int probe(long[] keys, int mask, long key) {
+        int slot = slot(key, mask);
+
+        while (keys[slot] != key && keys[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * @return whether adding one more key to the given number of keys would leave the slots more than half full
+     */
+    static boolean isFull(int size, int capacity) {
+        return (size + 1) * 2 > capacity;
+    }
+
+    /**
+     * Checks a table read back from a file, whose probes would never end if it had no empty slot.
+     *
+     * @throws IllegalArgumentException
+     *             if the capacity is not a power of two, or the size would leave the slots more than half full
+     */
+    static void validate(int capacity, int size) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Hashed n-gram table capacity must be a power of two, but was " + capacity + ".");
+        }
+
+        if (size < 0 || size > capacity / 2) {
+            throw new IllegalArgumentException("Hashed n-gram table of capacity " + capacity
+                    + " must hold between 0 and " + (capacity / 2) + " n-grams, but was said to hold " + size + ".");
+        }
+    }
+
+    /**
+     * Moves every key into the empty new keys, telling the mover where each one went so that it can move the key's
+     * value alongside.
+     */
+    static void rehash(long[] oldKeys, long[] newKeys, SlotMover mover) {
+        int mask = newKeys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i ++) {
+            if (oldKeys[i] == EMPTY) {
+                continue;
+            }
+
+            int slot = probe(newKeys, mask, oldKeys[i]);
+            newKeys[slot] = oldKeys[i];
+            mover.move(i, slot);
+        }
+    }
+
+    @FunctionalInterface
+    interface SlotMover {
+        void move(int from, int to);
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A read-only table of only the n-grams it was built from, which a minimal perfect hash maps onto consecutive
+ * positions.  Each position holds the n-gram's index, to tell the n-grams of the table from all others, and its log
+ * probability, either as a float or quantized.  It is much smaller than a HashedNGramTable, which has twice as many
+ * slots as n-grams and a long key per slot, and smaller than a dense table when most possible n-grams are pruned.
+ * The keys and values are either on the heap or read straight from a memory-mapped file; the hash itself is always on
+ * the heap, but at about half a byte per n-gram it is small.
+ */
+public class PerfectHashNGramTable extends AbstractNGramTable {
+    private static final int FLOAT_VALUES = 0;
+    private static final int QUANTIZED_VALUES = 1;
+
+    private final MinimalPerfectHash hash;
+    // The low 32 bits of the index of the n-gram at each position
+    private final IntBuffer lowKeys;
+    // The remaining bits of the index of the n-gram at each position, or null if every index fits in 32 bits
+    private final ByteBuffer highKeys;
+    // The log probability of the n-gram at each position, addressed by position rather than n-gram index
+    private final NGramTable values;
+
+    private PerfectHashNGramTable(MinimalPerfectHash hash, IntBuffer lowKeys, ByteBuffer highKeys, NGramTable values) {
+        this.hash = hash;
+        this.lowKeys = lowKeys;
+        this.highKeys = highKeys;
+        this.values = values;
+    }
+
+    /**
+     * @param source
+     *            the table as written by writeTo(), positioned at its beginning
+     */
+    public PerfectHashNGramTable(ByteBuffer source) {
+        this(source, false);
+    }
+
+    /**
+     * @param source
+     *            the table as written by writeTo(), positioned at its beginning
+     * @param mapped
+     *            whether to read the keys and values straight from the source rather than copying them onto the heap,
+     *            in which case the source must outlive the table
+     */
+    public PerfectHashNGramTable(ByteBuffer source, boolean mapped) {
+        this.hash = new MinimalPerfectHash(source);
+
+        int size = hash.size();
+
+        this.lowKeys = mapped ? slice(source, size, Integer.BYTES).asIntBuffer() : IntBuffer.wrap(readInts(source, size));
+
+        if (source.getInt() == 0) {
+            this.highKeys = null;
+        } else {
+            this.highKeys = mapped ? slice(source, size, Byte.BYTES) : ByteBuffer.wrap(readBytes(source, size));
+        }
+
+        int valueLayout = source.getInt();
+
+        if (valueLayout == FLOAT_VALUES) {
+            this.values = mapped
+                    ? new MappedDenseNGramTable(slice(source, size, Float.BYTES).asFloatBuffer(), size)
+                    : new DenseNGramTable(FloatBuffer.wrap(readFloats(source, size)), size);
+        } else if (valueLayout == QUANTIZED_VALUES) {
+            this.values = new QuantizedNGramTable(source, size, mapped);
+        } else {
+            throw new IllegalArgumentException("Unrecognized perfect hash value layout " + valueLayout + ".");
+        }
+    }
+
+    /**
+     * @param quantizationBits
+     *            the number of bits to quantize the log probabilities to, or zero to keep them as floats
+     */
+    public static PerfectHashNGramTable from(NGramTable source, int quantizationBits) {
+        int size = source.size();
+        long[] keys = new long[size];
+        int[] count = new int[1];
+
+        source.forEach((index, logProbability) -> keys[count[0] ++] = index);
+
+        MinimalPerfectHash hash = MinimalPerfectHash.build(keys);
+
+        boolean needsHighKeys = false;
+
+        for (long key : keys) {
+            if ((key >>> Integer.SIZE) != 0L) {
+                needsHighKeys = true;
+                break;
+            }
+        }
+
+        IntBuffer lowKeys = IntBuffer.allocate(size);
+        ByteBuffer highKeys = needsHighKeys ? ByteBuffer.allocate(size) : null;
+        NGramTable values = quantizationBits == 0
+                ? new DenseNGramTable(size)
+                : new QuantizedNGramTable(size, LogProbabilityQuantizer.fit(NGramTables.values(source), quantizationBits));
+
+        source.forEach((index, logProbability) -> {
+            int position = hash.lookup(index);
+
+            if ((index >>> (Integer.SIZE + Byte.SIZE)) != 0L) {
+                throw new IllegalArgumentException("N-gram index " + index + " is too large for a perfect hash n-gram table.");
+            }
+
+            lowKeys.put(position, (int) index);
+
+            if (highKeys != null) {
+                highKeys.put(position, (byte) (index >>> Integer.SIZE));
+            }
+
+            values.put(position, logProbability);
+        });
+
+        return new PerfectHashNGramTable(hash, lowKeys, highKeys, values);
+    }
+
+    @Override
+    public float get(long index) {
+        int position = hash.lookup(index);
+
+        if (position == MinimalPerfectHash.NOT_FOUND || !isKeyAt(position, index)) {
+            return NOT_FOUND;
+        }
+
+        return values.get(position);
+    }
+
+    /**
+     * Replaces the log probability of an n-gram which the table was built from.  The n-grams themselves are fixed.
+     */
+    @Override
+    public float put(long index, float logProbability) {
+        int position = hash.lookup(index);
+
+        if (position == MinimalPerfectHash.NOT_FOUND || !isKeyAt(position, index)) {
+            throw new UnsupportedOperationException("Unable to add n-gram index " + index
+                    + " to a perfect hash n-gram table, which only holds the n-grams it was built from.");
+        }
+
+        return values.put(position, logProbability);
+    }
+
+    @Override
+    public int size() {
+        return hash.size();
+    }
+
+    @Override
+    public void forEach(EntryConsumer consumer) {
+        values.forEach((position, logProbability) -> consumer.accept(keyAt((int) position), logProbability));
+    }
+
+    @Override
+    public long memoryUsage() {
+        return hash.memoryUsage() + ((long) lowKeys.capacity() * Integer.BYTES)
+                + (highKeys == null ? 0L : highKeys.capacity()) + values.memoryUsage();
+    }
+
+    /**
+     * @return the number of bits the log probabilities are quantized to, or zero if they are floats
+     */
+    public int getQuantizationBits() {
+        return values instanceof QuantizedNGramTable ? ((QuantizedNGramTable) values).getBits() : 0;
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel, ByteOrder byteOrder) throws IOException {
+        hash.writeTo(channel, byteOrder);
+        writeInts(channel, byteOrder, lowKeys);
+        writeInt(channel, byteOrder, highKeys == null ? 0 : 1);
+
+        if (highKeys != null) {
+            writeBytes(channel, highKeys);
+        }
+
+        writeInt(channel, byteOrder, values instanceof QuantizedNGramTable ? QUANTIZED_VALUES : FLOAT_VALUES);
+        values.writeTo(channel, byteOrder);
+    }
+
+    private boolean isKeyAt(int position, long index) {
+        return lowKeys.get(position) == (int) index
+                && (highKeys == null ? (index >>> Integer.SIZE) == 0L : highKeys.get(position) == (byte) (index >>> Integer.SIZE));
+    }
+
+    private long keyAt(int position) {
+        long low = lowKeys.get(position) & 0xFFFFFFFFL;
+
+        return highKeys == null ? low : ((highKeys.get(position) & 0xFFL) << Integer.SIZE) | low;
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Like DenseNGramTable, holds a value for every possible n-gram, but stores an 8- or 16-bit code per n-gram instead of
+ * a float, so it takes a quarter or a half of the memory at the cost of rounding each log probability to the nearest
+ * of the quantizer's bucket centres.  The codes are either on the heap or read straight from a memory-mapped file.
+ */
+public class QuantizedNGramTable extends AbstractNGramTable {
+    private final LogProbabilityQuantizer quantizer;
+    // Exactly one of these holds the codes, depending on the number of bits of the quantizer
+    private final ByteBuffer byteCodes;
+    private final ShortBuffer shortCodes;
+    private int size;
+
+    public QuantizedNGramTable(int capacity, LogProbabilityQuantizer quantizer) {
+        this.quantizer = quantizer;
+        this.byteCodes = quantizer.getBits() == Byte.SIZE ? ByteBuffer.allocate(capacity) : null;
+        this.shortCodes = quantizer.getBits() == Byte.SIZE ? null : ShortBuffer.allocate(capacity);
+    }
+
+    /**
+     * @param source
+     *            the table as written by writeTo(), positioned at its beginning
+     * @param size
+     *            the number of n-grams in the table
+     */
+    public QuantizedNGramTable(ByteBuffer source, int size) {
+        this(source, size, false);
+    }
+
+    /**
+     * @param source
+     *            the table as written by writeTo(), positioned at its beginning
+     * @param size
+     *            the number of n-grams in the table
+     * @param mapped
+     *            whether to read the codes straight from the source rather than copying them onto the heap, in which
+     *            case the source must outlive the table
+     */
+    public QuantizedNGramTable(ByteBuffer source, int size, boolean mapped) {
+        this.quantizer = new LogProbabilityQuantizer(source);
+
+        int capacity = readLength(source);
+        boolean eightBit = quantizer.getBits() == Byte.SIZE;
+
+        if (mapped) {
+            this.byteCodes = eightBit ? slice(source, capacity, Byte.BYTES) : null;
+            this.shortCodes = eightBit ? null : slice(source, capacity, Short.BYTES).asShortBuffer();
+        } else {
+            this.byteCodes = eightBit ? ByteBuffer.wrap(readBytes(source, capacity)) : null;
+            this.shortCodes = eightBit ? null : ShortBuffer.wrap(readShorts(source, capacity));
+        }
+
+        this.size = size;
+    }
+
+    /**
+     * Quantizes the values of the source table, fitting the quantizer's buckets to them.
+     */
+    public static QuantizedNGramTable from(NGramTable source, int capacity, int bits) {
+        QuantizedNGramTable table = new QuantizedNGramTable(capacity, LogProbabilityQuantizer.fit(NGramTables.values(source), bits));
+
+        source.forEach(table::put);
+
+        return table;
+    }
+
+    @Override
+    public float get(long index) {
+        return quantizer.decode(getCode((int) index));
+    }
+
+    @Override
+    public float put(long index, float logProbability) {
+        int previousCode = getCode((int) index);
+
+        int code = quantizer.encode(logProbability);
+
+        if (byteCodes != null) {
+            byteCodes.put((int) index, (byte) code);
+        } else {
+            shortCodes.put((int) index, (short) code);
+        }
+
+        if (previousCode == LogProbabilityQuantizer.NOT_FOUND_CODE) {
+            size ++;
+        }
+
+        return quantizer.decode(previousCode);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(EntryConsumer consumer) {
+        int capacity = capacity();
+
+        for (int i = 0; i < capacity; i ++) {
+            int code = getCode(i);
+
+            if (code != LogProbabilityQuantizer.NOT_FOUND_CODE) {
+                consumer.accept(i, quantizer.decode(code));
+            }
+        }
+    }
+
+    @Override
+    public long memoryUsage() {
+        return quantizer.memoryUsage() + ((long) capacity() * (quantizer.getBits() / Byte.SIZE));
+    }
+
+    public int capacity() {
+        return byteCodes != null ? byteCodes.capacity() : shortCodes.capacity();
+    }
+
+    public int getBits() {
+        return quantizer.getBits();
+    }
+
+    @Override
+    public void writeTo(WritableByteChannel channel, ByteOrder byteOrder) throws IOException {
+        quantizer.writeTo(channel, byteOrder);
+        writeInt(channel, byteOrder, capacity());
+
+        if (byteCodes != null) {
+            writeBytes(channel, byteCodes);
+        } else {
+            writeShorts(channel, byteOrder, shortCodes);
+        }
+    }
+
+    private int getCode(int index) {
+        return byteCodes != null ? byteCodes.get(index) & 0xFF : shortCodes.get(index) & 0xFFFF;
+    }
+}
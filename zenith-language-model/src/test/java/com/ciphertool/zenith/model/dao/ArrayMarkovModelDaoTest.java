@@ -0,0 +1,368 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.dao;
+
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import com.ciphertool.zenith.model.markov.StupidBackOff;
+import com.ciphertool.zenith.model.markov.table.MappedDenseNGramTable;
+import com.ciphertool.zenith.model.markov.table.MappedHashedNGramTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.Assert.*;
+
+public class ArrayMarkovModelDaoTest {
+    private static final int ORDER = 5;
+    private static final int MAX_NGRAMS_TO_KEEP = 100;
+
+    private Path binaryModelFile;
+    private ArrayMarkovModelDao dao;
+
+    @Before
+    public void setUp() throws IOException {
+        binaryModelFile = Files.createTempFile("zenith-model", ".bin");
+
+        dao = new ArrayMarkovModelDao();
+
+        Field binaryModelFilenameField = ReflectionUtils.findField(ArrayMarkovModelDao.class, "binaryModelFilename");
+        ReflectionUtils.makeAccessible(binaryModelFilenameField);
+        ReflectionUtils.setField(binaryModelFilenameField, dao, binaryModelFile.toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(binaryModelFile);
+    }
+
+    @Test
+    public void testSaveAndFind() {
+        ArrayMarkovModel model = new ArrayMarkovModel(ORDER);
+        model.addNode(unigram("e", 120L));
+        model.addNode(unigram("t", 90L));
+        model.addNode(nGram("hello", -8.5d));
+        model.addNode(nGram("world", -9.25d));
+
+        dao.save(model, MAX_NGRAMS_TO_KEEP);
+
+        ArrayMarkovModel found = dao.find(ORDER, MAX_NGRAMS_TO_KEEP);
+
+        assertNotNull(found);
+        assertEquals(ORDER, found.getOrder());
+        assertEquals(2, found.getMapSize());
+        assertEquals(210L, found.getTotalNGramCount());
+        assertEquals(2, found.getFirstOrderNodes().size());
+        assertEquals(-8.5f, found.findExact("hello"), 0f);
+        assertEquals(-9.25f, found.findExact("world"), 0f);
+        assertEquals(-1f, found.findExact("zzzzz"), 0f);
+    }
+
+    @Test
+    public void testSaveAndFind_hashed() {
+        int order = ArrayMarkovModel.MAX_ORDER;
+
+        ArrayMarkovModel model = new ArrayMarkovModel(order);
+        model.addNode(unigram("e", 120L));
+        model.addNode(nGram("iliketo", -11.5d));
+        model.addNode(nGram("killing", -12.75d));
+
+        dao.save(model, MAX_NGRAMS_TO_KEEP);
+
+        ArrayMarkovModel found = dao.find(order, MAX_NGRAMS_TO_KEEP);
+
+        assertNotNull(found);
+        assertEquals(order, found.getOrder());
+        assertEquals(2, found.getMapSize());
+        assertEquals(120L, found.getTotalNGramCount());
+        assertEquals(-11.5f, found.findExact("iliketo"), 0f);
+        assertEquals(-12.75f, found.findExact("killing"), 0f);
+        assertEquals(-1f, found.findExact("zzzzzzz"), 0f);
+    }
+
+    @Test
+    public void testFind_hashedWithCorruptCapacity() throws IOException {
+        int order = ArrayMarkovModel.MAX_ORDER;
+
+        ArrayMarkovModel model = new ArrayMarkovModel(order);
+        model.addNode(unigram("e", 120L));
+        model.addNode(nGram("iliketo", -11.5d));
+
+        dao.save(model, MAX_NGRAMS_TO_KEEP);
+
+        // Keep the header and unigram counts, and follow them with an empty table whose capacity is zero
+        byte[] bytes = Files.readAllBytes(binaryModelFile);
+        int headerSize = (Integer.BYTES * 7) + Float.BYTES + (Long.BYTES * 26);
+        ByteBuffer corrupt = ByteBuffer.allocate(headerSize + Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        corrupt.put(bytes, 0, headerSize);
+        corrupt.putInt(0);
+        Files.write(binaryModelFile, corrupt.array());
+
+        assertNull(dao.find(order, MAX_NGRAMS_TO_KEEP));
+
+        Field memoryMappedField = ReflectionUtils.findField(ArrayMarkovModelDao.class, "memoryMapped");
+        ReflectionUtils.makeAccessible(memoryMappedField);
+        ReflectionUtils.setField(memoryMappedField, dao, true);
+
+        assertNull(dao.find(order, MAX_NGRAMS_TO_KEEP));
+    }
+
+    @Test
+    public void testFind_hashedWithOverfullTable() throws IOException {
+        int order = ArrayMarkovModel.MAX_ORDER;
+
+        ArrayMarkovModel model = new ArrayMarkovModel(order);
+        model.addNode(unigram("e", 120L));
+        model.addNode(nGram("iliketo", -11.5d));
+
+        dao.save(model, MAX_NGRAMS_TO_KEEP);
+
+        // Claim that every slot of the table is full, which would leave lookups of unknown n-grams probing forever
+        ByteBuffer corrupt = ByteBuffer.wrap(Files.readAllBytes(binaryModelFile)).order(ByteOrder.LITTLE_ENDIAN);
+        int headerSize = (Integer.BYTES * 7) + Float.BYTES + (Long.BYTES * 26);
+        int capacity = corrupt.getInt(headerSize);
+        corrupt.putInt(Integer.BYTES * 4, capacity);
+        corrupt.putInt(Integer.BYTES * 5, capacity);
+        Files.write(binaryModelFile, corrupt.array());
+
+        assertNull(dao.find(order, MAX_NGRAMS_TO_KEEP));
+
+        Field memoryMappedField = ReflectionUtils.findField(ArrayMarkovModelDao.class, "memoryMapped");
+        ReflectionUtils.makeAccessible(memoryMappedField);
+        ReflectionUtils.setField(memoryMappedField, dao, true);
+
+        assertNull(dao.find(order, MAX_NGRAMS_TO_KEEP));
+    }
+
+    @Test
+    public void testSaveAndFind_quantized() {
+        ArrayMarkovModel model = new ArrayMarkovModel(ORDER);
+        model.addNode(unigram("e", 120L));
+        model.addNode(nGram("hello", -8.5d));
+        model.addNode(nGram("world", -9.25d));
+
+        dao.save(model.compact(8, false), MAX_NGRAMS_TO_KEEP);
+
+        assertNull(dao.find(ORDER, MAX_NGRAMS_TO_KEEP));
+        assertNull(dao.find(ORDER, MAX_NGRAMS_TO_KEEP, 16, false));
+
+        ArrayMarkovModel found = dao.find(ORDER, MAX_NGRAMS_TO_KEEP, 8, false);
+
+        assertNotNull(found);
+        assertEquals(2, found.getMapSize());
+        assertEquals(120L, found.getTotalNGramCount());
+        assertEquals(-8.5f, found.findExact("hello"), 0f);
+        assertEquals(-9.25f, found.findExact("world"), 0f);
+        assertEquals(-1f, found.findExact("zzzzz"), 0f);
+    }
+
+    @Test
+    public void testSaveAndFind_perfectHash() {
+        int order = ArrayMarkovModel.MAX_ORDER;
+
+        ArrayMarkovModel model = new ArrayMarkovModel(order);
+        model.addNode(unigram("e", 120L));
+        model.addNode(nGram("iliketo", -11.5d));
+        model.addNode(nGram("killing", -12.75d));
+        model.addNode(nGram("zzzzzzz", -20d));
+
+        dao.save(model.compact(16, true), MAX_NGRAMS_TO_KEEP);
+
+        assertNull(dao.find(order, MAX_NGRAMS_TO_KEEP, 16, false));
+
+        ArrayMarkovModel found = dao.find(order, MAX_NGRAMS_TO_KEEP, 16, true);
+
+        assertNotNull(found);
+        assertEquals(3, found.getMapSize());
+        assertEquals(-11.5f, found.findExact("iliketo"), 0f);
+        assertEquals(-12.75f, found.findExact("killing"), 0f);
+        assertEquals(-20f, found.findExact("zzzzzzz"), 0f);
+        assertEquals(-1f, found.findExact("zodiacs"), 0f);
+    }
+
+    @Test
+    public void testSaveAndFind_memoryMapped() {
+        Field memoryMappedField = ReflectionUtils.findField(ArrayMarkovModelDao.class, "memoryMapped");
+        ReflectionUtils.makeAccessible(memoryMappedField);
+        ReflectionUtils.setField(memoryMappedField, dao, true);
+
+        for (int order : new int[] { ORDER, ArrayMarkovModel.MAX_ORDER }) {
+            for (int quantizationBits : new int[] { 0, 8 }) {
+                for (boolean perfectHash : new boolean[] { false, true }) {
+                    if (quantizationBits != 0 && !perfectHash && !ArrayMarkovModel.isDense(order)) {
+                        continue;
+                    }
+
+                    String first = "iliketokill".substring(0, order);
+                    String second = "zodiackiller".substring(0, order);
+
+                    ArrayMarkovModel model = new ArrayMarkovModel(order);
+                    model.addNode(unigram("e", 120L));
+                    model.addNode(nGram(first, -11.5d));
+                    model.addNode(nGram(second, -12.75d));
+
+                    dao.save(model.compact(quantizationBits, perfectHash), MAX_NGRAMS_TO_KEEP);
+
+                    ArrayMarkovModel found = dao.find(order, MAX_NGRAMS_TO_KEEP, quantizationBits, perfectHash);
+
+                    assertNotNull(found);
+                    assertEquals(2, found.getMapSize());
+                    assertEquals(120L, found.getTotalNGramCount());
+                    assertEquals(-11.5f, found.findExact(first), 0f);
+                    assertEquals(-12.75f, found.findExact(second), 0f);
+                    assertEquals(-1f, found.findExact("abcdefg".substring(0, order)), 0f);
+
+                    if (quantizationBits == 0 && !perfectHash) {
+                        assertTrue(found.getNGramTable() instanceof MappedDenseNGramTable || found.getNGramTable() instanceof MappedHashedNGramTable);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testFind_memoryMappedIsReadOnly() {
+        Field memoryMappedField = ReflectionUtils.findField(ArrayMarkovModelDao.class, "memoryMapped");
+        ReflectionUtils.makeAccessible(memoryMappedField);
+        ReflectionUtils.setField(memoryMappedField, dao, true);
+
+        dao.save(new ArrayMarkovModel(ORDER), MAX_NGRAMS_TO_KEEP);
+
+        dao.find(ORDER, MAX_NGRAMS_TO_KEEP).addNode(nGram("hello", -8.5d));
+    }
+
+    @Test
+    public void testSave_deletesTempFileOnFailure() throws IOException {
+        // A directory which is not empty cannot be replaced by the finished file
+        Path directory = Files.createTempDirectory("zenith-model");
+        Path blocker = Files.createFile(directory.resolve("blocker"));
+        Path tempFile = Paths.get(directory + ".tmp");
+
+        Field binaryModelFilenameField = ReflectionUtils.findField(ArrayMarkovModelDao.class, "binaryModelFilename");
+        ReflectionUtils.makeAccessible(binaryModelFilenameField);
+        ReflectionUtils.setField(binaryModelFilenameField, dao, directory.toString());
+
+        ArrayMarkovModel model = new ArrayMarkovModel(ORDER);
+        model.addNode(unigram("e", 120L));
+        model.addNode(nGram("hello", -8.5d));
+
+        try {
+            dao.save(model, MAX_NGRAMS_TO_KEEP);
+            fail("Expected the save to fail.");
+        } catch (IllegalStateException e) {
+            assertFalse(Files.exists(tempFile));
+        } finally {
+            Files.deleteIfExists(tempFile);
+            Files.delete(blocker);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    public void testFind_fileDoesNotExist() throws IOException {
+        Files.delete(binaryModelFile);
+
+        assertNull(dao.find(ORDER, MAX_NGRAMS_TO_KEEP));
+    }
+
+    @Test
+    public void testFind_onClasspath() throws IOException {
+        ArrayMarkovModel model = new ArrayMarkovModel(ORDER);
+        model.addNode(unigram("e", 120L));
+        model.addNode(nGram("hello", -8.5d));
+
+        // A relative filename which does not exist in the working directory, but does in the root of the test classes
+        String filename = "array-markov-model-dao-test.bin";
+        Path classpathFile = Paths.get(new ClassPathResource("").getFile().getAbsolutePath(), filename);
+
+        dao.save(model, MAX_NGRAMS_TO_KEEP);
+        Files.move(binaryModelFile, classpathFile, StandardCopyOption.REPLACE_EXISTING);
+
+        Field binaryModelFilenameField = ReflectionUtils.findField(ArrayMarkovModelDao.class, "binaryModelFilename");
+        ReflectionUtils.makeAccessible(binaryModelFilenameField);
+        ReflectionUtils.setField(binaryModelFilenameField, dao, filename);
+
+        try {
+            ArrayMarkovModel found = dao.find(ORDER, MAX_NGRAMS_TO_KEEP);
+
+            assertNotNull(found);
+            assertEquals(1, found.getMapSize());
+            assertEquals(120L, found.getTotalNGramCount());
+            assertEquals(-8.5f, found.findExact("hello"), 0f);
+            assertNull(dao.find(ORDER, MAX_NGRAMS_TO_KEEP + 1));
+        } finally {
+            Files.deleteIfExists(classpathFile);
+        }
+    }
+
+    @Test
+    public void testFind_differentSettings() {
+        dao.save(new ArrayMarkovModel(ORDER), MAX_NGRAMS_TO_KEEP);
+
+        assertNull(dao.find(ORDER, MAX_NGRAMS_TO_KEEP + 1));
+    }
+
+    @Test
+    public void testSaveAndFind_backedOff() {
+        ArrayMarkovModel model = new ArrayMarkovModel(3);
+        model.addNode(nGram("abc", -4d));
+
+        StupidBackOff backOff = new StupidBackOff(3, 0.4f);
+        backOff.addNode(unigram("a", 10L));
+        backOff.apply(model);
+
+        dao.save(model, MAX_NGRAMS_TO_KEEP);
+
+        assertNull(dao.find(3, MAX_NGRAMS_TO_KEEP));
+        assertNull(dao.find(3, MAX_NGRAMS_TO_KEEP, 0, false, 0.5f));
+
+        ArrayMarkovModel found = dao.find(3, MAX_NGRAMS_TO_KEEP, 0, false, 0.4f);
+
+        assertNotNull(found);
+        assertEquals(0.4f, found.getBackOffWeight(), 0f);
+        assertEquals(1, found.getKnownNGramCount());
+        assertEquals(26 * 26 * 26, found.getMapSize());
+        assertEquals(-4f, found.findExact("abc"), 0f);
+        assertEquals(model.findExact("zzz"), found.findExact("zzz"), 0f);
+    }
+
+    private static TreeNGram unigram(String letter, long count) {
+        TreeNGram node = new TreeNGram(letter);
+        node.setCount(count);
+        return node;
+    }
+
+    private static TreeNGram nGram(String nGramString, double logProbability) {
+        TreeNGram node = new TreeNGram(nGramString);
+        node.setLogProbability(logProbability);
+        return node;
+    }
+}
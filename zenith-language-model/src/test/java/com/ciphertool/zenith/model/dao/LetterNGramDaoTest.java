@@ -0,0 +1,183 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.dao;
+
+import com.ciphertool.zenith.model.archive.ModelUnzipper;
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LetterNGramDaoTest {
+    private Path modelFile;
+    private LetterNGramDao dao;
+
+    @Before
+    public void setUp() throws IOException {
+        modelFile = Files.createTempFile("zenith-model", ".csv");
+
+        dao = new LetterNGramDao();
+
+        Field modelFilenameField = ReflectionUtils.findField(LetterNGramDao.class, "modelFilename");
+        ReflectionUtils.makeAccessible(modelFilenameField);
+        ReflectionUtils.setField(modelFilenameField, dao, modelFile.toString());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(modelFile);
+    }
+
+    @Test
+    public void testFindAllInRange_everyLineOnce() {
+        List<TreeNGram> nodes = nodes();
+
+        dao.addAll(nodes);
+
+        long fileSize = dao.getFileSize();
+
+        for (int chunks = 1; chunks <= 40; chunks ++) {
+            List<TreeNGram> found = new ArrayList<>();
+
+            for (int i = 0; i < chunks; i ++) {
+                dao.findAllInRange((fileSize * i) / chunks, (fileSize * (i + 1)) / chunks, found::add);
+            }
+
+            assertSameNGrams(nodes, found);
+        }
+    }
+
+    @Test
+    public void testFindAllInBlocks_everyLineOnce() {
+        List<TreeNGram> nodes = nodes();
+
+        dao.addAll(nodes);
+
+        // Blocks smaller than a line grow to fit it
+        for (int blockSize = 8; blockSize <= 4096; blockSize *= 2) {
+            List<TreeNGram> found = new ArrayList<>();
+
+            dao.findAllInBlocks(blockSize, (block, length) -> dao.parseBlock(block, length, found::add));
+
+            assertSameNGrams(nodes, found);
+        }
+    }
+
+    @Test
+    public void testFindAllInBlocks_archived() throws IOException {
+        List<TreeNGram> nodes = nodes();
+
+        dao.addAll(nodes);
+
+        // The archive must be on the classpath, so it goes in the root of the test classes
+        Path archive = Paths.get(new ClassPathResource("").getFile().getAbsolutePath(), "letter-ngram-dao-test.zip");
+
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zos.putNextEntry(new ZipEntry("zenith-model.csv"));
+            zos.write(Files.readAllBytes(modelFile));
+            zos.closeEntry();
+        }
+
+        try {
+            Files.delete(modelFile);
+
+            ModelUnzipper modelUnzipper = new ModelUnzipper();
+
+            Field modelArchiveFilenameField = ReflectionUtils.findField(ModelUnzipper.class, "modelArchiveFilename");
+            ReflectionUtils.makeAccessible(modelArchiveFilenameField);
+            ReflectionUtils.setField(modelArchiveFilenameField, modelUnzipper, archive.getFileName().toString());
+
+            Field modelUnzipperField = ReflectionUtils.findField(LetterNGramDao.class, "modelUnzipper");
+            ReflectionUtils.makeAccessible(modelUnzipperField);
+            ReflectionUtils.setField(modelUnzipperField, dao, modelUnzipper);
+
+            assertTrue(dao.isArchived());
+            // ZipOutputStream writes the size after the data, so it is not known up front
+            assertEquals(-1L, dao.getFileSize());
+
+            List<TreeNGram> found = new ArrayList<>();
+            dao.findAllInBlocks(256, (block, length) -> dao.parseBlock(block, length, found::add));
+
+            assertSameNGrams(nodes, found);
+            assertSameNGrams(nodes, dao.findAll());
+            assertFalse(Files.exists(modelFile));
+        } finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    @Test
+    public void testFindAllInRange_lastLineWithoutLineBreak() throws IOException {
+        Files.write(modelFile, "\"ab\",\"2\",\"3\",\"\",\"\",\"0.5\",\"-0.69\"\r\n\"cd\",\"2\",\"4\",\"0.1\",\"-2.3\",\"0.5\",\"-0.69\"".getBytes(StandardCharsets.UTF_8));
+
+        List<TreeNGram> found = new ArrayList<>();
+        dao.findAllInRange(0L, dao.getFileSize(), found::add);
+
+        assertEquals(2, found.size());
+        assertEquals("ab", found.get(0).getCumulativeString());
+        assertEquals(0d, found.get(0).getProbability(), 0d);
+        assertEquals("cd", found.get(1).getCumulativeString());
+        assertEquals(-2.3d, found.get(1).getLogProbability(), 0d);
+    }
+
+    private static List<TreeNGram> nodes() {
+        List<TreeNGram> nodes = new ArrayList<>();
+
+        for (int i = 0; i < 50; i ++) {
+            TreeNGram nGram = new TreeNGram(String.valueOf((char) ('a' + (i % 26))) + (char) ('a' + ((i * 7) % 26)));
+            nGram.setOrder(2);
+            nGram.setCount(i + 1L);
+            nGram.setProbability(i / 100d);
+            nGram.setLogProbability(-i);
+            nGram.setConditionalProbability(0.5d);
+            nGram.setLogConditionalProbability(Math.log(0.5d));
+            nodes.add(nGram);
+        }
+
+        return nodes;
+    }
+
+    private static void assertSameNGrams(List<TreeNGram> expected, List<TreeNGram> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i ++) {
+            assertEquals(expected.get(i).getCumulativeString(), actual.get(i).getCumulativeString());
+            assertEquals(expected.get(i).getCount(), actual.get(i).getCount());
+            assertEquals(expected.get(i).getLogProbability(), actual.get(i).getLogProbability(), 0d);
+        }
+    }
+}
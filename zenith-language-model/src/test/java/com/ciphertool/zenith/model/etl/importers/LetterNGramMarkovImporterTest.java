@@ -0,0 +1,134 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.etl.importers;
+
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.ciphertool.zenith.model.markov.TreeMarkovModel;
+import com.ciphertool.zenith.model.markov.table.LetterNGramCounter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.File;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class LetterNGramMarkovImporterTest {
+    private static final int ORDER = 3;
+    private static final String TEXT = "I like killing people because it is so much fun.\r\n"
+            + "\r\n"
+            + "It is more fun than killing wild game in the forrest\n"
+            + "  because man is the most dangerous animal of all!\n"
+            + "To kill something gives me the most thrilling experence\r"
+            + "ab\n"
+            + "It is even better than getting your rocks off with a girl 123 ... \t the best part";
+
+    @Rule
+    public TemporaryFolder corpusFolder = new TemporaryFolder();
+
+    private LetterNGramMarkovImporter importer;
+
+    @Before
+    public void setUp() {
+        importer = new LetterNGramMarkovImporter();
+
+        Field taskExecutorField = ReflectionUtils.findField(LetterNGramMarkovImporter.class, "taskExecutor");
+        ReflectionUtils.makeAccessible(taskExecutorField);
+        ReflectionUtils.setField(taskExecutorField, importer, new SyncTaskExecutor());
+
+        Field corpusDirectoryField = ReflectionUtils.findField(LetterNGramMarkovImporter.class, "corpusDirectory");
+        ReflectionUtils.makeAccessible(corpusDirectoryField);
+        ReflectionUtils.setField(corpusDirectoryField, importer, corpusFolder.getRoot().getAbsolutePath());
+
+        Field orderField = ReflectionUtils.findField(LetterNGramMarkovImporter.class, "order");
+        ReflectionUtils.makeAccessible(orderField);
+        ReflectionUtils.setField(orderField, importer, ORDER);
+
+        Field workersField = ReflectionUtils.findField(LetterNGramMarkovImporter.class, "workers");
+        ReflectionUtils.makeAccessible(workersField);
+        ReflectionUtils.setField(workersField, importer, 2);
+    }
+
+    @Test
+    public void testCountNGrams() throws Exception {
+        LetterNGramCounter actual = new LetterNGramCounter(ORDER);
+        importer.countNGrams(new StringReader(TEXT), actual);
+
+        LetterNGramCounter expected = countLineByLine(TEXT);
+
+        assertEquals(expected.getTotal(), actual.getTotal());
+        assertEquals(expected.size(), actual.size());
+        expected.forEach((index, count) -> assertEquals(count, actual.getCount(index)));
+    }
+
+    @Test
+    public void testImportCorpus() throws Exception {
+        File subdirectory = corpusFolder.newFolder("nested");
+        Files.write(corpusFolder.newFile("first.txt").toPath(), TEXT.getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(subdirectory, "second.txt").toPath(), "the thing\nthe".getBytes(StandardCharsets.UTF_8));
+        Files.write(corpusFolder.newFile("ignored.csv").toPath(), "the the the".getBytes(StandardCharsets.UTF_8));
+
+        TreeMarkovModel model = importer.importCorpus();
+
+        LetterNGramCounter expected = countLineByLine(TEXT + "\nthe thing\nthe");
+
+        assertEquals(expected.size(), model.size() - countPrefixNodes(model));
+        expected.forEach((index, count) -> assertEquals(count, model.findExact(expected.toNGram(index)).getCount()));
+
+        TreeNGram the = model.findExact("the");
+        assertEquals((double) the.getCount() / expected.getTotal(), the.getProbability(), 0d);
+    }
+
+    /**
+     * Counts the way the importer did before it streamed its input: regex-normalising each line separately.
+     */
+    private static LetterNGramCounter countLineByLine(String text) {
+        LetterNGramCounter counter = new LetterNGramCounter(ORDER);
+
+        for (String line : text.split("(\n|\r|\r\n)+")) {
+            String sentence = line.replaceAll("[^a-zA-Z]", "").toLowerCase();
+
+            for (int i = 0; i + ORDER < sentence.length(); i++) {
+                counter.increment(counter.computeIndex(sentence, i));
+            }
+        }
+
+        return counter;
+    }
+
+    private static long countPrefixNodes(TreeMarkovModel model) {
+        long prefixNodes = 1L;
+
+        for (int node = 1; node < model.size(); node++) {
+            if (model.getDepth(node) < ORDER) {
+                prefixNodes++;
+            }
+        }
+
+        return prefixNodes;
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.etl.persisters;
+
+import com.ciphertool.zenith.model.dao.ArrayMarkovModelDao;
+import com.ciphertool.zenith.model.dao.ImportManifestDao;
+import com.ciphertool.zenith.model.dao.LetterNGramDao;
+import com.ciphertool.zenith.model.entities.ImportedCorpusFile;
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.ciphertool.zenith.model.etl.importers.LetterNGramMarkovImporter;
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import com.ciphertool.zenith.model.markov.TreeMarkovModel;
+import com.ciphertool.zenith.model.markov.table.NGramTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.ReflectionUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class NGramPersisterTest {
+    private static final int ORDER = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File corpusDirectory;
+    private Path modelFile;
+    private Path binaryModelFile;
+    private ThreadPoolTaskExecutor taskExecutor;
+    private LetterNGramDao letterNGramDao;
+    private ImportManifestDao importManifestDao;
+    private LetterNGramMarkovImporter importer;
+    private NGramPersister persister;
+
+    @Before
+    public void setUp() throws IOException {
+        corpusDirectory = folder.newFolder("corpus");
+        modelFile = folder.getRoot().toPath().resolve("zenith-model.csv");
+        binaryModelFile = folder.getRoot().toPath().resolve("zenith-model.bin");
+
+        taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(4);
+        taskExecutor.setMaxPoolSize(4);
+        taskExecutor.initialize();
+
+        letterNGramDao = new LetterNGramDao();
+        setField(LetterNGramDao.class, letterNGramDao, "modelFilename", modelFile.toString());
+
+        ArrayMarkovModelDao arrayMarkovModelDao = new ArrayMarkovModelDao();
+        setField(ArrayMarkovModelDao.class, arrayMarkovModelDao, "binaryModelFilename", binaryModelFile.toString());
+
+        importManifestDao = new ImportManifestDao();
+        setField(ImportManifestDao.class, importManifestDao, "manifestFilename", folder.getRoot().toPath().resolve("zenith-model-manifest.csv").toString());
+
+        importer = new LetterNGramMarkovImporter();
+        setField(LetterNGramMarkovImporter.class, importer, "taskExecutor", taskExecutor);
+        setField(LetterNGramMarkovImporter.class, importer, "corpusDirectory", corpusDirectory.getAbsolutePath());
+        setField(LetterNGramMarkovImporter.class, importer, "order", ORDER);
+
+        persister = new NGramPersister();
+        setField(NGramPersister.class, persister, "taskExecutor", taskExecutor);
+        setField(NGramPersister.class, persister, "letterNGramMarkovImporter", importer);
+        setField(NGramPersister.class, persister, "letterNGramDao", letterNGramDao);
+        setField(NGramPersister.class, persister, "arrayMarkovModelDao", arrayMarkovModelDao);
+        setField(NGramPersister.class, persister, "importManifestDao", importManifestDao);
+        setField(NGramPersister.class, persister, "maxNGramsToKeep", 1000);
+        setField(NGramPersister.class, persister, "incremental", true);
+        setField(NGramPersister.class, persister, "order", ORDER);
+        // Small enough that most subtrees are serialized in more than one batch
+        setField(NGramPersister.class, persister, "batchSize", 3);
+    }
+
+    @After
+    public void tearDown() {
+        taskExecutor.shutdown();
+    }
+
+    @Test
+    public void testPersistNodes() {
+        String text = "thequickbrownfoxjumpsoverthelazydogthequickbrownfox";
+        TreeMarkovModel model = new TreeMarkovModel(4);
+
+        for (int i = 0; i + 4 <= text.length(); i++) {
+            model.addLetterTransition(text.substring(i, i + 4));
+        }
+
+        model.computeConditionalProbabilities();
+
+        persister.persistNodes(model);
+
+        List<TreeNGram> found = letterNGramDao.findAll();
+
+        // Every node but the root, in the same pre-order as the model's own traversal
+        assertEquals(model.size() - 1, found.size());
+        assertEquals(preOrder(model, TreeMarkovModel.ROOT_NODE, new StringBuilder()).toString().trim(),
+                found.stream().map(TreeNGram::getCumulativeString).collect(Collectors.joining(" ")));
+
+        for (TreeNGram nGram : found) {
+            TreeNGram expected = model.findExact(nGram.getCumulativeString());
+
+            assertEquals(expected.getCount(), nGram.getCount());
+            assertEquals(expected.getOrder(), nGram.getOrder());
+            assertEquals(expected.getConditionalProbability(), nGram.getConditionalProbability(), 0d);
+        }
+    }
+
+    @Test
+    public void testPersistNGrams_incremental() throws IOException {
+        writeCorpusFile("first.txt", "the quick brown fox\njumps over the lazy dog\n");
+        persister.persistNGrams();
+
+        assertEquals(Arrays.asList("first.txt"), manifestPaths());
+        assertModelMatchesWholeCorpus();
+
+        writeCorpusFile("nested/second.txt", "the thing that should not be\nthe end\n");
+        persister.persistNGrams();
+
+        assertEquals(Arrays.asList("first.txt", "nested/second.txt"), manifestPaths());
+        assertModelMatchesWholeCorpus();
+    }
+
+    @Test
+    public void testPersistNGrams_nothingNew() throws IOException {
+        writeCorpusFile("first.txt", "the quick brown fox\njumps over the lazy dog\n");
+        persister.persistNGrams();
+
+        Files.delete(binaryModelFile);
+        persister.persistNGrams();
+
+        assertFalse(Files.exists(binaryModelFile));
+    }
+
+    @Test
+    public void testPersistNGrams_changedFileRebuilds() throws IOException {
+        writeCorpusFile("first.txt", "the quick brown fox\njumps over the lazy dog\n");
+        writeCorpusFile("second.txt", "the thing that should not be\n");
+        persister.persistNGrams();
+
+        // Counting the changed file on top of the old counts would double-count its n-grams
+        writeCorpusFile("first.txt", "a completely different line of text\n");
+        persister.persistNGrams();
+
+        assertModelMatchesWholeCorpus();
+    }
+
+    @Test
+    public void testToArrayMarkovModel_tiesGoToLowestIndex() {
+        setField(NGramPersister.class, persister, "maxNGramsToKeep", 2);
+
+        TreeMarkovModel model = new TreeMarkovModel(ORDER);
+
+        // Inserted out of alphabetical order, so that node ids would break the tie differently
+        model.addLetterTransition("zzz");
+        model.addLetterTransition("aaa");
+        model.addLetterTransition("mmm");
+        model.computeConditionalProbabilities();
+
+        ArrayMarkovModel arrayMarkovModel = persister.toArrayMarkovModel(model);
+
+        assertEquals(2, arrayMarkovModel.getMapSize());
+        assertEquals((float) model.findExact("aaa").getLogProbability(), arrayMarkovModel.findExact("aaa"), 0f);
+        assertEquals((float) model.findExact("mmm").getLogProbability(), arrayMarkovModel.findExact("mmm"), 0f);
+        assertEquals(NGramTable.NOT_FOUND, arrayMarkovModel.findExact("zzz"), 0f);
+    }
+
+    private void assertModelMatchesWholeCorpus() {
+        TreeMarkovModel expected = importer.buildModel(importer.countNGrams(importer.findCorpusFiles()));
+
+        Map<String, TreeNGram> found = new HashMap<>();
+
+        for (TreeNGram nGram : letterNGramDao.findAll()) {
+            found.put(nGram.getCumulativeString(), nGram);
+        }
+
+        assertEquals(expected.size() - 1, found.size());
+
+        for (int node = 1; node < expected.size(); node++) {
+            TreeNGram actual = found.get(expected.getCumulativeString(node));
+
+            assertNotNull(actual);
+            assertEquals(expected.getCount(node), actual.getCount());
+            assertEquals(expected.toTreeNGram(node).getProbability(), actual.getProbability(), 1e-12d);
+        }
+    }
+
+    private List<String> manifestPaths() {
+        return importManifestDao.findAll().stream()
+                .map(ImportedCorpusFile::getPath)
+                .collect(Collectors.toList());
+    }
+
+    private void writeCorpusFile(String relativePath, String text) throws IOException {
+        Path path = corpusDirectory.toPath().resolve(relativePath);
+        Files.createDirectories(path.getParent());
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void setField(Class<?> type, Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(type, name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    private static StringBuilder preOrder(TreeMarkovModel model, int node, StringBuilder sb) {
+        if (node != TreeMarkovModel.ROOT_NODE) {
+            sb.append(model.getCumulativeString(node)).append(' ');
+        }
+
+        for (int child = model.getFirstChild(node); child != TreeMarkovModel.NO_NODE; child = model.getNextSibling(child)) {
+            preOrder(model, child, sb);
+        }
+
+        return sb;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2017-2019 George Belden
+ *
+ * This file is part of Zenith.
+ *
+ * Zenith is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later
+ * version.
+ *
+ * Zenith is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov;
+
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.ciphertool.zenith.model.markov.table.DenseNGramTable;
+import com.ciphertool.zenith.model.markov.table.HashedNGramTable;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ArrayMarkovModelTest {
+    @Test
+    public void testFindExact_allOrders() {
+        String text = "thequickbrownfoxjumpsoverthelazydog";
+
+        for (int order = ArrayMarkovModel.MIN_ORDER; order <= ArrayMarkovModel.MAX_ORDER; order ++) {
+            ArrayMarkovModel model = new ArrayMarkovModel(order);
+            String first = text.substring(0, order);
+            String last = text.substring(text.length() - order);
+
+            model.addNode(nGram(first, -3.5d));
+            model.addNode(nGram(last, -7.25d));
+
+            assertEquals(2, model.getMapSize());
+            assertEquals(-3.5f, model.findExact(first), 0f);
+            assertEquals(-7.25f, model.findExact(last), 0f);
+            assertEquals(-1f, model.findExact(text.substring(1, order + 1)), 0f);
+        }
+    }
+
+    @Test
+    public void testCreateTable() {
+        assertTrue(ArrayMarkovModel.createTable(5) instanceof DenseNGramTable);
+        assertTrue(ArrayMarkovModel.createTable(6) instanceof HashedNGramTable);
+        assertTrue(ArrayMarkovModel.createTable(7) instanceof HashedNGramTable);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_orderTooHigh() {
+        new ArrayMarkovModel(ArrayMarkovModel.MAX_ORDER + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_orderTooLow() {
+        new ArrayMarkovModel(ArrayMarkovModel.MIN_ORDER - 1);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddNode_duplicate() {
+        ArrayMarkovModel model = new ArrayMarkovModel(7);
+
+        model.addNode(nGram("zodiacs", -2d));
+        model.addNode(nGram("zodiacs", -2d));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompact_perfectHashOfBackedOffModel() {
+        ArrayMarkovModel model = new ArrayMarkovModel(3);
+        model.addNode(nGram("abc", -4d));
+
+        StupidBackOff backOff = new StupidBackOff(3, 0.4f);
+        backOff.apply(model);
+
+        assertEquals(1, model.getKnownNGramCount());
+        assertEquals(26 * 26 * 26, model.getMapSize());
+
+        model.compact(0, true);
+    }
+
+    @Test
+    public void testRollArrayIndex() {
+        String text = "iliketokillpeoplebecauseitissomuchfun";
+
+        for (int order = ArrayMarkovModel.MIN_ORDER; order <= ArrayMarkovModel.MAX_ORDER; order ++) {
+            ArrayMarkovModel model = new ArrayMarkovModel(order);
+
+            long index = model.computeArrayIndex(text);
+
+            for (int i = 1; i + order <= text.length(); i ++) {
+                index = model.rollArrayIndex(index, text.charAt(i + order - 1));
+
+                assertEquals(model.computeArrayIndex(text.substring(i, i + order)), index);
+            }
+        }
+    }
+
+    @Test
+    public void testHashedNGramTable_resize() {
+        HashedNGramTable table = new HashedNGramTable(1);
+
+        for (long i = 0; i < 1000; i ++) {
+            table.put(i * 12345L, (float) -i);
+        }
+
+        assertEquals(1000, table.size());
+
+        for (long i = 0; i < 1000; i ++) {
+            assertEquals((float) -i, table.get(i * 12345L), 0f);
+        }
+
+        assertEquals(-1f, table.get(7L), 0f);
+    }
+
+    private static TreeNGram nGram(String nGramString, double logProbability) {
+        TreeNGram node = new TreeNGram(nGramString);
+        node.setLogProbability(logProbability);
+        return node;
+    }
+}
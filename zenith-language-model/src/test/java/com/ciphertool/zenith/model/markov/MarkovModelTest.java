@@ -19,7 +19,6 @@
 
 package com.ciphertool.zenith.model.markov;
 
-import com.ciphertool.zenith.model.entities.TreeNGram;
 import com.ciphertool.zenith.model.etl.importers.LetterNGramMarkovImporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,7 +26,8 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.ReflectionUtils;
 
 import java.lang.reflect.Field;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 import static org.mockito.Mockito.spy;
@@ -73,42 +73,24 @@ public class MarkovModelTest {
         sb.append(root);
 
         for (int i = 0; i < 100; i++) {
-            TreeNGram match = model.findLongest(root);
+            int match = model.findLongestNode(root);
 
-            Map<Character, TreeNGram> transitions = null;
-
-            if (match != null) {
-                transitions = match.getTransitions();
-            }
-
-            if (transitions == null || transitions.isEmpty()) {
+            if (match == TreeMarkovModel.NO_NODE || model.getFirstChild(match) == TreeMarkovModel.NO_NODE) {
                 log.info("Could not find transition for root: " + root);
 
                 break;
             }
 
-            int count = 0;
-            for (Map.Entry<Character, TreeNGram> entry : transitions.entrySet()) {
-                if (entry.getValue() != null) {
-                    count++;
-                }
-            }
-
-            char[] tempArray = new char[count];
-
-            count = 0;
-            for (Map.Entry<Character, TreeNGram> entry : transitions.entrySet()) {
-                if (entry.getValue() != null) {
-                    tempArray[count] = entry.getKey();
+            List<Character> transitions = new ArrayList<>();
 
-                    count++;
-                }
+            for (int child = model.getFirstChild(match); child != TreeMarkovModel.NO_NODE; child = model.getNextSibling(child)) {
+                transitions.add(model.getLetter(child));
             }
 
             Random rand = new Random();
-            int randomIndex = rand.nextInt(tempArray.length);
+            int randomIndex = rand.nextInt(transitions.size());
 
-            char nextSymbol = tempArray[randomIndex];
+            char nextSymbol = transitions.get(randomIndex);
             sb.append(nextSymbol);
 
             root = root.substring(1) + nextSymbol;
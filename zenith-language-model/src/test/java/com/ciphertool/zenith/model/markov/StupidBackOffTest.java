@@ -0,0 +1,87 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov;
+
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StupidBackOffTest {
+    private static final float WEIGHT = 0.4f;
+    private static final double LOG_WEIGHT = Math.log(WEIGHT);
+
+    @Test
+    public void testApply() {
+        ArrayMarkovModel model = new ArrayMarkovModel(3);
+        model.addNode(nGram("aba", -2d));
+
+        StupidBackOff backOff = new StupidBackOff(3, WEIGHT);
+        backOff.addNode(nGram("a", 60L));
+        backOff.addNode(nGram("b", 40L));
+        backOff.addNode(nGram("ab", 30L));
+        backOff.addNode(nGram("ba", 20L));
+        backOff.addNode(nGram("aa", 10L));
+        // Orders at or above the model's are ignored
+        backOff.addNode(nGram("abb", 1000L));
+
+        assertEquals(ArrayMarkovModel.possibleNGramCount(3) - 1L, backOff.apply(model));
+        assertEquals(WEIGHT, model.getBackOffWeight(), 0f);
+
+        // Known n-grams are left alone
+        assertEquals(-2f, model.findExact("aba"), 0f);
+
+        // The prefix "ab" is known, but the suffix "bb" is not, so it backs off again to "b"
+        assertEquals(Math.log(30d / 60d) + LOG_WEIGHT + LOG_WEIGHT + Math.log(40d / 100d), model.findExact("abb"), 1e-5f);
+
+        // The prefix "aa" and the suffix "ab" are both known
+        assertEquals(Math.log(10d / 60d) + LOG_WEIGHT + Math.log(30d / 60d), model.findExact("aab"), 1e-5f);
+
+        // Neither "bb" as a prefix nor as a suffix is known
+        double bb = Math.log(40d / 100d) + LOG_WEIGHT + Math.log(40d / 100d);
+        assertEquals(bb + LOG_WEIGHT + LOG_WEIGHT + Math.log(40d / 100d), model.findExact("bbb"), 1e-5f);
+
+        // Letters which were never seen are as likely as the model's unknown n-grams
+        double z = Math.log(1d / 100d);
+        assertEquals(z + LOG_WEIGHT + z + LOG_WEIGHT + LOG_WEIGHT + z, model.findExact("zzz"), 1e-5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_hashedOrder() {
+        new StupidBackOff(6, WEIGHT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructor_zeroWeight() {
+        new StupidBackOff(5, 0f);
+    }
+
+    private static TreeNGram nGram(String nGramString, long count) {
+        TreeNGram nGram = new TreeNGram(nGramString);
+        nGram.setCount(count);
+        return nGram;
+    }
+
+    private static TreeNGram nGram(String nGramString, double logProbability) {
+        TreeNGram nGram = new TreeNGram(nGramString);
+        nGram.setLogProbability(logProbability);
+        return nGram;
+    }
+}
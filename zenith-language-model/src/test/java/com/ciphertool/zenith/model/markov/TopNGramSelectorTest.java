@@ -0,0 +1,113 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TopNGramSelectorTest {
+    @Test
+    public void testOffer_keepsHighestCounts() {
+        TopNGramSelector selector = new TopNGramSelector(3);
+
+        for (long index = 0L; index < 10L; index ++) {
+            selector.offer(index, (index * 7L) % 10L, -index);
+        }
+
+        Map<Long, Long> kept = collect(selector);
+
+        assertEquals(3, selector.size());
+        assertEquals(3, kept.size());
+        // Counts are 0, 7, 4, 1, 8, 5, 2, 9, 6, 3 for indices 0 to 9
+        assertEquals(Long.valueOf(9L), kept.get(7L));
+        assertEquals(Long.valueOf(8L), kept.get(4L));
+        assertEquals(Long.valueOf(7L), kept.get(1L));
+    }
+
+    @Test
+    public void testOffer_tiesKeepLowestIndex() {
+        TopNGramSelector selector = new TopNGramSelector(2);
+
+        assertTrue(selector.offer(5L, 1L, -1f));
+        assertTrue(selector.offer(3L, 1L, -1f));
+        assertTrue(selector.offer(1L, 1L, -1f));
+        assertFalse(selector.offer(4L, 1L, -1f));
+
+        Map<Long, Long> kept = collect(selector);
+
+        assertEquals(2, kept.size());
+        assertTrue(kept.containsKey(1L));
+        assertTrue(kept.containsKey(3L));
+    }
+
+    @Test
+    public void testMerge_matchesSingleSelector() {
+        TopNGramSelector single = new TopNGramSelector(50);
+        TopNGramSelector[] parts = new TopNGramSelector[4];
+
+        for (int i = 0; i < parts.length; i ++) {
+            parts[i] = new TopNGramSelector(50);
+        }
+
+        for (long index = 0L; index < 1000L; index ++) {
+            long count = (index * 7919L) % 113L;
+
+            single.offer(index, count, -index);
+            parts[(int) (index % parts.length)].offer(index, count, -index);
+        }
+
+        TopNGramSelector merged = new TopNGramSelector(50);
+
+        for (TopNGramSelector part : parts) {
+            merged.merge(part);
+        }
+
+        assertEquals(collect(single), collect(merged));
+    }
+
+    @Test
+    public void testForEach_underLimit() {
+        TopNGramSelector selector = new TopNGramSelector(100);
+
+        selector.offer(2L, 10L, -2.5f);
+        selector.offer(9L, 20L, -1.5f);
+
+        Map<Long, Float> logProbabilities = new HashMap<>();
+        selector.forEach((index, count, logProbability) -> logProbabilities.put(index, logProbability));
+
+        assertEquals(2, selector.size());
+        assertEquals(-2.5f, logProbabilities.get(2L), 0f);
+        assertEquals(-1.5f, logProbabilities.get(9L), 0f);
+    }
+
+    private static Map<Long, Long> collect(TopNGramSelector selector) {
+        Map<Long, Long> kept = new HashMap<>();
+
+        selector.forEach((index, count, logProbability) -> kept.put(index, count));
+
+        return kept;
+    }
+}
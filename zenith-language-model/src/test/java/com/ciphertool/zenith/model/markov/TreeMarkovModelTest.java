@@ -0,0 +1,136 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov;
+
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TreeMarkovModelTest {
+    @Test
+    public void testAddLetterTransition() {
+        // A small initial capacity makes the node arrays grow several times
+        TreeMarkovModel model = new TreeMarkovModel(3, 2);
+
+        assertTrue(model.addLetterTransition("the"));
+        assertTrue(model.addLetterTransition("tha"));
+        assertFalse(model.addLetterTransition("the"));
+        assertFalse(model.addLetterTransition("th"));
+        assertTrue(model.addLetterTransition("and", 5L));
+
+        // The root, t, th, the, tha, a, an and and
+        assertEquals(8L, model.size());
+        assertEquals(4L, model.findExact("t").getCount());
+        assertEquals(4L, model.findExact("th").getCount());
+        assertEquals(2L, model.findExact("the").getCount());
+        assertEquals(5L, model.findExact("and").getCount());
+        assertEquals("tha", model.findExact("tha").getCumulativeString());
+        assertEquals(3, model.findExact("tha").getOrder());
+    }
+
+    @Test
+    public void testChildrenAreAlphabetical() {
+        TreeMarkovModel model = new TreeMarkovModel(2);
+
+        model.addLetterTransition("tz");
+        model.addLetterTransition("ta");
+        model.addLetterTransition("tm");
+
+        int t = model.findExactNode("t");
+        StringBuilder letters = new StringBuilder();
+
+        for (int child = model.getFirstChild(t); child != TreeMarkovModel.NO_NODE; child = model.getNextSibling(child)) {
+            letters.append(model.getLetter(child));
+        }
+
+        assertEquals("amz", letters.toString());
+        assertEquals(TreeMarkovModel.NO_NODE, model.findChild(t, 'b'));
+    }
+
+    @Test
+    public void testFindExact() {
+        TreeMarkovModel model = new TreeMarkovModel(3);
+        model.addLetterTransition("cat");
+
+        assertNotNull(model.findExact("ca"));
+        assertNull(model.findExact("cab"));
+        assertNull(model.findExact("dog"));
+    }
+
+    @Test
+    public void testFindLongest() {
+        TreeMarkovModel model = new TreeMarkovModel(3);
+        model.addLetterTransition("cat");
+
+        assertEquals("cat", model.findLongest("cat").getCumulativeString());
+        assertEquals("ca", model.findLongest("cab").getCumulativeString());
+        assertEquals("c", model.findLongest("cow").getCumulativeString());
+        assertNull(model.findLongest("dog"));
+    }
+
+    @Test
+    public void testComputeConditionalProbabilitiesAndNormalize() {
+        TreeMarkovModel model = new TreeMarkovModel(2);
+        model.addLetterTransition("ab", 3L);
+        model.addLetterTransition("ac", 1L);
+        model.addLetterTransition("ba", 4L);
+
+        model.computeConditionalProbabilities();
+        model.normalize(2, 8L);
+
+        assertEquals(0.5d, model.findExact("a").getConditionalProbability(), 0d);
+        assertEquals(0.75d, model.findExact("ab").getConditionalProbability(), 0d);
+        assertEquals(Math.log(0.75d), model.findExact("ab").getLogConditionalProbability(), 0d);
+        assertEquals(0.375d, model.findExact("ab").getProbability(), 0d);
+        assertEquals(0.5d, model.findExact("ba").getProbability(), 0d);
+        assertEquals(0d, model.findExact("a").getProbability(), 0d);
+    }
+
+    @Test
+    public void testAddNode() {
+        TreeMarkovModel model = new TreeMarkovModel(2);
+
+        TreeNGram nGram = new TreeNGram("he");
+        nGram.setCount(7L);
+        nGram.setLogProbability(-3.5d);
+        model.addNode(nGram);
+
+        TreeNGram found = model.findExact("he");
+        assertEquals(7L, found.getCount());
+        assertEquals(-3.5d, found.getLogProbability(), 0d);
+        assertEquals(0L, model.findExact("h").getCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddNode_duplicate() {
+        TreeMarkovModel model = new TreeMarkovModel(2);
+
+        TreeNGram nGram = new TreeNGram("he");
+        nGram.setCount(7L);
+        model.addNode(nGram);
+        model.addNode(nGram);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddLetterTransition_invalidCharacter() {
+        new TreeMarkovModel(2).addLetterTransition("a1");
+    }
+}
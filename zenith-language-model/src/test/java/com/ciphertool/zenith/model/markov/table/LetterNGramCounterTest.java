@@ -0,0 +1,94 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import com.ciphertool.zenith.model.entities.TreeNGram;
+import com.ciphertool.zenith.model.markov.TreeMarkovModel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LetterNGramCounterTest {
+    private static final String TEXT = "thequickbrownfoxjumpsoverthelazydogthequickbrownfox";
+
+    @Test
+    public void testCountNGrams_matchesTree() {
+        for (int order = 1; order <= 6; order ++) {
+            LetterNGramCounter counter = new LetterNGramCounter(order);
+            TreeMarkovModel expected = new TreeMarkovModel(order);
+            TreeMarkovModel actual = new TreeMarkovModel(order);
+
+            counter.countNGrams(TEXT, 0, TEXT.length() - order + 1);
+
+            for (int i = 0; i + order <= TEXT.length(); i ++) {
+                expected.addLetterTransition(TEXT.substring(i, i + order));
+            }
+
+            counter.forEach((index, count) -> actual.addLetterTransition(counter.toNGram(index), count));
+
+            assertEquals(TEXT.length() - order + 1, counter.getTotal());
+            assertEquals(expected.size(), actual.size());
+
+            for (int i = 0; i + order <= TEXT.length(); i ++) {
+                for (int length = 1; length <= order; length ++) {
+                    String nGram = TEXT.substring(i, i + length);
+
+                    assertEquals(expected.findExact(nGram).getCount(), actual.findExact(nGram).getCount());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        // Order 5 is large enough to use the hashed layout
+        LetterNGramCounter first = new LetterNGramCounter(5);
+        LetterNGramCounter second = new LetterNGramCounter(5);
+        int split = 20;
+
+        first.countNGrams(TEXT, 0, split);
+        second.countNGrams(TEXT, split, TEXT.length() - 5 + 1);
+        first.merge(second);
+
+        LetterNGramCounter whole = new LetterNGramCounter(5);
+        whole.countNGrams(TEXT, 0, TEXT.length() - 5 + 1);
+
+        assertEquals(whole.getTotal(), first.getTotal());
+        assertEquals(whole.size(), first.size());
+        whole.forEach((index, count) -> assertEquals(count, first.getCount(index)));
+
+        TreeMarkovModel model = new TreeMarkovModel(5);
+        first.forEach((index, count) -> model.addLetterTransition(first.toNGram(index), count));
+
+        TreeNGram quick = model.findExact("quick");
+        assertEquals(2L, quick.getCount());
+        assertEquals(3L, model.findExact("t").getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCountNGrams_invalidCharacter() {
+        new LetterNGramCounter(3).countNGrams("abc def", 0, 5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMerge_differentOrders() {
+        new LetterNGramCounter(3).merge(new LetterNGramCounter(4));
+    }
+}
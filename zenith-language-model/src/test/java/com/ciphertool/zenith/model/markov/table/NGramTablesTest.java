@@ -0,0 +1,166 @@
+/**
+ * Copyright 2017-2019 George Belden
+ * <p>
+ * This file is part of Zenith.
+ * <p>
+ * Zenith is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ * <p>
+ * Zenith is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * Zenith. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ciphertool.zenith.model.markov.table;
+
+import com.ciphertool.zenith.model.markov.ArrayMarkovModel;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+public class NGramTablesTest {
+    private static final int ORDER = 5;
+    private static final int CAPACITY = (int) ArrayMarkovModel.possibleNGramCount(ORDER);
+
+    @Test
+    public void testQuantize_fewDistinctValuesAreExact() {
+        DenseNGramTable source = new DenseNGramTable(CAPACITY);
+        source.put(0L, -8.5f);
+        source.put(12345L, -9.25f);
+        source.put(CAPACITY - 1, -8.5f);
+
+        QuantizedNGramTable quantized = (QuantizedNGramTable) NGramTables.compact(source, CAPACITY, 8, false);
+
+        assertEquals(3, quantized.size());
+        assertEquals(-8.5f, quantized.get(0L), 0f);
+        assertEquals(-9.25f, quantized.get(12345L), 0f);
+        assertEquals(-8.5f, quantized.get(CAPACITY - 1), 0f);
+        assertEquals(NGramTable.NOT_FOUND, quantized.get(1L), 0f);
+        assertEquals(CAPACITY, quantized.memoryUsage() - (3 * Float.BYTES));
+    }
+
+    @Test
+    public void testQuantize_errorShrinksWithMoreBits() {
+        DenseNGramTable source = randomTable(new SplittableRandom(7L), 100000);
+
+        NGramTable eightBit = NGramTables.compact(source, CAPACITY, 8, false);
+        NGramTable sixteenBit = NGramTables.compact(source, CAPACITY, 16, false);
+
+        double eightBitError = NGramTables.maxAbsoluteError(source, eightBit);
+        double sixteenBitError = NGramTables.maxAbsoluteError(source, sixteenBit);
+
+        // The values span 20 nats, so even evenly spaced buckets would be this close
+        assertTrue(eightBitError < 20d / 255d);
+        assertTrue(sixteenBitError < eightBitError);
+        assertTrue(NGramTables.meanAbsoluteError(source, sixteenBit) < 0.001d);
+        assertEquals(source.size(), eightBit.size());
+    }
+
+    @Test
+    public void testPerfectHash() {
+        SplittableRandom random = new SplittableRandom(11L);
+        HashedNGramTable source = new HashedNGramTable(1);
+
+        long possible = ArrayMarkovModel.possibleNGramCount(ArrayMarkovModel.MAX_ORDER);
+
+        while (source.size() < 50000) {
+            source.put(random.nextLong(possible), -10f - (float) random.nextDouble(10d));
+        }
+
+        PerfectHashNGramTable perfectHash = (PerfectHashNGramTable) NGramTables.compact(source, possible, 0, true);
+
+        assertEquals(source.size(), perfectHash.size());
+        assertEquals(0d, NGramTables.maxAbsoluteError(source, perfectHash), 0d);
+        assertEquals(0, perfectHash.getQuantizationBits());
+        assertTrue(perfectHash.memoryUsage() < source.memoryUsage() / 3);
+
+        int[] count = new int[1];
+        perfectHash.forEach((index, logProbability) -> {
+            assertEquals(source.get(index), logProbability, 0f);
+            count[0] ++;
+        });
+        assertEquals(source.size(), count[0]);
+
+        for (int i = 0; i < 10000; i ++) {
+            long index = random.nextLong(possible);
+
+            assertEquals(source.get(index), perfectHash.get(index), 0f);
+        }
+    }
+
+    @Test
+    public void testPerfectHash_quantized() {
+        DenseNGramTable source = randomTable(new SplittableRandom(13L), 20000);
+
+        PerfectHashNGramTable perfectHash = (PerfectHashNGramTable) NGramTables.compact(source, CAPACITY, 16, true);
+
+        assertEquals(16, perfectHash.getQuantizationBits());
+        assertEquals(source.size(), perfectHash.size());
+        assertTrue(NGramTables.maxAbsoluteError(source, perfectHash) < 0.01d);
+        assertEquals(NGramTable.NOT_FOUND, perfectHash.get(CAPACITY - 1), 0f);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPerfectHash_putNewNGram() {
+        DenseNGramTable source = new DenseNGramTable(CAPACITY);
+        source.put(42L, -5f);
+
+        NGramTables.compact(source, CAPACITY, 0, true).put(43L, -6f);
+    }
+
+    @Test
+    public void testMinimalPerfectHash_positionsAreDistinct() {
+        long[] keys = new long[100000];
+
+        for (int i = 0; i < keys.length; i ++) {
+            keys[i] = i * 7919L;
+        }
+
+        MinimalPerfectHash hash = MinimalPerfectHash.build(keys);
+        boolean[] used = new boolean[keys.length];
+
+        for (long key : keys) {
+            int position = hash.lookup(key);
+
+            assertFalse(used[position]);
+            used[position] = true;
+        }
+
+        // About four bits per key
+        assertTrue(hash.memoryUsage() * Byte.SIZE < keys.length * 5L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompact_unsupportedBits() {
+        NGramTables.compact(new DenseNGramTable(CAPACITY), CAPACITY, 4, false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompact_quantizedTooLargeForArray() {
+        long possible = ArrayMarkovModel.possibleNGramCount(ArrayMarkovModel.MAX_ORDER);
+
+        NGramTables.compact(new HashedNGramTable(1), possible, 8, false);
+    }
+
+    private static DenseNGramTable randomTable(SplittableRandom random, int size) {
+        DenseNGramTable table = new DenseNGramTable(CAPACITY);
+
+        while (table.size() < size) {
+            long index = random.nextInt(CAPACITY);
+
+            if (table.get(index) == NGramTable.NOT_FOUND) {
+                table.put(index, -5f - (float) random.nextDouble(20d));
+            }
+        }
+
+        return table;
+    }
+}